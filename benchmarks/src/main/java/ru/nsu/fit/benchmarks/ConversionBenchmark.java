@@ -0,0 +1,85 @@
+package ru.nsu.fit.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.nsu.fit.array.PersistentArray;
+import ru.nsu.fit.list.PersistentLinkedList;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Преобразование списка в массив и обратно в сравнении с поэлементным копированием.
+ * <p>
+ * listToArray использует дерево списка, построенного добавлением в конец,
+ * shuffledListToArray - списка со вставкой в начало, которое строится заново снизу вверх.
+ * С {@code -prof gc} {@code gc.alloc.rate.norm} - объем памяти, не разделяемой с исходной структурой.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ConversionBenchmark {
+    @Param({"10000", "1000000"})
+    private int size;
+
+    private PersistentLinkedList<Integer> list;
+
+    private PersistentLinkedList<Integer> shuffledList;
+
+    private PersistentArray<Integer> array;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        list = new PersistentLinkedList<>();
+        array = new PersistentArray<>();
+        for (int i = 0; i < size; i++) {
+            list.add(i);
+            array.add(i);
+        }
+
+        shuffledList = list.fork();
+        shuffledList.add(0, -1);
+    }
+
+    @Benchmark
+    public PersistentArray<Integer> listToArray() {
+        return list.toPersistentArray();
+    }
+
+    @Benchmark
+    public PersistentArray<Integer> shuffledListToArray() {
+        return shuffledList.toPersistentArray();
+    }
+
+    @Benchmark
+    public PersistentArray<Integer> listToArrayCopy() {
+        PersistentArray<Integer> result = new PersistentArray<>();
+        result.addAll(list);
+        return result;
+    }
+
+    @Benchmark
+    public PersistentLinkedList<Integer> arrayToList() {
+        return array.toPersistentList();
+    }
+
+    @Benchmark
+    public PersistentLinkedList<Integer> arrayToListCopy() {
+        PersistentLinkedList<Integer> result = new PersistentLinkedList<>();
+        result.addAll(array);
+        return result;
+    }
+}
@@ -0,0 +1,89 @@
+package ru.nsu.fit.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Базовая линия для массива и списка: {@link ArrayList}, копируемый при каждом изменении.
+ * Размеры и индексы совпадают с {@link PersistentArrayBenchmark} и {@link PersistentLinkedListBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CopyOnWriteListBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    private int size;
+
+    private List<Integer> list;
+
+    private int[] indices;
+
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        list = Workload.range(size);
+        indices = Workload.indices(size);
+    }
+
+    @Benchmark
+    public Integer get() {
+        return list.get(nextIndex());
+    }
+
+    @Benchmark
+    public List<Integer> set() {
+        List<Integer> result = new ArrayList<>(list);
+        result.set(nextIndex(), -1);
+        return result;
+    }
+
+    @Benchmark
+    public List<Integer> append() {
+        List<Integer> result = new ArrayList<>(list);
+        result.add(-1);
+        return result;
+    }
+
+    @Benchmark
+    public List<Integer> insert() {
+        List<Integer> result = new ArrayList<>(list);
+        result.add(nextIndex(), -1);
+        return result;
+    }
+
+    @Benchmark
+    public List<Integer> remove() {
+        List<Integer> result = new ArrayList<>(list);
+        result.remove(nextIndex());
+        return result;
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (Integer element : list) {
+            blackhole.consume(element);
+        }
+    }
+
+    private int nextIndex() {
+        return indices[cursor++ & Workload.INDEX_MASK];
+    }
+}
@@ -0,0 +1,60 @@
+package ru.nsu.fit.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.nsu.fit.list.PersistentLinkedList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Память, занимаемая одной версией {@link PersistentLinkedList}.
+ * <p>
+ * build* строят список из заранее созданных Integer одной версией, поэтому
+ * с {@code -prof gc} их {@code gc.alloc.rate.norm}, деленный на size, - число байт на элемент
+ * без самих значений: ссылка на значение и два int ссылок на соседей в листе плюс узлы дерева.
+ * buildArrayList - нижняя граница: одна ссылка на элемент.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ListFootprintBenchmark {
+    @Param({"10000", "1000000"})
+    private int size;
+
+    @Param({"32"})
+    private int branching;
+
+    private List<Integer> values;
+
+    @Setup
+    public void setup() {
+        values = Workload.range(size);
+    }
+
+    @Benchmark
+    public PersistentLinkedList<Integer> build() {
+        PersistentLinkedList<Integer> list = new PersistentLinkedList<>(size, branching);
+        list.addAll(values);
+        return list;
+    }
+
+    @Benchmark
+    public List<Integer> buildArrayList() {
+        return new ArrayList<>(values);
+    }
+}
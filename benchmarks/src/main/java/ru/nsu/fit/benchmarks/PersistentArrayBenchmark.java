@@ -0,0 +1,98 @@
+package ru.nsu.fit.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.nsu.fit.array.PersistentArray;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Операции {@link PersistentArray}.
+ * Базовая линия с копированием {@link java.util.ArrayList} - {@link CopyOnWriteListBenchmark}.
+ * <p>
+ * Изменяющие операции применяются к копии исходной версии, поэтому история не растет между вызовами.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PersistentArrayBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    private int size;
+
+    private PersistentArray<Integer> array;
+
+    private int[] indices;
+
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        array = new PersistentArray<>(size);
+        array.addAll(Workload.range(size));
+        indices = Workload.indices(size);
+    }
+
+    @Benchmark
+    public Integer get() {
+        return array.get(nextIndex());
+    }
+
+    @Benchmark
+    public PersistentArray<Integer> set() {
+        return array.assoc(nextIndex(), -1);
+    }
+
+    @Benchmark
+    public PersistentArray<Integer> append() {
+        return array.conj(-1);
+    }
+
+    @Benchmark
+    public PersistentArray<Integer> insert() {
+        PersistentArray<Integer> result = new PersistentArray<>(array);
+        result.add(nextIndex(), -1);
+        return result;
+    }
+
+    @Benchmark
+    public PersistentArray<Integer> remove() {
+        PersistentArray<Integer> result = new PersistentArray<>(array);
+        result.remove(nextIndex());
+        return result;
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (Integer element : array) {
+            blackhole.consume(element);
+        }
+    }
+
+    /**
+     * Отмена и повтор последнего изменения, чтобы текущая версия не менялась между вызовами.
+     */
+    @Benchmark
+    public int undoRedo() {
+        array.undo();
+        array.redo();
+        return array.size();
+    }
+
+    private int nextIndex() {
+        return indices[cursor++ & Workload.INDEX_MASK];
+    }
+}
@@ -0,0 +1,150 @@
+package ru.nsu.fit.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.nsu.fit.map.PersistentMap;
+import ru.nsu.fit.set.PersistentBitmap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Операции {@link PersistentBitmap} в сравнении с множеством идентификаторов
+ * в виде {@code PersistentMap<Integer, Boolean>}.
+ * <p>
+ * Идентификаторы случайны в [0, 4 * size). build* строят множество одной версией:
+ * с {@code -prof gc} их {@code gc.alloc.rate.norm} - оценка занимаемой памяти.
+ * and* пересекают две версии, различающиеся в 1% элементов.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PersistentBitmapBenchmark {
+    @Param({"10000", "100000"})
+    private int size;
+
+    private int[] ids;
+
+    private Map<Integer, Boolean> idMap;
+
+    private PersistentBitmap bitmap;
+
+    private PersistentBitmap changedBitmap;
+
+    private PersistentMap<Integer, Boolean> map;
+
+    private PersistentMap<Integer, Boolean> changedMap;
+
+    private int[] probes;
+
+    private int cursor;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(7);
+        ids = new int[size];
+        idMap = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            ids[i] = random.nextInt(4 * size);
+            idMap.put(ids[i], true);
+        }
+
+        bitmap = PersistentBitmap.of(ids);
+        map = new PersistentMap<>();
+        map.putAll(idMap);
+
+        changedBitmap = bitmap.fork();
+        changedMap = map.fork();
+        for (int i = 0; i < size / 100; i++) {
+            int id = random.nextInt(4 * size);
+            changedBitmap.add(id);
+            changedMap.put(id, true);
+            changedBitmap.remove(ids[i]);
+            changedMap.remove(ids[i]);
+        }
+
+        probes = Workload.indices(4 * size);
+    }
+
+    @Benchmark
+    public PersistentBitmap buildBitmap() {
+        return PersistentBitmap.of(ids);
+    }
+
+    @Benchmark
+    public PersistentMap<Integer, Boolean> buildMap() {
+        PersistentMap<Integer, Boolean> result = new PersistentMap<>();
+        result.putAll(idMap);
+        return result;
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return bitmap.contains(nextProbe());
+    }
+
+    @Benchmark
+    public boolean mapContains() {
+        return map.containsKey(nextProbe());
+    }
+
+    /**
+     * Добавление и удаление идентификатора, чтобы множество не росло между вызовами.
+     */
+    @Benchmark
+    public boolean addRemove() {
+        int id = nextProbe();
+        boolean added = bitmap.add(id);
+        if (added) {
+            bitmap.remove(id);
+        }
+        return added;
+    }
+
+    @Benchmark
+    public Boolean mapPutRemove() {
+        int id = nextProbe();
+        Boolean previous = map.put(id, true);
+        if (previous == null) {
+            map.remove(id);
+        }
+        return previous;
+    }
+
+    @Benchmark
+    public long and() {
+        return bitmap.and(changedBitmap).cardinality();
+    }
+
+    @Benchmark
+    public int mapAnd() {
+        PersistentMap<Integer, Boolean> result = map.fork();
+        result.retainKeys(changedMap);
+        return result.size();
+    }
+
+    @Benchmark
+    public long cardinality() {
+        return bitmap.cardinality();
+    }
+
+    private int nextProbe() {
+        return probes[cursor++ & Workload.INDEX_MASK];
+    }
+}
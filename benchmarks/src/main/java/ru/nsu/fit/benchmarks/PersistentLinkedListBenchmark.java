@@ -0,0 +1,105 @@
+package ru.nsu.fit.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.nsu.fit.list.PersistentLinkedList;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Операции {@link PersistentLinkedList}.
+ * Базовая линия с копированием {@link java.util.ArrayList} - {@link CopyOnWriteListBenchmark}.
+ * <p>
+ * Изменяющие операции применяются к копии исходной версии, поэтому история не растет между вызовами.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PersistentLinkedListBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    private int size;
+
+    @Param({"8", "16", "32", "64"})
+    private int branching;
+
+    private PersistentLinkedList<Integer> list;
+
+    private int[] indices;
+
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        list = new PersistentLinkedList<>(size, branching);
+        list.addAll(Workload.range(size));
+        indices = Workload.indices(size);
+    }
+
+    @Benchmark
+    public Integer get() {
+        return list.get(nextIndex());
+    }
+
+    @Benchmark
+    public PersistentLinkedList<Integer> set() {
+        PersistentLinkedList<Integer> result = new PersistentLinkedList<>(list);
+        result.set(nextIndex(), -1);
+        return result;
+    }
+
+    @Benchmark
+    public PersistentLinkedList<Integer> append() {
+        PersistentLinkedList<Integer> result = new PersistentLinkedList<>(list);
+        result.add(-1);
+        return result;
+    }
+
+    @Benchmark
+    public PersistentLinkedList<Integer> insert() {
+        PersistentLinkedList<Integer> result = new PersistentLinkedList<>(list);
+        result.add(nextIndex(), -1);
+        return result;
+    }
+
+    @Benchmark
+    public PersistentLinkedList<Integer> remove() {
+        PersistentLinkedList<Integer> result = new PersistentLinkedList<>(list);
+        result.remove(nextIndex());
+        return result;
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (Integer element : list) {
+            blackhole.consume(element);
+        }
+    }
+
+    /**
+     * Отмена и повтор последнего изменения, чтобы текущая версия не менялась между вызовами.
+     */
+    @Benchmark
+    public int undoRedo() {
+        list.undo();
+        list.redo();
+        return list.size();
+    }
+
+    private int nextIndex() {
+        return indices[cursor++ & Workload.INDEX_MASK];
+    }
+}
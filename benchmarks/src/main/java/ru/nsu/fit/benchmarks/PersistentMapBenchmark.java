@@ -0,0 +1,129 @@
+package ru.nsu.fit.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.nsu.fit.map.PersistentMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Операции {@link PersistentMap} в сравнении с {@link HashMap}, копируемым при каждом изменении.
+ * <p>
+ * Ассоциативный массив меняется на месте и копит историю, поэтому он пересоздается перед каждой итерацией.
+ * Таблица имеет фиксированное число корзин, поэтому по умолчанию размеры ограничены 10^5;
+ * большие размеры задаются через {@code -p size=...}.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PersistentMapBenchmark {
+    @Param({"1000", "10000", "100000"})
+    private int size;
+
+    private PersistentMap<Integer, Integer> map;
+
+    private Map<Integer, Integer> copyOnWrite;
+
+    private int[] keys;
+
+    private int cursor;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        map = new PersistentMap<>();
+        copyOnWrite = new HashMap<>();
+        for (Integer key : Workload.range(size)) {
+            map.put(key, key);
+            copyOnWrite.put(key, key);
+        }
+        keys = Workload.indices(size);
+    }
+
+    @Benchmark
+    public Integer get() {
+        return map.get(nextKey());
+    }
+
+    /**
+     * Замена значения существующего ключа, размер не меняется.
+     */
+    @Benchmark
+    public Integer put() {
+        return map.put(nextKey(), -1);
+    }
+
+    /**
+     * Удаление и возврат ключа, чтобы размер не менялся между вызовами.
+     */
+    @Benchmark
+    public Integer removeAndPut() {
+        int key = nextKey();
+        Integer value = map.remove(key);
+        map.put(key, value);
+        return value;
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+            blackhole.consume(entry);
+        }
+    }
+
+    /**
+     * Отмена и повтор последнего изменения, чтобы текущая версия не менялась между вызовами.
+     */
+    @Benchmark
+    public int undoRedo() {
+        map.undo();
+        map.redo();
+        return map.size();
+    }
+
+    @Benchmark
+    public Integer copyOnWriteGet() {
+        return copyOnWrite.get(nextKey());
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> copyOnWritePut() {
+        Map<Integer, Integer> result = new HashMap<>(copyOnWrite);
+        result.put(nextKey(), -1);
+        return result;
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> copyOnWriteRemove() {
+        Map<Integer, Integer> result = new HashMap<>(copyOnWrite);
+        result.remove(nextKey());
+        return result;
+    }
+
+    @Benchmark
+    public void copyOnWriteIterate(Blackhole blackhole) {
+        for (Map.Entry<Integer, Integer> entry : copyOnWrite.entrySet()) {
+            blackhole.consume(entry);
+        }
+    }
+
+    private int nextKey() {
+        return keys[cursor++ & Workload.INDEX_MASK];
+    }
+}
@@ -0,0 +1,116 @@
+package ru.nsu.fit.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.nsu.fit.queue.PersistentPriorityQueue;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Операции {@link PersistentPriorityQueue} в сравнении с {@link PriorityQueue}, копируемой при каждом изменении,
+ * как при хранении снимков очереди планировщика.
+ * <p>
+ * Очередь меняется на месте и копит историю, поэтому она пересоздается перед каждой итерацией.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PersistentPriorityQueueBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    private PersistentPriorityQueue<Integer> queue;
+
+    private PriorityQueue<Integer> copyOnWrite;
+
+    private int[] priorities;
+
+    private int cursor;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        priorities = Workload.indices(size);
+        queue = new PersistentPriorityQueue<>();
+        copyOnWrite = new PriorityQueue<>();
+        for (int i = 0; i < size; i++) {
+            Integer priority = priorities[i & Workload.INDEX_MASK];
+            queue.offer(priority);
+            copyOnWrite.offer(priority);
+        }
+    }
+
+    @Benchmark
+    public Integer peek() {
+        return queue.peek();
+    }
+
+    /**
+     * Удаление минимума и вставка нового элемента, чтобы размер не менялся между вызовами.
+     */
+    @Benchmark
+    public Integer pollAndOffer() {
+        Integer min = queue.poll();
+        queue.offer(nextPriority());
+        return min;
+    }
+
+    /**
+     * Снимок очереди и вставка в него, исходная очередь не меняется.
+     */
+    @Benchmark
+    public PersistentPriorityQueue<Integer> forkAndOffer() {
+        PersistentPriorityQueue<Integer> snapshot = queue.fork();
+        snapshot.offer(nextPriority());
+        return snapshot;
+    }
+
+    /**
+     * Отмена и повтор последнего изменения, чтобы текущая версия не менялась между вызовами.
+     */
+    @Benchmark
+    public int undoRedo() {
+        queue.undo();
+        queue.redo();
+        return queue.size();
+    }
+
+    @Benchmark
+    public Integer copyOnWritePeek() {
+        return copyOnWrite.peek();
+    }
+
+    @Benchmark
+    public Integer copyOnWritePollAndOffer() {
+        PriorityQueue<Integer> result = new PriorityQueue<>(copyOnWrite);
+        Integer min = result.poll();
+        result.offer(nextPriority());
+        copyOnWrite = result;
+        return min;
+    }
+
+    @Benchmark
+    public PriorityQueue<Integer> copyOnWriteOffer() {
+        PriorityQueue<Integer> result = new PriorityQueue<>(copyOnWrite);
+        result.offer(nextPriority());
+        return result;
+    }
+
+    private int nextPriority() {
+        return priorities[cursor++ & Workload.INDEX_MASK];
+    }
+}
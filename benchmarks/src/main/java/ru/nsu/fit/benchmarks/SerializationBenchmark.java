@@ -0,0 +1,80 @@
+package ru.nsu.fit.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.nsu.fit.array.PersistentArray;
+import ru.nsu.fit.util.ElementCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запись и чтение всех версий {@link PersistentArray} в сравнении с записью одной версии.
+ * <p>
+ * Массив из size элементов получает versions изменений по случайным индексам.
+ * Узлы, общие для версий, записываются один раз, поэтому история должна стоить
+ * немногим больше одной версии.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SerializationBenchmark {
+    @Param({"1000000"})
+    private int size;
+
+    @Param({"1000"})
+    private int versions;
+
+    private PersistentArray<Integer> array;
+
+    private PersistentArray<Integer> latest;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setup() throws IOException {
+        array = new PersistentArray<>();
+        array.addAll(Workload.range(size));
+
+        int[] indices = Workload.indices(size);
+        for (int i = 0; i < versions; i++) {
+            array.set(indices[i & Workload.INDEX_MASK], -i);
+        }
+        latest = array.fork();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        array.writeTo(out, ElementCodec.integers());
+        bytes = out.toByteArray();
+    }
+
+    @Benchmark
+    public void writeAllVersions() throws IOException {
+        array.writeTo(OutputStream.nullOutputStream(), ElementCodec.integers());
+    }
+
+    @Benchmark
+    public void writeLatestVersion() throws IOException {
+        latest.writeTo(OutputStream.nullOutputStream(), ElementCodec.integers());
+    }
+
+    @Benchmark
+    public PersistentArray<Integer> readAllVersions() throws IOException {
+        return PersistentArray.readFrom(new ByteArrayInputStream(bytes), ElementCodec.integers());
+    }
+}
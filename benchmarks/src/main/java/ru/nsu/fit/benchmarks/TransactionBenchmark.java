@@ -0,0 +1,158 @@
+package ru.nsu.fit.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.nsu.fit.array.PersistentArray;
+import ru.nsu.fit.map.PersistentMap;
+import ru.nsu.fit.stm.Ref;
+import ru.nsu.fit.stm.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Переводы между счетами в нескольких массивах и ассоциативных массивах
+ * из threads потоков: {@link Transaction} против одной общей блокировки.
+ * Обе версии обновляют структуры одинаково, через fork(), и различаются только синхронизацией.
+ * <p>
+ * Каждый вызов выполняет TRANSFERS переводов, поделенных между потоками.
+ * Число счетов на структуру задает конкуренцию: при малом accounts
+ * почти все транзакции конфликтуют.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+    private static final int TRANSFERS = 1 << 14;
+
+    private static final int STRUCTURES = 4;
+
+    @Param({"1", "2", "4", "8", "16", "32", "64"})
+    private int threads;
+
+    @Param({"4", "1024"})
+    private int accounts;
+
+    private List<Ref<PersistentArray<Integer>>> arrays;
+
+    private List<Ref<PersistentMap<Integer, Integer>>> maps;
+
+    private List<PersistentArray<Integer>> lockedArrays;
+
+    private List<PersistentMap<Integer, Integer>> lockedMaps;
+
+    private final Object lock = new Object();
+
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        arrays = new ArrayList<>();
+        maps = new ArrayList<>();
+        lockedArrays = new ArrayList<>();
+        lockedMaps = new ArrayList<>();
+
+        for (int i = 0; i < STRUCTURES; i++) {
+            PersistentArray<Integer> array = new PersistentArray<>(accounts);
+            array.addAll(Workload.range(accounts));
+            PersistentMap<Integer, Integer> map = new PersistentMap<>();
+            for (Integer account : Workload.range(accounts)) {
+                map.put(account, account);
+            }
+
+            arrays.add(new Ref<>(array.fork()));
+            maps.add(new Ref<>(map.fork()));
+            lockedArrays.add(array.fork());
+            lockedMaps.add(map.fork());
+        }
+
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSFERS)
+    public void stm() throws InterruptedException, ExecutionException {
+        runInParallel(random -> {
+            Ref<PersistentArray<Integer>> from = arrays.get(random.nextInt(STRUCTURES));
+            Ref<PersistentMap<Integer, Integer>> to = maps.get(random.nextInt(STRUCTURES));
+            int account = random.nextInt(accounts);
+
+            Transaction.run(tx -> {
+                PersistentArray<Integer> array = tx.get(from).fork();
+                PersistentMap<Integer, Integer> map = tx.get(to).fork();
+                array.set(account, array.get(account) - 1);
+                map.put(account, map.get(account) + 1);
+                tx.set(from, array);
+                tx.set(to, map);
+            });
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSFERS)
+    public void coarseLock() throws InterruptedException, ExecutionException {
+        runInParallel(random -> {
+            int from = random.nextInt(STRUCTURES);
+            int to = random.nextInt(STRUCTURES);
+            int account = random.nextInt(accounts);
+
+            synchronized (lock) {
+                PersistentArray<Integer> array = lockedArrays.get(from).fork();
+                PersistentMap<Integer, Integer> map = lockedMaps.get(to).fork();
+                array.set(account, array.get(account) - 1);
+                map.put(account, map.get(account) + 1);
+                lockedArrays.set(from, array);
+                lockedMaps.set(to, map);
+            }
+        });
+    }
+
+    private void runInParallel(Transfer transfer) throws InterruptedException, ExecutionException {
+        List<Callable<Void>> tasks = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom random = new SplittableRandom(t);
+            int count = TRANSFERS / threads;
+            tasks.add(() -> {
+                for (int i = 0; i < count; i++) {
+                    transfer.apply(random);
+                }
+                return null;
+            });
+        }
+
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+            future.get();
+        }
+    }
+
+    private interface Transfer {
+        void apply(SplittableRandom random);
+    }
+}
@@ -0,0 +1,49 @@
+package ru.nsu.fit.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Общие входные данные бенчмарков.
+ */
+final class Workload {
+    /**
+     * Маска для циклического обхода заранее сгенерированных индексов.
+     */
+    static final int INDEX_MASK = 1023;
+
+    private static final long SEED = 42;
+
+    private Workload() {
+    }
+
+    /**
+     * Получение списка чисел от 0 до size - 1.
+     *
+     * @param size количество чисел.
+     * @return список чисел.
+     */
+    static List<Integer> range(int size) {
+        List<Integer> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(i);
+        }
+        return result;
+    }
+
+    /**
+     * Получение случайных индексов из [0, size) с фиксированным зерном.
+     *
+     * @param size граница индексов.
+     * @return массив из INDEX_MASK + 1 индексов.
+     */
+    static int[] indices(int size) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        int[] result = new int[INDEX_MASK + 1];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = random.nextInt(size);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,144 @@
+package ru.nsu.fit.Interfaces;
+
+import ru.nsu.fit.util.VersionTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Структура с произвольной вложенностью: доступ и изменение значения по пути
+ * из ключей ассоциативных массивов и индексов списков, как в динамических языках.
+ * <p>
+ * Изменение по пути копирует путь: каждый вложенный уровень заменяется копией
+ * (см. {@link #pathCopy()}) с новым значением, начиная с самого глубокого,
+ * и только эта структура получает одну новую версию. Прежние уровни не изменяются,
+ * поэтому старые версии этой структуры по-прежнему видят прежние значения.
+ * </p>
+ */
+public interface NestedInterface extends VersionInterface {
+    /**
+     * Получение значения по пути.
+     *
+     * @param path ключи и индексы от этой структуры до значения.
+     * @return значение, либо null, если на пути нет ключа или уровня.
+     * @throws IllegalArgumentException если промежуточное значение не ассоциативный массив и не список.
+     */
+    @SuppressWarnings("unchecked")
+    default <T> T getIn(List<?> path) {
+        Object current = this;
+        for (Object key : path) {
+            if (current == null) {
+                return null;
+            }
+            current = lookup(current, key);
+        }
+        return (T) current;
+    }
+
+    /**
+     * Запись значения по пути одной версией этой структуры.
+     * Вложенные уровни на пути заменяются копиями, разделяющими с ними узлы и остальные
+     * вложенные структуры (см. {@link #pathCopy()}). Недостающие уровни создаются {@link #newLevel()}.
+     *
+     * @param path  непустой путь из ключей и индексов.
+     * @param value значение.
+     * @throws IllegalArgumentException если путь пуст или промежуточное значение не персистентная структура.
+     * @throws IndexOutOfBoundsException если индекс больше размера списка.
+     */
+    default void assocIn(List<?> path, Object value) {
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("Path is empty");
+        }
+
+        List<NestedInterface> levels = new ArrayList<>();
+        levels.add(this);
+        while (levels.size() < path.size()) {
+            Object key = path.get(levels.size() - 1);
+            Object next = lookup(levels.get(levels.size() - 1), key);
+            if (next == null) {
+                break;
+            }
+            if (!(next instanceof NestedInterface level)) {
+                throw new IllegalArgumentException("Cannot update " + next.getClass().getSimpleName());
+            }
+            levels.add(level);
+        }
+
+        Object result = value;
+        for (int i = path.size() - 1; i >= levels.size(); i--) {
+            NestedInterface level = newLevel();
+            store(level, path.get(i), result);
+            result = level;
+        }
+        for (int i = levels.size() - 1; i > 0; i--) {
+            NestedInterface copy = levels.get(i).pathCopy();
+            store(copy, path.get(i), result);
+            result = copy;
+        }
+
+        store(this, path.get(0), result);
+    }
+
+    /**
+     * Замена значения по пути результатом функции одной версией этой структуры.
+     *
+     * @param path     непустой путь из ключей и индексов.
+     * @param function новое значение по текущему, которое может быть null.
+     */
+    @SuppressWarnings("unchecked")
+    default <T> void updateIn(List<?> path, UnaryOperator<T> function) {
+        assocIn(path, function.apply((T) getIn(path)));
+    }
+
+    /**
+     * Копия текущей версии для замены этой структуры на пути {@link #assocIn(List, Object)}.
+     * Копия разделяет с ней корень и вложенные структуры, которые переподключаются к копии
+     * (см. {@link VersionTree#adoptNested(VersionTree)}), поэтому стоит O(числа вложенных структур).
+     *
+     * @return новая структура с одной версией без внешней.
+     */
+    NestedInterface pathCopy();
+
+    /**
+     * Создание пустого уровня для недостающего ключа пути.
+     *
+     * @return новая структура без внешней.
+     */
+    NestedInterface newLevel();
+
+    private static Object lookup(Object container, Object key) {
+        if (container instanceof Map<?, ?> map) {
+            return map.get(key);
+        }
+        if (container instanceof List<?> list) {
+            int index = index(key);
+            return index < list.size() ? list.get(index) : null;
+        }
+        throw new IllegalArgumentException("Cannot look up " + key + " in " + container.getClass().getSimpleName());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void store(NestedInterface container, Object key, Object value) {
+        if (container instanceof Map<?, ?> map) {
+            ((Map<Object, Object>) map).put(key, value);
+        } else if (container instanceof List<?> list) {
+            int index = index(key);
+            if (index == list.size()) {
+                ((List<Object>) list).add(value);
+            } else {
+                ((List<Object>) list).set(index, value);
+            }
+        } else {
+            throw new IllegalArgumentException("Cannot update " + key + " in " + container.getClass().getSimpleName());
+        }
+    }
+
+    private static int index(Object key) {
+        if (!(key instanceof Integer index) || index < 0) {
+            throw new IllegalArgumentException("Not a list index: " + key);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,62 @@
+package ru.nsu.fit.Interfaces;
+
+import ru.nsu.fit.util.VersionTree;
+
+import java.util.Map;
+
+/**
+ * Полностью персистентная структура: версии образуют дерево,
+ * изменение любой из них создает новую ветку.
+ */
+public interface VersionInterface extends UndoRedoInterface {
+    /**
+     * Номер текущей версии.
+     */
+    int getVersionId();
+
+    /**
+     * Переход к версии с номером versionId за O(1).
+     * Следующее изменение создаст потомка этой версии.
+     */
+    void checkout(int versionId);
+
+    /**
+     * Количество всех версий во всех ветках.
+     */
+    int getVersionCount();
+
+    /**
+     * Создание структуры, единственная версия которой - версия versionId этой.
+     * Вложенные структуры копируются в том состоянии, в котором они были в этой версии,
+     * поэтому изменения копии не влияют на эту структуру.
+     */
+    VersionInterface forkAt(int versionId);
+
+    /**
+     * Вложение в структуру с деревом версий parent: изменения этой структуры
+     * становятся версиями внешней, и undo() внешней откатывает их.
+     * Структура может быть вложена только в одну внешнюю, в другую вкладывается ее fork().
+     *
+     * @throws IllegalStateException если структура уже вложена в другую.
+     */
+    void setParentVersions(VersionTree<?> parent);
+
+    /**
+     * Получение элемента внешней структуры в состоянии одной из ее версий:
+     * вложенная структура из versions заменяется копией своей версии через {@link #forkAt(int)},
+     * остальные элементы возвращаются как есть.
+     *
+     * @param element  элемент.
+     * @param versions версии вложенных структур, см. {@link VersionTree#nestedVersions(int)}.
+     * @return элемент в состоянии версии.
+     */
+    static Object stateAt(Object element, Map<Object, Integer> versions) {
+        if (element instanceof VersionInterface nested) {
+            Integer version = versions.get(nested);
+            if (version != null) {
+                return nested.forkAt(version);
+            }
+        }
+        return element;
+    }
+}
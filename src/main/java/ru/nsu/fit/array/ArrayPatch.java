@@ -0,0 +1,105 @@
+package ru.nsu.fit.array;
+
+import lombok.Getter;
+import ru.nsu.fit.util.ElementCodec;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Разница между двумя версиями {@link PersistentArray}: новый размер
+ * и новые значения по возрастанию измененных индексов.
+ * <p>
+ * Индексы не меньше старого размера означают добавленные элементы,
+ * а элементы с индексами не меньше нового размера удаляются.
+ * </p>
+ *
+ * @param <T> тип элементов.
+ */
+@Getter
+public final class ArrayPatch<T> {
+    private static final int MAGIC = 0x50415031;
+
+    private final int size;
+
+    private final int[] indices;
+
+    private final List<T> values;
+
+    ArrayPatch(int size, int[] indices, List<T> values) {
+        this.size = size;
+        this.indices = indices;
+        this.values = Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Получение измененных индексов.
+     *
+     * @return копия массива индексов по возрастанию.
+     */
+    public int[] getIndices() {
+        return indices.clone();
+    }
+
+    /**
+     * Проверка, совпадают ли версии.
+     *
+     * @return true, если патч ничего не меняет, кроме, возможно, размера.
+     */
+    public boolean isEmpty() {
+        return indices.length == 0;
+    }
+
+    /**
+     * Запись патча в поток. Поток не закрывается.
+     *
+     * @param stream поток.
+     * @param codec  запись элементов.
+     */
+    public void writeTo(OutputStream stream, ElementCodec<? super T> codec) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+
+        out.writeInt(MAGIC);
+        out.writeInt(size);
+        out.writeInt(indices.length);
+        for (int i = 0; i < indices.length; i++) {
+            out.writeInt(indices[i]);
+
+            T value = values.get(i);
+            out.writeBoolean(value != null);
+            if (value != null) {
+                codec.write(out, value);
+            }
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Чтение патча, записанного {@link #writeTo(OutputStream, ElementCodec)}.
+     * Поток читается без буферизации ровно до конца патча.
+     *
+     * @param stream поток.
+     * @param codec  чтение элементов.
+     * @return патч.
+     */
+    public static <T> ArrayPatch<T> readFrom(InputStream stream, ElementCodec<T> codec) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+
+        if (in.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not an array patch");
+        }
+
+        int size = in.readInt();
+        int[] indices = new int[in.readInt()];
+        List<T> values = new ArrayList<>(indices.length);
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = in.readInt();
+            values.add(in.readBoolean() ? codec.read(in) : null);
+        }
+
+        return new ArrayPatch<>(size, indices, values);
+    }
+}
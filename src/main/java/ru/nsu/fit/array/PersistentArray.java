@@ -1,41 +1,64 @@
 package ru.nsu.fit.array;
 
 
-import ru.nsu.fit.Interfaces.UndoRedoInterface;
+import ru.nsu.fit.Interfaces.NestedInterface;
+import ru.nsu.fit.Interfaces.VersionInterface;
+import ru.nsu.fit.list.PersistentLinkedList;
+import ru.nsu.fit.map.PersistentMap;
 import ru.nsu.fit.util.BTree;
-
+import ru.nsu.fit.util.ElementCodec;
+import ru.nsu.fit.util.ListHead;
+import ru.nsu.fit.util.MergeConflict;
+import ru.nsu.fit.util.NodeReader;
+import ru.nsu.fit.util.NodeStore;
+import ru.nsu.fit.util.NodeWriter;
+import ru.nsu.fit.util.VersionTree;
+
+import java.io.*;
 import java.util.*;
 
 /**
  * PersistentArray использует копирование пути для Б-дерева.
  */
-public class PersistentArray<T> implements List<T>, UndoRedoInterface {
+public class PersistentArray<T> implements List<T>, VersionInterface, NestedInterface {
     private static final int ARRAY_SIZE = 8;
-    protected final ArrayDeque<BTree<T>> redoStack = new ArrayDeque<>();
-    protected final ArrayDeque<BTree<T>> undoStack = new ArrayDeque<>();
+    private static final int MAGIC = 0x50415231;
+    protected final VersionTree<BTree<T>> versions;
 
     public PersistentArray() {
         this(ARRAY_SIZE);
     }
 
     public PersistentArray(int size) {
+        this.versions = new VersionTree<>();
         BTree<T> bTree = new BTree<>(size);
-        updateRedoUndoStack(bTree);
+        commitVersion(bTree);
+    }
+
+    /**
+     * Создание массива с единственной версией tree. Дерево не должно изменяться после вызова.
+     *
+     * @param root дерево элементов.
+     */
+    public PersistentArray(BTree<T> root) {
+        this.versions = new VersionTree<>();
+        commitVersion(root);
+    }
+
+    private PersistentArray(VersionTree<BTree<T>> versions) {
+        this.versions = versions;
     }
 
     public PersistentArray(PersistentArray<T> other) {
-        this.undoStack.addAll(other.undoStack);
-        this.redoStack.addAll(other.redoStack);
+        this.versions = new VersionTree<>(other.versions);
     }
 
     /**
-     * Отмена последнего изменения.
+     * Переход к версии, из которой была получена текущая.
      */
     @Override
     public void undo() {
-        if (!undoStack.isEmpty()) {
-            redoStack.push(undoStack.pop());
-        }
+        versions.undo();
     }
 
     /**
@@ -43,9 +66,59 @@ public class PersistentArray<T> implements List<T>, UndoRedoInterface {
      */
     @Override
     public void redo() {
-        if (!redoStack.isEmpty()) {
-            undoStack.push(redoStack.pop());
-        }
+        versions.redo();
+    }
+
+    /**
+     * Получение номера текущей версии.
+     *
+     * @return номер версии.
+     */
+    @Override
+    public int getVersionId() {
+        return versions.getCurrentId();
+    }
+
+    /**
+     * Переход к версии с номером versionId.
+     * Следующее изменение создаст новую ветку от этой версии.
+     *
+     * @param versionId номер версии.
+     */
+    @Override
+    public void checkout(int versionId) {
+        versions.checkout(versionId);
+    }
+
+    /**
+     * Получение версии по номеру без изменения текущего состояния, за O(1),
+     * если в массив не вкладывались другие структуры (см. {@link #forkAt(int)}).
+     *
+     * @param versionId номер версии.
+     * @return неизменяемое представление версии.
+     */
+    public List<T> at(int versionId) {
+        return Collections.unmodifiableList(forkAt(versionId));
+    }
+
+    /**
+     * Получение числа версий массива во всех ветках.
+     *
+     * @return число версий.
+     */
+    @Override
+    public int getVersionCount() {
+        return versions.size();
+    }
+
+    /**
+     * Подключение к истории внешней структуры, в которую вложен этот массив.
+     *
+     * @param parent дерево версий внешней структуры.
+     */
+    @Override
+    public void setParentVersions(VersionTree<?> parent) {
+        versions.setParent(parent, this);
     }
 
     /**
@@ -82,12 +155,13 @@ public class PersistentArray<T> implements List<T>, UndoRedoInterface {
         }
 
         T result = get(index);
+        attach(element);
 
         BTree<T> bTree = new BTree<>(takeLatestVersion());
 
         bTree.set(index, element);
 
-        updateRedoUndoStack(bTree);
+        commitVersion(bTree);
 
         return result;
     }
@@ -100,11 +174,406 @@ public class PersistentArray<T> implements List<T>, UndoRedoInterface {
      */
     @Override
     public boolean add(T element) {
+        attach(element);
         BTree<T> bTree = new BTree<>(takeLatestVersion());
-        updateRedoUndoStack(bTree);
+        commitVersion(bTree);
         return bTree.add(element);
     }
 
+    /**
+     * Создание массива, единственная версия которого - текущая версия этого, за O(1).
+     * Изменения копии не влияют на этот массив и его историю.
+     *
+     * @return новый массив, разделяющий узлы с этим.
+     */
+    public PersistentArray<T> fork() {
+        return forkAt(getVersionId());
+    }
+
+    /**
+     * Создание массива, единственная версия которого - версия versionId этого.
+     * Если в массив вкладывались другие структуры, они заменяются копиями своих версий
+     * на момент versionId, и массив строится заново за O(n), иначе узлы разделяются за O(1).
+     *
+     * @param versionId номер версии.
+     * @return новый массив.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public PersistentArray<T> forkAt(int versionId) {
+        BTree<T> root = versions.get(versionId);
+        if (!versions.hasNested()) {
+            return new PersistentArray<>(root);
+        }
+
+        Map<Object, Integer> nestedVersions = versions.nestedVersions(versionId);
+        List<T> elements = new ArrayList<>(root.getSize());
+        for (Object element : root.toArray()) {
+            elements.add((T) VersionInterface.stateAt(element, nestedVersions));
+        }
+
+        PersistentArray<T> result = new PersistentArray<>(new VersionTree<BTree<T>>());
+        elements.forEach(result::attach);
+        result.commitVersion(BTree.build(elements, root.getBits()));
+        return result;
+    }
+
+    /**
+     * Копия текущей версии массива, разделяющая с ним узлы и вложенные структуры, за O(числа вложенных структур).
+     *
+     * @return новый массив с одной версией.
+     */
+    @Override
+    public PersistentArray<T> pathCopy() {
+        PersistentArray<T> result = new PersistentArray<>(new VersionTree<BTree<T>>());
+        result.versions.adoptNested(versions);
+        result.commitVersion(versions.getCurrent());
+        return result;
+    }
+
+    /**
+     * Создание пустого уровня для недостающего ключа пути в {@link #assocIn(List, Object)}.
+     *
+     * @return новый ассоциативный массив.
+     */
+    @Override
+    public PersistentMap<Object, Object> newLevel() {
+        return new PersistentMap<>();
+    }
+
+    /**
+     * Преобразование текущей версии в список без копирования элементов.
+     * Дерево списка повторяет форму дерева массива и разделяет с ним списки значений листов,
+     * новыми создаются только узлы (см. {@link ListHead#sequentialOf(BTree)}).
+     *
+     * @return список с элементами массива и одной версией.
+     */
+    public PersistentLinkedList<T> toPersistentList() {
+        return new PersistentLinkedList<>(ListHead.sequentialOf(takeLatestVersion()));
+    }
+
+    /**
+     * Создание отсортированной копии текущей версии.
+     * <p>
+     * Элементы собираются обходом листов, сортируются {@link Arrays#parallelSort(Object[], Comparator)}
+     * и раскладываются в новое дерево снизу вверх, без копирования путей для каждого элемента.
+     * Сортировка устойчива.
+     * </p>
+     *
+     * @param comparator порядок элементов, либо null для естественного порядка.
+     * @return новый массив с одной версией.
+     */
+    public PersistentArray<T> sorted(Comparator<? super T> comparator) {
+        return new PersistentArray<>(sortedTree(comparator));
+    }
+
+    /**
+     * Сортировка массива одной новой версией, как в {@link #sorted(Comparator)}.
+     *
+     * @param comparator порядок элементов, либо null для естественного порядка.
+     */
+    @Override
+    public void sort(Comparator<? super T> comparator) {
+        commitVersion(sortedTree(comparator));
+    }
+
+    /**
+     * Поиск элемента в массиве, отсортированном по естественному порядку.
+     *
+     * @param key искомый элемент.
+     * @return индекс элемента либо (-(точка вставки) - 1), как в {@link #binarySearch(Object, Comparator)}.
+     */
+    public int binarySearch(T key) {
+        return binarySearch(key, null);
+    }
+
+    /**
+     * Поиск элемента в отсортированном массиве спуском по дереву, за O(log n) сравнений.
+     * Потомок узла выбирается по первым элементам поддеревьев (см. {@link BTree#bound}).
+     *
+     * @param key        искомый элемент.
+     * @param comparator порядок, по которому отсортирован массив, либо null для естественного порядка.
+     * @return индекс первого элемента, равного key, либо (-(точка вставки) - 1), как в
+     * {@link Collections#binarySearch(List, Object, Comparator)}.
+     */
+    @SuppressWarnings("unchecked")
+    public int binarySearch(T key, Comparator<? super T> comparator) {
+        Comparator<? super T> order = comparator == null
+                ? (Comparator<? super T>) Comparator.naturalOrder()
+                : comparator;
+        BTree<T> tree = takeLatestVersion();
+
+        int index = tree.bound(element -> order.compare(element, key) < 0);
+        return index < tree.getSize() && order.compare(tree.get(index), key) == 0 ? index : -index - 1;
+    }
+
+    /**
+     * Запись всех версий массива в поток.
+     * <p>
+     * Узел, общий для нескольких версий, записывается один раз, поэтому каждая версия
+     * добавляет к размеру только измененные ею пути. Поток не закрывается.
+     * </p>
+     *
+     * @param stream поток.
+     * @param codec  запись элементов.
+     */
+    public void writeTo(OutputStream stream, ElementCodec<? super T> codec) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        NodeWriter<T> writer = new NodeWriter<>(out, codec);
+
+        out.writeInt(MAGIC);
+        versions.writeTo(out, writer::writeTree);
+        out.flush();
+    }
+
+    /**
+     * Чтение массива со всеми версиями, записанного {@link #writeTo(OutputStream, ElementCodec)}.
+     * Поток читается без буферизации ровно до конца массива, поэтому за ним могут идти другие данные.
+     *
+     * @param stream поток.
+     * @param codec  чтение элементов.
+     * @return массив, текущая версия которого совпадает с записанной.
+     */
+    public static <T> PersistentArray<T> readFrom(InputStream stream, ElementCodec<T> codec) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+
+        if (in.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a persistent array");
+        }
+
+        NodeReader<T> reader = new NodeReader<>(in, codec);
+        return new PersistentArray<>(VersionTree.readFrom(in, reader::readTree));
+    }
+
+    /**
+     * Дописывание текущей версии в хранилище.
+     * Записываются только узлы, которых в хранилище еще нет.
+     *
+     * @param store хранилище.
+     * @return смещение записанной версии в файле.
+     */
+    public long store(NodeStore<T> store) throws IOException {
+        return store.append(takeLatestVersion());
+    }
+
+    /**
+     * Открытие последней версии, записанной в хранилище.
+     *
+     * @param store хранилище.
+     * @return массив с этой версией, либо пустой массив, если хранилище пусто.
+     */
+    public static <T> PersistentArray<T> open(NodeStore<T> store) throws IOException {
+        long latest = store.getLatest();
+        return latest == NodeStore.NO_VERSION ? new PersistentArray<>() : open(store, latest);
+    }
+
+    /**
+     * Открытие версии из хранилища. Узлы читаются из файла при первом обращении к ним,
+     * поэтому хранилище должно оставаться открытым, пока массив используется.
+     *
+     * @param store   хранилище.
+     * @param version смещение версии, полученное от {@link #store(NodeStore)}.
+     * @return массив, единственная версия которого - прочитанная.
+     */
+    public static <T> PersistentArray<T> open(NodeStore<T> store, long version) throws IOException {
+        return new PersistentArray<>(store.load(version));
+    }
+
+    /**
+     * Получение разницы между двумя версиями этого массива.
+     * <p>
+     * Поддеревья, общие для версий, пропускаются, поэтому время пропорционально
+     * числу узлов, скопированных между версиями, а не размеру массива.
+     * Элементы сравниваются по ссылке. Вложенная структура считается измененной, если
+     * ее версии в двух версиях массива различаются, и попадает в патч копией своей итоговой версии.
+     * </p>
+     *
+     * @param oldVersion номер исходной версии.
+     * @param newVersion номер итоговой версии.
+     * @return патч, переводящий исходную версию в итоговую.
+     */
+    @SuppressWarnings("unchecked")
+    public ArrayPatch<T> diff(int oldVersion, int newVersion) {
+        BTree<T> oldTree = versions.get(oldVersion);
+        BTree<T> newTree = versions.get(newVersion);
+        int size = newTree.getSize();
+
+        BitSet changed = new BitSet();
+        oldTree.diff(newTree, index -> {
+            if (index < size) {
+                changed.set(index);
+            }
+        });
+
+        if (!versions.hasNested()) {
+            int[] indices = changed.stream().toArray();
+            List<T> values = new ArrayList<>(indices.length);
+            for (int index : indices) {
+                values.add(newTree.get(index));
+            }
+
+            return new ArrayPatch<>(size, indices, values);
+        }
+
+        Map<Object, Integer> oldNested = versions.nestedVersions(oldVersion);
+        Map<Object, Integer> newNested = versions.nestedVersions(newVersion);
+        for (int index = 0; index < size; index++) {
+            if (newTree.get(index) instanceof VersionInterface nested
+                    && !Objects.equals(oldNested.get(nested), newNested.get(nested))) {
+                changed.set(index);
+            }
+        }
+
+        int[] indices = changed.stream().toArray();
+        List<T> values = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            values.add((T) VersionInterface.stateAt(newTree.get(index), newNested));
+        }
+
+        return new ArrayPatch<>(size, indices, values);
+    }
+
+    /**
+     * Применение патча к текущей версии одной новой версией.
+     * Текущая версия должна совпадать с исходной версией патча.
+     *
+     * @param patch патч, полученный {@link #diff(int, int)}.
+     * @throws IllegalArgumentException если патч не подходит к текущей версии.
+     */
+    public void apply(ArrayPatch<T> patch) {
+        BTree<T> current = takeLatestVersion();
+        int size = patch.getSize();
+        BTree<T> bTree;
+
+        if (size == 0) {
+            bTree = new BTree<>(ARRAY_SIZE);
+        } else if (size < current.getSize()) {
+            bTree = new BTree<>(current, size);
+        } else {
+            bTree = new BTree<>(current);
+        }
+
+        int[] indices = patch.getIndices();
+        for (int i = 0; i < indices.length; i++) {
+            T value = patch.getValues().get(i);
+            attach(value);
+
+            if (indices[i] < bTree.getSize()) {
+                bTree.set(indices[i], value);
+            } else if (indices[i] == bTree.getSize()) {
+                bTree.add(value);
+            } else {
+                throw new IllegalArgumentException("Patch does not match the current version");
+            }
+        }
+
+        if (bTree.getSize() != size) {
+            throw new IllegalArgumentException("Patch does not match the current version");
+        }
+
+        commitVersion(bTree);
+    }
+
+    /**
+     * Трехстороннее слияние: перенос в текущую версию изменений, сделанных
+     * между версиями baseVersion и theirVersion этого массива, одной новой версией.
+     *
+     * @param baseVersion  номер общей исходной версии.
+     * @param theirVersion номер версии, изменения которой переносятся.
+     * @return конфликты по индексам, см. {@link #merge(PersistentArray, PersistentArray)}.
+     */
+    public SortedMap<Integer, MergeConflict<T>> merge(int baseVersion, int theirVersion) {
+        return merge(versions.get(baseVersion), versions.get(theirVersion));
+    }
+
+    /**
+     * Трехстороннее слияние с текущей версией массива theirs, начатого от текущей версии base,
+     * например, через {@link #fork()}, одной новой версией.
+     * <p>
+     * Индекс, измененный только в theirs, получает значение из theirs. Индекс, измененный
+     * в обеих ветках по-разному, - конфликт, он сохраняет текущее значение. Размер берется
+     * из ветки, которая его изменила. Если обе изменили его по-разному или theirs отрезал
+     * элементы, измененные в текущей версии, размер сохраняется, а добавленные и отрезанные
+     * в theirs индексы становятся конфликтами. Изменения ищутся
+     * сравнением деревьев с base, общие поддеревья пропускаются, поэтому время
+     * пропорционально числу измененных узлов.
+     * </p>
+     *
+     * @param base   общая исходная версия.
+     * @param theirs версия, изменения которой переносятся.
+     * @return конфликты по возрастанию индексов.
+     */
+    public SortedMap<Integer, MergeConflict<T>> merge(PersistentArray<T> base, PersistentArray<T> theirs) {
+        return merge(base.takeLatestVersion(), theirs.takeLatestVersion());
+    }
+
+    private SortedMap<Integer, MergeConflict<T>> merge(BTree<T> base, BTree<T> theirs) {
+        BTree<T> ours = takeLatestVersion();
+        int baseSize = base.getSize();
+        int ourSize = ours.getSize();
+        int theirSize = theirs.getSize();
+
+        BitSet ourChanged = new BitSet();
+        base.diff(ours, ourChanged::set);
+        BitSet theirChanged = new BitSet();
+        base.diff(theirs, theirChanged::set);
+
+        boolean sizeConflict = ourSize != baseSize && theirSize != baseSize && ourSize != theirSize
+                || ourSize == baseSize && theirSize < ourSize && ourChanged.nextSetBit(theirSize) >= 0;
+        int size = ourSize == baseSize && !sizeConflict ? theirSize : ourSize;
+
+        SortedMap<Integer, MergeConflict<T>> conflicts = new TreeMap<>();
+        SortedMap<Integer, T> taken = new TreeMap<>();
+        for (int index = theirChanged.nextSetBit(0); index >= 0; index = theirChanged.nextSetBit(index + 1)) {
+            boolean inBase = index < baseSize;
+            boolean inOurs = index < ourSize;
+            boolean inTheirs = index < theirSize;
+            T baseValue = inBase ? base.get(index) : null;
+            T ourValue = inOurs ? ours.get(index) : null;
+            T theirValue = inTheirs ? theirs.get(index) : null;
+
+            if (inTheirs == inBase && Objects.equals(theirValue, baseValue)
+                    || inTheirs == inOurs && Objects.equals(theirValue, ourValue)) {
+                continue;
+            }
+
+            boolean oursUnchanged = !ourChanged.get(index)
+                    || inOurs == inBase && Objects.equals(ourValue, baseValue);
+            if (oursUnchanged && !(sizeConflict && (inTheirs ? index >= ourSize : index < ourSize))) {
+                if (inTheirs) {
+                    taken.put(index, theirValue);
+                }
+            } else {
+                conflicts.put(index, new MergeConflict<>(baseValue, ourValue, theirValue));
+            }
+        }
+
+        if (size == ourSize && taken.isEmpty()) {
+            return conflicts;
+        }
+
+        BTree<T> bTree;
+        if (size == 0) {
+            bTree = new BTree<>(ARRAY_SIZE);
+        } else if (size < ourSize) {
+            bTree = new BTree<>(ours, size);
+        } else {
+            bTree = new BTree<>(ours);
+        }
+
+        for (Map.Entry<Integer, T> entry : taken.entrySet()) {
+            attach(entry.getValue());
+            if (entry.getKey() < bTree.getSize()) {
+                bTree.set(entry.getKey(), entry.getValue());
+            } else {
+                bTree.add(entry.getValue());
+            }
+        }
+
+        commitVersion(bTree);
+        return conflicts;
+    }
+
     public PersistentArray<T> conj(T element) {
         PersistentArray<T> result = new PersistentArray<>(this);
         result.add(element);
@@ -133,6 +602,7 @@ public class PersistentArray<T> implements List<T>, UndoRedoInterface {
             throw new IndexOutOfBoundsException();
         }
 
+        attach(element);
         BTree<T> tbTree = takeLatestVersion();
 
         BTree<T> bTree = new BTree<>(takeLatestVersion(), index + 1);
@@ -143,7 +613,7 @@ public class PersistentArray<T> implements List<T>, UndoRedoInterface {
             bTree.add(tbTree.get(i));
         }
 
-        updateRedoUndoStack(bTree);
+        commitVersion(bTree);
     }
 
     /**
@@ -174,7 +644,7 @@ public class PersistentArray<T> implements List<T>, UndoRedoInterface {
             bTree.add(tbTree.get(i));
         }
 
-        updateRedoUndoStack(bTree);
+        commitVersion(bTree);
 
         return result;
     }
@@ -186,7 +656,7 @@ public class PersistentArray<T> implements List<T>, UndoRedoInterface {
     @Override
     public void clear() {
         BTree<T> bTree = new BTree<>(takeLatestVersion().getSize());
-        updateRedoUndoStack(bTree);
+        commitVersion(bTree);
     }
 
     /**
@@ -211,19 +681,53 @@ public class PersistentArray<T> implements List<T>, UndoRedoInterface {
     }
 
     /**
-     * Преобразование элементов в массив.
+     * Сравнение с другим списком по правилам {@link List#equals(Object)}.
+     * Версии с общим корнем равны сразу, у двух персистентных массивов
+     * сравниваются только различающиеся поддеревья.
      *
-     * @return массив элементов.
+     * @param o объект для сравнения.
+     * @return true, если o - список с равными элементами в том же порядке.
      */
     @Override
-    public Object[] toArray() {
-        Object[] objects = new Object[size()];
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (o instanceof PersistentArray<?> other) {
+            return takeLatestVersion().equalElements(other.takeLatestVersion());
+        }
+        if (!(o instanceof List<?> list) || list.size() != size()) {
+            return false;
+        }
 
-        for (int i = 0; i < objects.length; i++) {
-            objects[i] = takeLatestVersion().get(i);
+        Iterator<?> otherIterator = list.iterator();
+        for (T element : this) {
+            if (!Objects.equals(element, otherIterator.next())) {
+                return false;
+            }
         }
+        return true;
+    }
 
-        return objects;
+    /**
+     * Хеш по правилам {@link List#hashCode()}.
+     * Хеши поддеревьев кешируются, поэтому после одного изменения он стоит O(log n).
+     *
+     * @return хеш элементов.
+     */
+    @Override
+    public int hashCode() {
+        return takeLatestVersion().elementsHashCode();
+    }
+
+    /**
+     * Преобразование элементов в массив.
+     *
+     * @return массив элементов.
+     */
+    @Override
+    public Object[] toArray() {
+        return takeLatestVersion().toArray();
     }
 
     @Override
@@ -265,12 +769,12 @@ public class PersistentArray<T> implements List<T>, UndoRedoInterface {
      */
     @Override
     public boolean addAll(Collection<? extends T> c) {
+        c.forEach(this::attach);
         BTree<T> bTree = new BTree<>(takeLatestVersion());
 
-        boolean modified = false;
-        for (T e : c) if (bTree.add(e)) modified = true;
+        boolean modified = bTree.addAll(c);
 
-        updateRedoUndoStack(bTree);
+        commitVersion(bTree);
 
         return modified;
     }
@@ -284,6 +788,7 @@ public class PersistentArray<T> implements List<T>, UndoRedoInterface {
      */
     @Override
     public boolean addAll(int index, Collection<? extends T> c) {
+        c.forEach(this::attach);
         BTree<T> tbTree = takeLatestVersion();
 
         BTree<T> bTree = new BTree<>(takeLatestVersion(), index);
@@ -298,7 +803,7 @@ public class PersistentArray<T> implements List<T>, UndoRedoInterface {
             bTree.add(tbTree.get(i));
         }
 
-        updateRedoUndoStack(bTree);
+        commitVersion(bTree);
 
         return modified;
     }
@@ -519,12 +1024,30 @@ public class PersistentArray<T> implements List<T>, UndoRedoInterface {
         }
     }
 
+    /**
+     * Подключение вложенной персистентной структуры к истории этой.
+     */
+    private void attach(Object element) {
+        if (element instanceof VersionInterface nested) {
+            nested.setParentVersions(versions);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private BTree<T> sortedTree(Comparator<? super T> comparator) {
+        BTree<T> tree = takeLatestVersion();
+        T[] elements = (T[]) tree.toArray();
+
+        Arrays.parallelSort(elements, comparator);
+
+        return BTree.build(Arrays.asList(elements), tree.getBits());
+    }
+
     private BTree<T> takeLatestVersion() {
-        return this.undoStack.peek();
+        return versions.getCurrent();
     }
 
-    private void updateRedoUndoStack(BTree<T> bTree){
-        undoStack.push(bTree);
-        redoStack.clear();
+    private void commitVersion(BTree<T> bTree){
+        versions.commit(bTree);
     }
 }
\ No newline at end of file
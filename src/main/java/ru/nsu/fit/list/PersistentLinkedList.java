@@ -1,28 +1,101 @@
 package ru.nsu.fit.list;
 
-import ru.nsu.fit.Interfaces.UndoRedoInterface;
+import ru.nsu.fit.Interfaces.NestedInterface;
+import ru.nsu.fit.Interfaces.VersionInterface;
+import ru.nsu.fit.array.PersistentArray;
+import ru.nsu.fit.map.PersistentMap;
+import ru.nsu.fit.util.BTree;
+import ru.nsu.fit.util.ElementCodec;
+import ru.nsu.fit.util.ListCursor;
 import ru.nsu.fit.util.ListHead;
-import ru.nsu.fit.util.ListItem;
+import ru.nsu.fit.util.NodeReader;
+import ru.nsu.fit.util.NodeWriter;
+import ru.nsu.fit.util.Pair;
+import ru.nsu.fit.util.VersionTree;
 
+import java.io.*;
 import java.util.*;
-
-import static java.util.Objects.isNull;
+import java.util.function.Consumer;
 
 /**
  * Персистентный двусвязный список.
  */
-public class PersistentLinkedList<E> implements List<E>, UndoRedoInterface {
-    private final ArrayDeque<ListHead<ListItem<E>>> redoDeque = new ArrayDeque<>();
-    private final ArrayDeque<ListHead<ListItem<E>>> undoDeque = new ArrayDeque<>();
+public class PersistentLinkedList<E> implements List<E>, VersionInterface, NestedInterface {
+    private static final int DEFAULT_BRANCHING = 16;
+    private static final int MAGIC = 0x504c5331;
+
+    private final VersionTree<ListHead<E>> versions;
+
+    private final int depth;
+    private final int bits;
 
     public PersistentLinkedList() {
-        ListHead<ListItem<E>> head = new ListHead<>();
-        updateUndoRedoStack(head);
+        this(0, DEFAULT_BRANCHING);
+    }
+
+    /**
+     * Создание списка, дерево которого сразу вмещает expectedCapacity элементов
+     * и не перестраивает корень при заполнении до этого размера.
+     *
+     * @param expectedCapacity ожидаемое число элементов.
+     */
+    public PersistentLinkedList(int expectedCapacity) {
+        this(expectedCapacity, DEFAULT_BRANCHING);
+    }
+
+    /**
+     * Создание списка с заданной шириной узлов дерева.
+     *
+     * @param expectedCapacity ожидаемое число элементов.
+     * @param branching        число потомков узла дерева, степень двойки.
+     */
+    public PersistentLinkedList(int expectedCapacity, int branching) {
+        if (expectedCapacity < 0 || branching < 2 || Integer.bitCount(branching) != 1) {
+            throw new IllegalArgumentException();
+        }
+
+        this.bits = Integer.numberOfTrailingZeros(branching);
+
+        int requiredDepth = 1;
+        for (long capacity = branching; capacity < expectedCapacity; capacity *= branching) {
+            requiredDepth++;
+        }
+        this.depth = requiredDepth;
+        this.versions = new VersionTree<>();
+
+        commitVersion(newHead());
     }
 
     public PersistentLinkedList(PersistentLinkedList<E> other) {
-        this.undoDeque.addAll(other.undoDeque);
-        this.redoDeque.addAll(other.redoDeque);
+        this.depth = other.depth;
+        this.bits = other.bits;
+        this.versions = new VersionTree<>(other.versions);
+    }
+
+    private PersistentLinkedList(int depth, int bits, VersionTree<ListHead<E>> versions) {
+        this.depth = depth;
+        this.bits = bits;
+        this.versions = versions;
+    }
+
+    /**
+     * Создание списка с единственной версией head. Голова не должна изменяться после вызова.
+     * Новые деревья списка создаются с начальной глубиной head.
+     *
+     * @param head голова списка.
+     */
+    public PersistentLinkedList(ListHead<E> head) {
+        this(head.getInitialDepth(), head);
+    }
+
+    /**
+     * Создание списка, производного от другого: он сохраняет заданную глубину новых деревьев.
+     */
+    private PersistentLinkedList(int depth, ListHead<E> head) {
+        this.depth = depth;
+        this.bits = head.getBits();
+        this.versions = new VersionTree<>();
+        commitVersion(head);
     }
 
     /**
@@ -34,6 +107,7 @@ public class PersistentLinkedList<E> implements List<E>, UndoRedoInterface {
      */
     @Override
     public E set(int index, E element) {
+        attach(element);
         return set(takeLatestVersion(), index, element);
     }
 
@@ -45,34 +119,13 @@ public class PersistentLinkedList<E> implements List<E>, UndoRedoInterface {
      */
     @Override
     public boolean add(E element) {
-        ListItem<E> listElement;
-        ListHead<ListItem<E>> prevHead = takeLatestVersion();
-        ListHead<ListItem<E>> newHead;
-
-        if (prevHead.isEmpty()) {
-            newHead = new ListHead<>();
-            newHead.setFirstIndex(0);
-            newHead.setLastIndex(0);
-            listElement = new ListItem<>(element, -1, -1);
-            newHead.add(listElement);
-        } else {
-            listElement = new ListItem<>(element, prevHead.getLastIndex(), -1);
-
-            newHead = new ListHead<>(prevHead);
-
-            ListItem<E> item = newHead.get(prevHead.getLastIndex());
-
-            ListItem<E> last = new ListItem<>(item);
+        attach(element);
+        ListHead<E> prevHead = takeLatestVersion();
+        ListHead<E> newHead = prevHead.isEmpty() ? newHead() : new ListHead<>(prevHead);
 
-            last.setNextIndex(newHead.getActualSize());
+        newHead.addLast(element);
 
-            newHead.set(prevHead.getLastIndex(), last);
-
-            newHead.setLastIndex(newHead.getActualSize());
-            newHead.add(listElement);
-        }
-
-        updateUndoRedoStack(newHead);
+        commitVersion(newHead);
 
         return true;
     }
@@ -87,57 +140,20 @@ public class PersistentLinkedList<E> implements List<E>, UndoRedoInterface {
      */
     @Override
     public void add(int index, E element) {
-        ListHead<ListItem<E>> prevHead = takeLatestVersion();
-        ListHead<ListItem<E>> newHead = null;
-
-        int indexBefore = -1;
-        ListItem<E> beforeElement;
+        ListHead<E> prevHead = takeLatestVersion();
 
-        int indexAfter = -1;
-        ListItem<E> afterElement;
-
-        int freeIndex = prevHead.getActualSize();
-
-        if (prevHead.isEmpty()) {
-            newHead = new ListHead<>(prevHead);
-        } else {
-            if (index != 0) {
-                indexBefore = getTreeIndex(prevHead, index - 1);
-
-                newHead = new ListHead<>(prevHead);
-                beforeElement = new ListItem<>(newHead.get(indexBefore));
-
-                beforeElement.setNextIndex(freeIndex);
-                newHead.set(indexBefore, beforeElement);
-            }
-
-            if (index != prevHead.getSize() - 1) {
-                indexAfter = getTreeIndex(prevHead, index);
-
-                ListHead<ListItem<E>> head = newHead;
-                if (isNull(head)) {
-                    head = prevHead;
-                }
-
-                newHead = new ListHead<>(head);
-
-                afterElement = new ListItem<>(newHead.get(indexAfter));
-                afterElement.setPrevIndex(freeIndex);
-                newHead.set(indexAfter, afterElement);
-            }
+        if (prevHead.isEmpty() && index == 0) {
+            add(element);
+            return;
         }
 
-        ListItem<E> listElement = new ListItem<>(element, indexBefore, indexAfter);
+        checkIndex(prevHead, index);
+        attach(element);
 
-        if (indexBefore == -1 && !isNull(newHead)) {
-            newHead.setFirstIndex(freeIndex);
-        }
-
-        if (!isNull(newHead)) {
-            newHead.add(listElement);
-        }
+        ListHead<E> newHead = new ListHead<>(prevHead);
+        newHead.addBefore(prevHead.findIndex(index), element);
 
-        updateUndoRedoStack(newHead);
+        commitVersion(newHead);
     }
 
     /**
@@ -157,8 +173,8 @@ public class PersistentLinkedList<E> implements List<E>, UndoRedoInterface {
      */
     @Override
     public void clear() {
-        ListHead<ListItem<E>> head = new ListHead<>();
-        updateUndoRedoStack(head);
+        ListHead<E> head = newHead();
+        commitVersion(head);
     }
 
     /**
@@ -179,10 +195,10 @@ public class PersistentLinkedList<E> implements List<E>, UndoRedoInterface {
      */
     @Override
     public String toString() {
-        ListHead<ListItem<E>> currentHead = takeLatestVersion();
+        ListHead<E> currentHead = takeLatestVersion();
 
         if (currentHead.isEmpty()) {
-            return currentHead.toString();
+            return "[]";
         }
 
         return Arrays.toString(toArray(currentHead));
@@ -200,24 +216,17 @@ public class PersistentLinkedList<E> implements List<E>, UndoRedoInterface {
 
     /**
      * Итератор над персистентным списком.
+     * Привязан к версии списка на момент создания и не видит последующих изменений.
      */
     public class PersistentListIterator<T> implements Iterator<T> {
-        ListHead<ListItem<E>> head;
-        ListItem<E> current;
-
-        int i = 0;
+        ListCursor<E> cursor;
 
         public PersistentListIterator() {
             this(takeLatestVersion());
         }
 
-        public PersistentListIterator(ListHead<ListItem<E>> head) {
-            this.head = head;
-            if (head.getSize() == 0) {
-                return;
-            }
-
-            current = head.get(head.getFirstIndex());
+        public PersistentListIterator(ListHead<E> head) {
+            this.cursor = new ListCursor<>(head);
         }
 
         /**
@@ -227,7 +236,7 @@ public class PersistentLinkedList<E> implements List<E>, UndoRedoInterface {
          */
         @Override
         public boolean hasNext() {
-            return head.getSize() > i;
+            return cursor.hasNext();
         }
 
         /**
@@ -237,28 +246,100 @@ public class PersistentLinkedList<E> implements List<E>, UndoRedoInterface {
          */
         @Override
         public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
             //noinspection unchecked
-            T result = (T) current.getValue();
-            i++;
+            return (T) cursor.next();
+        }
+    }
 
-            if (!hasNext()) {
-                return result;
+    /**
+     * Spliterator над одной версией персистентного списка.
+     * <p>
+     * Список, построенный добавлением в конец, делится пополам по индексам дерева,
+     * остальные списки отдают при делении префикс, скопированный в массив.
+     * </p>
+     */
+    public class PersistentListSpliterator implements Spliterator<E> {
+        private static final int BATCH_SIZE = 1024;
+
+        private final ListHead<E> head;
+        private ListCursor<E> cursor;
+        private int remaining;
+
+        public PersistentListSpliterator(ListHead<E> head) {
+            this(head, head.getFirstIndex(), head.getSize());
+        }
+
+        private PersistentListSpliterator(ListHead<E> head, int index, int remaining) {
+            this.head = head;
+            this.cursor = new ListCursor<>(head, index);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (remaining <= 0) {
+                return false;
             }
 
-            current = head.get(current.getNextIndex());
+            remaining--;
+            action.accept(cursor.next());
 
-            return result;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            for (; remaining > 0; remaining--) {
+                action.accept(cursor.next());
+            }
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int half = remaining / 2;
+            if (half == 0) {
+                return null;
+            }
+
+            int index = cursor.getIndex();
+
+            if (head.isSequential()) {
+                cursor = new ListCursor<>(head, index + half);
+                remaining -= half;
+
+                return new PersistentListSpliterator(head, index, half);
+            }
+
+            Object[] batch = new Object[Math.min(half, BATCH_SIZE)];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = cursor.next();
+            }
+            remaining -= batch.length;
+
+            return Spliterators.spliterator(batch, characteristics());
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE;
         }
     }
 
     /**
-     * Отмена последнего изменения.
+     * Переход к версии, из которой была получена текущая.
      */
     @Override
     public void undo() {
-        if (!undoDeque.isEmpty()) {
-            redoDeque.push(undoDeque.pop());
-        }
+        versions.undo();
     }
 
     /**
@@ -266,9 +347,28 @@ public class PersistentLinkedList<E> implements List<E>, UndoRedoInterface {
      */
     @Override
     public void redo() {
-        if (!redoDeque.isEmpty()) {
-            undoDeque.push(redoDeque.pop());
-        }
+        versions.redo();
+    }
+
+    /**
+     * Получение номера текущей версии.
+     *
+     * @return номер версии.
+     */
+    @Override
+    public int getVersionId() {
+        return versions.getCurrentId();
+    }
+
+    /**
+     * Переход к версии с номером versionId.
+     * Следующее изменение создаст новую ветку от этой версии.
+     *
+     * @param versionId номер версии.
+     */
+    @Override
+    public void checkout(int versionId) {
+        versions.checkout(versionId);
     }
 
     /**
@@ -286,8 +386,8 @@ public class PersistentLinkedList<E> implements List<E>, UndoRedoInterface {
      *
      * @return актуальная голова списка.
      */
-    public ListHead<ListItem<E>> takeLatestVersion() {
-        return this.undoDeque.peek();
+    public ListHead<E> takeLatestVersion() {
+        return versions.getCurrent();
     }
 
     /**
@@ -301,124 +401,293 @@ public class PersistentLinkedList<E> implements List<E>, UndoRedoInterface {
     }
 
     /**
-     * Получение числа версий списка.
+     * Получение версии по номеру без изменения текущего состояния, за O(1),
+     * если в список не вкладывались другие структуры (см. {@link #forkAt(int)}).
+     *
+     * @param versionId номер версии.
+     * @return неизменяемое представление версии.
+     */
+    public List<E> at(int versionId) {
+        return Collections.unmodifiableList(forkAt(versionId));
+    }
+
+    /**
+     * Получение числа версий списка во всех ветках.
      *
      * @return число версий списка.
      */
+    @Override
     public int getVersionCount() {
-        return undoDeque.size() + redoDeque.size();
+        return versions.size();
+    }
+
+    /**
+     * Подключение к истории внешней структуры, в которую вложен этот список.
+     *
+     * @param parent дерево версий внешней структуры.
+     */
+    @Override
+    public void setParentVersions(VersionTree<?> parent) {
+        versions.setParent(parent, this);
     }
 
-    private E set(ListHead<ListItem<E>> head, int index, E element) {
-        E result = get(index);
+    /**
+     * Создание списка, единственная версия которого - текущая версия этого, за O(1).
+     * Изменения копии не влияют на этот список и его историю.
+     *
+     * @return новый список, разделяющий узлы с этим.
+     */
+    public PersistentLinkedList<E> fork() {
+        return forkAt(getVersionId());
+    }
 
-        ListHead<ListItem<E>> newHead = new ListHead<>(head);
-        ListItem<E> newNode = new ListItem<>(newHead.get(index));
+    /**
+     * Создание списка, единственная версия которого - версия versionId этого.
+     * Если в список вкладывались другие структуры, они заменяются копиями своих версий
+     * на момент versionId, и список строится заново за O(n), иначе узлы разделяются за O(1).
+     *
+     * @param versionId номер версии.
+     * @return новый список.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public PersistentLinkedList<E> forkAt(int versionId) {
+        ListHead<E> head = versions.get(versionId);
+        if (!versions.hasNested()) {
+            return new PersistentLinkedList<>(depth, head);
+        }
 
-        newNode.setValue(element);
-        newHead.set(getTreeIndex(index), newNode);
+        Map<Object, Integer> nestedVersions = versions.nestedVersions(versionId);
+        List<E> elements = new ArrayList<>(head.getSize());
+        for (Iterator<E> iterator = iterator(head); iterator.hasNext(); ) {
+            elements.add((E) VersionInterface.stateAt(iterator.next(), nestedVersions));
+        }
 
-        updateUndoRedoStack(newHead);
+        PersistentLinkedList<E> result = new PersistentLinkedList<>(depth, bits, new VersionTree<>());
+        ListHead<E> resultHead = result.newHead();
+        elements.forEach(result::attach);
+        resultHead.addAllLast(elements);
+        result.commitVersion(resultHead);
+        return result;
+    }
 
+    /**
+     * Копия текущей версии списка, разделяющая с ним узлы и вложенные структуры, за O(числа вложенных структур).
+     *
+     * @return новый список с одной версией.
+     */
+    @Override
+    public PersistentLinkedList<E> pathCopy() {
+        PersistentLinkedList<E> result = new PersistentLinkedList<>(depth, bits, new VersionTree<>());
+        result.versions.adoptNested(versions);
+        result.commitVersion(versions.getCurrent());
         return result;
     }
 
-    private E remove(ListHead<ListItem<E>> prevHead, int index) {
-        ListHead<ListItem<E>> newHead;
-        E result = get(index);
+    /**
+     * Создание пустого уровня для недостающего ключа пути в {@link #assocIn(List, Object)}.
+     *
+     * @return новый ассоциативный массив.
+     */
+    @Override
+    public PersistentMap<Object, Object> newLevel() {
+        return new PersistentMap<>();
+    }
 
-        if (prevHead.getSize() == 1) {
-            updateUndoRedoStack(new ListHead<>());
-            return result;
+    /**
+     * Преобразование текущей версии в массив без копирования элементов.
+     * <p>
+     * Если список построен добавлением в конец и i-й элемент лежит в дереве под индексом i,
+     * массив использует дерево списка: копируется только корень, а после {@link #splitAt(int)}
+     * - путь до последнего элемента. Иначе массив строится снизу вверх одним проходом
+     * по ссылкам, каждый его узел создается один раз.
+     * </p>
+     *
+     * @return массив с элементами списка и одной версией.
+     */
+    public PersistentArray<E> toPersistentArray() {
+        ListHead<E> head = takeLatestVersion();
+
+        if (head.isEmpty()) {
+            return new PersistentArray<>();
         }
 
-        int treeIndex = getTreeIndex(prevHead, index);
-        ListItem<E> mid = prevHead.get(treeIndex);
+        BTree<E> tree;
+        if (head.isSequential() && head.getFirstIndex() == 0) {
+            tree = head.getSize() == head.getActualSize() ? new BTree<>(head) : new BTree<>(head, head.getSize());
+        } else {
+            tree = BTree.build(() -> iterator(head), bits);
+        }
+
+        return new PersistentArray<>(tree);
+    }
+
+    /**
+     * Запись всех версий списка в поток.
+     * <p>
+     * Узел, общий для нескольких версий, записывается один раз, поэтому каждая версия
+     * добавляет к размеру только измененные ею пути. Поток не закрывается.
+     * </p>
+     *
+     * @param stream поток.
+     * @param codec  запись элементов.
+     */
+    public void writeTo(OutputStream stream, ElementCodec<? super E> codec) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        NodeWriter<E> writer = new NodeWriter<>(out, codec);
 
-        int nextIndex = index + 1;
-        int prevIndex = index - 1;
-        newHead = new ListHead<>(prevHead);
+        out.writeInt(MAGIC);
+        out.writeInt(depth);
+        out.writeInt(bits);
+        versions.writeTo(out, writer::writeList);
+        out.flush();
+    }
 
-        if (mid.getPrevIndex() == -1) {
-            int treeNextIndex = getTreeIndex(nextIndex);
+    /**
+     * Чтение списка со всеми версиями, записанного {@link #writeTo(OutputStream, ElementCodec)}.
+     * Поток читается без буферизации ровно до конца списка, поэтому за ним могут идти другие данные.
+     *
+     * @param stream поток.
+     * @param codec  чтение элементов.
+     * @return список, текущая версия которого совпадает с записанной.
+     */
+    public static <E> PersistentLinkedList<E> readFrom(InputStream stream, ElementCodec<E> codec) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
 
-            ListItem<E> next = getElement(newHead, nextIndex);
-            ListItem<E> newNext = new ListItem<>(next);
-            newNext.setPrevIndex(-1);
+        if (in.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a persistent linked list");
+        }
 
-            newHead.set(treeNextIndex, newNext);
-            newHead.setFirstIndex(treeNextIndex);
-        }else
+        int depth = in.readInt();
+        int bits = in.readInt();
+        NodeReader<E> reader = new NodeReader<>(in, codec);
+        return new PersistentLinkedList<>(depth, bits, VersionTree.readFrom(in, reader::readList));
+    }
 
-        if (mid.getNextIndex() == -1) {
-            int treePrevIndex = getTreeIndex(prevIndex);
+    /**
+     * Конкатенация с другим списком за O(log n).
+     * Оба исходных списка не изменяются и разделяют свои узлы с результатом.
+     *
+     * @param other список, элементы которого идут после элементов этого списка.
+     * @return новый список.
+     */
+    public PersistentLinkedList<E> concat(PersistentLinkedList<E> other) {
+        return new PersistentLinkedList<>(depth, takeLatestVersion().concat(other.takeLatestVersion()));
+    }
 
-            ListItem<E> prev = getElement(newHead, prevIndex);
-            ListItem<E> newPrev = new ListItem<>(prev);
+    /**
+     * Разделение списка на два по индексу.
+     * <p>
+     * Оба результата разделяют узлы с этим списком. Для списков, построенных добавлением
+     * в конец, работает за O(log n), иначе требует прохода по ссылкам до индекса.
+     * </p>
+     *
+     * @param index индекс первого элемента второго списка.
+     * @return пара из первых index элементов и остальных элементов.
+     */
+    public Pair<PersistentLinkedList<E>, PersistentLinkedList<E>> splitAt(int index) {
+        ListHead<E> head = takeLatestVersion();
 
-            newPrev.setNextIndex(-1);
+        if (index < 0 || index > head.getSize()) {
+            throw new IndexOutOfBoundsException();
+        }
 
-            newHead.set(treePrevIndex, newPrev);
-            newHead.setLastIndex(treePrevIndex);
-        }else {
+        return new Pair<>(new PersistentLinkedList<>(depth, head.take(index)),
+                new PersistentLinkedList<>(depth, head.drop(index)));
+    }
 
-            int treeNextIndex = getTreeIndex(nextIndex);
-            int treePrevIndex = getTreeIndex(prevIndex);
+    private E set(ListHead<E> head, int index, E element) {
+        checkIndex(head, index);
 
-            newHead = new ListHead<>(prevHead);
+        int treeIndex = head.findIndex(index);
+        E result = head.getElement(treeIndex);
 
-            ListItem<E> next = getElement(newHead, nextIndex);
-            ListItem<E> newNext = new ListItem<>(next);
+        ListHead<E> newHead = new ListHead<>(head);
+        newHead.setElement(treeIndex, element);
 
-            newNext.setPrevIndex(mid.getPrevIndex());
-            newHead.set(treeNextIndex, newNext);
+        commitVersion(newHead);
 
-            newHead = new ListHead<>(newHead);
+        return result;
+    }
 
-            ListItem<E> prev = getElement(newHead, prevIndex);
-            ListItem<E> newPrev = new ListItem<>(prev);
+    private E remove(ListHead<E> prevHead, int index) {
+        checkIndex(prevHead, index);
 
-            newPrev.setNextIndex(mid.getNextIndex());
+        int treeIndex = prevHead.findIndex(index);
+        E result = prevHead.getElement(treeIndex);
 
-            newHead.set(treePrevIndex, newPrev);
+        if (prevHead.getSize() == 1) {
+            commitVersion(newHead());
+            return result;
         }
 
-        newHead.setSize(newHead.getSize() - 1);
+        ListHead<E> newHead = new ListHead<>(prevHead);
+        newHead.unlink(treeIndex);
 
-        updateUndoRedoStack(newHead);
+        commitVersion(newHead);
 
         return result;
     }
 
-    private int getTreeIndex(int listIndex) {
-        return getTreeIndex(takeLatestVersion(), listIndex);
-    }
+    private boolean filter(Collection<?> c, boolean retain) {
+        Set<?> elements = c instanceof Set ? (Set<?>) c : new HashSet<>(c);
+        ListHead<E> head = takeLatestVersion();
+
+        List<E> kept = new ArrayList<>();
+        List<Integer> removed = new ArrayList<>();
 
-    private int getTreeIndex(ListHead<ListItem<E>> head, int index) {
-        int trueIndex = head.getFirstIndex();
+        ListCursor<E> cursor = new ListCursor<>(head);
+        while (cursor.hasNext()) {
+            int index = cursor.getIndex();
+            E element = cursor.next();
+            if (elements.contains(element) == retain) {
+                kept.add(element);
+            } else {
+                removed.add(index);
+            }
+        }
 
-        for (int i = 0; i < index; i++) {
-            trueIndex = head.get(trueIndex).getNextIndex();
+        if (removed.isEmpty()) {
+            return false;
+        }
+
+        ListHead<E> newHead;
+        if (removed.size() > kept.size()) {
+            newHead = newHead();
+            newHead.addAllLast(kept);
+        } else {
+            newHead = new ListHead<>(head);
+            for (int index : removed) {
+                newHead.unlink(index);
+            }
         }
 
-        return trueIndex;
+        commitVersion(newHead);
+
+        return true;
     }
 
-    private int getHeadSize(ListHead<ListItem<E>> head) {
-        return head.getSize();
+    private ListHead<E> newHead() {
+        return new ListHead<>(depth, bits);
     }
 
-    private E get(ListHead<ListItem<E>> head, int index) {
-        return getElement(head, index).getValue();
+    private void checkIndex(ListHead<E> head, int index) {
+        if (index < 0 || index >= head.getSize()) {
+            throw new IndexOutOfBoundsException();
+        }
     }
 
-    private ListItem<E> getElement(ListHead<ListItem<E>> head, int index) {
-        int treeIndex = getTreeIndex(index);
+    private int getHeadSize(ListHead<E> head) {
+        return head.getSize();
+    }
+
+    private E get(ListHead<E> head, int index) {
+        checkIndex(head, index);
 
-        return head.get(treeIndex);
+        return head.getElement(head.findIndex(index));
     }
 
-    private Object[] toArray(ListHead<ListItem<E>> head) {
+    private Object[] toArray(ListHead<E> head) {
         Object[] objects = new Object[head.getSize()];
         Iterator<E> iterator = iterator(head);
 
@@ -428,62 +697,209 @@ public class PersistentLinkedList<E> implements List<E>, UndoRedoInterface {
         return objects;
     }
 
-    private void updateUndoRedoStack(ListHead<ListItem<E>> head){
-        undoDeque.push(head);
-        redoDeque.clear();
+    /**
+     * Подключение вложенной персистентной структуры к истории этой.
+     */
+    private void attach(Object element) {
+        if (element instanceof VersionInterface nested) {
+            nested.setParentVersions(versions);
+        }
+    }
+
+    private void commitVersion(ListHead<E> head){
+        versions.commit(head);
     }
 
     /**
-     * ignored overrides
+     * Проверка элемента на вхождение в список.
+     *
+     * @param o элемент для проверки.
+     * @return true, если элемент содержится в списке.
      */
     @Override
-    public <T> T[] toArray(T[] a) {
-        return a;
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
     }
 
+    /**
+     * Проверка элементов на вхождение в список за один проход по списку.
+     *
+     * @param c коллекция элементов для проверки.
+     * @return true, если все элементы коллекции содержатся в списке.
+     */
     @Override
-    public boolean contains(Object o) {
-        return false;
+    public boolean containsAll(Collection<?> c) {
+        Set<Object> missing = new HashSet<>();
+        for (Object e : c) {
+            if (e == null) {
+                throw new NullPointerException();
+            }
+            missing.add(e);
+        }
+
+        ListCursor<E> cursor = new ListCursor<>(takeLatestVersion());
+        while (cursor.hasNext() && !missing.isEmpty()) {
+            missing.remove(cursor.next());
+        }
+
+        return missing.isEmpty();
     }
 
+    /**
+     * Определение индекса элемента в списке.
+     *
+     * @param o элемент.
+     * @return индекс первого вхождения элемента, либо -1.
+     */
     @Override
-    public boolean containsAll(Collection<?> c) {
-        return false;
+    public int indexOf(Object o) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+
+        ListCursor<E> cursor = new ListCursor<>(takeLatestVersion());
+        for (int position = 0; cursor.hasNext(); position++) {
+            if (o.equals(cursor.next())) {
+                return position;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Определение последнего индекса элемента в списке.
+     *
+     * @param o элемент.
+     * @return индекс последнего вхождения элемента, либо -1.
+     */
+    @Override
+    public int lastIndexOf(Object o) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+
+        ListHead<E> head = takeLatestVersion();
+        ListCursor<E> cursor = new ListCursor<>(head, head.getLastIndex());
+        for (int position = head.getSize() - 1; cursor.hasNext(); position--) {
+            if (o.equals(cursor.previous())) {
+                return position;
+            }
+        }
+
+        return -1;
     }
 
+    /**
+     * Добавление коллекции элементов в конец списка одной версией.
+     *
+     * @param c элементы для добавления.
+     * @return true, если список изменился.
+     */
     @Override
     public boolean addAll(Collection<? extends E> c) {
-        return false;
+        if (c.isEmpty()) {
+            return false;
+        }
+
+        c.forEach(this::attach);
+        ListHead<E> prevHead = takeLatestVersion();
+        ListHead<E> newHead = prevHead.isEmpty() ? newHead() : new ListHead<>(prevHead);
+
+        newHead.addAllLast(c);
+
+        commitVersion(newHead);
+
+        return true;
     }
 
+    /**
+     * Вставка коллекции элементов начиная с индекса одной версией.
+     *
+     * @param index индекс, перед элементом с которым вставляются элементы.
+     * @param c     элементы для добавления.
+     * @return true, если список изменился.
+     */
     @Override
     public boolean addAll(int index, Collection<? extends E> c) {
-        return false;
+        ListHead<E> prevHead = takeLatestVersion();
+
+        if (index == prevHead.getSize()) {
+            return addAll(c);
+        }
+
+        checkIndex(prevHead, index);
+
+        if (c.isEmpty()) {
+            return false;
+        }
+
+        c.forEach(this::attach);
+        ListHead<E> newHead = new ListHead<>(prevHead);
+        newHead.addAllBefore(prevHead.findIndex(index), c);
+
+        commitVersion(newHead);
+
+        return true;
     }
 
+    /**
+     * Удаление первого вхождения элемента.
+     *
+     * @param o удаляемый элемент.
+     * @return true, если элемент был найден и удален.
+     */
     @Override
     public boolean remove(Object o) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+
+        ListHead<E> head = takeLatestVersion();
+        ListCursor<E> cursor = new ListCursor<>(head);
+        while (cursor.hasNext()) {
+            int index = cursor.getIndex();
+            if (o.equals(cursor.next())) {
+                ListHead<E> newHead = new ListHead<>(head);
+                newHead.unlink(index);
+
+                commitVersion(newHead.isEmpty() ? newHead() : newHead);
+
+                return true;
+            }
+        }
+
         return false;
     }
 
+    /**
+     * Удаление всех элементов, содержащихся в коллекции, одной версией.
+     *
+     * @param c коллекция удаляемых элементов.
+     * @return true, если список изменился.
+     */
     @Override
     public boolean removeAll(Collection<?> c) {
-        return false;
+        return filter(c, false);
     }
 
+    /**
+     * Удаление всех элементов, не содержащихся в коллекции, одной версией.
+     *
+     * @param c коллекция сохраняемых элементов.
+     * @return true, если список изменился.
+     */
     @Override
     public boolean retainAll(Collection<?> c) {
-        return false;
-    }
-
-    @Override
-    public int indexOf(Object o) {
-        return 0;
+        return filter(c, true);
     }
 
+    /**
+     * ignored overrides
+     */
     @Override
-    public int lastIndexOf(Object o) {
-        return 0;
+    public <T> T[] toArray(T[] a) {
+        return a;
     }
 
     @Override
@@ -506,7 +922,17 @@ public class PersistentLinkedList<E> implements List<E>, UndoRedoInterface {
         return new PersistentListIterator<>();
     }
 
-    public Iterator<E> iterator(ListHead<ListItem<E>> head) {
+    public Iterator<E> iterator(ListHead<E> head) {
         return new PersistentListIterator<>(head);
     }
+
+    /**
+     * Spliterator над текущей версией списка, на котором основаны stream() и parallelStream().
+     *
+     * @return spliterator элементов списка.
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        return new PersistentListSpliterator(takeLatestVersion());
+    }
 }
\ No newline at end of file
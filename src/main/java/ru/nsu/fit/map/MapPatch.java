@@ -0,0 +1,103 @@
+package ru.nsu.fit.map;
+
+import lombok.Getter;
+import ru.nsu.fit.util.ElementCodec;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Разница между двумя версиями {@link PersistentMap}: новые значения
+ * добавленных и измененных ключей и множество удаленных ключей.
+ *
+ * @param <K> тип ключей.
+ * @param <V> тип значений.
+ */
+@Getter
+public final class MapPatch<K, V> {
+    private static final int MAGIC = 0x504d5031;
+
+    private final Map<K, V> puts;
+
+    private final Set<K> removals;
+
+    MapPatch(Map<K, V> puts, Set<K> removals) {
+        this.puts = Collections.unmodifiableMap(puts);
+        this.removals = Collections.unmodifiableSet(removals);
+    }
+
+    /**
+     * Проверка, совпадают ли версии.
+     *
+     * @return true, если патч ничего не меняет.
+     */
+    public boolean isEmpty() {
+        return puts.isEmpty() && removals.isEmpty();
+    }
+
+    /**
+     * Запись патча в поток. Поток не закрывается.
+     *
+     * @param stream     поток.
+     * @param keyCodec   запись ключей.
+     * @param valueCodec запись значений.
+     */
+    public void writeTo(OutputStream stream, ElementCodec<? super K> keyCodec,
+                        ElementCodec<? super V> valueCodec) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+
+        out.writeInt(MAGIC);
+        out.writeInt(puts.size());
+        for (Map.Entry<K, V> entry : puts.entrySet()) {
+            keyCodec.write(out, entry.getKey());
+
+            V value = entry.getValue();
+            out.writeBoolean(value != null);
+            if (value != null) {
+                valueCodec.write(out, value);
+            }
+        }
+
+        out.writeInt(removals.size());
+        for (K key : removals) {
+            keyCodec.write(out, key);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Чтение патча, записанного {@link #writeTo(OutputStream, ElementCodec, ElementCodec)}.
+     * Поток читается без буферизации ровно до конца патча.
+     *
+     * @param stream     поток.
+     * @param keyCodec   чтение ключей.
+     * @param valueCodec чтение значений.
+     * @return патч.
+     */
+    public static <K, V> MapPatch<K, V> readFrom(InputStream stream, ElementCodec<K> keyCodec,
+                                                 ElementCodec<V> valueCodec) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+
+        if (in.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a map patch");
+        }
+
+        Map<K, V> puts = new LinkedHashMap<>();
+        for (int count = in.readInt(); count > 0; count--) {
+            K key = keyCodec.read(in);
+            puts.put(key, in.readBoolean() ? valueCodec.read(in) : null);
+        }
+
+        Set<K> removals = new LinkedHashSet<>();
+        for (int count = in.readInt(); count > 0; count--) {
+            removals.add(keyCodec.read(in));
+        }
+
+        return new MapPatch<>(puts, removals);
+    }
+}
@@ -0,0 +1,342 @@
+package ru.nsu.fit.map;
+
+import ru.nsu.fit.util.BTree;
+import ru.nsu.fit.util.ListCursor;
+import ru.nsu.fit.util.ListHead;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Неизменяемая версия {@link PersistentMap}: дерево голов списков-корзин и число пар.
+ * <p>
+ * Версия разделяет узлы с соседними версиями и не меняется после создания,
+ * поэтому ее можно читать параллельно с изменением самого ассоциативного массива.
+ * Изменяющие методы {@link java.util.Map} бросают UnsupportedOperationException.
+ * </p>
+ */
+public final class MapVersion<K, V> extends AbstractMap<K, V> {
+    private final BTree<ListHead<Entry<K, V>>> buckets;
+
+    /**
+     * Значение {@link #hash}, пока хеш не вычислен.
+     */
+    static final long UNKNOWN_HASH = Long.MIN_VALUE;
+
+    private final int size;
+
+    /**
+     * Число значений, являющихся вложенными персистентными структурами.
+     * Их хеш может меняться, поэтому хеш такой версии не кешируется.
+     */
+    private final int nested;
+
+    private volatile long hash;
+
+    /**
+     * Создание версии.
+     *
+     * @param nested число значений - вложенных структур.
+     * @param hash   хеш версии, либо {@link #UNKNOWN_HASH}.
+     */
+    MapVersion(BTree<ListHead<Entry<K, V>>> buckets, int size, int nested, long hash) {
+        this.buckets = buckets;
+        this.size = size;
+        this.nested = nested;
+        this.hash = hash;
+    }
+
+    BTree<ListHead<Entry<K, V>>> getBuckets() {
+        return buckets;
+    }
+
+    int getNested() {
+        return nested;
+    }
+
+    /**
+     * Получение хеша, если он уже известен.
+     *
+     * @return хеш, либо {@link #UNKNOWN_HASH}.
+     */
+    long getCachedHash() {
+        return nested == 0 ? hash : UNKNOWN_HASH;
+    }
+
+    /**
+     * Получение значения по ключу.
+     *
+     * @param key ключ.
+     * @return значение, либо null, если ключ не найден.
+     */
+    @Override
+    public V get(Object key) {
+        Entry<K, V> entry = findEntry(key);
+        return entry == null ? null : entry.getValue();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return findEntry(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Хеш по правилам {@link java.util.Map#hashCode()}.
+     * <p>
+     * Вычисляется один раз; версии, созданные изменением версии с известным хешем,
+     * получают его сразу, поправкой на хеши замененных пар.
+     * </p>
+     *
+     * @return сумма хешей пар.
+     */
+    @Override
+    public int hashCode() {
+        long cached = getCachedHash();
+        if (cached != UNKNOWN_HASH) {
+            return (int) cached;
+        }
+
+        int result = super.hashCode();
+        if (nested == 0) {
+            hash = result;
+        }
+        return result;
+    }
+
+    /**
+     * Сравнение с другим ассоциативным массивом по правилам {@link java.util.Map#equals(Object)}.
+     * <p>
+     * У двух версий сравниваются только различающиеся корзины, версии с общим деревом
+     * корзин равны сразу, а версии с разными известными хешами различны.
+     * </p>
+     *
+     * @param o объект для сравнения.
+     * @return true, если o содержит те же пары.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof MapVersion<?, ?> other)) {
+            return super.equals(o);
+        }
+
+        BTree<?> otherBuckets = other.buckets;
+        if (buckets == otherBuckets) {
+            return true;
+        }
+        if (size != other.size) {
+            return false;
+        }
+
+        long cached = getCachedHash();
+        long otherCached = other.getCachedHash();
+        if (cached != UNKNOWN_HASH && otherCached != UNKNOWN_HASH && cached != otherCached) {
+            return false;
+        }
+        if (buckets.getSize() != otherBuckets.getSize()) {
+            return super.equals(o);
+        }
+
+        for (int i = 0; i < buckets.getSize(); i++) {
+            ListHead<Entry<K, V>> head = buckets.get(i);
+            ListHead<? extends Entry<?, ?>> otherHead = other.buckets.get(i);
+            if (head != otherHead && !equalBuckets(head, otherHead)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalBuckets(ListHead<? extends Entry<?, ?>> head, ListHead<? extends Entry<?, ?>> otherHead) {
+        if (head.getSize() != otherHead.getSize()) {
+            return false;
+        }
+
+        Map<Object, Object> entries = new HashMap<>();
+        for (ListCursor<? extends Entry<?, ?>> cursor = new ListCursor<>(head); cursor.hasNext(); ) {
+            Entry<?, ?> entry = cursor.next();
+            entries.put(entry.getKey(), entry.getValue());
+        }
+
+        for (ListCursor<? extends Entry<?, ?>> cursor = new ListCursor<>(otherHead); cursor.hasNext(); ) {
+            Entry<?, ?> entry = cursor.next();
+            Object value = entries.get(entry.getKey());
+            if (!Objects.equals(value, entry.getValue()) || value == null && !entries.containsKey(entry.getKey())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Получение множества пар, обход идет по корзинам версии без копирования.
+     *
+     * @return Set из всех Entry.
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Получение разницы между этой версией и other.
+     * <p>
+     * Корзины и их поддеревья, общие для версий, пропускаются, поэтому время
+     * пропорционально числу узлов, скопированных между версиями. В отличающихся листьях
+     * проверяются пары, их соседи по спискам обеих версий и концы обоих списков:
+     * удаление пары меняет только ссылки ее соседей. Версии могут лежать в любых
+     * ветках истории, other не обязана быть потомком этой. Ключ, удаленный и добавленный снова,
+     * попадает в патч как измененный, даже если значение совпадает.
+     * </p>
+     *
+     * @param other итоговая версия.
+     * @return патч, переводящий эту версию в other.
+     */
+    public MapPatch<K, V> diff(MapVersion<K, V> other) {
+        Map<K, V> puts = new LinkedHashMap<>();
+        Set<K> removals = new LinkedHashSet<>();
+        BTree<ListHead<Entry<K, V>>> otherBuckets = other.buckets;
+
+        buckets.diff(otherBuckets, bucket ->
+                diffBucket(buckets.get(bucket), otherBuckets.get(bucket), puts, removals));
+
+        removals.removeAll(puts.keySet());
+        return new MapPatch<>(puts, removals);
+    }
+
+    private static <K, V> void diffBucket(ListHead<Entry<K, V>> head, ListHead<Entry<K, V>> otherHead,
+                                          Map<K, V> puts, Set<K> removals) {
+        Set<Integer> indices = new HashSet<>();
+        head.diff(otherHead, indices::add);
+
+        Set<Integer> neighbours = new HashSet<>();
+        for (int index : indices) {
+            addNeighbours(head, index, neighbours);
+            addNeighbours(otherHead, index, neighbours);
+        }
+        indices.addAll(neighbours);
+        indices.add(head.getFirstIndex());
+        indices.add(head.getLastIndex());
+        indices.add(otherHead.getFirstIndex());
+        indices.add(otherHead.getLastIndex());
+
+        for (int index : indices) {
+            Entry<K, V> entry = head.isLinked(index) ? head.getElement(index) : null;
+            Entry<K, V> otherEntry = otherHead.isLinked(index) ? otherHead.getElement(index) : null;
+            if (entry == otherEntry) {
+                continue;
+            }
+
+            boolean sameKey = entry != null && otherEntry != null && entry.getKey().equals(otherEntry.getKey());
+            if (otherEntry != null && !(sameKey && Objects.equals(entry.getValue(), otherEntry.getValue()))) {
+                puts.put(otherEntry.getKey(), otherEntry.getValue());
+            }
+            if (entry != null && !sameKey) {
+                removals.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Добавление соседей пары index по списку head. Пара входит в список, только если на нее
+     * ссылается предыдущая, поэтому изменение ссылок index меняет состав списка лишь у соседей.
+     */
+    private static <K, V> void addNeighbours(ListHead<Entry<K, V>> head, int index, Set<Integer> neighbours) {
+        if (index < head.getActualSize()) {
+            neighbours.add(head.getPrev(index));
+            neighbours.add(head.getNext(index));
+        }
+    }
+
+    private Entry<K, V> findEntry(Object key) {
+        ListHead<Entry<K, V>> bucket = buckets.get(bucketIndex(key, buckets.getSize()));
+        int index = findIndex(bucket, key);
+        return index == -1 ? null : bucket.getElement(index);
+    }
+
+    /**
+     * Поиск пары в корзине.
+     *
+     * @param bucket корзина.
+     * @param key    ключ.
+     * @return индекс пары в дереве корзины, либо -1.
+     */
+    static <K, V> int findIndex(ListHead<Entry<K, V>> bucket, Object key) {
+        for (ListCursor<Entry<K, V>> cursor = new ListCursor<>(bucket); cursor.hasNext(); ) {
+            int index = cursor.getIndex();
+            if (cursor.next().getKey().equals(key)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    static int bucketIndex(Object key, int bucketCount) {
+        return key.hashCode() & (bucketCount - 1);
+    }
+
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private int bucket = -1;
+
+        private ListCursor<Entry<K, V>> cursor;
+
+        EntryIterator() {
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (cursor == null) {
+                throw new NoSuchElementException();
+            }
+
+            Entry<K, V> entry = cursor.next();
+            if (!cursor.hasNext()) {
+                advance();
+            }
+            return entry;
+        }
+
+        private void advance() {
+            cursor = null;
+            while (++bucket < buckets.getSize()) {
+                ListHead<Entry<K, V>> head = buckets.get(bucket);
+                if (!head.isEmpty()) {
+                    cursor = new ListCursor<>(head);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -1,24 +1,96 @@
 package ru.nsu.fit.map;
 
 
-import ru.nsu.fit.Interfaces.UndoRedoInterface;
-import ru.nsu.fit.array.PersistentArray;
-import ru.nsu.fit.list.PersistentLinkedList;
+import ru.nsu.fit.Interfaces.NestedInterface;
+import ru.nsu.fit.Interfaces.VersionInterface;
+import ru.nsu.fit.util.BTree;
+import ru.nsu.fit.util.ListHead;
+import ru.nsu.fit.util.MergeConflict;
+import ru.nsu.fit.util.VersionTree;
 
 import java.util.*;
+import java.util.function.BiFunction;
 
-public class PersistentMap<K, V> extends AbstractMap<K, V> implements UndoRedoInterface {
+/**
+ * Персистентный ассоциативный массив на основе хеш-таблицы.
+ * <p>
+ * Каждая версия - неизменяемый {@link MapVersion}: Б-дерево голов списков-корзин.
+ * Изменение копирует путь до корзины и саму корзину, поэтому undo() и redo()
+ * любой операции, в том числе putAll() и clear(), - это переход к другому корню за O(1).
+ * </p>
+ */
+public class PersistentMap<K, V> extends AbstractMap<K, V> implements VersionInterface, NestedInterface {
     private static final int TABLE_MAX_SIZE = 32;
 
-    private final PersistentArray<PersistentLinkedList<Entry<K, V>>> table;
-    private final ArrayDeque<Integer> redoDeque = new ArrayDeque<>();
-    private final ArrayDeque<Integer> undoDeque = new ArrayDeque<>();
+    private final VersionTree<MapVersion<K, V>> versions = new VersionTree<>();
 
     public PersistentMap() {
-        this.table = new PersistentArray<>(TABLE_MAX_SIZE);
-        for (int i = 0; i < TABLE_MAX_SIZE; i++) {
-            table.add(new PersistentLinkedList<>());
+        versions.commit(emptyVersion());
+    }
+
+    private PersistentMap(MapVersion<K, V> root) {
+        if (root != null) {
+            versions.commit(root);
+        }
+    }
+
+    /**
+     * Создание ассоциативного массива, единственная версия которого - текущая версия этого, за O(1).
+     * Изменения копии не влияют на этот ассоциативный массив и его историю.
+     *
+     * @return новый ассоциативный массив, разделяющий узлы с этим.
+     */
+    public PersistentMap<K, V> fork() {
+        return forkAt(getVersionId());
+    }
+
+    /**
+     * Создание ассоциативного массива, единственная версия которого - версия versionId этого.
+     * Вложенные структуры среди значений заменяются копиями своих версий на момент versionId
+     * за O(n), если их нет, узлы разделяются за O(1).
+     *
+     * @param versionId номер версии.
+     * @return новый ассоциативный массив.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public PersistentMap<K, V> forkAt(int versionId) {
+        MapVersion<K, V> root = versions.get(versionId);
+        if (root.getNested() == 0) {
+            return new PersistentMap<>(root);
         }
+
+        Map<Object, Integer> nestedVersions = versions.nestedVersions(versionId);
+        PersistentMap<K, V> result = new PersistentMap<>(null);
+        PersistentMap<K, V>.Change change = result.new Change(emptyVersion());
+        for (Entry<K, V> entry : root.entrySet()) {
+            change.put(entry.getKey(), (V) VersionInterface.stateAt(entry.getValue(), nestedVersions));
+        }
+        change.commit();
+        return result;
+    }
+
+    /**
+     * Копия текущей версии ассоциативного массива, разделяющая с ним узлы и вложенные структуры, за O(числа вложенных структур).
+     *
+     * @return новый ассоциативный массив с одной версией.
+     */
+    @Override
+    public PersistentMap<K, V> pathCopy() {
+        PersistentMap<K, V> result = new PersistentMap<>(null);
+        result.versions.adoptNested(versions);
+        result.versions.commit(versions.getCurrent());
+        return result;
+    }
+
+    /**
+     * Создание пустого уровня для недостающего ключа пути в {@link #assocIn(List, Object)}.
+     *
+     * @return новый ассоциативный массив.
+     */
+    @Override
+    public PersistentMap<Object, Object> newLevel() {
+        return new PersistentMap<>();
     }
 
     /**
@@ -26,25 +98,7 @@ public class PersistentMap<K, V> extends AbstractMap<K, V> implements UndoRedoIn
      */
     @Override
     public void undo() {
-        if (!undoDeque.isEmpty()) {
-            if (undoDeque.peek().equals(TABLE_MAX_SIZE)) {
-                table.undo();
-                table.undo();
-                redoDeque.push(undoDeque.pop());
-                return;
-            }
-            if (undoDeque.peek() > TABLE_MAX_SIZE) {
-                Integer peek = undoDeque.pop();
-                for (int i = 0; i < peek - TABLE_MAX_SIZE; i++) {
-                    table.get(undoDeque.peek()).undo();
-                    redoDeque.push(undoDeque.pop());
-                }
-                redoDeque.push(peek);
-                return;
-            }
-            table.get(undoDeque.peek()).undo();
-            redoDeque.push(undoDeque.pop());
-        }
+        versions.undo();
     }
 
     /**
@@ -52,25 +106,28 @@ public class PersistentMap<K, V> extends AbstractMap<K, V> implements UndoRedoIn
      */
     @Override
     public void redo() {
-        if (!redoDeque.isEmpty()) {
-            if (redoDeque.peek().equals(TABLE_MAX_SIZE)) {
-                table.redo();
-                table.redo();
-                undoDeque.push(redoDeque.pop());
-                return;
-            }
-            if (redoDeque.peek() > TABLE_MAX_SIZE) {
-                Integer peek = redoDeque.pop();
-                for (int i = 0; i < peek - TABLE_MAX_SIZE; i++) {
-                    table.get(redoDeque.peek()).redo();
-                    undoDeque.push(redoDeque.pop());
-                }
-                undoDeque.push(peek);
-                return;
-            }
-            table.get(redoDeque.peek()).redo();
-            undoDeque.push(redoDeque.pop());
-        }
+        versions.redo();
+    }
+
+    /**
+     * Получение номера текущей версии.
+     *
+     * @return номер версии.
+     */
+    @Override
+    public int getVersionId() {
+        return versions.getCurrentId();
+    }
+
+    /**
+     * Переход к версии с номером versionId.
+     * Следующее изменение создаст новую ветку от этой версии.
+     *
+     * @param versionId номер версии.
+     */
+    @Override
+    public void checkout(int versionId) {
+        versions.checkout(versionId);
     }
 
     /**
@@ -82,37 +139,29 @@ public class PersistentMap<K, V> extends AbstractMap<K, V> implements UndoRedoIn
      */
     @Override
     public V put(K key, V value) {
-        V result = get(key);
-
-        int index = hashcodeIndex(key.hashCode());
-        for (int i = 0; i < table.get(index).size(); i++) {
-            Entry<K, V> pair = table.get(index).get(i);
-            if (pair.getKey().equals(key)) {
-                table.get(index).set(i, new SimpleEntry<>(key, value));
-                updateUndoRedoStack(index);
-
-                return result;
-            }
-        }
+        Change change = new Change();
+        Entry<K, V> replaced = change.put(key, value);
+        change.commit();
 
-        table.get(index).add(new SimpleEntry<>(key, value));
-        updateUndoRedoStack(index);
-
-        return result;
+        return replaced == null ? null : replaced.getValue();
     }
 
     /**
-     * Вставка всех элементов из m.
+     * Вставка всех элементов из m одной версией.
      *
      * @param m Map с аналогично параметризованными ключами и значениями.
      */
     @Override
     public void putAll(Map<? extends K, ? extends V> m) {
-        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
-            this.put(entry.getKey(), entry.getValue());
+        if (m.isEmpty()) {
+            return;
         }
 
-        updateUndoRedoStack(TABLE_MAX_SIZE + m.size());
+        Change change = new Change();
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            change.put(entry.getKey(), entry.getValue());
+        }
+        change.commit();
     }
 
     /**
@@ -123,33 +172,253 @@ public class PersistentMap<K, V> extends AbstractMap<K, V> implements UndoRedoIn
      */
     @Override
     public V remove(Object key) {
-        int index = hashcodeIndex(key.hashCode());
-        for (int i = 0; i < table.get(index).size(); i++) {
-            Entry<K, V> pair = table.get(index).get(i);
-            if (pair.getKey().equals(key)) {
-                V value = pair.getValue();
-                table.get(index).remove(i);
-                updateUndoRedoStack(index);
-
-                return value;
+        Change change = new Change();
+        Entry<K, V> removed = change.remove(key);
+        if (removed == null) {
+            return null;
+        }
+
+        change.commit();
+
+        return removed.getValue();
+    }
+
+    /**
+     * Получение разницы между двумя версиями этого ассоциативного массива
+     * за время, пропорциональное числу узлов, скопированных между ними.
+     *
+     * Вложенная структура считается измененной, если ее версии в двух версиях различаются,
+     * и попадает в патч копией своей итоговой версии.
+     *
+     * @param oldVersion номер исходной версии.
+     * @param newVersion номер итоговой версии.
+     * @return патч, переводящий исходную версию в итоговую.
+     */
+    @SuppressWarnings("unchecked")
+    public MapPatch<K, V> diff(int oldVersion, int newVersion) {
+        MapVersion<K, V> newRoot = versions.get(newVersion);
+        MapPatch<K, V> patch = versions.get(oldVersion).diff(newRoot);
+        if (newRoot.getNested() == 0) {
+            return patch;
+        }
+
+        Map<Object, Integer> oldNested = versions.nestedVersions(oldVersion);
+        Map<Object, Integer> newNested = versions.nestedVersions(newVersion);
+        Map<K, V> puts = new LinkedHashMap<>();
+        patch.getPuts().forEach((key, value) -> puts.put(key, (V) VersionInterface.stateAt(value, newNested)));
+        for (Entry<K, V> entry : newRoot.entrySet()) {
+            if (entry.getValue() instanceof VersionInterface nested
+                    && !Objects.equals(oldNested.get(nested), newNested.get(nested))) {
+                puts.put(entry.getKey(), (V) VersionInterface.stateAt(nested, newNested));
             }
         }
-        return null;
+
+        return new MapPatch<>(puts, new LinkedHashSet<>(patch.getRemovals()));
     }
 
     /**
-     * Удаление всех элементов коллекции.
+     * Применение патча к текущей версии одной новой версией.
+     *
+     * @param patch патч, полученный {@link #diff(int, int)}.
      */
-    @Override
-    public void clear() {
-        Collection<PersistentLinkedList<Entry<K, V>>> newArray = new ArrayList<>();
-        for (int i = 0; i < TABLE_MAX_SIZE; i++) {
-            newArray.add(new PersistentLinkedList<>());
+    public void apply(MapPatch<K, V> patch) {
+        if (patch.isEmpty()) {
+            return;
+        }
+
+        Change change = new Change();
+        for (K key : patch.getRemovals()) {
+            change.remove(key);
+        }
+        for (Map.Entry<K, V> entry : patch.getPuts().entrySet()) {
+            change.put(entry.getKey(), entry.getValue());
+        }
+        change.commit();
+    }
+
+    /**
+     * Слияние с другим ассоциативным массивом одной версией.
+     * <p>
+     * Ключи other, которых нет в этом, добавляются. Если значения ключа различаются,
+     * новое значение - resolver(значение этого, значение other), null удаляет ключ.
+     * Для совпадающих значений resolver не вызывается. Если other - {@link PersistentMap}
+     * или {@link MapVersion}, структуры обходятся вместе и общие узлы пропускаются,
+     * поэтому время пропорционально числу различающихся узлов. other может быть
+     * более старой версией или версией из другой ветки.
+     * </p>
+     *
+     * @param other    ассоциативный массив.
+     * @param resolver выбор значения для ключа, значения которого различаются.
+     */
+    public void merge(Map<? extends K, ? extends V> other,
+                      BiFunction<? super V, ? super V, ? extends V> resolver) {
+        Objects.requireNonNull(resolver);
+        MapVersion<K, V> otherVersion = versionOf(other);
+        Map<? extends K, ? extends V> changed = otherVersion == null
+                ? other : versions.getCurrent().diff(otherVersion).getPuts();
+
+        Change change = new Change();
+        for (Map.Entry<? extends K, ? extends V> entry : changed.entrySet()) {
+            change.merge(entry.getKey(), entry.getValue(), resolver);
         }
-        table.clear();
-        updateUndoRedoStack(TABLE_MAX_SIZE);
+        change.commitIfChanged();
+    }
 
-        table.addAll(newArray);
+    /**
+     * Трехстороннее слияние: перенос в текущую версию изменений, сделанных
+     * между версиями baseVersion и theirVersion этого ассоциативного массива, одной новой версией.
+     *
+     * @param baseVersion  номер общей исходной версии.
+     * @param theirVersion номер версии, изменения которой переносятся.
+     * @return конфликты по ключам, см. {@link #merge(PersistentMap, PersistentMap)}.
+     */
+    public Map<K, MergeConflict<V>> merge(int baseVersion, int theirVersion) {
+        return merge(versions.get(baseVersion), versions.get(theirVersion));
+    }
+
+    /**
+     * Трехстороннее слияние с текущей версией ассоциативного массива theirs, начатого
+     * от текущей версии base, например, через {@link #fork()}, одной новой версией.
+     * <p>
+     * Ключ, добавленный, измененный или удаленный только в theirs, получает значение из theirs.
+     * Ключ, измененный в обеих ветках по-разному, - конфликт, он сохраняет текущее значение.
+     * Изменения ищутся через {@link MapVersion#diff(MapVersion)}, поэтому время
+     * пропорционально числу измененных узлов, а не размеру.
+     * </p>
+     *
+     * @param base   общая исходная версия.
+     * @param theirs версия, изменения которой переносятся.
+     * @return конфликты по ключам.
+     */
+    public Map<K, MergeConflict<V>> merge(PersistentMap<K, V> base, PersistentMap<K, V> theirs) {
+        return merge(base.versions.getCurrent(), theirs.versions.getCurrent());
+    }
+
+    private Map<K, MergeConflict<V>> merge(MapVersion<K, V> base, MapVersion<K, V> theirs) {
+        MapVersion<K, V> ours = versions.getCurrent();
+        MapPatch<K, V> ourPatch = base.diff(ours);
+        MapPatch<K, V> theirPatch = base.diff(theirs);
+
+        Set<K> keys = new LinkedHashSet<>(theirPatch.getPuts().keySet());
+        keys.addAll(theirPatch.getRemovals());
+
+        Map<K, MergeConflict<V>> conflicts = new LinkedHashMap<>();
+        Change change = new Change();
+        for (K key : keys) {
+            boolean inBase = base.containsKey(key);
+            boolean inOurs = ours.containsKey(key);
+            boolean inTheirs = theirPatch.getPuts().containsKey(key);
+            V baseValue = base.get(key);
+            V ourValue = ours.get(key);
+            V theirValue = theirPatch.getPuts().get(key);
+
+            if (inTheirs == inBase && Objects.equals(theirValue, baseValue)
+                    || inTheirs == inOurs && Objects.equals(theirValue, ourValue)) {
+                continue;
+            }
+
+            boolean oursChanged = ourPatch.getPuts().containsKey(key) || ourPatch.getRemovals().contains(key);
+            if (!oursChanged || inOurs == inBase && Objects.equals(ourValue, baseValue)) {
+                if (inTheirs) {
+                    change.put(key, theirValue);
+                } else {
+                    change.remove(key);
+                }
+            } else {
+                conflicts.put(key, new MergeConflict<>(baseValue, ourValue, theirValue));
+            }
+        }
+
+        change.commitIfChanged();
+        return conflicts;
+    }
+
+    /**
+     * Оставление только ключей, которые есть в other, одной версией.
+     * Для {@link PersistentMap} и {@link MapVersion} сравниваются только различающиеся узлы.
+     *
+     * @param other ассоциативный массив, значения которого не учитываются.
+     */
+    public void retainKeys(Map<?, ?> other) {
+        MapVersion<K, V> otherVersion = versionOf(other);
+        if (otherVersion == null) {
+            retainKeys(other.keySet());
+            return;
+        }
+
+        Change change = new Change();
+        for (K key : versions.getCurrent().diff(otherVersion).getRemovals()) {
+            change.remove(key);
+        }
+        change.commitIfChanged();
+    }
+
+    /**
+     * Оставление только ключей из keys одной версией.
+     *
+     * @param keys ключи.
+     */
+    public void retainKeys(Collection<?> keys) {
+        Change change = new Change();
+        for (Entry<K, V> entry : entrySet()) {
+            if (!keys.contains(entry.getKey())) {
+                change.remove(entry.getKey());
+            }
+        }
+        change.commitIfChanged();
+    }
+
+    /**
+     * Удаление ключей, которые есть в other, одной версией.
+     * <p>
+     * Для {@link PersistentMap} и {@link MapVersion} сравниваются только различающиеся узлы:
+     * если массивы почти совпадают, результат собирается заново из немногих оставшихся пар.
+     * </p>
+     *
+     * @param other ассоциативный массив, значения которого не учитываются.
+     */
+    public void without(Map<?, ?> other) {
+        MapVersion<K, V> otherVersion = versionOf(other);
+        if (otherVersion == null) {
+            without(other.keySet());
+            return;
+        }
+
+        MapVersion<K, V> current = versions.getCurrent();
+        Set<K> kept = current.diff(otherVersion).getRemovals();
+        if (kept.size() > current.size() / 2) {
+            without(other.keySet());
+            return;
+        }
+
+        Change change = new Change(emptyVersion());
+        for (K key : kept) {
+            change.put(key, current.get(key));
+        }
+        if (kept.size() < current.size()) {
+            change.commit();
+        }
+    }
+
+    /**
+     * Удаление ключей из keys одной версией.
+     *
+     * @param keys ключи.
+     */
+    public void without(Collection<?> keys) {
+        Change change = new Change();
+        for (Object key : keys) {
+            change.remove(key);
+        }
+        change.commitIfChanged();
+    }
+
+    /**
+     * Удаление всех элементов коллекции одной версией.
+     */
+    @Override
+    public void clear() {
+        versions.commit(emptyVersion());
     }
 
     /**
@@ -160,14 +429,17 @@ public class PersistentMap<K, V> extends AbstractMap<K, V> implements UndoRedoIn
      */
     @Override
     public V get(Object key) {
-        int index = hashcodeIndex(key.hashCode());
-        PersistentLinkedList<Entry<K, V>> get = table.get(index);
-        for (Entry<K, V> pair : get) {
-            if (pair.getKey().equals(key)) {
-                return pair.getValue();
-            }
-        }
-        return null;
+        return versions.getCurrent().get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return versions.getCurrent().containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return versions.getCurrent().size();
     }
 
     /**
@@ -178,26 +450,20 @@ public class PersistentMap<K, V> extends AbstractMap<K, V> implements UndoRedoIn
     @Override
     public Set<K> keySet() {
         Set<K> keySet = new HashSet<>();
-        for (PersistentLinkedList<Entry<K, V>> pairs : table) {
-            for (Entry<K, V> pair : pairs) {
-                keySet.add(pair.getKey());
-            }
+        for (Entry<K, V> pair : entrySet()) {
+            keySet.add(pair.getKey());
         }
         return keySet;
     }
 
     /**
-     * Получение множества Entry.
+     * Получение множества Entry текущей версии.
      *
      * @return Set из всех Entry.
      */
     @Override
     public Set<Entry<K, V>> entrySet() {
-        Set<Entry<K, V>> entrySet = new HashSet<>();
-        for (PersistentLinkedList<Entry<K, V>> pairs : table) {
-            entrySet.addAll(pairs);
-        }
-        return entrySet;
+        return versions.getCurrent().entrySet();
     }
 
     /**
@@ -208,22 +474,23 @@ public class PersistentMap<K, V> extends AbstractMap<K, V> implements UndoRedoIn
     @Override
     public List<V> values() {
         List<V> values = new LinkedList<>();
-        for (PersistentLinkedList<Entry<K, V>> pairs : table) {
-            for (Entry<K, V> pair : pairs) {
-                values.add(pair.getValue());
-            }
+        for (Entry<K, V> pair : entrySet()) {
+            values.add(pair.getValue());
         }
         return values;
     }
 
     @Override
     public boolean equals(Object o) {
-        return super.equals(o);
+        if (o instanceof PersistentMap<?, ?> other) {
+            return versions.getCurrent().equals(other.versions.getCurrent());
+        }
+        return versions.getCurrent().equals(o);
     }
 
     @Override
     public int hashCode() {
-        return super.hashCode();
+        return versions.getCurrent().hashCode();
     }
 
     /**
@@ -247,12 +514,200 @@ public class PersistentMap<K, V> extends AbstractMap<K, V> implements UndoRedoIn
         return stringBuilder.toString();
     }
 
-    private int hashcodeIndex(int hashcode) {
-        return hashcode & (TABLE_MAX_SIZE - 1);
+    /**
+     * Получение версии по номеру без изменения текущего состояния, за O(1),
+     * если среди значений нет вложенных структур (см. {@link #forkAt(int)}).
+     *
+     * @param versionId номер версии.
+     * @return неизменяемая версия ассоциативного массива.
+     */
+    public MapVersion<K, V> at(int versionId) {
+        MapVersion<K, V> root = versions.get(versionId);
+        return root.getNested() == 0 ? root : forkAt(versionId).versions.getCurrent();
+    }
+
+    /**
+     * Получение числа версий во всех ветках.
+     *
+     * @return число версий.
+     */
+    @Override
+    public int getVersionCount() {
+        return versions.size();
+    }
+
+    /**
+     * Подключение к истории внешней структуры, в которую вложен этот ассоциативный массив.
+     *
+     * @param parent дерево версий внешней структуры.
+     */
+    @Override
+    public void setParentVersions(VersionTree<?> parent) {
+        versions.setParent(parent, this);
+    }
+
+    /**
+     * Подключение вложенной персистентной структуры к истории этой.
+     */
+    private void attach(Object element) {
+        if (element instanceof VersionInterface nested) {
+            nested.setParentVersions(versions);
+        }
+    }
+
+    /**
+     * Получение версии, по которой можно сравнивать структуры, если map персистентный.
+     *
+     * @return версия, либо null.
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, V> MapVersion<K, V> versionOf(Map<?, ?> map) {
+        if (map instanceof PersistentMap<?, ?> persistent) {
+            return (MapVersion<K, V>) persistent.versions.getCurrent();
+        }
+        if (map instanceof MapVersion<?, ?> version) {
+            return (MapVersion<K, V>) version;
+        }
+        return null;
     }
 
-    private void updateUndoRedoStack(int index){
-        undoDeque.push(index);
-        redoDeque.clear();
+    private static <K, V> MapVersion<K, V> emptyVersion() {
+        BTree<ListHead<Entry<K, V>>> buckets = new BTree<>(1, Integer.numberOfTrailingZeros(TABLE_MAX_SIZE));
+        for (int i = 0; i < TABLE_MAX_SIZE; i++) {
+            buckets.add(new ListHead<>());
+        }
+        return new MapVersion<>(buckets, 0, 0, 0);
+    }
+
+    /**
+     * Новая версия, собираемая из текущей: копия дерева корзин, размер,
+     * число вложенных структур среди значений и хеш, если он был известен.
+     */
+    private final class Change {
+        private final BTree<ListHead<Entry<K, V>>> buckets;
+
+        private int size;
+
+        private int nested;
+
+        private long hash;
+
+        private boolean changed;
+
+        Change() {
+            this(versions.getCurrent());
+        }
+
+        Change(MapVersion<K, V> base) {
+            this.buckets = new BTree<>(base.getBuckets());
+            this.size = base.size();
+            this.nested = base.getNested();
+            this.hash = base.getCachedHash();
+        }
+
+        /**
+         * Запись пары в корзину.
+         *
+         * @return замененная пара, либо null, если ключ добавлен.
+         */
+        Entry<K, V> put(K key, V value) {
+            attach(value);
+
+            int bucket = MapVersion.bucketIndex(key, TABLE_MAX_SIZE);
+            ListHead<Entry<K, V>> head = buckets.get(bucket);
+            int index = MapVersion.findIndex(head, key);
+            Entry<K, V> entry = new SimpleImmutableEntry<>(key, value);
+            Entry<K, V> replaced = index == -1 ? null : head.getElement(index);
+
+            ListHead<Entry<K, V>> newHead = head.isEmpty() ? head.empty() : new ListHead<>(head);
+            if (index == -1) {
+                newHead.addLast(entry);
+                size++;
+            } else {
+                newHead.setElement(index, entry);
+                account(replaced, -1);
+            }
+            buckets.set(bucket, newHead);
+            account(entry, 1);
+            changed = true;
+
+            return replaced;
+        }
+
+        /**
+         * Слияние значения с текущим значением ключа.
+         * Если значения совпадают, пара не меняется.
+         */
+        void merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> resolver) {
+            ListHead<Entry<K, V>> head = buckets.get(MapVersion.bucketIndex(key, TABLE_MAX_SIZE));
+            int index = MapVersion.findIndex(head, key);
+            if (index == -1) {
+                put(key, value);
+                return;
+            }
+
+            V current = head.getElement(index).getValue();
+            if (Objects.equals(current, value)) {
+                return;
+            }
+
+            V merged = resolver.apply(current, value);
+            if (merged == null) {
+                remove(key);
+            } else if (merged != current) {
+                put(key, merged);
+            }
+        }
+
+        /**
+         * Удаление пары из корзины.
+         *
+         * @return удаленная пара, либо null, если ключ не найден.
+         */
+        Entry<K, V> remove(Object key) {
+            int bucket = MapVersion.bucketIndex(key, TABLE_MAX_SIZE);
+            ListHead<Entry<K, V>> head = buckets.get(bucket);
+            int index = MapVersion.findIndex(head, key);
+            if (index == -1) {
+                return null;
+            }
+
+            Entry<K, V> entry = head.getElement(index);
+            ListHead<Entry<K, V>> newHead = head.empty();
+            if (head.getSize() > 1) {
+                newHead = new ListHead<>(head);
+                newHead.unlink(index);
+            }
+            buckets.set(bucket, newHead);
+            size--;
+            account(entry, -1);
+            changed = true;
+
+            return entry;
+        }
+
+        void commit() {
+            versions.commit(new MapVersion<>(buckets, size, nested, hash));
+        }
+
+        void commitIfChanged() {
+            if (changed) {
+                commit();
+            }
+        }
+
+        /**
+         * Учет добавленной (sign = 1) или убранной (sign = -1) пары в хеше версии.
+         * Хеш вложенной структуры мог измениться с момента вставки, поэтому
+         * после ее удаления или добавления хеш версии считается неизвестным.
+         */
+        private void account(Entry<K, V> entry, int sign) {
+            if (entry.getValue() instanceof VersionInterface) {
+                nested += sign;
+                hash = MapVersion.UNKNOWN_HASH;
+            } else if (hash != MapVersion.UNKNOWN_HASH) {
+                hash = (int) (hash + sign * entry.hashCode());
+            }
+        }
     }
-}
\ No newline at end of file
+}
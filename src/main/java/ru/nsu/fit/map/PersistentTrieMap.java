@@ -0,0 +1,289 @@
+package ru.nsu.fit.map;
+
+import ru.nsu.fit.Interfaces.VersionInterface;
+import ru.nsu.fit.util.VersionTree;
+
+import java.util.*;
+
+/**
+ * Персистентный ассоциативный массив со строковыми ключами на основе сжатого префиксного дерева.
+ * <p>
+ * get(), put() и remove() работают за O(длины ключа), изменение копирует узлы вдоль пути ключа,
+ * поэтому undo() и redo() - это переход к другому корню за O(1). Ключи обходятся в лексикографическом
+ * порядке, а {@link #prefixMap(String)} выделяет все ключи с заданным префиксом за O(длины префикса),
+ * без обхода остальных ключей. Ключи не могут быть null, значения могут.
+ * </p>
+ */
+public class PersistentTrieMap<V> extends AbstractMap<String, V> implements VersionInterface {
+    private final VersionTree<TrieNode<V>> versions = new VersionTree<>();
+
+    public PersistentTrieMap() {
+        versions.commit(TrieNode.empty());
+    }
+
+    private PersistentTrieMap(TrieNode<V> root) {
+        if (root != null) {
+            versions.commit(root);
+        }
+    }
+
+    /**
+     * Создание ассоциативного массива, единственная версия которого - текущая версия этого, за O(1).
+     *
+     * @return новый ассоциативный массив, разделяющий узлы с этим.
+     */
+    public PersistentTrieMap<V> fork() {
+        return forkAt(getVersionId());
+    }
+
+    /**
+     * Создание ассоциативного массива, единственная версия которого - версия versionId этого.
+     * Вложенные структуры среди значений заменяются копиями своих версий на момент versionId
+     * за O(n), если их нет, узлы разделяются за O(1).
+     *
+     * @param versionId номер версии.
+     * @return новый ассоциативный массив.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public PersistentTrieMap<V> forkAt(int versionId) {
+        TrieNode<V> root = versions.get(versionId);
+        if (!versions.hasNested()) {
+            return new PersistentTrieMap<>(root);
+        }
+
+        Map<Object, Integer> nestedVersions = versions.nestedVersions(versionId);
+        PersistentTrieMap<V> result = new PersistentTrieMap<>(null);
+        TrieNode<V> resultRoot = TrieNode.empty();
+        for (Iterator<Entry<String, V>> iterator = new TrieIterator<>(root); iterator.hasNext(); ) {
+            Entry<String, V> entry = iterator.next();
+            V value = (V) VersionInterface.stateAt(entry.getValue(), nestedVersions);
+            result.attach(value);
+            resultRoot = resultRoot.put(entry.getKey(), 0, value);
+        }
+        result.versions.commit(resultRoot);
+        return result;
+    }
+
+    /**
+     * Получение всех пар, ключи которых начинаются с prefix, за O(длины prefix).
+     * Обход результата занимает время, пропорциональное его размеру.
+     *
+     * @param prefix префикс ключей.
+     * @return новый ассоциативный массив с одной версией, разделяющий узлы с этим.
+     */
+    public PersistentTrieMap<V> prefixMap(String prefix) {
+        return new PersistentTrieMap<>(versions.getCurrent().prefixRoot(prefix));
+    }
+
+    @Override
+    public void undo() {
+        versions.undo();
+    }
+
+    @Override
+    public void redo() {
+        versions.redo();
+    }
+
+    @Override
+    public int getVersionId() {
+        return versions.getCurrentId();
+    }
+
+    @Override
+    public void checkout(int versionId) {
+        versions.checkout(versionId);
+    }
+
+    @Override
+    public int getVersionCount() {
+        return versions.size();
+    }
+
+    /**
+     * Подключение к истории внешней структуры, в которую вложен этот ассоциативный массив.
+     *
+     * @param parent дерево версий внешней структуры.
+     */
+    @Override
+    public void setParentVersions(VersionTree<?> parent) {
+        versions.setParent(parent, this);
+    }
+
+    /**
+     * Получение версии по номеру без изменения текущего состояния, за O(1),
+     * если среди значений нет вложенных структур (см. {@link #forkAt(int)}).
+     *
+     * @param versionId номер версии.
+     * @return неизменяемый ассоциативный массив.
+     */
+    public Map<String, V> at(int versionId) {
+        return Collections.unmodifiableMap(forkAt(versionId));
+    }
+
+    @Override
+    public V get(Object key) {
+        TrieNode<V> node = findNode(key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return findNode(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return versions.getCurrent().size;
+    }
+
+    /**
+     * Вставка пары ключ-значение. Если значение уже записано, версия не создается.
+     *
+     * @param key   ключ.
+     * @param value значение.
+     * @return предыдущее значение, либо null.
+     */
+    @Override
+    public V put(String key, V value) {
+        V previous = get(Objects.requireNonNull(key));
+        attach(value);
+        commitIfChanged(versions.getCurrent().put(key, 0, value));
+        return previous;
+    }
+
+    /**
+     * Вставка всех элементов из m одной версией.
+     *
+     * @param m Map со строковыми ключами.
+     */
+    @Override
+    public void putAll(Map<? extends String, ? extends V> m) {
+        TrieNode<V> root = versions.getCurrent();
+        for (Map.Entry<? extends String, ? extends V> entry : m.entrySet()) {
+            attach(entry.getValue());
+            root = root.put(Objects.requireNonNull(entry.getKey()), 0, entry.getValue());
+        }
+        commitIfChanged(root);
+    }
+
+    /**
+     * Удаление значения по ключу. Если ключа нет, версия не создается.
+     *
+     * @param key ключ.
+     * @return удаленное значение.
+     */
+    @Override
+    public V remove(Object key) {
+        TrieNode<V> node = findNode(key);
+        if (node == null) {
+            return null;
+        }
+
+        commitIfChanged(versions.getCurrent().remove((String) key, 0));
+        return node.value;
+    }
+
+    /**
+     * Удаление всех элементов одной версией.
+     */
+    @Override
+    public void clear() {
+        commitIfChanged(TrieNode.empty());
+    }
+
+    /**
+     * Получение множества пар текущей версии в лексикографическом порядке ключей, без копирования.
+     *
+     * @return Set из всех Entry.
+     */
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        TrieNode<V> root = versions.getCurrent();
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, V>> iterator() {
+                return new TrieIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return root.size;
+            }
+        };
+    }
+
+    private TrieNode<V> findNode(Object key) {
+        if (!(key instanceof String string)) {
+            return null;
+        }
+
+        TrieNode<V> node = versions.getCurrent().find(string, 0);
+        return node != null && node.hasValue ? node : null;
+    }
+
+    private void commitIfChanged(TrieNode<V> root) {
+        if (root != versions.getCurrent()) {
+            versions.commit(root);
+        }
+    }
+
+    /**
+     * Подключение вложенной персистентной структуры к истории этой.
+     */
+    private void attach(Object element) {
+        if (element instanceof VersionInterface nested) {
+            nested.setParentVersions(versions);
+        }
+    }
+
+    /**
+     * Обход узлов в прямом порядке: значение узла раньше значений потомков,
+     * потомки по возрастанию первого символа метки.
+     */
+    private static final class TrieIterator<V> implements Iterator<Entry<String, V>> {
+        private final Deque<TrieNode<V>> nodes = new ArrayDeque<>();
+
+        private final Deque<String> keys = new ArrayDeque<>();
+
+        private Entry<String, V> next;
+
+        TrieIterator(TrieNode<V> root) {
+            nodes.push(root);
+            keys.push(root.label);
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<String, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            Entry<String, V> result = next;
+            advance();
+            return result;
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && !nodes.isEmpty()) {
+                TrieNode<V> node = nodes.pop();
+                String key = keys.pop();
+                for (int i = node.children.length - 1; i >= 0; i--) {
+                    nodes.push(node.children[i]);
+                    keys.push(key + node.children[i].label);
+                }
+                if (node.hasValue) {
+                    next = new SimpleImmutableEntry<>(key, node.value);
+                }
+            }
+        }
+    }
+}
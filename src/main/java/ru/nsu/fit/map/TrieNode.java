@@ -0,0 +1,252 @@
+package ru.nsu.fit.map;
+
+import java.util.Arrays;
+
+/**
+ * Неизменяемый узел сжатого префиксного дерева {@link PersistentTrieMap}.
+ * <p>
+ * label - часть ключа на ребре от родителя, потомки упорядочены по первому символу
+ * своих меток, и у разных потомков он различен. Узел без значения, кроме корня,
+ * всегда имеет не меньше двух потомков, поэтому цепочки узлов без ветвлений сжаты
+ * в одно ребро. Изменение копирует узлы вдоль пути ключа, остальные узлы общие.
+ * </p>
+ *
+ * @param <V> тип значений.
+ */
+final class TrieNode<V> {
+    private static final TrieNode<?>[] NO_CHILDREN = new TrieNode<?>[0];
+
+    private static final TrieNode<?> EMPTY = new TrieNode<>("", false, null, none());
+
+    final String label;
+
+    final boolean hasValue;
+
+    final V value;
+
+    final TrieNode<V>[] children;
+
+    /**
+     * Число значений в поддереве.
+     */
+    final int size;
+
+    private TrieNode(String label, boolean hasValue, V value, TrieNode<V>[] children) {
+        this.label = label;
+        this.hasValue = hasValue;
+        this.value = value;
+        this.children = children;
+
+        int count = hasValue ? 1 : 0;
+        for (TrieNode<V> child : children) {
+            count += child.size;
+        }
+        this.size = count;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> TrieNode<V> empty() {
+        return (TrieNode<V>) EMPTY;
+    }
+
+    /**
+     * Поиск узла, путь до которого от этого узла - key.substring(offset).
+     *
+     * @return узел, либо null.
+     */
+    TrieNode<V> find(String key, int offset) {
+        TrieNode<V> node = this;
+        while (offset < key.length()) {
+            int index = node.indexOf(key.charAt(offset));
+            if (index < 0) {
+                return null;
+            }
+
+            node = node.children[index];
+            if (!key.startsWith(node.label, offset)) {
+                return null;
+            }
+            offset += node.label.length();
+        }
+        return node;
+    }
+
+    /**
+     * Получение поддерева всех ключей, начинающихся с prefix, за O(длины prefix).
+     *
+     * @param prefix префикс.
+     * @return корень нового дерева, разделяющего узлы с этим.
+     */
+    TrieNode<V> prefixRoot(String prefix) {
+        TrieNode<V> node = this;
+        int offset = 0;
+        while (offset < prefix.length()) {
+            int index = node.indexOf(prefix.charAt(offset));
+            if (index < 0) {
+                return empty();
+            }
+
+            TrieNode<V> child = node.children[index];
+            int rest = prefix.length() - offset;
+            if (child.label.length() >= rest) {
+                if (!child.label.startsWith(prefix.substring(offset))) {
+                    return empty();
+                }
+                return root(child.withLabel(prefix.substring(0, offset) + child.label));
+            }
+            if (!prefix.startsWith(child.label, offset)) {
+                return empty();
+            }
+
+            offset += child.label.length();
+            node = child;
+        }
+
+        return node == this ? this : root(node.withLabel(prefix));
+    }
+
+    /**
+     * Запись значения по ключу key.substring(offset) в поддерево этого узла.
+     *
+     * @return новый узел, либо этот, если значение уже записано.
+     */
+    TrieNode<V> put(String key, int offset, V value) {
+        if (offset == key.length()) {
+            if (hasValue && this.value == value) {
+                return this;
+            }
+            return new TrieNode<>(label, true, value, children);
+        }
+
+        int index = indexOf(key.charAt(offset));
+        if (index < 0) {
+            return withChild(-index - 1, new TrieNode<>(key.substring(offset), true, value, none()), 0);
+        }
+
+        TrieNode<V> child = children[index];
+        int common = commonPrefix(child.label, key, offset);
+        if (common == child.label.length()) {
+            TrieNode<V> newChild = child.put(key, offset + common, value);
+            return newChild == child ? this : withChild(index, newChild, 1);
+        }
+
+        TrieNode<V> tail = child.withLabel(child.label.substring(common));
+        String head = child.label.substring(0, common);
+        TrieNode<V> middle;
+        if (offset + common == key.length()) {
+            middle = new TrieNode<>(head, true, value, array(tail));
+        } else {
+            TrieNode<V> leaf = new TrieNode<>(key.substring(offset + common), true, value, none());
+            middle = new TrieNode<>(head, false, null,
+                    tail.label.charAt(0) < leaf.label.charAt(0) ? array(tail, leaf) : array(leaf, tail));
+        }
+        return withChild(index, middle, 1);
+    }
+
+    /**
+     * Удаление значения по ключу key.substring(offset) из поддерева этого узла.
+     * Узел без значения с единственным потомком сливается с ним.
+     *
+     * @return новый узел, либо этот, если ключ не найден.
+     */
+    TrieNode<V> remove(String key, int offset) {
+        if (offset == key.length()) {
+            return hasValue ? new TrieNode<>(label, false, null, children) : this;
+        }
+
+        int index = indexOf(key.charAt(offset));
+        if (index < 0) {
+            return this;
+        }
+
+        TrieNode<V> child = children[index];
+        if (!key.startsWith(child.label, offset)) {
+            return this;
+        }
+
+        TrieNode<V> newChild = child.remove(key, offset + child.label.length());
+        if (newChild == child) {
+            return this;
+        }
+        if (newChild.size == 0) {
+            return withoutChild(index);
+        }
+        if (!newChild.hasValue && newChild.children.length == 1) {
+            TrieNode<V> grandchild = newChild.children[0];
+            newChild = grandchild.withLabel(newChild.label + grandchild.label);
+        }
+        return withChild(index, newChild, 1);
+    }
+
+    private TrieNode<V> withLabel(String newLabel) {
+        return new TrieNode<>(newLabel, hasValue, value, children);
+    }
+
+    /**
+     * Копия узла, в которой child вставлен (replaced = 0) или заменяет потомка (replaced = 1) по индексу.
+     */
+    private TrieNode<V> withChild(int index, TrieNode<V> child, int replaced) {
+        TrieNode<V>[] newChildren = Arrays.copyOf(children, children.length + 1 - replaced);
+        if (replaced == 0) {
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+        }
+        newChildren[index] = child;
+        return new TrieNode<>(label, hasValue, value, newChildren);
+    }
+
+    private TrieNode<V> withoutChild(int index) {
+        TrieNode<V>[] newChildren = Arrays.copyOf(children, children.length - 1);
+        System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+        return new TrieNode<>(label, hasValue, value, newChildren);
+    }
+
+    /**
+     * Двоичный поиск потомка по первому символу метки.
+     *
+     * @return индекс, либо -(точка вставки) - 1.
+     */
+    private int indexOf(char first) {
+        int low = 0;
+        int high = children.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char current = children[middle].label.charAt(0);
+            if (current < first) {
+                low = middle + 1;
+            } else if (current > first) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+
+    private static int commonPrefix(String label, String key, int offset) {
+        int length = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < length && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static <V> TrieNode<V> root(TrieNode<V> child) {
+        return new TrieNode<>("", false, null, array(child));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> TrieNode<V>[] none() {
+        return (TrieNode<V>[]) NO_CHILDREN;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> TrieNode<V>[] array(TrieNode<V> node) {
+        return (TrieNode<V>[]) new TrieNode<?>[]{node};
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> TrieNode<V>[] array(TrieNode<V> first, TrieNode<V> second) {
+        return (TrieNode<V>[]) new TrieNode<?>[]{first, second};
+    }
+}
@@ -0,0 +1,79 @@
+package ru.nsu.fit.queue;
+
+import java.util.function.Supplier;
+
+/**
+ * Неизменяемый ленивый список с запоминанием: ячейка вычисляется при первом обращении
+ * и дальше разделяется всеми версиями, которые на нее ссылаются.
+ *
+ * @param <E> тип элементов.
+ */
+final class LazyStream<E> {
+    private static final LazyStream<?> EMPTY = new LazyStream<>(null, null);
+
+    private E head;
+
+    private LazyStream<E> tail;
+
+    private volatile Supplier<LazyStream<E>> thunk;
+
+    private LazyStream(E head, LazyStream<E> tail) {
+        this.head = head;
+        this.tail = tail;
+    }
+
+    private LazyStream(Supplier<LazyStream<E>> thunk) {
+        this.thunk = thunk;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> LazyStream<E> empty() {
+        return (LazyStream<E>) EMPTY;
+    }
+
+    static <E> LazyStream<E> cons(E head, LazyStream<E> tail) {
+        return new LazyStream<>(head, tail);
+    }
+
+    /**
+     * Создание отложенного списка.
+     *
+     * @param thunk вычисление ячейки, вызывается не более одного раза.
+     * @return отложенный список.
+     */
+    static <E> LazyStream<E> lazy(Supplier<LazyStream<E>> thunk) {
+        return new LazyStream<>(thunk);
+    }
+
+    /**
+     * Вычисление первой ячейки, если она еще не вычислена.
+     *
+     * @return этот список.
+     */
+    LazyStream<E> force() {
+        if (thunk != null) {
+            synchronized (this) {
+                Supplier<LazyStream<E>> pending = thunk;
+                if (pending != null) {
+                    LazyStream<E> cell = pending.get().force();
+                    head = cell.head;
+                    tail = cell.tail;
+                    thunk = null;
+                }
+            }
+        }
+        return this;
+    }
+
+    boolean isEmpty() {
+        return force().tail == null;
+    }
+
+    E head() {
+        return force().head;
+    }
+
+    LazyStream<E> tail() {
+        return force().tail;
+    }
+}
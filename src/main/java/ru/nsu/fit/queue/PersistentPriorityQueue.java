@@ -0,0 +1,206 @@
+package ru.nsu.fit.queue;
+
+import ru.nsu.fit.Interfaces.VersionInterface;
+import ru.nsu.fit.util.VersionTree;
+
+import java.util.*;
+
+/**
+ * Персистентная очередь с приоритетом на основе косой биномиальной кучи (см. {@link SkewHeap}).
+ * <p>
+ * offer() и peek() работают за O(1) в худшем случае, poll() - за O(log n), слияние двух очередей
+ * через addAll() - за O(log n). Каждое изменение - новая версия, разделяющая узлы с предыдущей,
+ * поэтому undo() и redo() - это переход к другой версии за O(1). Элементы не могут быть null.
+ * </p>
+ */
+public class PersistentPriorityQueue<E> extends AbstractQueue<E> implements VersionInterface {
+    private final VersionTree<SkewHeap<E>> versions = new VersionTree<>();
+
+    private final Comparator<? super E> comparator;
+
+    /**
+     * Создание очереди с естественным порядком элементов.
+     */
+    @SuppressWarnings("unchecked")
+    public PersistentPriorityQueue() {
+        this((Comparator<? super E>) Comparator.naturalOrder());
+    }
+
+    public PersistentPriorityQueue(Comparator<? super E> comparator) {
+        this(SkewHeap.empty(), comparator);
+    }
+
+    private PersistentPriorityQueue(SkewHeap<E> heap, Comparator<? super E> comparator) {
+        this.comparator = Objects.requireNonNull(comparator);
+        versions.commit(heap);
+    }
+
+    /**
+     * Создание очереди, единственная версия которой - текущая версия этой, за O(1).
+     *
+     * @return новая очередь, разделяющая узлы с этой.
+     */
+    public PersistentPriorityQueue<E> fork() {
+        return new PersistentPriorityQueue<>(versions.getCurrent(), comparator);
+    }
+
+    /**
+     * Создание структуры, единственная версия которой - версия versionId этой, за O(1).
+     *
+     * @param versionId номер версии.
+     * @return новая очередь, разделяющая узлы с этой.
+     */
+    @Override
+    public PersistentPriorityQueue<E> forkAt(int versionId) {
+        return new PersistentPriorityQueue<>(versions.get(versionId), comparator);
+    }
+
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    /**
+     * Получение версии по номеру без изменения текущего состояния, за O(1).
+     *
+     * @param versionId номер версии.
+     * @return независимая очередь с единственной версией, см. {@link #forkAt(int)}.
+     */
+    public PersistentPriorityQueue<E> at(int versionId) {
+        return forkAt(versionId);
+    }
+
+    @Override
+    public void undo() {
+        versions.undo();
+    }
+
+    @Override
+    public void redo() {
+        versions.redo();
+    }
+
+    @Override
+    public int getVersionId() {
+        return versions.getCurrentId();
+    }
+
+    @Override
+    public void checkout(int versionId) {
+        versions.checkout(versionId);
+    }
+
+    @Override
+    public int getVersionCount() {
+        return versions.size();
+    }
+
+    /**
+     * Подключение к истории внешней структуры, в которую вложена эта очередь.
+     *
+     * @param parent дерево версий внешней структуры.
+     */
+    @Override
+    public void setParentVersions(VersionTree<?> parent) {
+        versions.setParent(parent, this);
+    }
+
+    /**
+     * Добавление элемента за O(1).
+     *
+     * @param element элемент.
+     * @return true.
+     */
+    @Override
+    public boolean offer(E element) {
+        Objects.requireNonNull(element);
+        versions.commit(versions.getCurrent().insert(element, comparator));
+        return true;
+    }
+
+    /**
+     * Получение минимального элемента за O(1).
+     *
+     * @return минимальный элемент, либо null, если очередь пуста.
+     */
+    @Override
+    public E peek() {
+        return versions.getCurrent().min();
+    }
+
+    /**
+     * Удаление минимального элемента за O(log n). Если очередь пуста, версия не создается.
+     *
+     * @return удаленный элемент, либо null, если очередь пуста.
+     */
+    @Override
+    public E poll() {
+        SkewHeap<E> heap = versions.getCurrent();
+        if (heap.size() == 0) {
+            return null;
+        }
+
+        versions.commit(heap.deleteMin(comparator));
+        return heap.min();
+    }
+
+    /**
+     * Добавление всех элементов одной версией. Очередь с тем же порядком сливается с этой за O(log n).
+     *
+     * @param c элементы.
+     * @return true, если очередь изменилась.
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+
+        SkewHeap<E> heap = versions.getCurrent();
+        SkewHeap<E> result = heap;
+        if (c instanceof PersistentPriorityQueue<? extends E> other && other.comparator.equals(comparator)) {
+            result = heap.meld(heapOf(other), comparator);
+        } else {
+            for (E element : c) {
+                result = result.insert(Objects.requireNonNull(element), comparator);
+            }
+        }
+
+        if (result == heap) {
+            return false;
+        }
+
+        versions.commit(result);
+        return true;
+    }
+
+    /**
+     * Удаление всех элементов одной версией.
+     */
+    @Override
+    public void clear() {
+        if (!isEmpty()) {
+            versions.commit(SkewHeap.empty());
+        }
+    }
+
+    @Override
+    public int size() {
+        return versions.getCurrent().size();
+    }
+
+    /**
+     * Обход элементов текущей версии без определенного порядка.
+     * Изменения очереди во время обхода на него не влияют.
+     *
+     * @return итератор.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return versions.getCurrent().iterator();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> SkewHeap<E> heapOf(PersistentPriorityQueue<? extends E> queue) {
+        return (SkewHeap<E>) queue.versions.getCurrent();
+    }
+}
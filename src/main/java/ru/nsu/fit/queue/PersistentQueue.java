@@ -0,0 +1,220 @@
+package ru.nsu.fit.queue;
+
+import ru.nsu.fit.Interfaces.VersionInterface;
+import ru.nsu.fit.util.VersionTree;
+
+import java.util.*;
+
+/**
+ * Персистентная очередь FIFO на основе очереди реального времени (см. {@link RealTimeQueue}).
+ * <p>
+ * offer(), poll() и peek() работают за O(1) в худшем случае, без копирования путей.
+ * Каждое изменение - новая версия, поэтому undo() и redo() - это переход к другой версии за O(1).
+ * stream() и итератор обходят текущую версию от первого элемента к последнему
+ * и не видят последующих изменений. Элементы не могут быть null.
+ * </p>
+ */
+public class PersistentQueue<E> extends AbstractQueue<E> implements VersionInterface {
+    private final VersionTree<RealTimeQueue<E>> versions = new VersionTree<>();
+
+    public PersistentQueue() {
+        versions.commit(RealTimeQueue.empty());
+    }
+
+    public PersistentQueue(Collection<? extends E> elements) {
+        this();
+        addAll(elements);
+    }
+
+    private PersistentQueue(RealTimeQueue<E> queue) {
+        if (queue != null) {
+            versions.commit(queue);
+        }
+    }
+
+    /**
+     * Создание очереди, единственная версия которой - текущая версия этой, за O(1).
+     *
+     * @return новая очередь, разделяющая ячейки с этой.
+     */
+    public PersistentQueue<E> fork() {
+        return forkAt(getVersionId());
+    }
+
+    /**
+     * Создание очереди, единственная версия которой - версия versionId этой.
+     * Вложенные структуры заменяются копиями своих версий на момент versionId за O(n),
+     * если их нет, ячейки разделяются за O(1).
+     *
+     * @param versionId номер версии.
+     * @return новая очередь.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public PersistentQueue<E> forkAt(int versionId) {
+        RealTimeQueue<E> queue = versions.get(versionId);
+        if (!versions.hasNested()) {
+            return new PersistentQueue<>(queue);
+        }
+
+        Map<Object, Integer> nestedVersions = versions.nestedVersions(versionId);
+        PersistentQueue<E> result = new PersistentQueue<>((RealTimeQueue<E>) null);
+        RealTimeQueue<E> resultQueue = RealTimeQueue.empty();
+        for (E element : queue) {
+            E value = (E) VersionInterface.stateAt(element, nestedVersions);
+            result.attach(value);
+            resultQueue = resultQueue.addLast(value);
+        }
+        result.versions.commit(resultQueue);
+        return result;
+    }
+
+    /**
+     * Получение версии по номеру без изменения текущего состояния.
+     *
+     * @param versionId номер версии.
+     * @return независимая очередь с единственной версией, см. {@link #forkAt(int)}.
+     */
+    public PersistentQueue<E> at(int versionId) {
+        return forkAt(versionId);
+    }
+
+    @Override
+    public void undo() {
+        versions.undo();
+    }
+
+    @Override
+    public void redo() {
+        versions.redo();
+    }
+
+    @Override
+    public int getVersionId() {
+        return versions.getCurrentId();
+    }
+
+    @Override
+    public void checkout(int versionId) {
+        versions.checkout(versionId);
+    }
+
+    @Override
+    public int getVersionCount() {
+        return versions.size();
+    }
+
+    /**
+     * Подключение к истории внешней структуры, в которую вложена эта очередь.
+     *
+     * @param parent дерево версий внешней структуры.
+     */
+    @Override
+    public void setParentVersions(VersionTree<?> parent) {
+        versions.setParent(parent, this);
+    }
+
+    /**
+     * Добавление элемента в конец очереди за O(1).
+     *
+     * @param element элемент.
+     * @return true.
+     */
+    @Override
+    public boolean offer(E element) {
+        Objects.requireNonNull(element);
+        attach(element);
+        versions.commit(versions.getCurrent().addLast(element));
+        return true;
+    }
+
+    /**
+     * Получение первого элемента за O(1).
+     *
+     * @return первый элемент, либо null, если очередь пуста.
+     */
+    @Override
+    public E peek() {
+        return versions.getCurrent().first();
+    }
+
+    /**
+     * Удаление первого элемента за O(1). Если очередь пуста, версия не создается.
+     *
+     * @return удаленный элемент, либо null, если очередь пуста.
+     */
+    @Override
+    public E poll() {
+        RealTimeQueue<E> queue = versions.getCurrent();
+        if (queue.size() == 0) {
+            return null;
+        }
+
+        versions.commit(queue.removeFirst());
+        return queue.first();
+    }
+
+    /**
+     * Добавление всех элементов в конец одной версией.
+     *
+     * @param c элементы.
+     * @return true, если очередь изменилась.
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        RealTimeQueue<E> queue = versions.getCurrent();
+        for (E element : c) {
+            Objects.requireNonNull(element);
+            attach(element);
+            queue = queue.addLast(element);
+        }
+
+        if (queue == versions.getCurrent()) {
+            return false;
+        }
+
+        versions.commit(queue);
+        return true;
+    }
+
+    /**
+     * Удаление всех элементов одной версией.
+     */
+    @Override
+    public void clear() {
+        if (!isEmpty()) {
+            versions.commit(RealTimeQueue.empty());
+        }
+    }
+
+    @Override
+    public int size() {
+        return versions.getCurrent().size();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return versions.getCurrent().iterator();
+    }
+
+    /**
+     * Spliterator над текущей версией очереди, на котором основаны stream() и parallelStream().
+     *
+     * @return spliterator элементов от первого к последнему.
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        RealTimeQueue<E> queue = versions.getCurrent();
+        return Spliterators.spliterator(queue.iterator(), queue.size(),
+                Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL);
+    }
+
+    /**
+     * Подключение вложенной персистентной структуры к истории этой.
+     */
+    private void attach(Object element) {
+        if (element instanceof VersionInterface nested) {
+            nested.setParentVersions(versions);
+        }
+    }
+}
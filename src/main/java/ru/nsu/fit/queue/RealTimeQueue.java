@@ -0,0 +1,151 @@
+package ru.nsu.fit.queue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Неизменяемая очередь реального времени (Okasaki, "Simple and Efficient Purely Functional Queues and Deques").
+ * <p>
+ * Голова очереди - ленивый список front, хвост - обычный список rear в обратном порядке.
+ * Когда rear становится длиннее front, начинается ленивый переворот rear в конец front,
+ * а каждая операция вычисляет одну ячейку расписания schedule, поэтому к моменту
+ * обращения front уже вычислен и любая операция занимает O(1) в худшем случае.
+ * Вычисленные ячейки запоминаются и общие для всех версий.
+ * </p>
+ *
+ * @param <E> тип элементов.
+ */
+final class RealTimeQueue<E> implements Iterable<E> {
+    private static final RealTimeQueue<?> EMPTY =
+            new RealTimeQueue<>(LazyStream.empty(), LazyStream.empty(), LazyStream.empty(), 0);
+
+    private final LazyStream<E> front;
+
+    private final LazyStream<E> rear;
+
+    private final LazyStream<E> schedule;
+
+    private final int size;
+
+    private RealTimeQueue(LazyStream<E> front, LazyStream<E> rear, LazyStream<E> schedule, int size) {
+        this.front = front;
+        this.rear = rear;
+        this.schedule = schedule;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> RealTimeQueue<E> empty() {
+        return (RealTimeQueue<E>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Получение первого элемента за O(1).
+     *
+     * @return первый элемент, либо null, если очередь пуста.
+     */
+    E first() {
+        return size == 0 ? null : front.head();
+    }
+
+    /**
+     * Добавление элемента в конец за O(1).
+     *
+     * @param element элемент.
+     * @return новая очередь.
+     */
+    RealTimeQueue<E> addLast(E element) {
+        return exec(front, LazyStream.cons(element, rear), schedule, size + 1);
+    }
+
+    /**
+     * Удаление первого элемента за O(1).
+     *
+     * @return новая очередь.
+     * @throws NoSuchElementException если очередь пуста.
+     */
+    RealTimeQueue<E> removeFirst() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return exec(front.tail(), rear, schedule, size - 1);
+    }
+
+    /**
+     * Обход элементов от первого к последнему. Ячейки front вычисляются по мере обхода,
+     * rear переворачивается при переходе к нему.
+     *
+     * @return итератор.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private LazyStream<E> stream = front;
+
+            private List<E> reversed;
+
+            private int remaining = size;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public E next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+
+                if (!stream.isEmpty()) {
+                    E element = stream.head();
+                    stream = stream.tail();
+                    return element;
+                }
+
+                if (reversed == null) {
+                    reversed = new ArrayList<>();
+                    for (LazyStream<E> cell = rear; !cell.isEmpty(); cell = cell.tail()) {
+                        reversed.add(cell.head());
+                    }
+                }
+                return reversed.get(remaining);
+            }
+        };
+    }
+
+    /**
+     * Шаг расписания: вычисление одной ячейки schedule, либо, когда расписание
+     * исчерпано (|rear| = |front| + 1), начало нового переворота.
+     */
+    private static <E> RealTimeQueue<E> exec(LazyStream<E> front, LazyStream<E> rear,
+                                             LazyStream<E> schedule, int size) {
+        if (!schedule.isEmpty()) {
+            return new RealTimeQueue<>(front, rear, schedule.tail(), size);
+        }
+
+        LazyStream<E> rotated = rotate(front, rear, LazyStream.empty());
+        return new RealTimeQueue<>(rotated, LazyStream.empty(), rotated, size);
+    }
+
+    /**
+     * Ленивое вычисление front ++ reverse(rear) при |rear| = |front| + 1:
+     * каждая ячейка результата требует O(1) работы.
+     */
+    private static <E> LazyStream<E> rotate(LazyStream<E> front, LazyStream<E> rear, LazyStream<E> accumulated) {
+        LazyStream<E> reversed = LazyStream.cons(rear.head(), accumulated);
+        if (front.isEmpty()) {
+            return reversed;
+        }
+
+        return LazyStream.cons(front.head(),
+                LazyStream.lazy(() -> rotate(front.tail(), rear.tail(), reversed)));
+    }
+}
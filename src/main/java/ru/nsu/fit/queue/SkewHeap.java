@@ -0,0 +1,290 @@
+package ru.nsu.fit.queue;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Неизменяемая косая биномиальная куча (Brodal, Okasaki, "Optimal Purely Functional Priority Queues").
+ * <p>
+ * Куча - список косых биномиальных деревьев по возрастанию ранга, где ранги могут совпадать
+ * только у первых двух деревьев. Вставка связывает эти два дерева за O(1) в худшем случае,
+ * удаление минимума сливает потомков его дерева с остальными деревьями за O(log n).
+ * Минимум хранится отдельно, поэтому доступен за O(1). Изменения создают новые узлы
+ * только вдоль списка деревьев, остальные узлы общие с исходной кучей.
+ * </p>
+ *
+ * @param <E> тип элементов.
+ */
+final class SkewHeap<E> implements Iterable<E> {
+    private static final SkewHeap<?> EMPTY = new SkewHeap<>(null, 0, null);
+
+    private final Cons<Tree<E>> trees;
+
+    private final int size;
+
+    private final E min;
+
+    private SkewHeap(Cons<Tree<E>> trees, int size, E min) {
+        this.trees = trees;
+        this.size = size;
+        this.min = min;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> SkewHeap<E> empty() {
+        return (SkewHeap<E>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Получение минимального элемента, за O(1).
+     *
+     * @return минимальный элемент, либо null, если куча пуста.
+     */
+    E min() {
+        return min;
+    }
+
+    /**
+     * Вставка элемента за O(1).
+     *
+     * @param element    элемент.
+     * @param comparator порядок элементов.
+     * @return новая куча.
+     */
+    SkewHeap<E> insert(E element, Comparator<? super E> comparator) {
+        E newMin = size == 0 || comparator.compare(element, min) < 0 ? element : min;
+        return new SkewHeap<>(insertTree(element, trees, comparator), size + 1, newMin);
+    }
+
+    /**
+     * Удаление минимального элемента за O(log n).
+     *
+     * @param comparator порядок элементов.
+     * @return новая куча.
+     * @throws NoSuchElementException если куча пуста.
+     */
+    SkewHeap<E> deleteMin(Comparator<? super E> comparator) {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+
+        Tree<E> minTree = trees.head;
+        for (Cons<Tree<E>> rest = trees.tail; rest != null; rest = rest.tail) {
+            if (comparator.compare(rest.head.root, minTree.root) < 0) {
+                minTree = rest.head;
+            }
+        }
+
+        Cons<Tree<E>> result = mergeTrees(normalize(reverse(minTree.children), comparator),
+                normalize(without(trees, minTree), comparator), comparator);
+        for (Cons<E> extra = minTree.extras; extra != null; extra = extra.tail) {
+            result = insertTree(extra.head, result, comparator);
+        }
+
+        return new SkewHeap<>(result, size - 1, findMin(result, comparator));
+    }
+
+    /**
+     * Слияние двух куч за O(log n).
+     *
+     * @param other      куча с тем же порядком.
+     * @param comparator порядок элементов.
+     * @return новая куча.
+     */
+    SkewHeap<E> meld(SkewHeap<E> other, Comparator<? super E> comparator) {
+        if (other.size == 0) {
+            return this;
+        }
+        if (size == 0) {
+            return other;
+        }
+
+        E newMin = comparator.compare(other.min, min) < 0 ? other.min : min;
+        Cons<Tree<E>> result = mergeTrees(normalize(trees, comparator), normalize(other.trees, comparator), comparator);
+        return new SkewHeap<>(result, size + other.size, newMin);
+    }
+
+    /**
+     * Обход всех элементов без определенного порядка.
+     *
+     * @return итератор.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new HeapIterator<>(trees);
+    }
+
+    private static <E> Cons<Tree<E>> insertTree(E element, Cons<Tree<E>> trees, Comparator<? super E> comparator) {
+        if (trees != null && trees.tail != null && trees.head.rank == trees.tail.head.rank) {
+            return new Cons<>(skewLink(element, trees.head, trees.tail.head, comparator), trees.tail.tail);
+        }
+        return new Cons<>(new Tree<>(element, 0, null, null), trees);
+    }
+
+    private static <E> Tree<E> link(Tree<E> first, Tree<E> second, Comparator<? super E> comparator) {
+        if (comparator.compare(first.root, second.root) <= 0) {
+            return new Tree<>(first.root, first.rank + 1, first.extras, new Cons<>(second, first.children));
+        }
+        return new Tree<>(second.root, second.rank + 1, second.extras, new Cons<>(first, second.children));
+    }
+
+    private static <E> Tree<E> skewLink(E element, Tree<E> first, Tree<E> second, Comparator<? super E> comparator) {
+        Tree<E> linked = link(first, second, comparator);
+        if (comparator.compare(element, linked.root) <= 0) {
+            return new Tree<>(element, linked.rank, new Cons<>(linked.root, linked.extras), linked.children);
+        }
+        return new Tree<>(linked.root, linked.rank, new Cons<>(element, linked.extras), linked.children);
+    }
+
+    /**
+     * Вставка дерева в список деревьев с различными рангами, с переносом при совпадении рангов.
+     */
+    private static <E> Cons<Tree<E>> insertLinked(Tree<E> tree, Cons<Tree<E>> trees, Comparator<? super E> comparator) {
+        while (trees != null && tree.rank == trees.head.rank) {
+            tree = link(tree, trees.head, comparator);
+            trees = trees.tail;
+        }
+        return new Cons<>(tree, trees);
+    }
+
+    /**
+     * Слияние двух списков деревьев с различными рангами.
+     */
+    private static <E> Cons<Tree<E>> mergeTrees(Cons<Tree<E>> first, Cons<Tree<E>> second,
+                                                Comparator<? super E> comparator) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+
+        if (first.head.rank < second.head.rank) {
+            return new Cons<>(first.head, mergeTrees(first.tail, second, comparator));
+        }
+        if (second.head.rank < first.head.rank) {
+            return new Cons<>(second.head, mergeTrees(first, second.tail, comparator));
+        }
+        return insertLinked(link(first.head, second.head, comparator),
+                mergeTrees(first.tail, second.tail, comparator), comparator);
+    }
+
+    /**
+     * Устранение возможного совпадения рангов первых двух деревьев.
+     */
+    private static <E> Cons<Tree<E>> normalize(Cons<Tree<E>> trees, Comparator<? super E> comparator) {
+        return trees == null ? null : insertLinked(trees.head, trees.tail, comparator);
+    }
+
+    private static <E> E findMin(Cons<Tree<E>> trees, Comparator<? super E> comparator) {
+        if (trees == null) {
+            return null;
+        }
+
+        E result = trees.head.root;
+        for (Cons<Tree<E>> rest = trees.tail; rest != null; rest = rest.tail) {
+            if (comparator.compare(rest.head.root, result) < 0) {
+                result = rest.head.root;
+            }
+        }
+        return result;
+    }
+
+    private static <T> Cons<T> reverse(Cons<T> list) {
+        Cons<T> result = null;
+        for (; list != null; list = list.tail) {
+            result = new Cons<>(list.head, result);
+        }
+        return result;
+    }
+
+    /**
+     * Копирование списка до элемента removed, хвост после него общий с исходным списком.
+     */
+    private static <T> Cons<T> without(Cons<T> list, T removed) {
+        if (list.head == removed) {
+            return list.tail;
+        }
+        return new Cons<>(list.head, without(list.tail, removed));
+    }
+
+    /**
+     * Неизменяемый односвязный список.
+     */
+    private static final class Cons<T> {
+        private final T head;
+
+        private final Cons<T> tail;
+
+        Cons(T head, Cons<T> tail) {
+            this.head = head;
+            this.tail = tail;
+        }
+    }
+
+    /**
+     * Косое биномиальное дерево ранга rank: корень, до rank дополнительных элементов
+     * не меньше корня и потомки по убыванию ранга.
+     */
+    private static final class Tree<E> {
+        private final E root;
+
+        private final int rank;
+
+        private final Cons<E> extras;
+
+        private final Cons<Tree<E>> children;
+
+        Tree(E root, int rank, Cons<E> extras, Cons<Tree<E>> children) {
+            this.root = root;
+            this.rank = rank;
+            this.extras = extras;
+            this.children = children;
+        }
+    }
+
+    private static final class HeapIterator<E> implements Iterator<E> {
+        private final Deque<Tree<E>> trees = new ArrayDeque<>();
+
+        private Cons<E> extras;
+
+        HeapIterator(Cons<Tree<E>> list) {
+            pushAll(list);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return extras != null || !trees.isEmpty();
+        }
+
+        @Override
+        public E next() {
+            if (extras != null) {
+                E element = extras.head;
+                extras = extras.tail;
+                return element;
+            }
+            if (trees.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+
+            Tree<E> tree = trees.pop();
+            pushAll(tree.children);
+            extras = tree.extras;
+            return tree.root;
+        }
+
+        private void pushAll(Cons<Tree<E>> list) {
+            for (; list != null; list = list.tail) {
+                trees.push(list.head);
+            }
+        }
+    }
+}
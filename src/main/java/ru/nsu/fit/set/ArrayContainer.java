@@ -0,0 +1,168 @@
+package ru.nsu.fit.set;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Контейнер из не более {@link Container#MAX_ARRAY} значений в отсортированном массиве.
+ */
+final class ArrayContainer extends Container {
+    private final char[] values;
+
+    ArrayContainer(char[] values) {
+        this.values = values;
+    }
+
+    static ArrayContainer of(char value) {
+        return new ArrayContainer(new char[]{value});
+    }
+
+    static ArrayContainer fromWords(long[] words, int cardinality) {
+        char[] values = new char[cardinality];
+        int count = 0;
+        for (int i = 0; i < WORDS; i++) {
+            for (long word = words[i]; word != 0; word &= word - 1) {
+                values[count++] = (char) (i * Long.SIZE + Long.numberOfTrailingZeros(word));
+            }
+        }
+        return new ArrayContainer(values);
+    }
+
+    static int sizeInBytes(int cardinality) {
+        return 16 + 2 * cardinality;
+    }
+
+    @Override
+    int cardinality() {
+        return values.length;
+    }
+
+    @Override
+    boolean contains(char value) {
+        return Arrays.binarySearch(values, value) >= 0;
+    }
+
+    @Override
+    Container add(char value) {
+        int index = Arrays.binarySearch(values, value);
+        if (index >= 0) {
+            return this;
+        }
+        if (values.length == MAX_ARRAY) {
+            long[] words = words();
+            words[value >>> 6] |= 1L << value;
+            return new BitmapContainer(words, MAX_ARRAY + 1);
+        }
+
+        int position = -index - 1;
+        char[] result = new char[values.length + 1];
+        System.arraycopy(values, 0, result, 0, position);
+        result[position] = value;
+        System.arraycopy(values, position, result, position + 1, values.length - position);
+        return new ArrayContainer(result);
+    }
+
+    @Override
+    Container remove(char value) {
+        int index = Arrays.binarySearch(values, value);
+        if (index < 0) {
+            return this;
+        }
+        if (values.length == 1) {
+            return null;
+        }
+
+        char[] result = new char[values.length - 1];
+        System.arraycopy(values, 0, result, 0, index);
+        System.arraycopy(values, index + 1, result, index, values.length - index - 1);
+        return new ArrayContainer(result);
+    }
+
+    @Override
+    long[] words() {
+        long[] words = new long[WORDS];
+        for (char value : values) {
+            words[value >>> 6] |= 1L << value;
+        }
+        return words;
+    }
+
+    @Override
+    int sizeInBytes() {
+        return sizeInBytes(values.length);
+    }
+
+    @Override
+    PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < values.length;
+            }
+
+            @Override
+            public int nextInt() {
+                if (index == values.length) {
+                    throw new NoSuchElementException();
+                }
+                return values[index++];
+            }
+        };
+    }
+
+    /**
+     * Значения этого контейнера, которые есть (keep = true) или которых нет (keep = false) в other.
+     *
+     * @return контейнер, либо null, если значений не осталось.
+     */
+    Container filter(Container other, boolean keep) {
+        char[] result = new char[values.length];
+        int count = 0;
+        for (char value : values) {
+            if (other.contains(value) == keep) {
+                result[count++] = value;
+            }
+        }
+
+        if (count == values.length) {
+            return this;
+        }
+        return count == 0 ? null : new ArrayContainer(Arrays.copyOf(result, count));
+    }
+
+    /**
+     * Слияние двух массивов, суммарный размер которых не больше {@link Container#MAX_ARRAY}.
+     */
+    Container union(ArrayContainer other) {
+        char[] result = new char[values.length + other.values.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < values.length && j < other.values.length) {
+            char value = values[i];
+            char otherValue = other.values[j];
+            if (value <= otherValue) {
+                i++;
+                j += value == otherValue ? 1 : 0;
+                result[count++] = value;
+            } else {
+                j++;
+                result[count++] = otherValue;
+            }
+        }
+        while (i < values.length) {
+            result[count++] = values[i++];
+        }
+        while (j < other.values.length) {
+            result[count++] = other.values[j++];
+        }
+
+        if (count == values.length) {
+            return this;
+        }
+        return new ArrayContainer(Arrays.copyOf(result, count));
+    }
+}
@@ -0,0 +1,169 @@
+package ru.nsu.fit.set;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Контейнер из более чем {@link Container#MAX_ARRAY} значений в битовой карте из 1024 слов.
+ * <p>
+ * Слова разбиты на {@link #CHUNKS} блоков по {@link #CHUNK_WORDS}, поэтому изменение одного значения
+ * копирует только его блок, а операции над контейнерами с общей историей пропускают общие блоки.
+ * </p>
+ */
+final class BitmapContainer extends Container {
+    static final int CHUNK_WORDS = 64;
+
+    static final int CHUNKS = WORDS / CHUNK_WORDS;
+
+    static final int SIZE_IN_BYTES = 16 + 8 * CHUNKS + (16 + 8 * CHUNK_WORDS) * CHUNKS;
+
+    private static final long[] EMPTY_CHUNK = new long[CHUNK_WORDS];
+
+    private final long[][] chunks;
+
+    private final int cardinality;
+
+    private BitmapContainer(long[][] chunks, int cardinality) {
+        this.chunks = chunks;
+        this.cardinality = cardinality;
+    }
+
+    BitmapContainer(long[] words, int cardinality) {
+        this(split(words), cardinality);
+    }
+
+    @Override
+    int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    boolean contains(char value) {
+        return (chunks[value >>> 12][value >>> 6 & CHUNK_WORDS - 1] & 1L << value) != 0;
+    }
+
+    @Override
+    Container add(char value) {
+        if (contains(value)) {
+            return this;
+        }
+        return new BitmapContainer(flip(value), cardinality + 1);
+    }
+
+    @Override
+    Container remove(char value) {
+        if (!contains(value)) {
+            return this;
+        }
+        if (cardinality - 1 <= MAX_ARRAY) {
+            long[] words = words();
+            words[value >>> 6] &= ~(1L << value);
+            return ArrayContainer.fromWords(words, cardinality - 1);
+        }
+        return new BitmapContainer(flip(value), cardinality - 1);
+    }
+
+    @Override
+    long[] words() {
+        long[] words = new long[WORDS];
+        for (int i = 0; i < CHUNKS; i++) {
+            System.arraycopy(chunks[i], 0, words, i * CHUNK_WORDS, CHUNK_WORDS);
+        }
+        return words;
+    }
+
+    @Override
+    int sizeInBytes() {
+        return SIZE_IN_BYTES;
+    }
+
+    /**
+     * Поблочная операция над двумя битовыми картами. Для общего блока результат
+     * - сам блок (sameChunk = true) или пустой блок (sameChunk = false).
+     *
+     * @return контейнер, либо null, если значений не осталось.
+     */
+    Container combine(BitmapContainer other, LongBinaryOperator operation, boolean sameChunk) {
+        long[][] result = new long[CHUNKS][];
+        int count = 0;
+        boolean unchanged = true;
+        for (int i = 0; i < CHUNKS; i++) {
+            long[] chunk = chunks[i];
+            long[] otherChunk = other.chunks[i];
+            if (chunk == otherChunk) {
+                result[i] = sameChunk ? chunk : EMPTY_CHUNK;
+                unchanged &= sameChunk;
+            } else {
+                unchanged = false;
+                result[i] = new long[CHUNK_WORDS];
+                for (int j = 0; j < CHUNK_WORDS; j++) {
+                    result[i][j] = operation.applyAsLong(chunk[j], otherChunk[j]);
+                }
+            }
+            for (long word : result[i]) {
+                count += Long.bitCount(word);
+            }
+        }
+
+        if (unchanged) {
+            return this;
+        }
+        if (count == 0) {
+            return null;
+        }
+        if (count <= MAX_ARRAY) {
+            return ArrayContainer.fromWords(new BitmapContainer(result, count).words(), count);
+        }
+        return new BitmapContainer(result, count);
+    }
+
+    @Override
+    PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int index;
+
+            private long word = chunks[0][0];
+
+            @Override
+            public boolean hasNext() {
+                while (word == 0 && index + 1 < WORDS) {
+                    index++;
+                    word = chunks[index / CHUNK_WORDS][index % CHUNK_WORDS];
+                }
+                return word != 0;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                int value = index * Long.SIZE + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Копия блоков с инвертированным битом value: копируется только его блок.
+     */
+    private long[][] flip(char value) {
+        long[][] result = chunks.clone();
+        int chunk = value >>> 12;
+        result[chunk] = chunks[chunk].clone();
+        result[chunk][value >>> 6 & CHUNK_WORDS - 1] ^= 1L << value;
+        return result;
+    }
+
+    private static long[][] split(long[] words) {
+        long[][] chunks = new long[CHUNKS][];
+        for (int i = 0; i < CHUNKS; i++) {
+            chunks[i] = new long[CHUNK_WORDS];
+            System.arraycopy(words, i * CHUNK_WORDS, chunks[i], 0, CHUNK_WORDS);
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,163 @@
+package ru.nsu.fit.set;
+
+import java.util.PrimitiveIterator;
+
+/**
+ * Неизменяемый контейнер {@link PersistentBitmap}: множество младших 16 бит чисел с одинаковыми старшими битами.
+ * <p>
+ * До {@link #MAX_ARRAY} значений хранятся отсортированным массивом, больше - битовой картой
+ * из {@link #WORDS} слов; {@link #runOptimize()} заменяет контейнер списком отрезков, если тот меньше.
+ * Изменения возвращают новый контейнер, либо этот, если множество не изменилось,
+ * либо null, если оно стало пустым.
+ * </p>
+ */
+abstract class Container {
+    static final int MAX_ARRAY = 4096;
+
+    static final int WORDS = 1024;
+
+    abstract int cardinality();
+
+    abstract boolean contains(char value);
+
+    abstract Container add(char value);
+
+    abstract Container remove(char value);
+
+    /**
+     * Получение значений в виде битовой карты.
+     *
+     * @return новый массив из {@link #WORDS} слов.
+     */
+    abstract long[] words();
+
+    /**
+     * Приблизительный размер контейнера в памяти.
+     *
+     * @return число байт.
+     */
+    abstract int sizeInBytes();
+
+    /**
+     * Обход значений по возрастанию.
+     *
+     * @return итератор.
+     */
+    abstract PrimitiveIterator.OfInt iterator();
+
+    /**
+     * Число отрезков подряд идущих значений.
+     */
+    int runCount() {
+        long[] words = words();
+        int runs = 0;
+        for (int i = 0; i < WORDS; i++) {
+            long word = words[i];
+            long next = i + 1 < WORDS ? words[i + 1] : 0;
+            runs += Long.bitCount(word & ~(word << 1));
+            if ((word >>> 63) == 1 && (next & 1) == 1) {
+                runs--;
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Выбор самого компактного представления тех же значений.
+     *
+     * @return этот контейнер либо новый, из отрезков, массива или битовой карты.
+     */
+    Container runOptimize() {
+        int runs = runCount();
+        int cardinality = cardinality();
+        int runBytes = RunContainer.sizeInBytes(runs);
+        int plainBytes = cardinality <= MAX_ARRAY ? ArrayContainer.sizeInBytes(cardinality) : BitmapContainer.SIZE_IN_BYTES;
+
+        if (runBytes < plainBytes) {
+            return this instanceof RunContainer ? this : RunContainer.fromWords(words(), runs, cardinality);
+        }
+        return this instanceof RunContainer ? fromWords(words()) : this;
+    }
+
+    Container and(Container other) {
+        if (this == other) {
+            return this;
+        }
+        if (this instanceof BitmapContainer bitmap && other instanceof BitmapContainer otherBitmap) {
+            return bitmap.combine(otherBitmap, (word, otherWord) -> word & otherWord, true);
+        }
+        if (this instanceof ArrayContainer array) {
+            return array.filter(other, true);
+        }
+        if (other instanceof ArrayContainer array) {
+            return array.filter(this, true);
+        }
+
+        long[] words = words();
+        long[] otherWords = other.words();
+        for (int i = 0; i < WORDS; i++) {
+            words[i] &= otherWords[i];
+        }
+        return fromWords(words);
+    }
+
+    Container or(Container other) {
+        if (this == other) {
+            return this;
+        }
+        if (this instanceof BitmapContainer bitmap && other instanceof BitmapContainer otherBitmap) {
+            return bitmap.combine(otherBitmap, (word, otherWord) -> word | otherWord, true);
+        }
+        if (this instanceof ArrayContainer array && other instanceof ArrayContainer otherArray
+                && array.cardinality() + otherArray.cardinality() <= MAX_ARRAY) {
+            return array.union(otherArray);
+        }
+
+        long[] words = words();
+        long[] otherWords = other.words();
+        for (int i = 0; i < WORDS; i++) {
+            words[i] |= otherWords[i];
+        }
+        return fromWords(words);
+    }
+
+    Container andNot(Container other) {
+        if (this == other) {
+            return null;
+        }
+        if (this instanceof BitmapContainer bitmap && other instanceof BitmapContainer otherBitmap) {
+            return bitmap.combine(otherBitmap, (word, otherWord) -> word & ~otherWord, false);
+        }
+        if (this instanceof ArrayContainer array) {
+            return array.filter(other, false);
+        }
+
+        long[] words = words();
+        long[] otherWords = other.words();
+        for (int i = 0; i < WORDS; i++) {
+            words[i] &= ~otherWords[i];
+        }
+        return fromWords(words);
+    }
+
+    /**
+     * Создание контейнера из битовой карты: массива или битовой карты по числу значений.
+     *
+     * @param words {@link #WORDS} слов, массив не копируется.
+     * @return контейнер, либо null, если значений нет.
+     */
+    static Container fromWords(long[] words) {
+        int cardinality = 0;
+        for (long word : words) {
+            cardinality += Long.bitCount(word);
+        }
+
+        if (cardinality == 0) {
+            return null;
+        }
+        if (cardinality <= MAX_ARRAY) {
+            return ArrayContainer.fromWords(words, cardinality);
+        }
+        return new BitmapContainer(words, cardinality);
+    }
+}
@@ -0,0 +1,300 @@
+package ru.nsu.fit.set;
+
+import ru.nsu.fit.util.BTree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Версия {@link PersistentHashSet}: хеш-таблица с открытой адресацией и линейным пробированием,
+ * ячейки которой - элементы Б-дерева. Пустая ячейка хранит null.
+ * <p>
+ * Таблица заполнена не больше чем наполовину, поэтому поиск просматривает O(1) ячеек,
+ * каждая за O(log n). Удаление сдвигает следующие элементы цепочки назад и не оставляет меток.
+ * </p>
+ * <p>
+ * Все изменяющие методы применяются только к свежей копии (созданной через {@link #copy()})
+ * и копируют пути до изменяемых ячеек.
+ * </p>
+ */
+final class HashTable<E> {
+    private static final int BITS = 5;
+
+    private static final int MIN_CAPACITY = 1 << BITS;
+
+    private BTree<E> slots;
+
+    private int size;
+
+    private HashTable(BTree<E> slots, int size) {
+        this.slots = slots;
+        this.size = size;
+    }
+
+    static <E> HashTable<E> empty() {
+        return new HashTable<>(emptySlots(MIN_CAPACITY), 0);
+    }
+
+    HashTable<E> copy() {
+        return new HashTable<>(new BTree<>(slots), size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return slots.getSize();
+    }
+
+    boolean contains(Object element) {
+        return element != null && find(element) >= 0;
+    }
+
+    /**
+     * Добавление элемента.
+     *
+     * @return true, если элемента не было.
+     */
+    boolean add(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        int index = find(element);
+        if (index >= 0) {
+            return false;
+        }
+
+        if (2 * (size + 1) > capacity()) {
+            resize(capacity() * 2);
+            index = find(element);
+        }
+
+        slots.set(-index - 1, element);
+        size++;
+        return true;
+    }
+
+    /**
+     * Удаление элемента со сдвигом следующих элементов цепочки на освободившееся место.
+     *
+     * @return true, если элемент был.
+     */
+    boolean remove(Object element) {
+        if (element == null) {
+            return false;
+        }
+
+        int hole = find(element);
+        if (hole < 0) {
+            return false;
+        }
+
+        int mask = capacity() - 1;
+        slots.set(hole, null);
+
+        for (int index = (hole + 1) & mask; ; index = (index + 1) & mask) {
+            E next = slots.get(index);
+            if (next == null) {
+                break;
+            }
+
+            int home = home(next);
+            boolean stays = hole <= index ? hole < home && home <= index : hole < home || home <= index;
+            if (!stays) {
+                slots.set(hole, next);
+                slots.set(index, null);
+                hole = index;
+            }
+        }
+
+        size--;
+        if (capacity() > MIN_CAPACITY && 8 * size < capacity()) {
+            resize(capacity() / 2);
+        }
+        return true;
+    }
+
+    /**
+     * Объединение. Если таблицы одного размера, элементы other берутся только
+     * из ячеек, отличающихся от ячеек этой таблицы.
+     */
+    HashTable<E> union(HashTable<E> other) {
+        if (slots == other.slots || other.size == 0) {
+            return this;
+        }
+
+        HashTable<E> result = copy();
+        if (capacity() == other.capacity()) {
+            for (int index : changedSlots(other)) {
+                E element = other.slots.get(index);
+                if (element != null) {
+                    result.add(element);
+                }
+            }
+        } else {
+            for (E element : other.elements()) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Пересечение. Если таблицы одного размера, проверяются только элементы
+     * из различающихся ячеек: элемент общей ячейки есть в обеих таблицах.
+     */
+    HashTable<E> intersection(HashTable<?> other) {
+        if (slots == other.slots) {
+            return this;
+        }
+
+        HashTable<E> result;
+        if (capacity() == other.capacity()) {
+            result = copy();
+            for (int index : changedSlots(other)) {
+                E element = slots.get(index);
+                if (element != null && !other.contains(element)) {
+                    result.remove(element);
+                }
+            }
+        } else if (size <= other.size) {
+            result = empty();
+            for (E element : elements()) {
+                if (other.contains(element)) {
+                    result.add(element);
+                }
+            }
+        } else {
+            result = empty();
+            for (Object element : other.elements()) {
+                int index = find(element);
+                if (index >= 0) {
+                    result.add(slots.get(index));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Разность. Если таблицы одного размера, результат собирается
+     * только из элементов различающихся ячеек.
+     */
+    HashTable<E> difference(HashTable<?> other) {
+        if (slots == other.slots) {
+            return empty();
+        }
+
+        HashTable<E> result;
+        if (capacity() == other.capacity()) {
+            result = empty();
+            for (int index : changedSlots(other)) {
+                E element = slots.get(index);
+                if (element != null && !other.contains(element)) {
+                    result.add(element);
+                }
+            }
+        } else if (size <= other.size) {
+            result = empty();
+            for (E element : elements()) {
+                if (!other.contains(element)) {
+                    result.add(element);
+                }
+            }
+        } else {
+            result = copy();
+            for (Object element : other.elements()) {
+                result.remove(element);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Обход непустых ячеек по порядку.
+     */
+    Iterable<E> elements() {
+        return () -> new Iterator<>() {
+            private int index = advance(0);
+
+            @Override
+            public boolean hasNext() {
+                return index < capacity();
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                E element = slots.get(index);
+                index = advance(index + 1);
+                return element;
+            }
+
+            private int advance(int from) {
+                int result = from;
+                while (result < capacity() && slots.get(result) == null) {
+                    result++;
+                }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Индексы ячеек, которые отличаются от ячеек таблицы того же размера.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Integer> changedSlots(HashTable<?> other) {
+        List<Integer> result = new ArrayList<>();
+        slots.diff((BTree<E>) other.slots, result::add);
+        return result;
+    }
+
+    /**
+     * Поиск элемента.
+     *
+     * @return индекс ячейки с элементом, либо -(индекс первой пустой ячейки) - 1.
+     */
+    private int find(Object element) {
+        int mask = capacity() - 1;
+
+        for (int index = home(element); ; index = (index + 1) & mask) {
+            E candidate = slots.get(index);
+            if (candidate == null) {
+                return -index - 1;
+            }
+            if (candidate.equals(element)) {
+                return index;
+            }
+        }
+    }
+
+    private int home(Object element) {
+        int hash = element.hashCode();
+        return (hash ^ (hash >>> 16)) & (capacity() - 1);
+    }
+
+    private void resize(int capacity) {
+        Iterable<E> elements = elements();
+        HashTable<E> resized = new HashTable<>(emptySlots(capacity), 0);
+        for (E element : elements) {
+            resized.add(element);
+        }
+
+        slots = resized.slots;
+    }
+
+    private static <E> BTree<E> emptySlots(int capacity) {
+        BTree<E> slots = new BTree<>(1, BITS);
+        slots.addAll(Collections.nCopies(capacity, null));
+        return slots;
+    }
+}
@@ -0,0 +1,431 @@
+package ru.nsu.fit.set;
+
+import ru.nsu.fit.Interfaces.VersionInterface;
+import ru.nsu.fit.util.VersionTree;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BinaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Персистентное сжатое множество целых чисел по схеме Roaring.
+ * <p>
+ * Число делится на старшие и младшие 16 бит. Старшие биты - путь в двухуровневом дереве
+ * из {@link SparseNode} по 8 бит на уровень, в листьях которого лежат контейнеры младших бит:
+ * массив, битовая карта или отрезки (см. {@link Container}). Изменение копирует путь
+ * из двух узлов и один контейнер, поэтому undo() и redo() - это переход к другому корню за O(1).
+ * </p>
+ * <p>
+ * {@link #and}, {@link #or} и {@link #andNot} обходят оба дерева вместе и пропускают
+ * общие узлы и контейнеры, поэтому для версий одного множества работают за время,
+ * пропорциональное различиям. Числа упорядочены как беззнаковые.
+ * </p>
+ */
+public class PersistentBitmap implements VersionInterface {
+    /**
+     * Число добавляемых в один контейнер чисел, начиная с которого контейнер
+     * собирается заново, а не копируется на каждое число.
+     */
+    private static final int BATCH = 64;
+
+    private final VersionTree<SparseNode<SparseNode<Container>>> versions = new VersionTree<>();
+
+    public PersistentBitmap() {
+        versions.commit(SparseNode.empty());
+    }
+
+    private PersistentBitmap(SparseNode<SparseNode<Container>> root) {
+        versions.commit(root == null ? SparseNode.empty() : root);
+    }
+
+    /**
+     * Создание множества из чисел.
+     *
+     * @param values числа.
+     * @return множество с одной версией.
+     */
+    public static PersistentBitmap of(int... values) {
+        PersistentBitmap bitmap = new PersistentBitmap();
+        bitmap.addAll(values);
+        return bitmap;
+    }
+
+    /**
+     * Создание множества, единственная версия которого - текущая версия этого, за O(1).
+     *
+     * @return новое множество, разделяющее узлы с этим.
+     */
+    public PersistentBitmap fork() {
+        return new PersistentBitmap(versions.getCurrent());
+    }
+
+    /**
+     * Создание структуры, единственная версия которой - версия versionId этой, за O(1).
+     *
+     * @param versionId номер версии.
+     * @return новое множество, разделяющее узлы с этим.
+     */
+    @Override
+    public PersistentBitmap forkAt(int versionId) {
+        return new PersistentBitmap(versions.get(versionId));
+    }
+
+    /**
+     * Получение версии по номеру без изменения текущего состояния, за O(1).
+     *
+     * @param versionId номер версии.
+     * @return новое множество с одной версией, разделяющее узлы с этим.
+     */
+    public PersistentBitmap at(int versionId) {
+        return new PersistentBitmap(versions.get(versionId));
+    }
+
+    @Override
+    public void undo() {
+        versions.undo();
+    }
+
+    @Override
+    public void redo() {
+        versions.redo();
+    }
+
+    @Override
+    public int getVersionId() {
+        return versions.getCurrentId();
+    }
+
+    @Override
+    public void checkout(int versionId) {
+        versions.checkout(versionId);
+    }
+
+    @Override
+    public int getVersionCount() {
+        return versions.size();
+    }
+
+    /**
+     * Подключение к истории внешней структуры, в которую вложено это множество.
+     *
+     * @param parent дерево версий внешней структуры.
+     */
+    @Override
+    public void setParentVersions(VersionTree<?> parent) {
+        versions.setParent(parent, this);
+    }
+
+    /**
+     * Получение числа элементов за O(1).
+     *
+     * @return мощность множества.
+     */
+    public long cardinality() {
+        return versions.getCurrent().cardinality();
+    }
+
+    public boolean isEmpty() {
+        return cardinality() == 0;
+    }
+
+    public boolean contains(int value) {
+        SparseNode<Container> leaf = versions.getCurrent().get(value >>> 24);
+        Container container = leaf == null ? null : leaf.get(value >>> 16 & 0xff);
+        return container != null && container.contains((char) value);
+    }
+
+    /**
+     * Добавление числа. Если оно уже есть, версия не создается.
+     *
+     * @param value число.
+     * @return true, если число добавлено.
+     */
+    public boolean add(int value) {
+        return commitIfChanged(add(versions.getCurrent(), value));
+    }
+
+    /**
+     * Добавление всех чисел одной версией.
+     *
+     * @param values числа.
+     * @return true, если множество изменилось.
+     */
+    public boolean addAll(int... values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        SparseNode<SparseNode<Container>> root = versions.getCurrent();
+        for (int from = 0, to; from < sorted.length; from = to) {
+            int high = sorted[from] >>> 16;
+            to = from + 1;
+            while (to < sorted.length && sorted[to] >>> 16 == high) {
+                to++;
+            }
+            root = to - from < BATCH ? addEach(root, sorted, from, to) : addBatch(root, sorted, from, to);
+        }
+        return commitIfChanged(root);
+    }
+
+    /**
+     * Удаление числа. Если его нет, версия не создается.
+     *
+     * @param value число.
+     * @return true, если число удалено.
+     */
+    public boolean remove(int value) {
+        SparseNode<SparseNode<Container>> root = versions.getCurrent();
+        SparseNode<Container> leaf = root.get(value >>> 24);
+        Container container = leaf == null ? null : leaf.get(value >>> 16 & 0xff);
+        if (container == null || !container.contains((char) value)) {
+            return false;
+        }
+
+        SparseNode<Container> newLeaf = leaf.with(value >>> 16 & 0xff, container.remove((char) value));
+        return commitIfChanged(root.with(value >>> 24, newLeaf.size() == 0 ? null : newLeaf));
+    }
+
+    /**
+     * Удаление всех чисел одной версией.
+     */
+    public void clear() {
+        commitIfChanged(SparseNode.empty());
+    }
+
+    /**
+     * Замена контейнеров на отрезки подряд идущих чисел там, где это компактнее, одной версией.
+     *
+     * @return true, если представление изменилось.
+     */
+    public boolean runOptimize() {
+        SparseNode<SparseNode<Container>> root = versions.getCurrent();
+        SparseNode<SparseNode<Container>> result = root;
+        for (int i = 0; i < root.size(); i++) {
+            SparseNode<Container> leaf = root.childAt(i);
+            SparseNode<Container> newLeaf = leaf;
+            for (int j = 0; j < leaf.size(); j++) {
+                newLeaf = newLeaf.with(leaf.keyAt(j), leaf.childAt(j).runOptimize());
+            }
+            result = result.with(root.keyAt(i), newLeaf);
+        }
+        return commitIfChanged(result);
+    }
+
+    /**
+     * Пересечение с другим множеством без изменения обоих.
+     *
+     * @param other множество.
+     * @return новое множество с одной версией.
+     */
+    public PersistentBitmap and(PersistentBitmap other) {
+        return combine(other, false, false, Container::and);
+    }
+
+    /**
+     * Объединение с другим множеством без изменения обоих.
+     *
+     * @param other множество.
+     * @return новое множество с одной версией.
+     */
+    public PersistentBitmap or(PersistentBitmap other) {
+        return combine(other, true, true, Container::or);
+    }
+
+    /**
+     * Разность с другим множеством без изменения обоих.
+     *
+     * @param other множество.
+     * @return новое множество с одной версией из чисел этого, которых нет в other.
+     */
+    public PersistentBitmap andNot(PersistentBitmap other) {
+        return combine(other, true, false, Container::andNot);
+    }
+
+    /**
+     * Приблизительный размер текущей версии в памяти, включая узлы, общие с другими версиями.
+     *
+     * @return число байт.
+     */
+    public long sizeInBytes() {
+        SparseNode<SparseNode<Container>> root = versions.getCurrent();
+        long bytes = nodeSizeInBytes(root.size());
+        for (int i = 0; i < root.size(); i++) {
+            SparseNode<Container> leaf = root.childAt(i);
+            bytes += nodeSizeInBytes(leaf.size());
+            for (int j = 0; j < leaf.size(); j++) {
+                bytes += leaf.childAt(j).sizeInBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Обход чисел текущей версии по возрастанию как беззнаковых.
+     * Изменения множества во время обхода на него не влияют.
+     *
+     * @return итератор.
+     */
+    public PrimitiveIterator.OfInt iterator() {
+        return new BitmapIterator(versions.getCurrent());
+    }
+
+    public IntStream stream() {
+        return StreamSupport.intStream(Spliterators.spliterator(iterator(), cardinality(),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.IMMUTABLE | Spliterator.NONNULL), false);
+    }
+
+    public int[] toArray() {
+        return stream().toArray();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PersistentBitmap other)) {
+            return false;
+        }
+        return cardinality() == other.cardinality() && andNot(other).isEmpty();
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (PrimitiveIterator.OfInt iterator = iterator(); iterator.hasNext(); ) {
+            hash += iterator.nextInt();
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (PrimitiveIterator.OfInt iterator = iterator(); iterator.hasNext(); ) {
+            builder.append(Integer.toUnsignedString(iterator.nextInt()));
+            if (iterator.hasNext()) {
+                builder.append(", ");
+            }
+        }
+        return builder.append("}").toString();
+    }
+
+    private boolean commitIfChanged(SparseNode<SparseNode<Container>> root) {
+        if (root == versions.getCurrent()) {
+            return false;
+        }
+
+        versions.commit(root);
+        return true;
+    }
+
+    private PersistentBitmap combine(PersistentBitmap other, boolean keepLeft, boolean keepRight,
+                                     BinaryOperator<Container> operation) {
+        SparseNode<SparseNode<Container>> root = versions.getCurrent();
+        SparseNode<SparseNode<Container>> otherRoot = other.versions.getCurrent();
+        boolean difference = keepLeft && !keepRight;
+        BinaryOperator<SparseNode<Container>> leaves = (leaf, otherLeaf) -> leaf == otherLeaf
+                ? difference ? null : leaf
+                : SparseNode.combine(leaf, otherLeaf, keepLeft, keepRight, operation);
+
+        if (root == otherRoot) {
+            return new PersistentBitmap(difference ? null : root);
+        }
+        return new PersistentBitmap(SparseNode.combine(root, otherRoot, keepLeft, keepRight, leaves));
+    }
+
+    private static SparseNode<SparseNode<Container>> add(SparseNode<SparseNode<Container>> root, int value) {
+        SparseNode<Container> leaf = root.get(value >>> 24);
+        if (leaf == null) {
+            leaf = SparseNode.empty();
+        }
+
+        Container container = leaf.get(value >>> 16 & 0xff);
+        Container newContainer = container == null ? ArrayContainer.of((char) value) : container.add((char) value);
+        return root.with(value >>> 24, leaf.with(value >>> 16 & 0xff, newContainer));
+    }
+
+    private static SparseNode<SparseNode<Container>> addEach(SparseNode<SparseNode<Container>> root,
+                                                             int[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            root = add(root, values[i]);
+        }
+        return root;
+    }
+
+    /**
+     * Добавление чисел с одинаковыми старшими 16 битами через битовую карту контейнера,
+     * чтобы не копировать контейнер на каждое число.
+     */
+    private static SparseNode<SparseNode<Container>> addBatch(SparseNode<SparseNode<Container>> root,
+                                                              int[] values, int from, int to) {
+        SparseNode<Container> leaf = root.get(values[from] >>> 24);
+        if (leaf == null) {
+            leaf = SparseNode.empty();
+        }
+
+        int key = values[from] >>> 16 & 0xff;
+        Container container = leaf.get(key);
+        long[] words = container == null ? new long[Container.WORDS] : container.words();
+        for (int i = from; i < to; i++) {
+            words[values[i] >>> 6 & Container.WORDS - 1] |= 1L << values[i];
+        }
+
+        Container newContainer = Container.fromWords(words);
+        if (container != null && newContainer.cardinality() == container.cardinality()) {
+            return root;
+        }
+        return root.with(values[from] >>> 24, leaf.with(key, newContainer));
+    }
+
+    private static long nodeSizeInBytes(int children) {
+        return 32 + 6L * children;
+    }
+
+    private static final class BitmapIterator implements PrimitiveIterator.OfInt {
+        private final SparseNode<SparseNode<Container>> root;
+
+        private int rootIndex;
+
+        private int leafIndex;
+
+        private int high;
+
+        private PrimitiveIterator.OfInt container;
+
+        BitmapIterator(SparseNode<SparseNode<Container>> root) {
+            this.root = root;
+            this.leafIndex = -1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (container == null || !container.hasNext()) {
+                if (rootIndex == root.size()) {
+                    return false;
+                }
+
+                SparseNode<Container> leaf = root.childAt(rootIndex);
+                if (++leafIndex == leaf.size()) {
+                    rootIndex++;
+                    leafIndex = -1;
+                    container = null;
+                    continue;
+                }
+
+                high = root.keyAt(rootIndex) << 24 | leaf.keyAt(leafIndex) << 16;
+                container = leaf.childAt(leafIndex).iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return high | container.nextInt();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package ru.nsu.fit.set;
+
+import ru.nsu.fit.Interfaces.VersionInterface;
+import ru.nsu.fit.util.VersionTree;
+
+import java.util.*;
+
+/**
+ * Персистентное множество на основе хеш-таблицы.
+ * <p>
+ * Каждая версия - хеш-таблица с открытой адресацией поверх Б-дерева (см. {@link HashTable}),
+ * ячейки которой хранят сами элементы, без пар и значений. add(), remove() и contains()
+ * работают за O(log n), изменение копирует пути до измененных ячеек, поэтому undo() и redo()
+ * - это переход к другой версии за O(1). Элементы не могут быть null.
+ * </p>
+ * <p>
+ * Объединение, пересечение и разность двух множеств с общей историей сравнивают таблицы
+ * поддеревьями и пропускают общие, поэтому работают за время, пропорциональное различию.
+ * </p>
+ */
+public class PersistentHashSet<E> extends AbstractSet<E> implements VersionInterface {
+    private final VersionTree<HashTable<E>> versions = new VersionTree<>();
+
+    public PersistentHashSet() {
+        versions.commit(HashTable.empty());
+    }
+
+    public PersistentHashSet(Collection<? extends E> elements) {
+        this();
+        addAll(elements);
+    }
+
+    private PersistentHashSet(HashTable<E> table) {
+        versions.commit(table);
+    }
+
+    /**
+     * Создание множества, единственная версия которого - текущая версия этого, за O(1).
+     *
+     * @return новое множество, разделяющее узлы с этим.
+     */
+    public PersistentHashSet<E> fork() {
+        return new PersistentHashSet<>(versions.getCurrent());
+    }
+
+    /**
+     * Создание структуры, единственная версия которой - версия versionId этой, за O(1).
+     *
+     * @param versionId номер версии.
+     * @return новое множество, разделяющее узлы с этим.
+     */
+    @Override
+    public PersistentHashSet<E> forkAt(int versionId) {
+        return new PersistentHashSet<>(versions.get(versionId));
+    }
+
+    @Override
+    public void undo() {
+        versions.undo();
+    }
+
+    @Override
+    public void redo() {
+        versions.redo();
+    }
+
+    @Override
+    public int getVersionId() {
+        return versions.getCurrentId();
+    }
+
+    @Override
+    public void checkout(int versionId) {
+        versions.checkout(versionId);
+    }
+
+    @Override
+    public int getVersionCount() {
+        return versions.size();
+    }
+
+    /**
+     * Подключение к истории внешней структуры, в которую вложено это множество.
+     *
+     * @param parent дерево версий внешней структуры.
+     */
+    @Override
+    public void setParentVersions(VersionTree<?> parent) {
+        versions.setParent(parent, this);
+    }
+
+    /**
+     * Получение версии по номеру без изменения текущего состояния, за O(1).
+     *
+     * @param versionId номер версии.
+     * @return неизменяемое множество.
+     */
+    public Set<E> at(int versionId) {
+        return Collections.unmodifiableSet(new PersistentHashSet<>(versions.get(versionId)));
+    }
+
+    @Override
+    public int size() {
+        return versions.getCurrent().size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return versions.getCurrent().contains(o);
+    }
+
+    /**
+     * Добавление элемента. Если элемент уже есть, версия не создается.
+     *
+     * @param element элемент.
+     * @return true, если элемент добавлен.
+     */
+    @Override
+    public boolean add(E element) {
+        HashTable<E> table = versions.getCurrent().copy();
+        if (!table.add(element)) {
+            return false;
+        }
+
+        versions.commit(table);
+        return true;
+    }
+
+    /**
+     * Удаление элемента. Если элемента нет, версия не создается.
+     *
+     * @param o элемент.
+     * @return true, если элемент удален.
+     */
+    @Override
+    public boolean remove(Object o) {
+        HashTable<E> table = versions.getCurrent().copy();
+        if (!table.remove(o)) {
+            return false;
+        }
+
+        versions.commit(table);
+        return true;
+    }
+
+    /**
+     * Добавление всех элементов одной версией.
+     *
+     * @param c элементы.
+     * @return true, если множество изменилось.
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        HashTable<E> current = versions.getCurrent();
+        HashTable<E> table;
+
+        if (c instanceof PersistentHashSet<? extends E> other) {
+            table = current.union(tableOf(other));
+        } else {
+            table = current.copy();
+            for (E element : c) {
+                table.add(element);
+            }
+        }
+
+        return commitIfChanged(current, table);
+    }
+
+    /**
+     * Оставление только элементов из c одной версией.
+     *
+     * @param c элементы.
+     * @return true, если множество изменилось.
+     */
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        HashTable<E> current = versions.getCurrent();
+        HashTable<E> table;
+
+        if (c instanceof PersistentHashSet<?> other) {
+            table = current.intersection(other.versions.getCurrent());
+        } else {
+            table = current.copy();
+            for (E element : current.elements()) {
+                if (!c.contains(element)) {
+                    table.remove(element);
+                }
+            }
+        }
+
+        return commitIfChanged(current, table);
+    }
+
+    /**
+     * Удаление всех элементов c одной версией.
+     *
+     * @param c элементы.
+     * @return true, если множество изменилось.
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        HashTable<E> current = versions.getCurrent();
+        HashTable<E> table;
+
+        if (c instanceof PersistentHashSet<?> other) {
+            table = current.difference(other.versions.getCurrent());
+        } else {
+            table = current.copy();
+            for (Object element : c) {
+                table.remove(element);
+            }
+        }
+
+        return commitIfChanged(current, table);
+    }
+
+    /**
+     * Удаление всех элементов одной версией.
+     */
+    @Override
+    public void clear() {
+        if (!isEmpty()) {
+            versions.commit(HashTable.empty());
+        }
+    }
+
+    /**
+     * Объединение с другим множеством без изменения обоих.
+     *
+     * @param other множество.
+     * @return новое множество с одной версией.
+     */
+    public PersistentHashSet<E> union(PersistentHashSet<? extends E> other) {
+        return new PersistentHashSet<>(versions.getCurrent().union(tableOf(other)));
+    }
+
+    /**
+     * Пересечение с другим множеством без изменения обоих.
+     *
+     * @param other множество.
+     * @return новое множество с одной версией.
+     */
+    public PersistentHashSet<E> intersection(PersistentHashSet<?> other) {
+        return new PersistentHashSet<>(versions.getCurrent().intersection(other.versions.getCurrent()));
+    }
+
+    /**
+     * Разность с другим множеством без изменения обоих.
+     *
+     * @param other множество.
+     * @return новое множество с одной версией из элементов этого, которых нет в other.
+     */
+    public PersistentHashSet<E> difference(PersistentHashSet<?> other) {
+        return new PersistentHashSet<>(versions.getCurrent().difference(other.versions.getCurrent()));
+    }
+
+    /**
+     * Обход элементов текущей версии. Изменения множества во время обхода на него не влияют.
+     *
+     * @return итератор.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return versions.getCurrent().elements().iterator();
+    }
+
+    /**
+     * Запись результата групповой операции. Операции только добавляют
+     * либо только удаляют элементы, поэтому множество изменилось, если изменился размер.
+     */
+    private boolean commitIfChanged(HashTable<E> current, HashTable<E> table) {
+        if (table.size() == current.size()) {
+            return false;
+        }
+
+        versions.commit(table);
+        return true;
+    }
+
+    /**
+     * Таблица множества с элементами подтипа E. Таблицы только читаются, поэтому приведение безопасно.
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> HashTable<E> tableOf(PersistentHashSet<? extends E> set) {
+        return (HashTable<E>) set.versions.getCurrent();
+    }
+}
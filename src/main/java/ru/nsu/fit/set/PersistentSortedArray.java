@@ -0,0 +1,256 @@
+package ru.nsu.fit.set;
+
+import ru.nsu.fit.Interfaces.VersionInterface;
+import ru.nsu.fit.util.VersionTree;
+
+import java.util.*;
+
+/**
+ * Персистентный упорядоченный массив: список, элементы которого всегда идут по возрастанию.
+ * <p>
+ * Элементы хранятся в АВЛ-дереве с размерами поддеревьев (см. {@link SortedNode}), поэтому
+ * вставка на свое место, удаление, get(index) и binarySearch() работают за O(log n).
+ * В отличие от {@link PersistentSortedSet}, равные элементы допускаются: новый элемент
+ * встает после равных ему. set() и вставка по индексу не поддерживаются, так как нарушили бы порядок.
+ * Элементы не могут быть null.
+ * </p>
+ */
+public class PersistentSortedArray<E> extends AbstractList<E> implements VersionInterface {
+    private final VersionTree<SortedNode<E>> versions = new VersionTree<>();
+
+    private final Comparator<? super E> comparator;
+
+    /**
+     * Создание массива с естественным порядком элементов.
+     */
+    @SuppressWarnings("unchecked")
+    public PersistentSortedArray() {
+        this((Comparator<? super E>) Comparator.naturalOrder());
+    }
+
+    public PersistentSortedArray(Comparator<? super E> comparator) {
+        this(null, comparator);
+    }
+
+    private PersistentSortedArray(SortedNode<E> root, Comparator<? super E> comparator) {
+        this.comparator = Objects.requireNonNull(comparator);
+        versions.commit(root);
+    }
+
+    /**
+     * Создание массива, единственная версия которого - текущая версия этого, за O(1).
+     *
+     * @return новый массив, разделяющий узлы с этим.
+     */
+    public PersistentSortedArray<E> fork() {
+        return new PersistentSortedArray<>(versions.getCurrent(), comparator);
+    }
+
+    /**
+     * Создание структуры, единственная версия которой - версия versionId этой, за O(1).
+     *
+     * @param versionId номер версии.
+     * @return новый массив, разделяющий узлы с этим.
+     */
+    @Override
+    public PersistentSortedArray<E> forkAt(int versionId) {
+        return new PersistentSortedArray<>(versions.get(versionId), comparator);
+    }
+
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public void undo() {
+        versions.undo();
+    }
+
+    @Override
+    public void redo() {
+        versions.redo();
+    }
+
+    @Override
+    public int getVersionId() {
+        return versions.getCurrentId();
+    }
+
+    @Override
+    public void checkout(int versionId) {
+        versions.checkout(versionId);
+    }
+
+    @Override
+    public int getVersionCount() {
+        return versions.size();
+    }
+
+    /**
+     * Подключение к истории внешней структуры, в которую вложен этот массив.
+     *
+     * @param parent дерево версий внешней структуры.
+     */
+    @Override
+    public void setParentVersions(VersionTree<?> parent) {
+        versions.setParent(parent, this);
+    }
+
+    /**
+     * Получение версии по номеру без изменения текущего состояния, за O(1).
+     *
+     * @param versionId номер версии.
+     * @return неизменяемое представление версии.
+     */
+    public List<E> at(int versionId) {
+        return Collections.unmodifiableList(new PersistentSortedArray<>(versions.get(versionId), comparator));
+    }
+
+    @Override
+    public int size() {
+        return SortedNode.size(versions.getCurrent());
+    }
+
+    /**
+     * Получение элемента по индексу за O(log n).
+     *
+     * @param index индекс элемента.
+     * @return элемент.
+     */
+    @Override
+    public E get(int index) {
+        Objects.checkIndex(index, size());
+        return SortedNode.get(versions.getCurrent(), index);
+    }
+
+    /**
+     * Вставка элемента на место, сохраняющее порядок, после равных ему.
+     *
+     * @param element элемент.
+     * @return true.
+     */
+    @Override
+    public boolean add(E element) {
+        Objects.requireNonNull(element);
+        SortedNode<E> root = versions.getCurrent();
+        versions.commit(SortedNode.insertAt(root, SortedNode.rank(root, element, comparator, true), element));
+        return true;
+    }
+
+    /**
+     * Вставка всех элементов одной версией.
+     *
+     * @param c элементы.
+     * @return true, если массив изменился.
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        SortedNode<E> root = versions.getCurrent();
+
+        for (E element : c) {
+            Objects.requireNonNull(element);
+            root = SortedNode.insertAt(root, SortedNode.rank(root, element, comparator, true), element);
+        }
+
+        return commitIfChanged(root);
+    }
+
+    /**
+     * Удаление элемента по индексу.
+     *
+     * @param index индекс элемента.
+     * @return удаленный элемент.
+     */
+    @Override
+    public E remove(int index) {
+        E element = get(index);
+        versions.commit(SortedNode.deleteAt(versions.getCurrent(), index));
+        return element;
+    }
+
+    /**
+     * Удаление первого элемента, равного o. Если элемента нет, версия не создается.
+     *
+     * @param o элемент.
+     * @return true, если элемент удален.
+     */
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+
+        versions.commit(SortedNode.deleteAt(versions.getCurrent(), index));
+        return true;
+    }
+
+    /**
+     * Удаление всех элементов одной версией.
+     */
+    @Override
+    public void clear() {
+        commitIfChanged(null);
+    }
+
+    /**
+     * Поиск элемента спуском по дереву за O(log n).
+     *
+     * @param key искомый элемент.
+     * @return индекс первого элемента, равного key, либо (-(точка вставки) - 1), как в
+     * {@link Collections#binarySearch(List, Object, Comparator)}.
+     */
+    public int binarySearch(E key) {
+        SortedNode<E> root = versions.getCurrent();
+        int index = SortedNode.rank(root, key, comparator, false);
+        return index < size() && comparator.compare(SortedNode.get(root, index), key) == 0 ? index : -index - 1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int indexOf(Object o) {
+        if (o == null) {
+            return -1;
+        }
+
+        int index = binarySearch((E) o);
+        return index < 0 ? -1 : index;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int lastIndexOf(Object o) {
+        if (o == null) {
+            return -1;
+        }
+
+        SortedNode<E> root = versions.getCurrent();
+        int index = SortedNode.rank(root, (E) o, comparator, true) - 1;
+        return index >= 0 && comparator.compare(SortedNode.get(root, index), (E) o) == 0 ? index : -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Обход элементов текущей версии по возрастанию.
+     * Изменения массива во время обхода на него не влияют.
+     *
+     * @return итератор.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new PersistentSortedSet.SortedIterator<>(versions.getCurrent());
+    }
+
+    private boolean commitIfChanged(SortedNode<E> root) {
+        if (root == versions.getCurrent()) {
+            return false;
+        }
+
+        versions.commit(root);
+        return true;
+    }
+}
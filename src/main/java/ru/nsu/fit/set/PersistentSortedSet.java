@@ -0,0 +1,355 @@
+package ru.nsu.fit.set;
+
+import ru.nsu.fit.Interfaces.VersionInterface;
+import ru.nsu.fit.util.VersionTree;
+
+import java.util.*;
+
+/**
+ * Персистентное упорядоченное множество на основе АВЛ-дерева с копированием пути.
+ * <p>
+ * add(), remove() и contains() работают за O(log n), undo() и redo() - переход к другому
+ * корню за O(1). Объединение, пересечение и разность строятся на разделении и соединении
+ * деревьев и не обходят поддеревья, общие для обоих множеств.
+ * </p>
+ */
+public class PersistentSortedSet<E> extends AbstractSet<E> implements VersionInterface {
+    private final VersionTree<SortedNode<E>> versions = new VersionTree<>();
+
+    private final Comparator<? super E> comparator;
+
+    /**
+     * Создание множества с естественным порядком элементов.
+     */
+    @SuppressWarnings("unchecked")
+    public PersistentSortedSet() {
+        this((Comparator<? super E>) Comparator.naturalOrder());
+    }
+
+    public PersistentSortedSet(Comparator<? super E> comparator) {
+        this(null, comparator);
+    }
+
+    private PersistentSortedSet(SortedNode<E> root, Comparator<? super E> comparator) {
+        this.comparator = Objects.requireNonNull(comparator);
+        versions.commit(root);
+    }
+
+    /**
+     * Создание множества, единственная версия которого - текущая версия этого, за O(1).
+     *
+     * @return новое множество, разделяющее узлы с этим.
+     */
+    public PersistentSortedSet<E> fork() {
+        return new PersistentSortedSet<>(versions.getCurrent(), comparator);
+    }
+
+    /**
+     * Создание структуры, единственная версия которой - версия versionId этой, за O(1).
+     *
+     * @param versionId номер версии.
+     * @return новое множество, разделяющее узлы с этим.
+     */
+    @Override
+    public PersistentSortedSet<E> forkAt(int versionId) {
+        return new PersistentSortedSet<>(versions.get(versionId), comparator);
+    }
+
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public void undo() {
+        versions.undo();
+    }
+
+    @Override
+    public void redo() {
+        versions.redo();
+    }
+
+    @Override
+    public int getVersionId() {
+        return versions.getCurrentId();
+    }
+
+    @Override
+    public void checkout(int versionId) {
+        versions.checkout(versionId);
+    }
+
+    @Override
+    public int getVersionCount() {
+        return versions.size();
+    }
+
+    /**
+     * Подключение к истории внешней структуры, в которую вложено это множество.
+     *
+     * @param parent дерево версий внешней структуры.
+     */
+    @Override
+    public void setParentVersions(VersionTree<?> parent) {
+        versions.setParent(parent, this);
+    }
+
+    /**
+     * Получение версии по номеру без изменения текущего состояния, за O(1).
+     *
+     * @param versionId номер версии.
+     * @return неизменяемое множество.
+     */
+    public Set<E> at(int versionId) {
+        return Collections.unmodifiableSet(new PersistentSortedSet<>(versions.get(versionId), comparator));
+    }
+
+    @Override
+    public int size() {
+        return SortedNode.size(versions.getCurrent());
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o != null && SortedNode.contains(versions.getCurrent(), o, comparator);
+    }
+
+    /**
+     * Добавление элемента. Если элемент уже есть, версия не создается.
+     *
+     * @param element элемент.
+     * @return true, если элемент добавлен.
+     */
+    @Override
+    public boolean add(E element) {
+        Objects.requireNonNull(element);
+        return commitIfChanged(SortedNode.insert(versions.getCurrent(), element, comparator));
+    }
+
+    /**
+     * Удаление элемента. Если элемента нет, версия не создается.
+     *
+     * @param o элемент.
+     * @return true, если элемент удален.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o) {
+        return o != null && commitIfChanged(SortedNode.delete(versions.getCurrent(), (E) o, comparator));
+    }
+
+    /**
+     * Получение наименьшего элемента.
+     *
+     * @return наименьший элемент.
+     * @throws NoSuchElementException если множество пусто.
+     */
+    public E first() {
+        return SortedNode.first(nonEmptyRoot()).element;
+    }
+
+    /**
+     * Получение наибольшего элемента.
+     *
+     * @return наибольший элемент.
+     * @throws NoSuchElementException если множество пусто.
+     */
+    public E last() {
+        return SortedNode.last(nonEmptyRoot()).element;
+    }
+
+    /**
+     * Добавление всех элементов одной версией.
+     *
+     * @param c элементы.
+     * @return true, если множество изменилось.
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        SortedNode<E> root = versions.getCurrent();
+        PersistentSortedSet<E> other = compatible(c);
+
+        if (other != null) {
+            root = SortedNode.union(root, other.versions.getCurrent(), comparator);
+        } else {
+            for (E element : c) {
+                root = SortedNode.insert(root, Objects.requireNonNull(element), comparator);
+            }
+        }
+
+        return commitIfChanged(root);
+    }
+
+    /**
+     * Оставление только элементов из c одной версией.
+     *
+     * @param c элементы.
+     * @return true, если множество изменилось.
+     */
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        SortedNode<E> root = versions.getCurrent();
+        PersistentSortedSet<E> other = compatible(c);
+
+        if (other != null) {
+            root = SortedNode.intersection(root, other.versions.getCurrent(), comparator);
+        } else {
+            for (E element : this) {
+                if (!c.contains(element)) {
+                    root = SortedNode.delete(root, element, comparator);
+                }
+            }
+        }
+
+        return commitIfChanged(root);
+    }
+
+    /**
+     * Удаление всех элементов c одной версией.
+     *
+     * @param c элементы.
+     * @return true, если множество изменилось.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean removeAll(Collection<?> c) {
+        SortedNode<E> root = versions.getCurrent();
+        PersistentSortedSet<E> other = compatible(c);
+
+        if (other != null) {
+            root = SortedNode.difference(root, other.versions.getCurrent(), comparator);
+        } else {
+            for (Object element : c) {
+                if (contains(element)) {
+                    root = SortedNode.delete(root, (E) element, comparator);
+                }
+            }
+        }
+
+        return commitIfChanged(root);
+    }
+
+    /**
+     * Удаление всех элементов одной версией.
+     */
+    @Override
+    public void clear() {
+        commitIfChanged(null);
+    }
+
+    /**
+     * Объединение с другим множеством с тем же порядком без изменения обоих.
+     *
+     * @param other множество.
+     * @return новое множество с одной версией.
+     */
+    public PersistentSortedSet<E> union(PersistentSortedSet<E> other) {
+        checkComparator(other);
+        return new PersistentSortedSet<>(
+                SortedNode.union(versions.getCurrent(), other.versions.getCurrent(), comparator), comparator);
+    }
+
+    /**
+     * Пересечение с другим множеством с тем же порядком без изменения обоих.
+     *
+     * @param other множество.
+     * @return новое множество с одной версией.
+     */
+    public PersistentSortedSet<E> intersection(PersistentSortedSet<E> other) {
+        checkComparator(other);
+        return new PersistentSortedSet<>(
+                SortedNode.intersection(versions.getCurrent(), other.versions.getCurrent(), comparator), comparator);
+    }
+
+    /**
+     * Разность с другим множеством с тем же порядком без изменения обоих.
+     *
+     * @param other множество.
+     * @return новое множество с одной версией из элементов этого, которых нет в other.
+     */
+    public PersistentSortedSet<E> difference(PersistentSortedSet<E> other) {
+        checkComparator(other);
+        return new PersistentSortedSet<>(
+                SortedNode.difference(versions.getCurrent(), other.versions.getCurrent(), comparator), comparator);
+    }
+
+    /**
+     * Обход элементов текущей версии по возрастанию.
+     * Изменения множества во время обхода на него не влияют.
+     *
+     * @return итератор.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new SortedIterator<>(versions.getCurrent());
+    }
+
+    /**
+     * Фиксация root, если множество изменилось. Операции только добавляют или только удаляют
+     * элементы, а объединение и пересечение перестраивают узлы даже без изменений,
+     * поэтому изменение определяется по размеру.
+     */
+    private boolean commitIfChanged(SortedNode<E> root) {
+        if (SortedNode.size(root) == SortedNode.size(versions.getCurrent())) {
+            return false;
+        }
+
+        versions.commit(root);
+        return true;
+    }
+
+    private SortedNode<E> nonEmptyRoot() {
+        SortedNode<E> root = versions.getCurrent();
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        return root;
+    }
+
+    /**
+     * Получение c как множества с тем же порядком, если операцию можно выполнить над деревьями.
+     */
+    @SuppressWarnings("unchecked")
+    private PersistentSortedSet<E> compatible(Collection<?> c) {
+        if (c instanceof PersistentSortedSet<?> other && other.comparator.equals(comparator)) {
+            return (PersistentSortedSet<E>) other;
+        }
+        return null;
+    }
+
+    private void checkComparator(PersistentSortedSet<E> other) {
+        if (!other.comparator.equals(comparator)) {
+            throw new IllegalArgumentException("Sets have different order");
+        }
+    }
+
+    static class SortedIterator<E> implements Iterator<E> {
+        private final Deque<SortedNode<E>> stack = new ArrayDeque<>();
+
+        SortedIterator(SortedNode<E> root) {
+            pushLeft(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public E next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+
+            SortedNode<E> node = stack.pop();
+            pushLeft(node.right);
+            return node.element;
+        }
+
+        private void pushLeft(SortedNode<E> node) {
+            for (; node != null; node = node.left) {
+                stack.push(node);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package ru.nsu.fit.set;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Контейнер из отрезков подряд идущих значений: пары (начало, длина - 1) по возрастанию начала.
+ * Создается {@link Container#runOptimize()}, изменения переводят его в массив или битовую карту.
+ */
+final class RunContainer extends Container {
+    private final char[] runs;
+
+    private final int cardinality;
+
+    private RunContainer(char[] runs, int cardinality) {
+        this.runs = runs;
+        this.cardinality = cardinality;
+    }
+
+    static RunContainer fromWords(long[] words, int runCount, int cardinality) {
+        char[] runs = new char[2 * runCount];
+        int count = 0;
+        int start = -1;
+        for (int value = 0; value <= WORDS * Long.SIZE; value++) {
+            boolean set = value < WORDS * Long.SIZE && (words[value >>> 6] & 1L << value) != 0;
+            if (set && start < 0) {
+                start = value;
+            } else if (!set && start >= 0) {
+                runs[count++] = (char) start;
+                runs[count++] = (char) (value - 1 - start);
+                start = -1;
+            }
+        }
+        return new RunContainer(runs, cardinality);
+    }
+
+    static int sizeInBytes(int runCount) {
+        return 16 + 4 * runCount;
+    }
+
+    @Override
+    int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    boolean contains(char value) {
+        int low = 0;
+        int high = runs.length / 2 - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int start = runs[2 * middle];
+            if (value < start) {
+                high = middle - 1;
+            } else if (value > start + runs[2 * middle + 1]) {
+                low = middle + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    Container add(char value) {
+        return contains(value) ? this : fromWords(words()).add(value);
+    }
+
+    @Override
+    Container remove(char value) {
+        return contains(value) ? fromWords(words()).remove(value) : this;
+    }
+
+    @Override
+    int runCount() {
+        return runs.length / 2;
+    }
+
+    @Override
+    long[] words() {
+        long[] words = new long[WORDS];
+        for (int i = 0; i < runs.length; i += 2) {
+            int end = runs[i] + runs[i + 1];
+            for (int value = runs[i]; value <= end; value++) {
+                words[value >>> 6] |= 1L << value;
+            }
+        }
+        return words;
+    }
+
+    @Override
+    int sizeInBytes() {
+        return sizeInBytes(runs.length / 2);
+    }
+
+    @Override
+    PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int run;
+
+            private int offset;
+
+            @Override
+            public boolean hasNext() {
+                return run < runs.length;
+            }
+
+            @Override
+            public int nextInt() {
+                if (run == runs.length) {
+                    throw new NoSuchElementException();
+                }
+
+                int value = runs[run] + offset;
+                if (offset++ == runs[run + 1]) {
+                    run += 2;
+                    offset = 0;
+                }
+                return value;
+            }
+        };
+    }
+}
@@ -0,0 +1,291 @@
+package ru.nsu.fit.set;
+
+import java.util.Comparator;
+
+/**
+ * Неизменяемый узел АВЛ-дерева {@link PersistentSortedSet} и {@link PersistentSortedArray}.
+ * <p>
+ * Все операции строятся на join(): соединении двух деревьев и ключа между ними
+ * (G. Blelloch, D. Ferizovic, Y. Sun. Just Join for Parallel Ordered Sets).
+ * Изменение копирует только путь от корня, а объединение, пересечение и разность
+ * возвращают общее поддерево обоих аргументов без обхода.
+ * </p>
+ * <p>
+ * Узел хранит размер поддерева, поэтому позиционные операции (get, rank, insertAt, deleteAt)
+ * тоже работают за O(log n) и допускают равные элементы.
+ * </p>
+ */
+final class SortedNode<E> {
+    final E element;
+
+    final SortedNode<E> left;
+
+    final SortedNode<E> right;
+
+    final int height;
+
+    final int size;
+
+    private SortedNode(SortedNode<E> left, E element, SortedNode<E> right) {
+        this.element = element;
+        this.left = left;
+        this.right = right;
+        this.height = Math.max(height(left), height(right)) + 1;
+        this.size = size(left) + size(right) + 1;
+    }
+
+    static int height(SortedNode<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    static int size(SortedNode<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    static <E> boolean contains(SortedNode<E> node, Object element, Comparator<? super E> comparator) {
+        @SuppressWarnings("unchecked")
+        E key = (E) element;
+
+        while (node != null) {
+            int compare = comparator.compare(key, node.element);
+            if (compare == 0) {
+                return true;
+            }
+            node = compare < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    static <E> SortedNode<E> insert(SortedNode<E> node, E element, Comparator<? super E> comparator) {
+        Split<E> split = split(node, element, comparator);
+        return split.found ? node : join(split.left, element, split.right);
+    }
+
+    static <E> SortedNode<E> delete(SortedNode<E> node, E element, Comparator<? super E> comparator) {
+        Split<E> split = split(node, element, comparator);
+        return split.found ? join(split.left, split.right) : node;
+    }
+
+    static <E> SortedNode<E> union(SortedNode<E> first, SortedNode<E> second, Comparator<? super E> comparator) {
+        if (first == second || second == null) {
+            return first;
+        }
+        if (first == null) {
+            return second;
+        }
+
+        Split<E> split = split(second, first.element, comparator);
+        return join(union(first.left, split.left, comparator), first.element,
+                union(first.right, split.right, comparator));
+    }
+
+    static <E> SortedNode<E> intersection(SortedNode<E> first, SortedNode<E> second,
+                                          Comparator<? super E> comparator) {
+        if (first == second) {
+            return first;
+        }
+        if (first == null || second == null) {
+            return null;
+        }
+
+        Split<E> split = split(second, first.element, comparator);
+        SortedNode<E> left = intersection(first.left, split.left, comparator);
+        SortedNode<E> right = intersection(first.right, split.right, comparator);
+        return split.found ? join(left, first.element, right) : join(left, right);
+    }
+
+    static <E> SortedNode<E> difference(SortedNode<E> first, SortedNode<E> second,
+                                        Comparator<? super E> comparator) {
+        if (first == second || first == null) {
+            return null;
+        }
+        if (second == null) {
+            return first;
+        }
+
+        Split<E> split = split(first, second.element, comparator);
+        return join(difference(split.left, second.left, comparator),
+                difference(split.right, second.right, comparator));
+    }
+
+    /**
+     * Получение элемента с номером index в порядке обхода.
+     */
+    static <E> E get(SortedNode<E> node, int index) {
+        while (true) {
+            int leftSize = size(node.left);
+            if (index == leftSize) {
+                return node.element;
+            }
+            if (index < leftSize) {
+                node = node.left;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Число элементов меньше element, либо не больше element, если inclusive.
+     */
+    static <E> int rank(SortedNode<E> node, E element, Comparator<? super E> comparator, boolean inclusive) {
+        int rank = 0;
+
+        while (node != null) {
+            int compare = comparator.compare(node.element, element);
+            if (compare < 0 || (inclusive && compare == 0)) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Вставка element так, чтобы он получил номер index. Порядок вызывающий проверяет сам.
+     */
+    static <E> SortedNode<E> insertAt(SortedNode<E> node, int index, E element) {
+        if (node == null) {
+            return new SortedNode<>(null, element, null);
+        }
+
+        int leftSize = size(node.left);
+        if (index <= leftSize) {
+            return join(insertAt(node.left, index, element), node.element, node.right);
+        }
+        return join(node.left, node.element, insertAt(node.right, index - leftSize - 1, element));
+    }
+
+    /**
+     * Удаление элемента с номером index.
+     */
+    static <E> SortedNode<E> deleteAt(SortedNode<E> node, int index) {
+        int leftSize = size(node.left);
+        if (index < leftSize) {
+            return join(deleteAt(node.left, index), node.element, node.right);
+        }
+        if (index > leftSize) {
+            return join(node.left, node.element, deleteAt(node.right, index - leftSize - 1));
+        }
+        return join(node.left, node.right);
+    }
+
+    static <E> SortedNode<E> first(SortedNode<E> node) {
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    static <E> SortedNode<E> last(SortedNode<E> node) {
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    /**
+     * Соединение деревьев left и right, все элементы которых меньше и больше element соответственно.
+     */
+    static <E> SortedNode<E> join(SortedNode<E> left, E element, SortedNode<E> right) {
+        if (height(left) > height(right) + 1) {
+            return joinRight(left, element, right);
+        }
+        if (height(right) > height(left) + 1) {
+            return joinLeft(left, element, right);
+        }
+        return new SortedNode<>(left, element, right);
+    }
+
+    /**
+     * Соединение деревьев, все элементы left меньше элементов right.
+     */
+    static <E> SortedNode<E> join(SortedNode<E> left, SortedNode<E> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+
+        SortedNode<E> last = last(left);
+        return join(withoutLast(left), last.element, right);
+    }
+
+    private static <E> SortedNode<E> withoutLast(SortedNode<E> node) {
+        if (node.right == null) {
+            return node.left;
+        }
+        return join(node.left, node.element, withoutLast(node.right));
+    }
+
+    private static <E> SortedNode<E> joinRight(SortedNode<E> left, E element, SortedNode<E> right) {
+        SortedNode<E> middle = left.right;
+
+        if (height(middle) <= height(right) + 1) {
+            SortedNode<E> joined = new SortedNode<>(middle, element, right);
+            if (height(joined) <= height(left.left) + 1) {
+                return new SortedNode<>(left.left, left.element, joined);
+            }
+            return rotateLeft(new SortedNode<>(left.left, left.element, rotateRight(joined)));
+        }
+
+        SortedNode<E> joined = joinRight(middle, element, right);
+        SortedNode<E> result = new SortedNode<>(left.left, left.element, joined);
+        return height(joined) <= height(left.left) + 1 ? result : rotateLeft(result);
+    }
+
+    private static <E> SortedNode<E> joinLeft(SortedNode<E> left, E element, SortedNode<E> right) {
+        SortedNode<E> middle = right.left;
+
+        if (height(middle) <= height(left) + 1) {
+            SortedNode<E> joined = new SortedNode<>(left, element, middle);
+            if (height(joined) <= height(right.right) + 1) {
+                return new SortedNode<>(joined, right.element, right.right);
+            }
+            return rotateRight(new SortedNode<>(rotateLeft(joined), right.element, right.right));
+        }
+
+        SortedNode<E> joined = joinLeft(left, element, middle);
+        SortedNode<E> result = new SortedNode<>(joined, right.element, right.right);
+        return height(joined) <= height(right.right) + 1 ? result : rotateRight(result);
+    }
+
+    private static <E> SortedNode<E> rotateLeft(SortedNode<E> node) {
+        SortedNode<E> right = node.right;
+        return new SortedNode<>(new SortedNode<>(node.left, node.element, right.left), right.element, right.right);
+    }
+
+    private static <E> SortedNode<E> rotateRight(SortedNode<E> node) {
+        SortedNode<E> left = node.left;
+        return new SortedNode<>(left.left, left.element, new SortedNode<>(left.right, node.element, node.right));
+    }
+
+    /**
+     * Разделение дерева на элементы меньше и больше element.
+     * Поддеревья, целиком лежащие по одну сторону, не копируются.
+     */
+    private static <E> Split<E> split(SortedNode<E> node, E element, Comparator<? super E> comparator) {
+        if (node == null) {
+            return new Split<>(null, false, null);
+        }
+
+        int compare = comparator.compare(element, node.element);
+        if (compare == 0) {
+            return new Split<>(node.left, true, node.right);
+        }
+        if (compare < 0) {
+            Split<E> split = split(node.left, element, comparator);
+            return new Split<>(split.left, split.found, join(split.right, node.element, node.right));
+        }
+
+        Split<E> split = split(node.right, element, comparator);
+        return new Split<>(join(node.left, node.element, split.left), split.found, split.right);
+    }
+
+    private record Split<E>(SortedNode<E> left, boolean found, SortedNode<E> right) {
+    }
+}
@@ -0,0 +1,172 @@
+package ru.nsu.fit.set;
+
+import java.util.Arrays;
+import java.util.function.BinaryOperator;
+
+/**
+ * Неизменяемый узел {@link PersistentBitmap} с не более чем 256 потомками:
+ * отсортированные 8-битные ключи и потомки - узлы следующего уровня или контейнеры.
+ * Хранит число значений в поддереве, поэтому мощность версии известна за O(1).
+ *
+ * @param <T> тип потомков.
+ */
+final class SparseNode<T> {
+    private static final SparseNode<?> EMPTY = new SparseNode<>(new char[0], new Object[0]);
+
+    private final char[] keys;
+
+    private final Object[] children;
+
+    private final long cardinality;
+
+    private SparseNode(char[] keys, Object[] children) {
+        this.keys = keys;
+        this.children = children;
+
+        long count = 0;
+        for (Object child : children) {
+            count += child instanceof Container container
+                    ? container.cardinality() : ((SparseNode<?>) child).cardinality;
+        }
+        this.cardinality = count;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> SparseNode<T> empty() {
+        return (SparseNode<T>) EMPTY;
+    }
+
+    long cardinality() {
+        return cardinality;
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    int keyAt(int index) {
+        return keys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    T childAt(int index) {
+        return (T) children[index];
+    }
+
+    /**
+     * Получение потомка по ключу.
+     *
+     * @return потомок, либо null.
+     */
+    T get(int key) {
+        int index = Arrays.binarySearch(keys, (char) key);
+        return index < 0 ? null : childAt(index);
+    }
+
+    /**
+     * Копия узла с замененным потомком.
+     *
+     * @param key   ключ.
+     * @param child новый потомок, null удаляет ключ.
+     * @return новый узел, либо этот, если потомок тот же.
+     */
+    SparseNode<T> with(int key, T child) {
+        int index = Arrays.binarySearch(keys, (char) key);
+        if (index >= 0) {
+            if (children[index] == child) {
+                return this;
+            }
+            if (child != null) {
+                Object[] newChildren = children.clone();
+                newChildren[index] = child;
+                return new SparseNode<>(keys, newChildren);
+            }
+
+            char[] newKeys = new char[keys.length - 1];
+            Object[] newChildren = new Object[keys.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(children, index + 1, newChildren, index, keys.length - index - 1);
+            return new SparseNode<>(newKeys, newChildren);
+        }
+        if (child == null) {
+            return this;
+        }
+
+        int position = -index - 1;
+        char[] newKeys = new char[keys.length + 1];
+        Object[] newChildren = new Object[keys.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, position);
+        System.arraycopy(keys, position, newKeys, position + 1, keys.length - position);
+        System.arraycopy(children, 0, newChildren, 0, position);
+        System.arraycopy(children, position, newChildren, position + 1, keys.length - position);
+        newKeys[position] = (char) key;
+        newChildren[position] = child;
+        return new SparseNode<>(newKeys, newChildren);
+    }
+
+    /**
+     * Слияние двух узлов по ключам.
+     * <p>
+     * Потомки по общему ключу объединяются через both (null - удалить ключ), потомки по ключу
+     * только одного узла берутся без изменений, если keepLeft или keepRight. Общие потомки
+     * не копируются, поэтому для узлов с общей историей работа пропорциональна различиям.
+     * </p>
+     *
+     * @return узел, либо null, если потомков не осталось.
+     */
+    static <T> SparseNode<T> combine(SparseNode<T> left, SparseNode<T> right,
+                                     boolean keepLeft, boolean keepRight, BinaryOperator<T> both) {
+        char[] keys = new char[left.keys.length + right.keys.length];
+        Object[] children = new Object[keys.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+
+        while (i < left.keys.length || j < right.keys.length) {
+            int leftKey = i < left.keys.length ? left.keys[i] : Integer.MAX_VALUE;
+            int rightKey = j < right.keys.length ? right.keys[j] : Integer.MAX_VALUE;
+            Object child;
+            if (leftKey == rightKey) {
+                child = both.apply(left.childAt(i), right.childAt(j));
+                i++;
+                j++;
+            } else if (leftKey < rightKey) {
+                child = keepLeft ? left.children[i] : null;
+                i++;
+            } else {
+                child = keepRight ? right.children[j] : null;
+                j++;
+            }
+
+            if (child != null) {
+                keys[count] = (char) Math.min(leftKey, rightKey);
+                children[count++] = child;
+            }
+        }
+
+        if (count == 0) {
+            return null;
+        }
+        if (sameChildren(left, keys, children, count)) {
+            return left;
+        }
+        if (sameChildren(right, keys, children, count)) {
+            return right;
+        }
+        return new SparseNode<>(Arrays.copyOf(keys, count), Arrays.copyOf(children, count));
+    }
+
+    private static boolean sameChildren(SparseNode<?> node, char[] keys, Object[] children, int count) {
+        if (node.children.length != count) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (node.keys[i] != keys[i] || node.children[i] != children[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,63 @@
+package ru.nsu.fit.stm;
+
+import java.lang.ref.Cleaner;
+
+/**
+ * Транзакционная ссылка на неизменяемое значение.
+ * <p>
+ * Значения всех ссылок хранятся в общем неизменяемом Б-дереве, поэтому транзакция
+ * видит согласованный снимок сразу всех ссылок. Изменять ссылку можно только
+ * внутри {@link Transaction}. Значение после записи в ссылку не должно меняться:
+ * персистентные структуры перед изменением копируются через fork().
+ * </p>
+ * <p>
+ * Создание ссылки не меняет общее дерево: до первой записи ее значение - начальное,
+ * поэтому ссылку можно создать и сразу прочитать внутри транзакции. Когда ссылка
+ * становится недостижимой, ее значение удаляется из дерева, а номер места
+ * выдается следующей созданной ссылке.
+ * </p>
+ *
+ * @param <T> тип значения.
+ */
+public final class Ref<T> {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final int id;
+
+    private final long serial;
+
+    private final T initial;
+
+    public Ref(T initial) {
+        this.id = Transaction.register();
+        this.serial = Transaction.nextSerial();
+        this.initial = initial;
+
+        int slot = id;
+        CLEANER.register(this, () -> Transaction.release(slot));
+    }
+
+    /**
+     * Получение последнего зафиксированного значения вне транзакции.
+     *
+     * @return значение ссылки.
+     */
+    public T get() {
+        return Transaction.latest(this);
+    }
+
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Номер, уникальный среди всех созданных ссылок, в отличие от номера места.
+     */
+    long getSerial() {
+        return serial;
+    }
+
+    T getInitial() {
+        return initial;
+    }
+}
@@ -0,0 +1,250 @@
+package ru.nsu.fit.stm;
+
+import ru.nsu.fit.util.BTree;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Программная транзакционная память над персистентными значениями.
+ * <p>
+ * Значения всех {@link Ref} лежат в одном неизменяемом Б-дереве (индекс - номер ссылки).
+ * Транзакция читает снимок дерева, взятый при старте, и копит записи у себя.
+ * При фиксации она проверяет, что прочитанные ссылки в последнем дереве не изменились,
+ * строит новое дерево копированием путей до записанных ссылок и публикует его через CAS.
+ * Если CAS не удался из-за транзакции с другими ссылками, проверка и CAS повторяются
+ * без перезапуска транзакции; при конфликте по прочитанной ссылке транзакция выполняется заново.
+ * Блокировки не используются.
+ * </p>
+ * <p>
+ * CAS общего дерева выполняют только фиксации транзакций с записями: создание ссылки
+ * лишь выделяет номер, а место в дереве появляется при первой записи. Значение
+ * недостижимой ссылки заменяется пустым, а ее номер выдается следующей созданной ссылке,
+ * поэтому размер дерева ограничен числом одновременно живых ссылок. Место хранит значение
+ * вместе с ссылкой, записавшей его, поэтому ссылка с повторно выданным номером
+ * не видит в старых снимках значение прежней.
+ * </p>
+ * <p>
+ * Изоляция обеспечивается только для самих значений ссылок. Персистентные структуры
+ * библиотеки изменяемы: их изменение меняет текущую версию на месте и сразу видно всем,
+ * кто держит ту же структуру, а при перезапуске транзакции не откатывается. Поэтому
+ * структуру, прочитанную из ссылки, нужно копировать через fork() перед изменением
+ * и записывать в ссылку копию, как в {@code tx.set(ref, changed(tx.get(ref).fork()))}.
+ * </p>
+ */
+public final class Transaction {
+    private static final AtomicReference<BTree<Object>> WORLD = new AtomicReference<>(new BTree<>(1, 5));
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    /**
+     * Номера недостижимых ссылок, значения которых уже удалены из дерева.
+     */
+    private static final Queue<Integer> FREE_IDS = new ConcurrentLinkedQueue<>();
+
+    private static final AtomicLong NEXT_SERIAL = new AtomicLong();
+
+    /**
+     * Значение места ссылки, в которую еще не писали или которая уже недостижима.
+     */
+    private static final Object UNSET = new Object();
+
+    private final BTree<Object> snapshot;
+
+    private final Map<Ref<?>, Object> reads = new IdentityHashMap<>();
+
+    private final Map<Ref<?>, Object> writes = new IdentityHashMap<>();
+
+    private Transaction(BTree<Object> snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Атомарное выполнение body. При конфликте body выполняется заново,
+     * поэтому оно не должно иметь побочных эффектов кроме записи в ссылки.
+     *
+     * @param body тело транзакции.
+     * @return результат body из успешной попытки.
+     */
+    public static <R> R atomic(Function<Transaction, R> body) {
+        while (true) {
+            Transaction transaction = new Transaction(WORLD.get());
+            R result = body.apply(transaction);
+
+            if (transaction.commit()) {
+                return result;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Атомарное выполнение body без результата.
+     *
+     * @param body тело транзакции.
+     */
+    public static void run(Consumer<Transaction> body) {
+        atomic(transaction -> {
+            body.accept(transaction);
+            return null;
+        });
+    }
+
+    /**
+     * Получение значения ссылки в этой транзакции.
+     *
+     * @param ref ссылка.
+     * @return записанное в транзакции значение, либо значение из снимка.
+     * Для ссылки, в которую до начала транзакции не писали, в том числе созданной
+     * в этой транзакции, - начальное значение.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Ref<T> ref) {
+        if (writes.containsKey(ref)) {
+            return (T) writes.get(ref);
+        }
+
+        if (reads.containsKey(ref)) {
+            return valueOf(ref, reads.get(ref));
+        }
+
+        Object value = slot(snapshot, ref);
+        reads.put(ref, value);
+        return valueOf(ref, value);
+    }
+
+    /**
+     * Запись значения в ссылку. Значение станет видно другим после фиксации.
+     *
+     * @param ref   ссылка.
+     * @param value новое значение.
+     */
+    public <T> void set(Ref<T> ref, T value) {
+        writes.put(ref, value);
+    }
+
+    /**
+     * Замена значения ссылки результатом функции от текущего.
+     *
+     * @param ref      ссылка.
+     * @param function функция от текущего значения.
+     * @return новое значение.
+     */
+    public <T> T alter(Ref<T> ref, UnaryOperator<T> function) {
+        T value = function.apply(get(ref));
+        set(ref, value);
+        return value;
+    }
+
+    /**
+     * Выделение номера новой ссылке: освобожденного, если такой есть.
+     */
+    static int register() {
+        Integer id = FREE_IDS.poll();
+        return id != null ? id : NEXT_ID.getAndIncrement();
+    }
+
+    /**
+     * Получение номера, отличающего ссылку от всех других, в том числе с тем же местом.
+     */
+    static long nextSerial() {
+        return NEXT_SERIAL.getAndIncrement();
+    }
+
+    /**
+     * Удаление значения недостижимой ссылки из дерева и освобождение ее номера.
+     */
+    static void release(int id) {
+        while (true) {
+            BTree<Object> current = WORLD.get();
+            if (id >= current.getSize() || current.get(id) == UNSET) {
+                break;
+            }
+
+            BTree<Object> next = new BTree<>(current);
+            next.set(id, UNSET);
+            if (WORLD.compareAndSet(current, next)) {
+                break;
+            }
+        }
+
+        FREE_IDS.add(id);
+    }
+
+    static <T> T latest(Ref<T> ref) {
+        return valueOf(ref, slot(WORLD.get(), ref));
+    }
+
+    /**
+     * Место ссылки в дереве world, UNSET, если в ссылку еще не писали
+     * или место занято значением другой ссылки с тем же номером.
+     */
+    private static Object slot(BTree<Object> world, Ref<?> ref) {
+        Object slot = ref.getId() < world.getSize() ? world.get(ref.getId()) : UNSET;
+        return slot instanceof Cell cell && cell.serial() == ref.getSerial() ? cell : UNSET;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T valueOf(Ref<T> ref, Object slot) {
+        return slot == UNSET ? ref.getInitial() : (T) ((Cell) slot).value();
+    }
+
+    private boolean commit() {
+        if (writes.isEmpty()) {
+            return true;
+        }
+
+        while (true) {
+            BTree<Object> current = WORLD.get();
+            if (current != snapshot && !isValid(current)) {
+                return false;
+            }
+
+            BTree<Object> next = new BTree<>(current);
+            int size = writes.keySet().stream().mapToInt(Ref::getId).max().orElse(-1) + 1;
+            if (next.getSize() < size) {
+                next.addAll(Collections.nCopies(size - next.getSize(), UNSET));
+            }
+            for (Map.Entry<Ref<?>, Object> write : writes.entrySet()) {
+                Ref<?> ref = write.getKey();
+                next.set(ref.getId(), new Cell(ref.getSerial(), write.getValue()));
+            }
+
+            if (WORLD.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Проверка, что прочитанные значения не изменились в дереве world.
+     * Места сравниваются с учетом записавшей ссылки (см. {@link #slot(BTree, Ref)}).
+     */
+    private boolean isValid(BTree<Object> world) {
+        for (Map.Entry<Ref<?>, Object> read : reads.entrySet()) {
+            Object slot = slot(world, read.getKey());
+            Object expected = read.getValue();
+            if (slot != expected && (slot == UNSET || expected == UNSET
+                    || ((Cell) slot).value() != ((Cell) expected).value())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Значение в месте дерева и номер ссылки, записавшей его (см. {@link Ref#getSerial()}).
+     * Сама ссылка не хранится, чтобы дерево не мешало ей стать недостижимой.
+     */
+    private record Cell(long serial, Object value) {
+    }
+}
@@ -4,11 +4,20 @@ import lombok.Getter;
 import lombok.Setter;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
 
 @Getter
 @Setter
 public class BTree<E> {
+    private static final int MAX_GRAFT_INDEX = 1 << 30;
+
     private int depth;
     private int mask;
     private int maxSize;
@@ -72,15 +81,18 @@ public class BTree<E> {
         return String.format("%20x %d", root.hashCode(), size);
     }
 
-    private void increaseDepthOfTree() {
+    protected void increaseDepthOfTree() {
         Node<E> newNode = new Node<>();
+        root.forgetLiveCount();
         if (root.getValue() == null) {
             newNode.setChild(root.getChild());
         } else {
             newNode.setValue(root.getValue());
+            newNode.setLinks(root.getLinks());
             root.setValue(null);
+            root.setLinks(null);
         }
-        root.setChild(new LinkedList<>());
+        root.setChild(new ArrayList<>());
         root.getChild().add(newNode);
         depth++;
 
@@ -88,10 +100,93 @@ public class BTree<E> {
     }
 
     public boolean add(E element) {
+        append(element, null);
+
+        return true;
+    }
+
+    /**
+     * Добавление элементов в конец дерева.
+     * <p>
+     * Каждый узел пути копируется не более одного раза за вызов:
+     * узлы, созданные этим вызовом, дальше изменяются на месте.
+     * </p>
+     *
+     * @param elements элементы для добавления.
+     * @return true, если дерево изменилось.
+     */
+    public boolean addAll(Collection<? extends E> elements) {
+        Set<Node<E>> created = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (E element : elements) {
+            append(element, created);
+        }
+
+        return !elements.isEmpty();
+    }
+
+    /**
+     * Построение дерева снизу вверх: элементы раскладываются по листам подряд,
+     * затем над каждыми width узлами уровня создается родитель.
+     * Каждый узел создается один раз, без копирования путей.
+     *
+     * @param elements элементы в порядке индексов.
+     * @param bits     число бит индекса на уровень.
+     * @return дерево минимальной глубины с элементами elements.
+     */
+    public static <E> BTree<E> build(Iterable<? extends E> elements, int bits) {
+        BTree<E> tree = new BTree<>(1, bits);
+        int width = tree.width;
+
+        List<Node<E>> level = new ArrayList<>();
+        Node<E> leaf = null;
+        for (E element : elements) {
+            if (leaf == null || leaf.getValue().size() == width) {
+                leaf = new Node<>();
+                leaf.setValue(new ArrayList<>(width));
+                level.add(leaf);
+            }
+
+            leaf.getValue().add(element);
+            tree.size++;
+        }
+
+        int depth = 1;
+        while (level.size() > 1) {
+            List<Node<E>> parents = new ArrayList<>((level.size() + width - 1) / width);
+            for (int i = 0; i < level.size(); i += width) {
+                Node<E> parent = new Node<>();
+                parent.setChild(new ArrayList<>(level.subList(i, Math.min(i + width, level.size()))));
+                parents.add(parent);
+            }
+
+            level = parents;
+            depth++;
+        }
+
+        if (!level.isEmpty()) {
+            tree.root = level.get(0);
+        }
+
+        tree.initialization(depth, bits);
+        tree.actualSize = tree.size;
+
+        return tree;
+    }
+
+    /**
+     * Добавление элемента в конец дерева.
+     *
+     * @param element новый элемент.
+     * @param created узлы, которые можно изменять на месте, либо null.
+     *                Все узлы пути, созданные вызовом, добавляются в это множество.
+     * @return лист, в который записан элемент.
+     */
+    protected Node<E> append(E element, Set<Node<E>> created) {
         size++;
         actualSize++;
 
-        if (size > maxSize) {
+        if (actualSize > maxSize) {
             increaseDepthOfTree();
         }
 
@@ -100,9 +195,10 @@ public class BTree<E> {
         for (int level = bits * (depth - 1); level > 0; level -= bits) {
             int widthIndex = ((actualSize - 1) >> level) & mask;
             Node<E> newNode;
+            foundNode.forgetLiveCount();
 
             if (foundNode.getChild() == null) {
-                foundNode.setChild(new LinkedList<>());
+                foundNode.setChild(new ArrayList<>());
                 newNode = new Node<>();
                 foundNode.getChild().add(newNode);
             } else {
@@ -111,21 +207,134 @@ public class BTree<E> {
                     foundNode.getChild().add(newNode);
                 } else {
                     Node<E> childNode = foundNode.getChild().get(widthIndex);
-                    newNode = new Node<>(childNode);
+                    if (created != null && created.contains(childNode)) {
+                        foundNode = childNode;
+                        continue;
+                    }
+
+                    newNode = childNode == null ? new Node<>() : new Node<>(childNode);
                     foundNode.getChild().set(widthIndex, newNode);
                 }
             }
 
+            if (created != null) {
+                created.add(newNode);
+            }
+
             foundNode = newNode;
         }
 
         if (foundNode.getValue() == null) {
-            foundNode.setValue(new ArrayList<>());
+            foundNode.setValue(new ArrayList<>(width));
         }
 
+        foundNode.forgetLiveCount();
         foundNode.getValue().add(element);
 
-        return true;
+        return foundNode;
+    }
+
+    /**
+     * Присоединение дерева other справа без копирования его узлов.
+     * <p>
+     * Поддерево other, содержащее все его занятые индексы, становится поддеревом этого дерева,
+     * начиная с ближайшего индекса, кратного емкости этого поддерева.
+     * Индексы между текущим концом и началом other остаются пустыми.
+     * </p>
+     *
+     * @param other присоединяемое дерево с той же шириной узлов.
+     * @return индекс, под которым в этом дереве оказался нулевой элемент other.
+     */
+    protected int graft(BTree<E> other) {
+        int otherDepth = other.usedDepth();
+        int capacity = 1 << (bits * otherDepth);
+        int offset = (int) graftOffset(other);
+
+        while (depth <= otherDepth || (long) offset + capacity > maxSize) {
+            increaseDepthOfTree();
+        }
+
+        Node<E> foundNode = root;
+        int graftLevel = bits * otherDepth;
+
+        for (int level = bits * (depth - 1); level >= graftLevel; level -= bits) {
+            int widthIndex = (offset >> level) & mask;
+            foundNode.forgetLiveCount();
+
+            if (foundNode.getChild() == null) {
+                foundNode.setChild(new ArrayList<>());
+            }
+
+            List<Node<E>> child = foundNode.getChild();
+            while (child.size() < widthIndex) {
+                child.add(null);
+            }
+
+            if (level == graftLevel) {
+                child.add(other.usedRoot(otherDepth));
+                break;
+            }
+
+            Node<E> newNode;
+            if (widthIndex == child.size()) {
+                newNode = new Node<>();
+                child.add(newNode);
+            } else {
+                Node<E> childNode = child.get(widthIndex);
+                newNode = childNode == null ? new Node<>() : new Node<>(childNode);
+                child.set(widthIndex, newNode);
+            }
+
+            foundNode = newNode;
+        }
+
+        actualSize = offset + other.actualSize;
+        size += other.size;
+
+        return offset;
+    }
+
+    /**
+     * Проверка, можно ли присоединить other через {@link #graft(BTree)}.
+     * <p>
+     * Дерево должно иметь ту же ширину узлов, а индексы результата не должны выйти за 2^30.
+     * </p>
+     *
+     * @param other присоединяемое дерево.
+     * @return true, если присоединение возможно.
+     */
+    protected boolean canGraft(BTree<E> other) {
+        return bits == other.bits && graftOffset(other) + (1L << (bits * other.usedDepth())) <= MAX_GRAFT_INDEX;
+    }
+
+    private long graftOffset(BTree<E> other) {
+        long capacity = 1L << (bits * other.usedDepth());
+        return (actualSize + capacity - 1) / capacity * capacity;
+    }
+
+    /**
+     * Минимальная глубина, достаточная для уже занятых индексов.
+     * Дерево может быть глубже, если было создано с запасом.
+     */
+    private int usedDepth() {
+        int usedDepth = 1;
+        for (long capacity = width; capacity < actualSize && usedDepth < depth; capacity *= width) {
+            usedDepth++;
+        }
+
+        return usedDepth;
+    }
+
+    /**
+     * Корень поддерева глубины usedDepth, содержащего все занятые индексы.
+     */
+    private Node<E> usedRoot(int usedDepth) {
+        Node<E> foundNode = root;
+        for (int level = depth; level > usedDepth; level--) {
+            foundNode = foundNode.getChild().get(0);
+        }
+
+        return foundNode;
     }
 
     public boolean add(int index, E element) {
@@ -135,7 +344,18 @@ public class BTree<E> {
     }
 
     public void set(int index, E element) {
+        copyPath(index).getValue().set(index & mask, element);
+    }
+
+    /**
+     * Копирование пути от корня до листа с элементом index.
+     *
+     * @param index индекс элемента.
+     * @return скопированный лист, который можно изменять.
+     */
+    protected Node<E> copyPath(int index) {
         Node<E> foundNode = root;
+        root.forgetLiveCount();
 
         for (int level = bits * (depth - 1); level > 0; level -= bits) {
             int widthIndex = (index >> level) & mask;
@@ -145,7 +365,7 @@ public class BTree<E> {
             foundNode = newNode;
         }
 
-        foundNode.getValue().set(index & mask, element);
+        return foundNode;
     }
 
     public void remove(int index) {
@@ -157,6 +377,7 @@ public class BTree<E> {
 
     public Node<E> findNode(int index) {
         Node<E> foundNode = root;
+        root.forgetLiveCount();
 
         for (int level = bits * (depth - 1); level > 0; level -= bits) {
             int widthIndex = (index >> level) & mask;
@@ -189,6 +410,110 @@ public class BTree<E> {
     }
 
     public E get(int index) {
+        return findLeaf(index).getValue().get(index & mask);
+    }
+
+    /**
+     * Поиск первого индекса, элемент которого не удовлетворяет before, спуском от корня.
+     * <p>
+     * Элементы, удовлетворяющие before, должны идти перед остальными, а сами элементы
+     * занимать индексы с 0 по size - 1. На каждом уровне потомок выбирается двоичным поиском
+     * по первым элементам поддеревьев, в листе - по его элементам.
+     * </p>
+     *
+     * @param before условие, верное для начала последовательности элементов.
+     * @return индекс от 0 до size.
+     */
+    public int bound(Predicate<? super E> before) {
+        if (size == 0) {
+            return 0;
+        }
+
+        Node<E> foundNode = root;
+        int offset = 0;
+
+        for (int level = bits * (depth - 1); level > 0; level -= bits) {
+            List<Node<E>> child = foundNode.getChild();
+            int low = 0;
+            int high = Math.min(child.size(), ((size - offset - 1) >> level) + 1) - 1;
+
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (before.test(firstElement(child.get(middle)))) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+
+            foundNode = child.get(low);
+            offset += low << level;
+        }
+
+        List<E> value = foundNode.getValue();
+        int low = 0;
+        int high = Math.min(value.size(), size - offset);
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (before.test(value.get(middle))) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return offset + low;
+    }
+
+    /**
+     * Получение элементов в порядке индексов обходом листов, за O(n).
+     *
+     * @return массив из size элементов.
+     */
+    public Object[] toArray() {
+        Object[] elements = new Object[size];
+        collect(root, depth - 1, elements, 0);
+        return elements;
+    }
+
+    private int collect(Node<E> node, int level, Object[] elements, int position) {
+        if (level == 0) {
+            List<E> value = node.getValue();
+            int count = value == null ? 0 : Math.min(value.size(), elements.length - position);
+            for (int i = 0; i < count; i++) {
+                elements[position++] = value.get(i);
+            }
+            return position;
+        }
+
+        if (node.getChild() != null) {
+            for (Node<E> childNode : node.getChild()) {
+                if (position == elements.length) {
+                    break;
+                }
+                position = collect(childNode, level - 1, elements, position);
+            }
+        }
+
+        return position;
+    }
+
+    private static <E> E firstElement(Node<E> node) {
+        while (node.getChild() != null) {
+            node = node.getChild().get(0);
+        }
+
+        return node.getValue().get(0);
+    }
+
+    /**
+     * Поиск листа, содержащего элемент с индексом index, без копирования пути.
+     *
+     * @param index индекс элемента.
+     * @return лист дерева.
+     */
+    public Node<E> findLeaf(int index) {
         if (index < 0 || index >= actualSize) {
             throw new IndexOutOfBoundsException();
         }
@@ -200,6 +525,202 @@ public class BTree<E> {
             foundNode = foundNode.getChild().get(widthIndex);
         }
 
-        return foundNode.getValue().get(index & mask);
+        return foundNode;
+    }
+
+    /**
+     * Поиск индексов, по которым это дерево отличается от other.
+     * <p>
+     * Деревья обходятся параллельно, общие поддеревья пропускаются по совпадению ссылок,
+     * поэтому для версий, полученных копированием пути, время пропорционально числу
+     * скопированных узлов. Элементы сравниваются по ссылке, вместе со ссылками на соседей
+     * (см. {@link Node#getLinks()}). Индексы могут сообщаться не по возрастанию.
+     * </p>
+     *
+     * @param other  дерево с той же шириной узлов.
+     * @param action вызывается для каждого отличающегося индекса.
+     */
+    public void diff(BTree<E> other, IntConsumer action) {
+        if (bits != other.bits) {
+            throw new IllegalArgumentException("Trees have different node width");
+        }
+
+        Node<E> node = root;
+        Node<E> otherNode = other.root;
+        int nodeDepth = depth;
+        int otherDepth = other.depth;
+
+        while (nodeDepth > otherDepth) {
+            node = dropLevel(node, nodeDepth--, action);
+        }
+        while (otherDepth > nodeDepth) {
+            otherNode = dropLevel(otherNode, otherDepth--, action);
+        }
+
+        diffNodes(node, otherNode, bits * (nodeDepth - 1), 0, action);
+    }
+
+    /**
+     * Сообщение обо всех индексах, кроме индексов левого потомка узла глубины nodeDepth.
+     *
+     * @return левый потомок, либо null.
+     */
+    private Node<E> dropLevel(Node<E> node, int nodeDepth, IntConsumer action) {
+        List<Node<E>> children = node == null ? null : node.getChild();
+        if (children == null || children.isEmpty()) {
+            return null;
+        }
+
+        int level = bits * (nodeDepth - 1);
+        for (int i = 1; i < children.size(); i++) {
+            diffNodes(children.get(i), null, level - bits, i << level, action);
+        }
+
+        return children.get(0);
+    }
+
+    private void diffNodes(Node<E> node, Node<E> other, int level, int base, IntConsumer action) {
+        if (node == other) {
+            return;
+        }
+
+        if (level == 0) {
+            List<E> values = node == null ? null : node.getValue();
+            List<E> otherValues = other == null ? null : other.getValue();
+            int[] links = node == null ? null : node.getLinks();
+            int[] otherLinks = other == null ? null : other.getLinks();
+            int count = values == null ? 0 : values.size();
+            int otherCount = otherValues == null ? 0 : otherValues.size();
+
+            for (int i = 0; i < Math.max(count, otherCount); i++) {
+                if (i >= count || i >= otherCount || values.get(i) != otherValues.get(i)
+                        || linksDiffer(links, otherLinks, i)) {
+                    action.accept(base + i);
+                }
+            }
+            return;
+        }
+
+        List<Node<E>> children = node == null ? null : node.getChild();
+        List<Node<E>> otherChildren = other == null ? null : other.getChild();
+        int count = children == null ? 0 : children.size();
+        int otherCount = otherChildren == null ? 0 : otherChildren.size();
+
+        for (int i = 0; i < Math.max(count, otherCount); i++) {
+            diffNodes(i < count ? children.get(i) : null, i < otherCount ? otherChildren.get(i) : null,
+                    level - bits, base + (i << level), action);
+        }
+    }
+
+    private static boolean linksDiffer(int[] links, int[] otherLinks, int index) {
+        if (links == otherLinks) {
+            return false;
+        }
+        if (links == null || otherLinks == null) {
+            return true;
+        }
+
+        return links[2 * index] != otherLinks[2 * index] || links[2 * index + 1] != otherLinks[2 * index + 1];
+    }
+
+    /**
+     * Хеш элементов в порядке индексов, совпадающий с {@link List#hashCode()}.
+     * <p>
+     * Хеши поддеревьев кешируются в узлах, поэтому после изменения одного элемента
+     * пересчитываются только узлы скопированного пути: O(log n).
+     * </p>
+     *
+     * @return хеш элементов.
+     */
+    public int elementsHashCode() {
+        Node.Summary summary = root.summarize();
+        return Node.power31(summary.count()) + summary.hash();
+    }
+
+    /**
+     * Сравнение элементов двух деревьев по индексам, занятым без пропусков от нуля.
+     * <p>
+     * Общие поддеревья пропускаются по совпадению ссылок, поддеревья с разными
+     * кешированными хешами сразу считаются различными, элементы остальных листьев
+     * сравниваются через equals().
+     * </p>
+     *
+     * @param other дерево.
+     * @return true, если деревья хранят равные элементы.
+     */
+    public boolean equalElements(BTree<?> other) {
+        if (root == other.root) {
+            return true;
+        }
+        if (actualSize != other.actualSize) {
+            return false;
+        }
+        if (actualSize == 0) {
+            return true;
+        }
+
+        Node<?> node = root;
+        Node<?> otherNode = other.root;
+        int nodeDepth = depth;
+        int otherDepth = other.depth;
+
+        while (nodeDepth > otherDepth) {
+            node = node.getChild().get(0);
+            nodeDepth--;
+        }
+        while (otherDepth > nodeDepth) {
+            otherNode = otherNode.getChild().get(0);
+            otherDepth--;
+        }
+
+        return equalNodes(node, otherNode);
+    }
+
+    /**
+     * Сравнение поддеревьев одной глубины. Элементы обоих поддеревьев лежат с начала,
+     * поэтому лишние потомки одного из них пусты и не сравниваются.
+     */
+    private static boolean equalNodes(Node<?> node, Node<?> other) {
+        if (node == other) {
+            return true;
+        }
+        if (node == null || other == null) {
+            return false;
+        }
+
+        Node.Summary summary = node.cachedSummary();
+        Node.Summary otherSummary = other.cachedSummary();
+        if (summary != null && otherSummary != null
+                && (summary.hash() != otherSummary.hash() || summary.count() != otherSummary.count())) {
+            return false;
+        }
+
+        if (node.getValue() != null || other.getValue() != null) {
+            List<?> values = node.getValue();
+            List<?> otherValues = other.getValue();
+            if (values == null || otherValues == null) {
+                return false;
+            }
+
+            for (int i = 0; i < Math.min(values.size(), otherValues.size()); i++) {
+                if (!Objects.equals(values.get(i), otherValues.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        List<? extends Node<?>> children = node.getChild();
+        List<? extends Node<?>> otherChildren = other.getChild();
+        if (children == null || otherChildren == null) {
+            return children == otherChildren;
+        }
+
+        for (int i = 0; i < Math.min(children.size(), otherChildren.size()); i++) {
+            if (!equalNodes(children.get(i), otherChildren.get(i))) {
+                return false;
+            }
+        }
+        return true;
     }
-}
\ No newline at end of file
+}
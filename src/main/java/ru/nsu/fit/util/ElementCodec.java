@@ -0,0 +1,64 @@
+package ru.nsu.fit.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Двоичное представление элементов структуры при сериализации.
+ * Значения null кодируются отдельно и в кодек не передаются.
+ *
+ * @param <E> тип элемента.
+ */
+public interface ElementCodec<E> {
+    void write(DataOutput out, E element) throws IOException;
+
+    E read(DataInput in) throws IOException;
+
+    static ElementCodec<Integer> integers() {
+        return new ElementCodec<>() {
+            @Override
+            public void write(DataOutput out, Integer element) throws IOException {
+                out.writeInt(element);
+            }
+
+            @Override
+            public Integer read(DataInput in) throws IOException {
+                return in.readInt();
+            }
+        };
+    }
+
+    static ElementCodec<Long> longs() {
+        return new ElementCodec<>() {
+            @Override
+            public void write(DataOutput out, Long element) throws IOException {
+                out.writeLong(element);
+            }
+
+            @Override
+            public Long read(DataInput in) throws IOException {
+                return in.readLong();
+            }
+        };
+    }
+
+    static ElementCodec<String> strings() {
+        return new ElementCodec<>() {
+            @Override
+            public void write(DataOutput out, String element) throws IOException {
+                byte[] bytes = element.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            @Override
+            public String read(DataInput in) throws IOException {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package ru.nsu.fit.util;
+
+import java.util.List;
+
+/**
+ * Курсор для прохода по одной версии списка.
+ * <p>
+ * Запоминает последний посещенный лист дерева и спускается от корня только тогда,
+ * когда соседний элемент лежит в другом листе. Для списков, построенных добавлением
+ * в конец, переход к соседу в среднем занимает O(1).
+ * </p>
+ */
+public class ListCursor<E> {
+    private final ListHead<E> head;
+
+    private List<E> values;
+
+    private int[] links;
+
+    private int leafStart = -1;
+
+    private int index;
+
+    public ListCursor(ListHead<E> head) {
+        this(head, head.getFirstIndex());
+    }
+
+    /**
+     * Создание курсора, указывающего на элемент с индексом index в дереве.
+     *
+     * @param head  версия списка.
+     * @param index индекс элемента в дереве, либо -1.
+     */
+    public ListCursor(ListHead<E> head, int index) {
+        this.head = head;
+        this.index = index;
+    }
+
+    public boolean hasNext() {
+        return index != -1;
+    }
+
+    /**
+     * Индекс в дереве элемента, на который указывает курсор.
+     *
+     * @return индекс элемента, либо -1, если элементы закончились.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Получение текущего элемента и переход к следующему.
+     *
+     * @return текущий элемент.
+     */
+    public E next() {
+        return move(ListHead.NEXT);
+    }
+
+    /**
+     * Получение текущего элемента и переход к предыдущему.
+     *
+     * @return текущий элемент.
+     */
+    public E previous() {
+        return move(ListHead.PREV);
+    }
+
+    private E move(int direction) {
+        int mask = head.getMask();
+        int start = index & ~mask;
+
+        if (start != leafStart) {
+            Node<E> leaf = head.findLeaf(index);
+            values = leaf.getValue();
+            links = leaf.getLinks();
+            leafStart = start;
+        }
+
+        E element = values.get(index & mask);
+        int offset = links[2 * (index & mask) + direction];
+        index = offset == 0 ? -1 : index + offset;
+
+        return element;
+    }
+}
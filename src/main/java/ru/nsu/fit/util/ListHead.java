@@ -1,26 +1,101 @@
 package ru.nsu.fit.util;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Версия персистентного списка: Б-дерево элементов и индексы первого и последнего из них.
+ * <p>
+ * Лист дерева хранит значения и параллельный массив int со ссылками элементов на соседей
+ * (см. {@link Node#getLinks()}), по два числа на элемент. Ссылка хранится как смещение
+ * относительно индекса самого элемента, поэтому поддерево можно перенести в другое дерево
+ * без переписывания ссылок. Нулевое смещение означает отсутствие соседа.
+ * </p>
+ * <p>
+ * Порядок списка описывается и отрезками индексов дерева, элементы которых идут в списке
+ * подряд в порядке индексов. Исключенные элементы помечаются в ссылках, а узлы знают
+ * число остальных элементов поддерева (см. {@link Node#liveCount()}), поэтому позиция
+ * находится спуском по дереву за O(число отрезков * log n), в том числе после
+ * {@link #concat(ListHead)}, {@link #take(int)} и {@link #drop(int)}.
+ * </p>
+ * <p>
+ * Все изменяющие методы применяются только к свежей копии головы
+ * (созданной через {@link #ListHead(ListHead)}) и копируют путь до изменяемого листа.
+ * </p>
+ */
 @Getter
 @Setter
-public class ListHead<T> extends BTree<T> {
+public class ListHead<E> extends BTree<E> {
+    static final int NEXT = 0;
+
+    static final int PREV = 1;
+
+    /**
+     * Ссылка исключенного элемента (см. {@link #unlink(int)}).
+     */
+    static final int DEAD = Integer.MIN_VALUE;
+
+    /**
+     * Наибольшее число отрезков, после которого позиция ищется обходом ссылок.
+     */
+    private static final int MAX_RUNS = 16;
 
     private int firstIndex = -1;
 
     private int lastIndex = -1;
 
+    /**
+     * true, если i-й элемент списка лежит в дереве под индексом firstIndex + i.
+     */
+    private boolean sequential = true;
+
+    /**
+     * Глубина, с которой создается пустое дерево (см. {@link #empty()}).
+     */
+    private int initialDepth;
+
+    /**
+     * Отрезки [from, to) индексов дерева в порядке списка, по два числа на отрезок,
+     * либо null, если порядок ими не описывается. Массив не изменяется на месте.
+     * Элементы отрезка, не исключенные из списка, идут в нем подряд в порядке индексов.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int[] runs = new int[0];
+
     public ListHead() {
-        super(1, 4);
+        this(1, 4);
     }
 
-    public void copy(ListHead<T> other) {
+    /**
+     * Создание пустой версии списка с деревом заданной формы.
+     *
+     * @param depth начальная глубина дерева.
+     * @param bits  число бит индекса на уровень, ширина узла равна 2^bits.
+     */
+    public ListHead(int depth, int bits) {
+        super(depth, bits);
+        this.initialDepth = depth;
+    }
+
+    public void copy(ListHead<E> other) {
         this.firstIndex = other.firstIndex;
         this.lastIndex = other.lastIndex;
+        this.sequential = other.sequential;
+        this.initialDepth = other.initialDepth;
+        this.runs = other.runs;
     }
 
-    public ListHead(ListHead<T> other) {
+    public ListHead(ListHead<E> other) {
         super(other);
         copy(other);
     }
@@ -28,4 +103,679 @@ public class ListHead<T> extends BTree<T> {
     public boolean isEmpty() {
         return this.getSize() <= 0;
     }
-}
\ No newline at end of file
+
+    /**
+     * Создание пустой версии списка с той же шириной узлов и начальной глубиной.
+     *
+     * @return пустая голова.
+     */
+    public ListHead<E> empty() {
+        return new ListHead<>(initialDepth, getBits());
+    }
+
+    /**
+     * Создание списка из элементов дерева tree в порядке индексов.
+     * <p>
+     * Дерево списка повторяет форму tree: листы разделяют с ним списки значений, поэтому
+     * элементы не копируются, а новыми оказываются только узлы. Ссылки всех листов, кроме
+     * первого и последнего, одинаковы и хранятся одним массивом.
+     * </p>
+     *
+     * @param tree дерево, элементы которого занимают индексы с 0 по size - 1.
+     * @return голова списка.
+     */
+    public static <E> ListHead<E> sequentialOf(BTree<E> tree) {
+        ListHead<E> head = new ListHead<>(tree.getDepth(), tree.getBits());
+        if (tree.getSize() == 0) {
+            return head;
+        }
+
+        int[] middle = new int[2 * head.getWidth()];
+        for (int i = 0; i < head.getWidth(); i++) {
+            middle[2 * i + NEXT] = 1;
+            middle[2 * i + PREV] = -1;
+        }
+
+        head.setSize(tree.getSize());
+        head.setActualSize(tree.getSize());
+        head.setRoot(head.mirror(tree.getRoot(), tree.getDepth() - 1, 0, middle));
+        head.firstIndex = 0;
+        head.lastIndex = tree.getSize() - 1;
+        head.runs = new int[]{0, tree.getSize()};
+
+        return head;
+    }
+
+    /**
+     * Копия узла source без элементов: лист получает тот же список значений и ссылки соседей.
+     *
+     * @param level  число уровней под узлом.
+     * @param offset индекс первого элемента поддерева.
+     */
+    private Node<E> mirror(Node<E> source, int level, int offset, int[] middle) {
+        Node<E> node = new Node<>();
+
+        if (level == 0) {
+            node.setValue(source.getValue());
+
+            int last = getSize() - 1;
+            boolean holdsLast = last >= offset && last < offset + getWidth();
+            if (offset == 0 || holdsLast) {
+                int[] links = middle.clone();
+                if (offset == 0) {
+                    links[PREV] = 0;
+                }
+                if (holdsLast) {
+                    links[2 * (last & getMask()) + NEXT] = 0;
+                }
+                node.setLinks(links);
+            } else {
+                node.setLinks(middle);
+            }
+
+            return node;
+        }
+
+        int capacity = 1 << (getBits() * level);
+        List<Node<E>> child = new ArrayList<>(source.getChild().size());
+        for (int i = 0; i < source.getChild().size(); i++) {
+            child.add(mirror(source.getChild().get(i), level - 1, offset + i * capacity, middle));
+        }
+        node.setChild(child);
+
+        return node;
+    }
+
+    /**
+     * Получение индекса в дереве элемента, стоящего в списке на позиции position.
+     * Если порядок не описывается отрезками, элемент ищется обходом ссылок за O(n).
+     *
+     * @param position позиция в списке.
+     * @return индекс элемента в дереве.
+     */
+    public int findIndex(int position) {
+        if (sequential) {
+            return firstIndex + position;
+        }
+
+        if (runs != null) {
+            int remaining = position;
+            for (int i = 0; i < runs.length; i += 2) {
+                int before = liveBefore(runs[i]);
+                int count = liveBefore(runs[i + 1]) - before;
+                if (remaining < count) {
+                    return select(before + remaining);
+                }
+                remaining -= count;
+            }
+        }
+
+        ListCursor<E> cursor;
+        if (position < getSize() / 2) {
+            cursor = new ListCursor<>(this, firstIndex);
+            for (int i = 0; i < position; i++) {
+                cursor.next();
+            }
+        } else {
+            cursor = new ListCursor<>(this, lastIndex);
+            for (int i = getSize() - 1; i > position; i--) {
+                cursor.previous();
+            }
+        }
+
+        return cursor.getIndex();
+    }
+
+    /**
+     * Получение индекса следующего элемента.
+     *
+     * @param index индекс элемента в дереве.
+     * @return индекс следующего элемента, либо -1.
+     */
+    public int getNext(int index) {
+        return getLink(index, NEXT);
+    }
+
+    /**
+     * Получение индекса предыдущего элемента.
+     *
+     * @param index индекс элемента в дереве.
+     * @return индекс предыдущего элемента, либо -1.
+     */
+    public int getPrev(int index) {
+        return getLink(index, PREV);
+    }
+
+    /**
+     * Проверка, входит ли элемент с индексом index в список.
+     * Удаление через {@link #unlink(int)} оставляет элемент в дереве, но меняет ссылки соседей,
+     * а индексы не используются повторно, поэтому элемент входит в список, только если
+     * на него ссылается предыдущий элемент либо голова.
+     *
+     * @param index индекс в дереве.
+     * @return true, если элемент входит в список.
+     */
+    public boolean isLinked(int index) {
+        if (index < 0 || index >= getActualSize()) {
+            return false;
+        }
+
+        int prev = getPrev(index);
+        return prev == -1 ? firstIndex == index : getNext(prev) == index;
+    }
+
+    public E getElement(int index) {
+        return get(index);
+    }
+
+    public void setNext(int index, int next) {
+        setLink(index, NEXT, next);
+    }
+
+    public void setPrev(int index, int prev) {
+        setLink(index, PREV, prev);
+    }
+
+    public void setElement(int index, E element) {
+        set(index, element);
+    }
+
+    /**
+     * Добавление элемента в конец списка.
+     *
+     * @param element новый элемент.
+     */
+    public void addLast(E element) {
+        int index = getActualSize();
+
+        if (isEmpty()) {
+            firstIndex = index;
+            runs = new int[]{index, index + 1};
+            appendItem(element, -1, -1, null);
+        } else {
+            sequential = sequential && lastIndex == index - 1;
+            appendRun(index, index + 1);
+            setNext(lastIndex, index);
+            appendItem(element, lastIndex, -1, null);
+        }
+
+        lastIndex = index;
+    }
+
+    /**
+     * Вставка элемента перед элементом с индексом index в дереве.
+     *
+     * @param index   индекс элемента в дереве.
+     * @param element новый элемент.
+     */
+    public void addBefore(int index, E element) {
+        int prev = getPrev(index);
+        insertRun(index, getActualSize(), getActualSize() + 1);
+        int newIndex = appendItem(element, prev, index, null);
+
+        setPrev(index, newIndex);
+
+        if (prev == -1) {
+            firstIndex = newIndex;
+        } else {
+            setNext(prev, newIndex);
+        }
+
+        sequential = false;
+    }
+
+    /**
+     * Добавление элементов в конец списка.
+     * Новые элементы связываются друг с другом прямо в листах, созданных этим вызовом.
+     *
+     * @param elements новые элементы.
+     */
+    public void addAllLast(Collection<? extends E> elements) {
+        if (elements.isEmpty()) {
+            return;
+        }
+
+        int start = getActualSize();
+        int prev = lastIndex;
+
+        if (isEmpty()) {
+            firstIndex = start;
+            prev = -1;
+            runs = new int[]{start, start + elements.size()};
+        } else {
+            sequential = sequential && lastIndex == start - 1;
+            appendRun(start, start + elements.size());
+            setNext(lastIndex, start);
+        }
+
+        lastIndex = appendLinked(elements, prev, -1);
+    }
+
+    /**
+     * Вставка элементов перед элементом с индексом index в дереве.
+     *
+     * @param index    индекс элемента в дереве.
+     * @param elements новые элементы.
+     */
+    public void addAllBefore(int index, Collection<? extends E> elements) {
+        if (elements.isEmpty()) {
+            return;
+        }
+
+        int prev = getPrev(index);
+        int start = getActualSize();
+        insertRun(index, start, start + elements.size());
+        int end = appendLinked(elements, prev, index);
+
+        setPrev(index, end);
+
+        if (prev == -1) {
+            firstIndex = start;
+        } else {
+            setNext(prev, start);
+        }
+
+        sequential = false;
+    }
+
+    /**
+     * Исключение элемента из списка. Сам элемент остается в дереве, а его ссылки
+     * помечаются, чтобы он не учитывался при поиске позиции.
+     *
+     * @param index индекс элемента в дереве.
+     */
+    public void unlink(int index) {
+        int prev = getPrev(index);
+        int next = getNext(index);
+
+        if (prev == -1) {
+            firstIndex = next;
+        } else {
+            setNext(prev, next);
+        }
+
+        if (next == -1) {
+            lastIndex = prev;
+        } else {
+            setPrev(next, prev);
+        }
+
+        if (prev != -1 && next != -1) {
+            sequential = false;
+        }
+
+        int[] links = copyPath(index).getLinks();
+        links[2 * (index & getMask()) + NEXT] = DEAD;
+        links[2 * (index & getMask()) + PREV] = DEAD;
+        setSize(getSize() - 1);
+    }
+
+    /**
+     * Конкатенация списков за O(log n).
+     * <p>
+     * Порядок элементов задается ссылками, а не индексами в дереве, поэтому меньшее дерево
+     * целиком присоединяется к копии большего. Копируются только пути до места присоединения
+     * и до двух связываемых элементов. Если меньший список занимает в своем дереве
+     * слишком мало индексов, его элементы копируются.
+     * </p>
+     *
+     * @param other список, элементы которого идут после элементов этого списка.
+     * @return новая голова, разделяющая узлы с обоими списками.
+     */
+    public ListHead<E> concat(ListHead<E> other) {
+        if (other.isEmpty()) {
+            return new ListHead<>(this);
+        }
+
+        if (isEmpty()) {
+            return new ListHead<>(other);
+        }
+
+        if (getActualSize() >= other.getActualSize()) {
+            ListHead<E> result = new ListHead<>(this);
+
+            if (!result.isGraftable(other)) {
+                for (ListCursor<E> cursor = new ListCursor<>(other); cursor.hasNext(); ) {
+                    result.addLast(cursor.next());
+                }
+
+                return result;
+            }
+
+            int offset = result.graft(other);
+            int otherFirst = offset + other.firstIndex;
+
+            result.setNext(lastIndex, otherFirst);
+            result.setPrev(otherFirst, lastIndex);
+            result.setLastIndex(offset + other.lastIndex);
+            result.setSequential(sequential && other.sequential && otherFirst == lastIndex + 1);
+            result.runs = joinRuns(runs, 0, other.runs, offset);
+
+            return result;
+        }
+
+        ListHead<E> result = new ListHead<>(other);
+
+        if (!result.isGraftable(this)) {
+            for (ListCursor<E> cursor = new ListCursor<>(this); cursor.hasNext(); ) {
+                result.addBefore(other.firstIndex, cursor.next());
+            }
+
+            return result;
+        }
+
+        int offset = result.graft(this);
+        int last = offset + lastIndex;
+
+        result.setNext(last, other.firstIndex);
+        result.setPrev(other.firstIndex, last);
+        result.setFirstIndex(offset + firstIndex);
+        result.setSequential(false);
+        result.runs = joinRuns(runs, offset, other.runs, 0);
+
+        return result;
+    }
+
+    /**
+     * Первые count элементов списка.
+     *
+     * @param count число элементов.
+     * @return новая голова, разделяющая узлы с этим списком.
+     */
+    public ListHead<E> take(int count) {
+        if (count == 0) {
+            return empty();
+        }
+
+        ListHead<E> result = new ListHead<>(this);
+
+        if (count < getSize()) {
+            int last = findIndex(count - 1);
+            result.setNext(last, -1);
+            result.setLastIndex(last);
+            result.setSize(count);
+            result.runs = runsUpTo(last);
+        }
+
+        return result;
+    }
+
+    /**
+     * Список без первых count элементов.
+     *
+     * @param count число пропускаемых элементов.
+     * @return новая голова, разделяющая узлы с этим списком.
+     */
+    public ListHead<E> drop(int count) {
+        if (count == getSize()) {
+            return empty();
+        }
+
+        ListHead<E> result = new ListHead<>(this);
+
+        if (count > 0) {
+            int first = findIndex(count);
+            result.setPrev(first, -1);
+            result.setFirstIndex(first);
+            result.setSize(getSize() - count);
+            result.runs = runsFrom(first);
+        }
+
+        return result;
+    }
+
+    /**
+     * Восстановление отрезков после чтения головы, у которой записаны только концы и признак
+     * {@link #isSequential()}. Иначе позиция ищется обходом ссылок.
+     */
+    void restoreRuns() {
+        runs = isEmpty() ? new int[0] : sequential ? new int[]{firstIndex, lastIndex + 1} : null;
+    }
+
+    /**
+     * Число не исключенных элементов с индексами меньше index, спуском от корня.
+     */
+    private int liveBefore(int index) {
+        if (index >= getActualSize()) {
+            return getActualSize() == 0 ? 0 : getRoot().liveCount();
+        }
+
+        int result = 0;
+        Node<E> node = getRoot();
+        for (int level = getBits() * (getDepth() - 1); level > 0; level -= getBits()) {
+            int widthIndex = (index >> level) & getMask();
+            List<Node<E>> child = node.getChild();
+            for (int i = 0; i < widthIndex && i < child.size(); i++) {
+                result += child.get(i) == null ? 0 : child.get(i).liveCount();
+            }
+            if (widthIndex >= child.size() || child.get(widthIndex) == null) {
+                return result;
+            }
+            node = child.get(widthIndex);
+        }
+
+        int[] links = node.getLinks();
+        for (int i = 0; i < (index & getMask()); i++) {
+            if (links[2 * i + NEXT] != DEAD) {
+                result++;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Индекс не исключенного элемента, перед которым rank таких элементов.
+     */
+    private int select(int rank) {
+        int remaining = rank;
+        int index = 0;
+        Node<E> node = getRoot();
+        for (int level = getBits() * (getDepth() - 1); level > 0; level -= getBits()) {
+            List<Node<E>> child = node.getChild();
+            for (int i = 0; ; i++) {
+                int count = child.get(i) == null ? 0 : child.get(i).liveCount();
+                if (remaining < count) {
+                    node = child.get(i);
+                    index += i << level;
+                    break;
+                }
+                remaining -= count;
+            }
+        }
+
+        int[] links = node.getLinks();
+        for (int i = 0; ; i++) {
+            if (links[2 * i + NEXT] != DEAD && remaining-- == 0) {
+                return index + i;
+            }
+        }
+    }
+
+    /**
+     * Номер в runs начала отрезка, содержащего index, либо -1.
+     */
+    private int findRun(int index) {
+        for (int i = 0; i < runs.length; i += 2) {
+            if (runs[i] <= index && index < runs[i + 1]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Добавление отрезка [start, end) новых элементов в конец списка.
+     */
+    private void appendRun(int start, int end) {
+        if (runs == null) {
+            return;
+        }
+
+        int length = runs.length;
+        int[] result;
+        if (length > 0 && runs[length - 1] == start) {
+            result = runs.clone();
+        } else {
+            result = Arrays.copyOf(runs, length + 2);
+            result[length] = start;
+            length += 2;
+        }
+        result[length - 1] = end;
+        runs = limitRuns(result);
+    }
+
+    /**
+     * Вставка отрезка [start, end) новых элементов перед элементом index: отрезок,
+     * содержащий index, делится на два.
+     */
+    private void insertRun(int index, int start, int end) {
+        if (runs == null) {
+            return;
+        }
+
+        int run = findRun(index);
+        if (run == -1) {
+            runs = null;
+            return;
+        }
+
+        if (index == runs[run] && run > 0 && runs[run - 1] == start) {
+            int[] result = runs.clone();
+            result[run - 1] = end;
+            runs = result;
+            return;
+        }
+
+        int[] result = new int[runs.length + (index == runs[run] ? 2 : 4)];
+        System.arraycopy(runs, 0, result, 0, run);
+        int position = run;
+        if (index > runs[run]) {
+            result[position++] = runs[run];
+            result[position++] = index;
+        }
+        result[position++] = start;
+        result[position++] = end;
+        result[position++] = index;
+        System.arraycopy(runs, run + 1, result, position, runs.length - run - 1);
+        runs = limitRuns(result);
+    }
+
+    /**
+     * Отрезки списка, который заканчивается элементом index.
+     */
+    private int[] runsUpTo(int index) {
+        int run = runs == null ? -1 : findRun(index);
+        if (run == -1) {
+            return null;
+        }
+
+        int[] result = Arrays.copyOf(runs, run + 2);
+        result[run + 1] = index + 1;
+        return result;
+    }
+
+    /**
+     * Отрезки списка, который начинается элементом index.
+     */
+    private int[] runsFrom(int index) {
+        int run = runs == null ? -1 : findRun(index);
+        if (run == -1) {
+            return null;
+        }
+
+        int[] result = Arrays.copyOfRange(runs, run, runs.length);
+        result[0] = index;
+        return result;
+    }
+
+    /**
+     * Отрезки списка first, за которым идет second, со сдвигом индексов каждого.
+     */
+    private static int[] joinRuns(int[] first, int firstOffset, int[] second, int secondOffset) {
+        if (first == null || second == null) {
+            return null;
+        }
+
+        int[] result = new int[first.length + second.length];
+        int length = 0;
+        for (int i = 0; i < first.length; i++) {
+            result[length++] = first[i] + firstOffset;
+        }
+        for (int i = 0; i < second.length; i += 2) {
+            if (length > 0 && result[length - 1] == second[i] + secondOffset) {
+                result[length - 1] = second[i + 1] + secondOffset;
+            } else {
+                result[length++] = second[i] + secondOffset;
+                result[length++] = second[i + 1] + secondOffset;
+            }
+        }
+
+        return limitRuns(Arrays.copyOf(result, length));
+    }
+
+    private static int[] limitRuns(int[] runs) {
+        return runs.length > 2 * MAX_RUNS ? null : runs;
+    }
+
+    private int getLink(int index, int direction) {
+        int[] links = findLeaf(index).getLinks();
+        return toIndex(index, links[2 * (index & getMask()) + direction]);
+    }
+
+    private void setLink(int index, int direction, int target) {
+        int[] links = copyPath(index).getLinks();
+        links[2 * (index & getMask()) + direction] = toOffset(index, target);
+    }
+
+    /**
+     * Добавление элемента в дерево без изменения соседей.
+     *
+     * @return индекс нового элемента в дереве.
+     */
+    private int appendItem(E element, int prev, int next, Set<Node<E>> created) {
+        int index = getActualSize();
+        Node<E> leaf = append(element, created);
+
+        if (leaf.getLinks() == null) {
+            leaf.setLinks(new int[2 * getWidth()]);
+        }
+
+        int[] links = leaf.getLinks();
+        links[2 * (index & getMask()) + NEXT] = toOffset(index, next);
+        links[2 * (index & getMask()) + PREV] = toOffset(index, prev);
+
+        return index;
+    }
+
+    /**
+     * Добавление в дерево цепочки элементов, связанных друг с другом.
+     *
+     * @return индекс последнего элемента цепочки.
+     */
+    private int appendLinked(Collection<? extends E> elements, int prev, int next) {
+        Set<Node<E>> created = Collections.newSetFromMap(new IdentityHashMap<>());
+        int start = getActualSize();
+        int end = start + elements.size() - 1;
+        int index = start;
+
+        for (E element : elements) {
+            appendItem(element, index == start ? prev : index - 1, index == end ? next : index + 1, created);
+            index++;
+        }
+
+        return end;
+    }
+
+    private boolean isGraftable(ListHead<E> other) {
+        return canGraft(other) && (long) other.getSize() * getWidth() >= other.getActualSize();
+    }
+
+    private static int toOffset(int index, int target) {
+        return target == -1 ? 0 : target - index;
+    }
+
+    private static int toIndex(int index, int offset) {
+        return offset == 0 || offset == DEAD ? -1 : index + offset;
+    }
+}
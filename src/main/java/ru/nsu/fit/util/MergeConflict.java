@@ -0,0 +1,29 @@
+package ru.nsu.fit.util;
+
+import lombok.Getter;
+
+/**
+ * Конфликт трехстороннего слияния: обе ветки по-разному изменили один ключ или индекс.
+ * Отсутствующее в версии значение представлено null.
+ *
+ * @param <V> тип значений.
+ */
+@Getter
+public final class MergeConflict<V> {
+    private final V base;
+
+    private final V ours;
+
+    private final V theirs;
+
+    public MergeConflict(V base, V ours, V theirs) {
+        this.base = base;
+        this.ours = ours;
+        this.theirs = theirs;
+    }
+
+    @Override
+    public String toString() {
+        return "{base=" + base + ", ours=" + ours + ", theirs=" + theirs + "}";
+    }
+}
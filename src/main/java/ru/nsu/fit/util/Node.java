@@ -1,7 +1,9 @@
 package ru.nsu.fit.util;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import ru.nsu.fit.Interfaces.VersionInterface;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -12,36 +14,181 @@ public class Node<E> {
     private List<E> value;
     private List<Node<E>> child;
 
+    /**
+     * Ссылки элементов листа на соседей, если дерево хранит список (см. {@link ListHead}).
+     */
+    private int[] links;
+
+    /**
+     * Хеш и число элементов поддерева, вычисленные при первом запросе.
+     * Узлы зафиксированных версий не меняются, поэтому значение остается верным.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Summary summary;
+
+    /**
+     * Число элементов поддерева, не исключенных из списка (см. {@link ListHead#unlink(int)}),
+     * вычисленное при первом запросе, либо -1. Сбрасывается при изменении узла на месте.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int live = -1;
+
     public Node() {
     }
 
+    /**
+     * Копирование узла. Поля other читаются через методы доступа,
+     * чтобы копия узла из хранилища (см. {@link NodeStore}) сначала загрузила его.
+     */
     public Node(Node<E> other) {
         if (other != null) {
-            if (other.child != null) {
+            if (other.getChild() != null) {
                 child = new ArrayList<>();
-                child.addAll(other.child);
+                child.addAll(other.getChild());
             }
 
-            if (other.value != null) {
+            if (other.getValue() != null) {
                 value = new ArrayList<>();
-                value.addAll(other.value);
+                value.addAll(other.getValue());
+            }
+
+            if (other.getLinks() != null) {
+                links = other.getLinks().clone();
             }
         }
     }
 
     public Node(Node<E> other, int endIndex) {
-        if (other.child != null) {
+        if (other.getChild() != null) {
             child = new ArrayList<>();
             for (int i = 0; i <= endIndex; i++) {
-                child.add(other.child.get(i));
+                child.add(other.getChild().get(i));
             }
         }
 
-        if (other.value != null) {
+        if (other.getValue() != null) {
             value = new ArrayList<>();
             for (int i = 0; i <= endIndex; i++) {
-                value.add(other.value.get(i));
+                value.add(other.getValue().get(i));
+            }
+        }
+
+        if (other.getLinks() != null) {
+            links = other.getLinks().clone();
+        }
+    }
+
+    /**
+     * Получение полиномиального хеша элементов поддерева в порядке индексов:
+     * h = 31 * h + hash(e) по всем элементам, начиная с h = 0.
+     * <p>
+     * Результат кешируется, если среди элементов поддерева нет вложенных персистентных
+     * структур: их содержимое, а значит и хеш, может меняться при каскадной отмене.
+     * </p>
+     *
+     * @return хеш и число элементов.
+     */
+    Summary summarize() {
+        Summary result = summary;
+        if (result != null) {
+            return result;
+        }
+
+        int hash = 0;
+        int count = 0;
+        boolean nested = false;
+
+        if (getValue() != null) {
+            for (E element : getValue()) {
+                hash = 31 * hash + (element == null ? 0 : element.hashCode());
+                nested |= element instanceof VersionInterface;
+            }
+            count = getValue().size();
+        } else if (getChild() != null) {
+            for (Node<E> node : getChild()) {
+                if (node != null) {
+                    Summary childSummary = node.summarize();
+                    hash = hash * power31(childSummary.count()) + childSummary.hash();
+                    count += childSummary.count();
+                    nested |= childSummary.nested();
+                }
+            }
+        }
+
+        result = new Summary(hash, count, nested);
+        if (!nested) {
+            summary = result;
+        }
+
+        return result;
+    }
+
+    /**
+     * Получение кешированного хеша поддерева без вычисления.
+     *
+     * @return сводка, либо null, если она еще не вычислена или не кешируется.
+     */
+    Summary cachedSummary() {
+        return summary;
+    }
+
+    /**
+     * Получение числа элементов поддерева, не исключенных из списка.
+     * Потомки, чье число уже известно, не обходятся, поэтому для нового пути копирования
+     * счет стоит O(ширина узла) на уровень.
+     *
+     * @return число элементов.
+     */
+    int liveCount() {
+        int result = live;
+        if (result >= 0) {
+            return result;
+        }
+
+        result = 0;
+        if (getValue() != null) {
+            int[] links = getLinks();
+            for (int i = 0; i < getValue().size(); i++) {
+                if (links == null || links[2 * i + ListHead.NEXT] != ListHead.DEAD) {
+                    result++;
+                }
+            }
+        } else if (getChild() != null) {
+            for (Node<E> node : getChild()) {
+                if (node != null) {
+                    result += node.liveCount();
+                }
             }
         }
+
+        live = result;
+        return result;
+    }
+
+    /**
+     * Сброс числа элементов перед изменением узла на месте.
+     */
+    void forgetLiveCount() {
+        live = -1;
+    }
+
+    static int power31(int exponent) {
+        int result = 1;
+        int base = 31;
+        for (int e = exponent; e > 0; e >>= 1) {
+            if ((e & 1) != 0) {
+                result *= base;
+            }
+            base *= base;
+        }
+        return result;
+    }
+
+    /**
+     * Хеш элементов поддерева, их число и признак наличия вложенных структур.
+     */
+    record Summary(int hash, int count, boolean nested) {
     }
-}
\ No newline at end of file
+}
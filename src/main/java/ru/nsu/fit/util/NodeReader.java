@@ -0,0 +1,120 @@
+package ru.nsu.fit.util;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Чтение деревьев, записанных {@link NodeWriter}.
+ * Узел, на который ссылаются несколько версий, восстанавливается одним объектом.
+ *
+ * @param <E> тип элементов.
+ */
+public class NodeReader<E> {
+    private final DataInput in;
+
+    private final ElementCodec<? extends E> codec;
+
+    private final List<Node<E>> nodes = new ArrayList<>();
+
+    public NodeReader(DataInput in, ElementCodec<? extends E> codec) {
+        this.in = in;
+        this.codec = codec;
+    }
+
+    /**
+     * Чтение дерева, записанного {@link NodeWriter#writeTree(BTree)}.
+     *
+     * @return дерево.
+     */
+    public BTree<E> readTree() throws IOException {
+        BTree<E> tree = new BTree<>(0, 1);
+        readTree(tree);
+        return tree;
+    }
+
+    /**
+     * Чтение версии списка, записанной {@link NodeWriter#writeList(ListHead)}.
+     *
+     * @return голова списка.
+     */
+    public ListHead<E> readList() throws IOException {
+        ListHead<E> head = new ListHead<>(1, 1);
+        readTree(head);
+
+        head.setFirstIndex(in.readInt());
+        head.setLastIndex(in.readInt());
+        head.setSequential(in.readBoolean());
+        head.restoreRuns();
+        return head;
+    }
+
+    private void readTree(BTree<E> tree) throws IOException {
+        int tag;
+        while ((tag = in.readByte()) == NodeWriter.NODE) {
+            nodes.add(readNode());
+        }
+
+        if (tag != NodeWriter.TREE) {
+            throw new StreamCorruptedException("Unexpected tag " + tag);
+        }
+
+        tree.initialization(in.readInt(), in.readInt());
+        tree.setSize(in.readInt());
+        tree.setActualSize(in.readInt());
+        tree.setRoot(node(in.readInt()));
+    }
+
+    private Node<E> readNode() throws IOException {
+        int flags = in.readByte();
+        Node<E> node = new Node<>();
+
+        if ((flags & NodeWriter.HAS_CHILDREN) != 0) {
+            int count = in.readInt();
+            List<Node<E>> children = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                children.add(node(in.readInt()));
+            }
+            node.setChild(children);
+        }
+
+        if ((flags & NodeWriter.HAS_VALUES) != 0) {
+            node.setValue(readValues());
+        }
+
+        if ((flags & NodeWriter.HAS_LINKS) != 0) {
+            int[] links = new int[in.readInt()];
+            for (int i = 0; i < links.length; i++) {
+                links[i] = in.readInt();
+            }
+            node.setLinks(links);
+        }
+
+        return node;
+    }
+
+    private List<E> readValues() throws IOException {
+        int count = in.readInt();
+        byte[] nulls = new byte[(count + 7) / 8];
+        in.readFully(nulls);
+
+        List<E> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean isNull = (nulls[i / 8] & (1 << (i % 8))) != 0;
+            values.add(isNull ? null : codec.read(in));
+        }
+        return values;
+    }
+
+    private Node<E> node(int id) throws IOException {
+        if (id == -1) {
+            return null;
+        }
+        if (id < 0 || id >= nodes.size()) {
+            throw new StreamCorruptedException("Unknown node " + id);
+        }
+        return nodes.get(id);
+    }
+}
@@ -0,0 +1,464 @@
+package ru.nsu.fit.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Хранилище версий Б-деревьев в файле, в который данные только дописываются.
+ * <p>
+ * Узел записывается один раз и ссылается на потомков по их смещениям в файле.
+ * Версия - запись с формой дерева, смещением корня и смещением предыдущей версии.
+ * В заголовке файла хранится смещение последней версии, поэтому открытие хранилища
+ * не читает ничего, кроме заголовка.
+ * </p>
+ * <p>
+ * Прочитанные деревья состоят из узлов, которые загружаются из отображенного в память
+ * файла при первом обращении, поэтому старые версии могут быть больше кучи.
+ * Такие узлы и узлы, уже записанные этим хранилищем, при следующей записи
+ * не повторяются: новая версия дописывает только скопированные пути.
+ * Деревья, прочитанные из хранилища, можно использовать, пока оно открыто.
+ * Версии, прочитанные несколько раз, разделяют общие узлы, а содержимое прочитанных
+ * узлов освобождается при нехватке памяти (см. {@link StoredNode}).
+ * </p>
+ *
+ * @param <E> тип элементов.
+ */
+public class NodeStore<E> implements Closeable {
+    /**
+     * Смещение, означающее отсутствие версии.
+     */
+    public static final long NO_VERSION = -1;
+
+    private static final int MAGIC = 0x4e535431;
+
+    private static final int HEADER_SIZE = 12;
+
+    private static final int SEGMENT_SIZE = 1 << 28;
+
+    private final FileChannel channel;
+
+    private final ElementCodec<E> codec;
+
+    /**
+     * Отображения файла в память по SEGMENT_SIZE байт.
+     * Последний сегмент отображается заново, когда файл вырастает.
+     */
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    /**
+     * Смещения узлов из памяти, записанных этим хранилищем.
+     * Узлы не переопределяют equals(), поэтому ключи сравниваются по ссылке.
+     */
+    private final Map<Node<E>, Long> written = new WeakHashMap<>();
+
+    /**
+     * Узлы, прочитанные из файла, по смещениям. Ссылки слабые: узел, на который
+     * не ссылается ни одна версия, удаляется сборщиком мусора.
+     */
+    private final Map<Long, NodeReference<E>> nodes = new HashMap<>();
+
+    private final ReferenceQueue<StoredNode<E>> collected = new ReferenceQueue<>();
+
+    private long end;
+
+    private long latest;
+
+    private NodeStore(FileChannel channel, ElementCodec<E> codec) throws IOException {
+        this.channel = channel;
+        this.codec = codec;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.size() == 0) {
+            header.putInt(MAGIC).putLong(NO_VERSION).flip();
+            writeFully(header, 0);
+        } else {
+            readFully(header, 0);
+            header.flip();
+
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new StreamCorruptedException("Not a node store");
+            }
+        }
+
+        this.latest = header.getLong(Integer.BYTES);
+        this.end = channel.size();
+    }
+
+    /**
+     * Открытие хранилища. Файл создается, если его нет.
+     *
+     * @param path  путь к файлу.
+     * @param codec запись и чтение элементов.
+     * @return хранилище.
+     */
+    public static <E> NodeStore<E> open(Path path, ElementCodec<E> codec) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+        try {
+            return new NodeStore<>(channel, codec);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Дописывание дерева как новой версии, предыдущей для которой становится последняя.
+     * Заголовок обновляется после того, как узлы записаны и сброшены на диск,
+     * поэтому прерванная запись не портит файл.
+     *
+     * @param tree дерево.
+     * @return смещение новой версии.
+     */
+    public synchronized long append(BTree<E> tree) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        Map<Node<E>, Long> created = new IdentityHashMap<>();
+
+        long root = writeNode(tree.getRoot(), out, created);
+        long version = end + out.size();
+
+        out.writeByte(NodeWriter.TREE);
+        out.writeLong(latest);
+        out.writeInt(tree.getDepth());
+        out.writeInt(tree.getBits());
+        out.writeInt(tree.getSize());
+        out.writeInt(tree.getActualSize());
+        out.writeLong(root);
+
+        writeFully(ByteBuffer.wrap(buffer.toByteArray()), end);
+        channel.force(false);
+        end += buffer.size();
+        written.putAll(created);
+
+        writeFully(ByteBuffer.allocate(Long.BYTES).putLong(0, version), Integer.BYTES);
+        latest = version;
+
+        return version;
+    }
+
+    /**
+     * Чтение версии. Узлы дерева загружаются при первом обращении к ним.
+     *
+     * @param version смещение версии.
+     * @return дерево версии.
+     */
+    public synchronized BTree<E> load(long version) throws IOException {
+        DataInputStream in = openVersion(version);
+        in.readLong();
+
+        BTree<E> tree = new BTree<>(in.readInt(), in.readInt());
+        tree.setSize(in.readInt());
+        tree.setActualSize(in.readInt());
+
+        long root = in.readLong();
+        if (root != NO_VERSION) {
+            tree.setRoot(node(root));
+        }
+
+        return tree;
+    }
+
+    /**
+     * Получение смещения версии, записанной перед данной.
+     *
+     * @param version смещение версии.
+     * @return смещение предыдущей версии, либо {@link #NO_VERSION}.
+     */
+    public synchronized long getParent(long version) throws IOException {
+        return openVersion(version).readLong();
+    }
+
+    /**
+     * Получение смещения последней записанной версии.
+     *
+     * @return смещение версии, либо {@link #NO_VERSION}, если хранилище пусто.
+     */
+    public synchronized long getLatest() {
+        return latest;
+    }
+
+    /**
+     * Размер файла хранилища.
+     *
+     * @return число байт.
+     */
+    public synchronized long getSize() {
+        return end;
+    }
+
+    /**
+     * Сброс записанных данных на диск и закрытие файла.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(true);
+            channel.close();
+            segments.clear();
+            nodes.clear();
+        }
+    }
+
+    /**
+     * Получение узла по смещению. Пока узел достижим, все версии, прочитанные
+     * из хранилища, используют один и тот же объект и загружают его один раз.
+     */
+    synchronized StoredNode<E> node(long offset) {
+        for (Reference<?> reference = collected.poll(); reference != null; reference = collected.poll()) {
+            nodes.remove(((NodeReference<?>) reference).offset, reference);
+        }
+
+        NodeReference<E> reference = nodes.get(offset);
+        StoredNode<E> node = reference == null ? null : reference.get();
+        if (node == null) {
+            node = new StoredNode<>(this, offset);
+            nodes.put(offset, new NodeReference<>(node, offset, collected));
+        }
+
+        return node;
+    }
+
+    /**
+     * Чтение содержимого узла из файла.
+     */
+    synchronized StoredNode.Contents<E> read(long offset) throws IOException {
+        DataInputStream in = new DataInputStream(new MappedInput(offset));
+
+        if (in.readByte() != NodeWriter.NODE) {
+            throw new StreamCorruptedException("No node at offset " + offset);
+        }
+
+        int flags = in.readByte();
+
+        List<Node<E>> children = null;
+        if ((flags & NodeWriter.HAS_CHILDREN) != 0) {
+            int count = in.readInt();
+            children = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long childOffset = in.readLong();
+                children.add(childOffset == NO_VERSION ? null : node(childOffset));
+            }
+        }
+
+        List<E> values = null;
+        if ((flags & NodeWriter.HAS_VALUES) != 0) {
+            int count = in.readInt();
+            byte[] nulls = new byte[(count + 7) / 8];
+            in.readFully(nulls);
+
+            values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                boolean isNull = (nulls[i / 8] & (1 << (i % 8))) != 0;
+                values.add(isNull ? null : codec.read(in));
+            }
+        }
+
+        int[] links = null;
+        if ((flags & NodeWriter.HAS_LINKS) != 0) {
+            links = new int[in.readInt()];
+            for (int i = 0; i < links.length; i++) {
+                links[i] = in.readInt();
+            }
+        }
+
+        return new StoredNode.Contents<>(values, children, links);
+    }
+
+    private DataInputStream openVersion(long version) throws IOException {
+        if (version < HEADER_SIZE || version >= end) {
+            throw new IndexOutOfBoundsException("Version " + version + " does not exist");
+        }
+
+        DataInputStream in = new DataInputStream(new MappedInput(version));
+        if (in.readByte() != NodeWriter.TREE) {
+            throw new IllegalArgumentException("No version at offset " + version);
+        }
+
+        return in;
+    }
+
+    /**
+     * Запись узла и всех его новых потомков в буфер.
+     *
+     * @return смещение, которое узел получит после записи буфера в конец файла.
+     */
+    private long writeNode(Node<E> node, DataOutputStream out, Map<Node<E>, Long> created) throws IOException {
+        if (node == null) {
+            return NO_VERSION;
+        }
+
+        if (node instanceof StoredNode && ((StoredNode<E>) node).getStore() == this) {
+            return ((StoredNode<E>) node).getOffset();
+        }
+
+        Long known = written.get(node);
+        if (known == null) {
+            known = created.get(node);
+        }
+        if (known != null) {
+            return known;
+        }
+
+        List<Node<E>> children = node.getChild();
+        long[] childOffsets = null;
+        if (children != null) {
+            childOffsets = new long[children.size()];
+            for (int i = 0; i < childOffsets.length; i++) {
+                childOffsets[i] = writeNode(children.get(i), out, created);
+            }
+        }
+
+        List<E> values = node.getValue();
+        int[] links = node.getLinks();
+        long offset = end + out.size();
+
+        out.writeByte(NodeWriter.NODE);
+        out.writeByte((childOffsets != null ? NodeWriter.HAS_CHILDREN : 0)
+                | (values != null ? NodeWriter.HAS_VALUES : 0)
+                | (links != null ? NodeWriter.HAS_LINKS : 0));
+
+        if (childOffsets != null) {
+            out.writeInt(childOffsets.length);
+            for (long childOffset : childOffsets) {
+                out.writeLong(childOffset);
+            }
+        }
+
+        if (values != null) {
+            out.writeInt(values.size());
+
+            byte[] nulls = new byte[(values.size() + 7) / 8];
+            for (int i = 0; i < values.size(); i++) {
+                if (values.get(i) == null) {
+                    nulls[i / 8] |= (byte) (1 << (i % 8));
+                }
+            }
+            out.write(nulls);
+
+            for (E value : values) {
+                if (value != null) {
+                    codec.write(out, value);
+                }
+            }
+        }
+
+        if (links != null) {
+            out.writeInt(links.length);
+            for (int link : links) {
+                out.writeInt(link);
+            }
+        }
+
+        created.put(node, offset);
+        return offset;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                return;
+            }
+            position += count;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Отображение сегмента файла, содержащего байт position.
+     */
+    private MappedByteBuffer segment(long position) throws IOException {
+        int index = (int) (position / SEGMENT_SIZE);
+        long start = (long) index * SEGMENT_SIZE;
+
+        while (segments.size() <= index) {
+            segments.add(null);
+        }
+
+        MappedByteBuffer segment = segments.get(index);
+        if (segment == null || segment.limit() <= position - start) {
+            long length = Math.min(SEGMENT_SIZE, end - start);
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            segments.set(index, segment);
+        }
+
+        return segment;
+    }
+
+    /**
+     * Последовательное чтение отображенного файла с заданного смещения.
+     */
+    private final class MappedInput extends InputStream {
+        private long position;
+
+        MappedInput(long position) {
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+
+            int index = (int) (position % SEGMENT_SIZE);
+            return segment(position++).get(index) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+
+            MappedByteBuffer segment = segment(position);
+            int index = (int) (position % SEGMENT_SIZE);
+            int count = Math.min(length, segment.limit() - index);
+
+            segment.get(index, bytes, offset, count);
+            position += count;
+            return count;
+        }
+    }
+
+    /**
+     * Слабая ссылка на узел, помнящая его смещение для удаления из {@link #nodes}.
+     */
+    private static final class NodeReference<E> extends WeakReference<StoredNode<E>> {
+        private final long offset;
+
+        NodeReference(StoredNode<E> node, long offset, ReferenceQueue<StoredNode<E>> queue) {
+            super(node, queue);
+            this.offset = offset;
+        }
+    }
+}
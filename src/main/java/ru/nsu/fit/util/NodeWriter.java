@@ -0,0 +1,150 @@
+package ru.nsu.fit.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Запись деревьев с общими узлами в поток.
+ * <p>
+ * Каждый узел записывается один раз, при первой встрече, и получает номер по порядку записи.
+ * Узлы пишутся после своих потомков, поэтому при чтении ссылки всегда указывают
+ * на уже прочитанные узлы. Версии, разделяющие узлы, ссылаются на одни и те же номера,
+ * и каждая следующая версия добавляет в поток только свои новые пути.
+ * </p>
+ *
+ * @param <E> тип элементов.
+ */
+public class NodeWriter<E> {
+    static final int NODE = 1;
+
+    static final int TREE = 2;
+
+    static final int HAS_CHILDREN = 1;
+
+    static final int HAS_VALUES = 2;
+
+    static final int HAS_LINKS = 4;
+
+    private final DataOutput out;
+
+    private final ElementCodec<? super E> codec;
+
+    private final Map<Node<E>, Integer> ids = new IdentityHashMap<>();
+
+    public NodeWriter(DataOutput out, ElementCodec<? super E> codec) {
+        this.out = out;
+        this.codec = codec;
+    }
+
+    /**
+     * Запись дерева: новые узлы и заголовок со ссылкой на корень.
+     *
+     * @param tree дерево.
+     */
+    public void writeTree(BTree<E> tree) throws IOException {
+        int root = writeNode(tree.getRoot());
+
+        out.writeByte(TREE);
+        out.writeInt(tree.getDepth());
+        out.writeInt(tree.getBits());
+        out.writeInt(tree.getSize());
+        out.writeInt(tree.getActualSize());
+        out.writeInt(root);
+    }
+
+    /**
+     * Запись версии списка: дерево и концы списка.
+     *
+     * @param head голова списка.
+     */
+    public void writeList(ListHead<E> head) throws IOException {
+        writeTree(head);
+
+        out.writeInt(head.getFirstIndex());
+        out.writeInt(head.getLastIndex());
+        out.writeBoolean(head.isSequential());
+    }
+
+    /**
+     * Количество записанных различных узлов.
+     *
+     * @return число узлов.
+     */
+    public int getNodeCount() {
+        return ids.size();
+    }
+
+    private int writeNode(Node<E> node) throws IOException {
+        if (node == null) {
+            return -1;
+        }
+
+        Integer known = ids.get(node);
+        if (known != null) {
+            return known;
+        }
+
+        List<Node<E>> children = node.getChild();
+        int[] childIds = null;
+        if (children != null) {
+            childIds = new int[children.size()];
+            for (int i = 0; i < childIds.length; i++) {
+                childIds[i] = writeNode(children.get(i));
+            }
+        }
+
+        List<E> values = node.getValue();
+        int[] links = node.getLinks();
+
+        out.writeByte(NODE);
+        out.writeByte((childIds != null ? HAS_CHILDREN : 0)
+                | (values != null ? HAS_VALUES : 0)
+                | (links != null ? HAS_LINKS : 0));
+
+        if (childIds != null) {
+            out.writeInt(childIds.length);
+            for (int childId : childIds) {
+                out.writeInt(childId);
+            }
+        }
+
+        if (values != null) {
+            writeValues(values);
+        }
+
+        if (links != null) {
+            out.writeInt(links.length);
+            for (int link : links) {
+                out.writeInt(link);
+            }
+        }
+
+        int id = ids.size();
+        ids.put(node, id);
+        return id;
+    }
+
+    /**
+     * Запись значений листа: битовая маска null и сами значения.
+     */
+    private void writeValues(List<E> values) throws IOException {
+        out.writeInt(values.size());
+
+        byte[] nulls = new byte[(values.size() + 7) / 8];
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) == null) {
+                nulls[i / 8] |= (byte) (1 << (i % 8));
+            }
+        }
+        out.write(nulls);
+
+        for (E value : values) {
+            if (value != null) {
+                codec.write(out, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ru.nsu.fit.util;
+
+import lombok.Getter;
+
+/**
+ * Неизменяемая пара значений.
+ */
+@Getter
+public class Pair<F, S> {
+
+    private final F first;
+
+    private final S second;
+
+    public Pair(F first, S second) {
+        this.first = first;
+        this.second = second;
+    }
+}
@@ -0,0 +1,109 @@
+package ru.nsu.fit.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.util.List;
+
+/**
+ * Узел, записанный в {@link NodeStore}. Содержимое читается из файла при первом обращении.
+ * <p>
+ * Прочитанное содержимое хранится по мягкой ссылке: при нехватке памяти сборщик мусора
+ * освобождает его, и следующее обращение читает узел из файла снова. Содержимое,
+ * измененное через set-методы, с файлом уже не совпадает, поэтому не освобождается.
+ * </p>
+ *
+ * @param <E> тип элементов.
+ */
+class StoredNode<E> extends Node<E> {
+    private final NodeStore<E> store;
+
+    private final long offset;
+
+    private SoftReference<Contents<E>> contents;
+
+    private Contents<E> pinned;
+
+    StoredNode(NodeStore<E> store, long offset) {
+        this.store = store;
+        this.offset = offset;
+    }
+
+    NodeStore<E> getStore() {
+        return store;
+    }
+
+    long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public List<E> getValue() {
+        return load().value;
+    }
+
+    @Override
+    public List<Node<E>> getChild() {
+        return load().child;
+    }
+
+    @Override
+    public int[] getLinks() {
+        return load().links;
+    }
+
+    @Override
+    public synchronized void setValue(List<E> value) {
+        pin().value = value;
+    }
+
+    @Override
+    public synchronized void setChild(List<Node<E>> child) {
+        pin().child = child;
+    }
+
+    @Override
+    public synchronized void setLinks(int[] links) {
+        pin().links = links;
+    }
+
+    private synchronized Contents<E> pin() {
+        pinned = load();
+        return pinned;
+    }
+
+    private synchronized Contents<E> load() {
+        if (pinned != null) {
+            return pinned;
+        }
+
+        Contents<E> result = contents == null ? null : contents.get();
+        if (result == null) {
+            try {
+                result = store.read(offset);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            contents = new SoftReference<>(result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Поля узла, прочитанные из файла.
+     */
+    static final class Contents<E> {
+        private List<E> value;
+
+        private List<Node<E>> child;
+
+        private int[] links;
+
+        Contents(List<E> value, List<Node<E>> child, int[] links) {
+            this.value = value;
+            this.child = child;
+            this.links = links;
+        }
+    }
+}
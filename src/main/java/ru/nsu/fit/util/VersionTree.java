@@ -0,0 +1,510 @@
+package ru.nsu.fit.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Дерево версий структуры данных.
+ * <p>
+ * Каждая версия хранит корень неизменяемого дерева и получает номер по порядку создания.
+ * Новая версия становится потомком текущей, поэтому изменение старой версии
+ * создает новую ветку, а не затирает ранее отмененные версии.
+ * Переход к любой версии выполняется за O(1).
+ * </p>
+ * <p>
+ * Дерево версий вложенной структуры может быть подключено к дереву внешней
+ * (см. {@link #setParent(VersionTree)}). Тогда каждый переход вложенной структуры
+ * к другой версии записывается во внешнюю как новая версия с тем же корнем
+ * и пометкой, из какой версии в какую перешла вложенная. undo() и redo() внешней
+ * структуры переводят вложенную обратно, поэтому стоят O(глубина вложенности).
+ * Переход checkout() между ветками при наличии таких пометок проходит
+ * по пути между версиями.
+ * </p>
+ * <p>
+ * Внешняя структура хранит саму вложенную, а не ее копию, поэтому для каждой версии
+ * запоминается и номер версии вложенной структуры (см. {@link #nestedVersions(int)}):
+ * по нему снимок старой версии внешней структуры показывает вложенные в том состоянии,
+ * в котором они были в этой версии. Структура может быть вложена только в одну внешнюю.
+ * </p>
+ * <p>
+ * Дерево версий можно записать в поток и прочитать обратно
+ * (см. {@link #writeTo(DataOutput, RootWriter)}).
+ * </p>
+ *
+ * @param <R> тип корня версии.
+ */
+public class VersionTree<R> {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final List<R> roots;
+
+    /**
+     * Номер родителя для каждой версии, -1 у первой версии.
+     */
+    private int[] parents;
+
+    /**
+     * Номер последнего посещенного потомка для каждой версии, -1 если потомков нет.
+     */
+    private int[] lastChildren;
+
+    /**
+     * Расстояние от версии до первой версии.
+     */
+    private int[] depths;
+
+    /**
+     * Вложенная структура, изменение которой создало версию, либо null.
+     */
+    private VersionTree<?>[] nestedTrees;
+
+    private int[] nestedFrom;
+
+    private int[] nestedTo;
+
+    /**
+     * Вложенные структуры, подключенные при создании версии, и номера их версий.
+     */
+    private Attached[][] attached;
+
+    /**
+     * Вложенные структуры, подключенные после создания текущей версии.
+     */
+    private final List<VersionTree<?>> pending = new ArrayList<>();
+
+    /**
+     * Вложенные структуры, подключенные к этому дереву.
+     */
+    private final List<VersionTree<?>> children = new ArrayList<>();
+
+    /**
+     * true, если хотя бы одна версия создана изменением вложенной структуры.
+     */
+    private boolean nested;
+
+    /**
+     * true, если к дереву подключалась хотя бы одна вложенная структура.
+     */
+    private boolean hasAttached;
+
+    private VersionTree<?> parent;
+
+    /**
+     * Структура, которой принадлежит это дерево, если она вложена в другую.
+     */
+    private Object owner;
+
+    private int current = -1;
+
+    public VersionTree() {
+        this.roots = new ArrayList<>();
+        this.parents = new int[INITIAL_CAPACITY];
+        this.lastChildren = new int[INITIAL_CAPACITY];
+        this.depths = new int[INITIAL_CAPACITY];
+        this.nestedTrees = new VersionTree<?>[INITIAL_CAPACITY];
+        this.nestedFrom = new int[INITIAL_CAPACITY];
+        this.nestedTo = new int[INITIAL_CAPACITY];
+        this.attached = new Attached[INITIAL_CAPACITY][];
+    }
+
+    /**
+     * Копирование дерева версий со всей историей.
+     * <p>
+     * Вложенные структуры по-прежнему принадлежат other, поэтому копия не переводит их
+     * при undo(), redo() и checkout(): переходы вложенных структур становятся записями
+     * их версий (см. {@link #nestedVersions(int)}), и снимки версий копии остаются верными.
+     * </p>
+     *
+     * @param other копируемое дерево.
+     */
+    public VersionTree(VersionTree<R> other) {
+        this.roots = new ArrayList<>(other.roots);
+        this.parents = other.parents.clone();
+        this.lastChildren = other.lastChildren.clone();
+        this.depths = other.depths.clone();
+        this.nestedTrees = new VersionTree<?>[other.nestedTrees.length];
+        this.nestedFrom = new int[other.nestedFrom.length];
+        this.nestedTo = new int[other.nestedTo.length];
+        this.attached = other.attached.clone();
+        this.hasAttached = other.hasAttached || other.nested;
+        this.current = other.current;
+
+        for (int version = 0; version < other.roots.size(); version++) {
+            VersionTree<?> child = other.nestedTrees[version];
+            if (child != null) {
+                Attached[] records = attached[version] == null ? new Attached[0] : attached[version];
+                Attached[] withMarker = new Attached[records.length + 1];
+                withMarker[0] = new Attached(child.owner, other.nestedTo[version]);
+                System.arraycopy(records, 0, withMarker, 1, records.length);
+                attached[version] = withMarker;
+            }
+        }
+    }
+
+    /**
+     * Подключение к дереву версий внешней структуры, в которую вложена эта.
+     * Следующая версия parent запомнит версию этого дерева, текущую в момент ее создания.
+     *
+     * @param parent дерево версий внешней структуры.
+     * @param owner  структура, которой принадлежит это дерево.
+     * @throws IllegalStateException если структура уже вложена в другую:
+     *                               вложить ее еще раз можно только через fork().
+     */
+    public void setParent(VersionTree<?> parent, Object owner) {
+        if (parent == this) {
+            return;
+        }
+        if (this.parent != null && this.parent != parent) {
+            throw new IllegalStateException("Structure is already nested in another one, nest its fork() instead");
+        }
+
+        if (this.parent == null) {
+            parent.children.add(this);
+        }
+        this.parent = parent;
+        this.owner = owner;
+        parent.pending.add(this);
+        parent.hasAttached = true;
+    }
+
+    /**
+     * Переподключение к этому дереву всех вложенных структур дерева other за O(их количества).
+     * Следующая версия этого дерева запомнит их текущие версии, а other больше не записывает
+     * их переходы. Нужно, когда структура заменяется копией, разделяющей с ней корень.
+     *
+     * @param other дерево версий заменяемой структуры.
+     */
+    public void adoptNested(VersionTree<?> other) {
+        if (other == this) {
+            return;
+        }
+
+        for (VersionTree<?> child : other.children) {
+            child.parent = this;
+            children.add(child);
+            pending.add(child);
+            hasAttached = true;
+        }
+        other.children.clear();
+    }
+
+    /**
+     * Проверка, подключались ли к дереву вложенные структуры.
+     *
+     * @return true, если снимки версий должны учитывать состояние вложенных структур.
+     */
+    public boolean hasNested() {
+        return nested || hasAttached;
+    }
+
+    /**
+     * Получение версий вложенных структур в версии versionId.
+     * Проходит путь от versionId к первой версии, поэтому работает за O(глубина версии).
+     *
+     * @param versionId номер версии.
+     * @return номер версии каждой структуры, вложенной на этом пути, по самой структуре.
+     */
+    public Map<Object, Integer> nestedVersions(int versionId) {
+        checkVersion(versionId);
+        Map<Object, Integer> result = new IdentityHashMap<>();
+
+        for (int version = versionId; version != -1; version = parents[version]) {
+            if (nestedTrees[version] != null) {
+                result.putIfAbsent(nestedTrees[version].owner, nestedTo[version]);
+            }
+            if (attached[version] != null) {
+                for (Attached record : attached[version]) {
+                    result.putIfAbsent(record.owner(), record.version());
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Добавление новой версии потомком текущей и переход к ней.
+     *
+     * @param root корень новой версии.
+     * @return номер новой версии.
+     */
+    public int commit(R root) {
+        int previous = current;
+        append(root, null, 0, 0);
+        notifyParent(previous);
+        return current;
+    }
+
+    /**
+     * Переход к родителю текущей версии. У первой версии ничего не делает.
+     * Родитель запоминает, из какой ветки пришли, чтобы redo() вернул в нее.
+     */
+    public void undo() {
+        int previous = current;
+        int parentVersion = parents[current];
+
+        if (parentVersion != -1) {
+            lastChildren[parentVersion] = current;
+            moveTo(parentVersion);
+            notifyParent(previous);
+        }
+    }
+
+    /**
+     * Переход к последнему посещенному потомку текущей версии, если он есть.
+     */
+    public void redo() {
+        int previous = current;
+
+        if (lastChildren[current] != -1) {
+            moveTo(lastChildren[current]);
+            notifyParent(previous);
+        }
+    }
+
+    /**
+     * Переход к версии с номером versionId.
+     *
+     * @param versionId номер версии.
+     */
+    public void checkout(int versionId) {
+        checkVersion(versionId);
+
+        int previous = current;
+        moveTo(versionId);
+        notifyParent(previous);
+    }
+
+    /**
+     * Получение корня текущей версии.
+     *
+     * @return корень текущей версии.
+     */
+    public R getCurrent() {
+        return roots.get(current);
+    }
+
+    /**
+     * Получение корня версии по номеру.
+     *
+     * @param versionId номер версии.
+     * @return корень версии.
+     */
+    public R get(int versionId) {
+        checkVersion(versionId);
+        return roots.get(versionId);
+    }
+
+    public int getCurrentId() {
+        return current;
+    }
+
+    /**
+     * Получение номера родительской версии.
+     *
+     * @param versionId номер версии.
+     * @return номер родителя, либо -1 для первой версии.
+     */
+    public int getParent(int versionId) {
+        checkVersion(versionId);
+        return parents[versionId];
+    }
+
+    /**
+     * Количество всех версий во всех ветках.
+     *
+     * @return количество версий.
+     */
+    public int size() {
+        return roots.size();
+    }
+
+    /**
+     * Запись корней, связей между версиями и номера текущей версии.
+     * <p>
+     * Пометки о переходах вложенных структур не записываются: прочитанное дерево
+     * не подключено к вложенным структурам, и такие версии становятся обычными
+     * версиями с тем же корнем.
+     * </p>
+     *
+     * @param out    поток.
+     * @param writer запись корня версии.
+     */
+    public void writeTo(DataOutput out, RootWriter<? super R> writer) throws IOException {
+        out.writeInt(roots.size());
+
+        for (int i = 0; i < roots.size(); i++) {
+            out.writeInt(parents[i]);
+            out.writeInt(lastChildren[i]);
+            writer.write(roots.get(i));
+        }
+
+        out.writeInt(current);
+    }
+
+    /**
+     * Чтение дерева версий, записанного {@link #writeTo(DataOutput, RootWriter)}.
+     *
+     * @param in     поток.
+     * @param reader чтение корня версии.
+     * @return дерево версий.
+     */
+    public static <R> VersionTree<R> readFrom(DataInput in, RootReader<? extends R> reader) throws IOException {
+        VersionTree<R> tree = new VersionTree<>();
+        int count = in.readInt();
+        int[] lastChildren = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            int parentVersion = in.readInt();
+            lastChildren[i] = in.readInt();
+
+            if (parentVersion < -1 || parentVersion >= i || (parentVersion == -1) != (i == 0)) {
+                throw new StreamCorruptedException("Invalid parent of version " + i);
+            }
+
+            tree.current = parentVersion;
+            tree.append(reader.read(), null, 0, 0);
+        }
+
+        int current = in.readInt();
+        if (current < 0 || current >= count) {
+            throw new StreamCorruptedException("Invalid current version " + current);
+        }
+
+        System.arraycopy(lastChildren, 0, tree.lastChildren, 0, count);
+        tree.current = current;
+        return tree;
+    }
+
+    /**
+     * Запись корня версии в поток.
+     */
+    @FunctionalInterface
+    public interface RootWriter<R> {
+        void write(R root) throws IOException;
+    }
+
+    /**
+     * Чтение корня версии из потока.
+     */
+    @FunctionalInterface
+    public interface RootReader<R> {
+        R read() throws IOException;
+    }
+
+    /**
+     * Запись перехода вложенной структуры как новой версии с тем же корнем.
+     */
+    private void nestedChanged(VersionTree<?> child, int from, int to) {
+        int previous = current;
+        append(roots.get(current), child, from, to);
+        nested = true;
+        notifyParent(previous);
+    }
+
+    private void notifyParent(int previous) {
+        if (parent != null && previous != -1 && previous != current) {
+            parent.nestedChanged(this, previous, current);
+        }
+    }
+
+    private void append(R root, VersionTree<?> child, int from, int to) {
+        int id = roots.size();
+
+        if (id == parents.length) {
+            int capacity = id * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            lastChildren = Arrays.copyOf(lastChildren, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+            nestedTrees = Arrays.copyOf(nestedTrees, capacity);
+            nestedFrom = Arrays.copyOf(nestedFrom, capacity);
+            nestedTo = Arrays.copyOf(nestedTo, capacity);
+            attached = Arrays.copyOf(attached, capacity);
+        }
+
+        roots.add(root);
+        parents[id] = current;
+        lastChildren[id] = -1;
+        depths[id] = current == -1 ? 0 : depths[current] + 1;
+        nestedTrees[id] = child;
+        nestedFrom[id] = from;
+        nestedTo[id] = to;
+        attached[id] = pending.isEmpty() ? null : pending.stream()
+                .map(tree -> new Attached(tree.owner, tree.current))
+                .toArray(Attached[]::new);
+        pending.clear();
+
+        if (current != -1) {
+            lastChildren[current] = id;
+        }
+
+        current = id;
+    }
+
+    /**
+     * Переход к версии target без записи во внешнюю структуру.
+     * Вложенные структуры переводятся в состояние, соответствующее target.
+     */
+    private void moveTo(int target) {
+        if (!nested) {
+            current = target;
+            return;
+        }
+
+        int from = current;
+        int to = target;
+        int[] path = new int[depths[target] + 1];
+        int length = 0;
+
+        while (depths[to] > depths[from]) {
+            path[length++] = to;
+            to = parents[to];
+        }
+
+        while (depths[from] > depths[to]) {
+            leave(from);
+            from = parents[from];
+        }
+
+        while (from != to) {
+            leave(from);
+            from = parents[from];
+            path[length++] = to;
+            to = parents[to];
+        }
+
+        for (int i = length - 1; i >= 0; i--) {
+            enter(path[i]);
+        }
+
+        current = target;
+    }
+
+    private void leave(int version) {
+        if (nestedTrees[version] != null) {
+            nestedTrees[version].moveTo(nestedFrom[version]);
+        }
+    }
+
+    private void enter(int version) {
+        if (nestedTrees[version] != null) {
+            nestedTrees[version].moveTo(nestedTo[version]);
+        }
+    }
+
+    private record Attached(Object owner, int version) {
+    }
+
+    private void checkVersion(int versionId) {
+        if (versionId < 0 || versionId >= roots.size()) {
+            throw new IndexOutOfBoundsException("Version " + versionId + " does not exist");
+        }
+    }
+}
@@ -1,8 +1,19 @@
 package ru.nsu.fit;
 
 import org.junit.jupiter.api.Test;
+import ru.nsu.fit.array.ArrayPatch;
 import ru.nsu.fit.array.PersistentArray;
-
+import ru.nsu.fit.list.PersistentLinkedList;
+import ru.nsu.fit.util.ElementCodec;
+import ru.nsu.fit.util.MergeConflict;
+import ru.nsu.fit.util.NodeStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -128,9 +139,24 @@ class PersistentArrayTest {
 
         assertEquals("[[[1], [2], [3]], [[11], [22], [33]], [[111], [222], [333, 444]]]", persistentArrayrent.toString());
         persistentArrayrent.undo();
-        assertEquals("[[[1], [2], [3]], [[11], [22], [33]]]", persistentArrayrent.toString());
+        assertEquals("[[[1], [2], [3]], [[11], [22], [33]], [[111], [222], [333]]]", persistentArrayrent.toString());
         persistentArrayrent.redo();
         assertEquals("[[[1], [2], [3]], [[11], [22], [33]], [[111], [222], [333, 444]]]", persistentArrayrent.toString());
+
+        for (int i = 0; i < 10; i++) {
+            persistentArrayrent.undo();
+        }
+        assertEquals("[[[], [], []], [[], [], []], [[], [], []]]", persistentArrayrent.toString());
+        for (int i = 0; i < 9; i++) {
+            persistentArrayrent.undo();
+        }
+        assertEquals("[[], [], []]", persistentArrayrent.toString());
+        persistentArrayrent.undo();
+        assertEquals("[[], []]", persistentArrayrent.toString());
+        for (int i = 0; i < 20; i++) {
+            persistentArrayrent.redo();
+        }
+        assertEquals("[[[1], [2], [3]], [[11], [22], [33]], [[111], [222], [333, 444]]]", persistentArrayrent.toString());
         childtest = persistentArrayrent.remove(0);
         assertEquals("[[[11], [22], [33]], [[111], [222], [333, 444]]]", persistentArrayrent.toString());
         persistentArrayrent.add(0, childtest);
@@ -561,4 +587,398 @@ class PersistentArrayTest {
             persistentArray.undo();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void versionTreeTest() {
+        PersistentArray<String> persistentArray = new PersistentArray<>();
+        int empty = persistentArray.getVersionId();
+        persistentArray.add("1");
+        int one = persistentArray.getVersionId();
+        persistentArray.add("2");
+        int two = persistentArray.getVersionId();
+
+        persistentArray.undo();
+        persistentArray.add("3");
+        int three = persistentArray.getVersionId();
+        assertEquals("[1, 3]", persistentArray.toString());
+        assertEquals(4, persistentArray.getVersionCount());
+
+        persistentArray.checkout(two);
+        assertEquals("[1, 2]", persistentArray.toString());
+        persistentArray.undo();
+        assertEquals(one, persistentArray.getVersionId());
+        persistentArray.redo();
+        assertEquals(two, persistentArray.getVersionId());
+
+        persistentArray.checkout(three);
+        assertEquals("[1, 3]", persistentArray.toString());
+        persistentArray.checkout(empty);
+        persistentArray.undo();
+        assertEquals("[]", persistentArray.toString());
+        persistentArray.checkout(two);
+        persistentArray.set(1, "4");
+        assertEquals("[1, 4]", persistentArray.toString());
+        persistentArray.checkout(two);
+        assertEquals("[1, 2]", persistentArray.toString());
+
+        assertThrows(IndexOutOfBoundsException.class, () -> persistentArray.checkout(100));
+    }
+
+    @Test
+    void atTest() {
+        PersistentArray<String> persistentArray = new PersistentArray<>();
+        persistentArray.add("1");
+        int one = persistentArray.getVersionId();
+        persistentArray.add("2");
+        persistentArray.set(0, "3");
+
+        List<String> snapshot = persistentArray.at(one);
+        persistentArray.undo();
+        persistentArray.add("4");
+
+        assertEquals(List.of("1"), snapshot);
+        assertEquals(List.of("1", "2"), persistentArray.at(one + 1));
+        assertEquals(List.of("3", "2"), persistentArray.at(one + 2));
+        assertEquals("[1, 2, 4]", persistentArray.toString());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add("5"));
+        assertThrows(IndexOutOfBoundsException.class, () -> persistentArray.at(10));
+    }
+
+    @Test
+    void serializationTest() throws IOException {
+        PersistentArray<Integer> persistentArray = new PersistentArray<>();
+        for (int i = 0; i < 10000; i++) {
+            persistentArray.add(i);
+        }
+        int filled = persistentArray.getVersionId();
+
+        ByteArrayOutputStream base = new ByteArrayOutputStream();
+        persistentArray.writeTo(base, ElementCodec.integers());
+
+        for (int i = 0; i < 100; i++) {
+            persistentArray.set(i * 97, -i);
+        }
+        persistentArray.set(1, null);
+        persistentArray.checkout(filled);
+        persistentArray.set(0, 42);
+        int branch = persistentArray.getVersionId();
+        persistentArray.undo();
+
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        persistentArray.writeTo(all, ElementCodec.integers());
+        assertTrue(all.size() < base.size() * 2);
+
+        PersistentArray<Integer> restored = PersistentArray.readFrom(
+                new ByteArrayInputStream(all.toByteArray()), ElementCodec.integers());
+
+        assertEquals(persistentArray.getVersionCount(), restored.getVersionCount());
+        assertEquals(persistentArray.getVersionId(), restored.getVersionId());
+        for (int version = 0; version < persistentArray.getVersionCount(); version += 101) {
+            assertEquals(new ArrayList<>(persistentArray.at(version)), restored.at(version));
+        }
+        assertEquals(new ArrayList<>(persistentArray.at(branch - 1)), restored.at(branch - 1));
+        assertNull(restored.at(branch - 1).get(1));
+
+        restored.redo();
+        assertEquals(42, restored.get(0));
+        restored.set(5, 5);
+        restored.undo();
+        restored.undo();
+        assertEquals(new ArrayList<>(persistentArray), restored);
+
+        assertThrows(StreamCorruptedException.class, () -> PersistentArray.readFrom(
+                new ByteArrayInputStream(new byte[8]), ElementCodec.integers()));
+    }
+
+    @Test
+    void consecutiveRecordsTest() throws IOException {
+        PersistentArray<Integer> persistentArray = new PersistentArray<>();
+        persistentArray.addAll(List.of(1, 2, 3));
+        int base = persistentArray.getVersionId();
+        persistentArray.set(1, 20);
+        PersistentLinkedList<Integer> list = new PersistentLinkedList<>();
+        list.addAll(List.of(4, 5));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        persistentArray.writeTo(out, ElementCodec.integers());
+        list.writeTo(out, ElementCodec.integers());
+        persistentArray.diff(base, persistentArray.getVersionId()).writeTo(out, ElementCodec.integers());
+        persistentArray.writeTo(out, ElementCodec.integers());
+        out.write(7);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals(List.of(1, 20, 3), PersistentArray.readFrom(in, ElementCodec.integers()));
+        assertEquals(List.of(4, 5), new ArrayList<>(PersistentLinkedList.readFrom(in, ElementCodec.integers())));
+        assertArrayEquals(new int[]{1}, ArrayPatch.readFrom(in, ElementCodec.integers()).getIndices());
+        assertEquals(base + 2, PersistentArray.readFrom(in, ElementCodec.integers()).getVersionCount());
+        assertEquals(7, in.read());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void nodeStoreTest() throws IOException {
+        Path path = Files.createTempFile("persistent-array", ".store");
+        PersistentArray<String> persistentArray = new PersistentArray<>();
+        persistentArray.addAll(List.of("1", "2", "3", "4", "5", "6", "7", "8", "9", "10"));
+        long first;
+        long second;
+        long size;
+
+        try (NodeStore<String> store = NodeStore.open(path, ElementCodec.strings())) {
+            first = persistentArray.store(store);
+            size = store.getSize();
+
+            persistentArray.set(9, null);
+            persistentArray.add("11");
+            second = persistentArray.store(store);
+            assertTrue(store.getSize() - size < size);
+
+            size = store.getSize();
+            persistentArray.store(store);
+            assertTrue(store.getSize() - size < 64);
+        }
+
+        try (NodeStore<String> store = NodeStore.open(path, ElementCodec.strings())) {
+            PersistentArray<String> latest = PersistentArray.open(store);
+            assertEquals(Arrays.asList("1", "2", "3", "4", "5", "6", "7", "8", "9", null, "11"), latest);
+            assertEquals(second, store.getParent(store.getLatest()));
+            assertEquals(first, store.getParent(second));
+            assertEquals(NodeStore.NO_VERSION, store.getParent(first));
+
+            PersistentArray<String> old = PersistentArray.open(store, first);
+            assertEquals("[1, 2, 3, 4, 5, 6, 7, 8, 9, 10]", old.toString());
+            assertSame(store.load(first).getRoot(), store.load(first).getRoot());
+
+            old.set(0, "0");
+            old.undo();
+            old.redo();
+            size = store.getSize();
+            long changed = old.store(store);
+            assertTrue(store.getSize() - size < 128);
+            assertEquals("0", PersistentArray.open(store, changed).get(0));
+            assertEquals("1", PersistentArray.open(store, first).get(0));
+
+            assertThrows(IndexOutOfBoundsException.class, () -> PersistentArray.open(store, store.getSize()));
+            assertThrows(IllegalArgumentException.class, () -> PersistentArray.open(store, 12));
+        }
+
+        try (NodeStore<String> store = NodeStore.open(path, ElementCodec.strings())) {
+            assertEquals("0", PersistentArray.open(store).get(0));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void diffTest() throws IOException {
+        PersistentArray<Integer> persistentArray = new PersistentArray<>();
+        persistentArray.addAll(Collections.nCopies(100000, 0));
+        int base = persistentArray.getVersionId();
+        PersistentArray<Integer> replica = persistentArray.fork();
+
+        persistentArray.set(5, 5);
+        persistentArray.set(70000, 7);
+        persistentArray.set(70000, null);
+        persistentArray.set(99999, 9);
+        persistentArray.add(1);
+        persistentArray.add(2);
+
+        ArrayPatch<Integer> patch = persistentArray.diff(base, persistentArray.getVersionId());
+        assertArrayEquals(new int[]{5, 70000, 99999, 100000, 100001}, patch.getIndices());
+        assertEquals(Arrays.asList(5, null, 9, 1, 2), patch.getValues());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        patch.writeTo(out, ElementCodec.integers());
+        replica.apply(ArrayPatch.readFrom(new ByteArrayInputStream(out.toByteArray()), ElementCodec.integers()));
+        assertEquals(new ArrayList<>(persistentArray), replica);
+        assertEquals(2, replica.getVersionCount());
+
+        persistentArray.remove(100001);
+        persistentArray.remove(100000);
+        persistentArray.remove(99999);
+        ArrayPatch<Integer> shrink = persistentArray.diff(persistentArray.getVersionId() - 3, persistentArray.getVersionId());
+        assertEquals(99999, shrink.getSize());
+        assertTrue(shrink.isEmpty());
+        replica.apply(shrink);
+        assertEquals(new ArrayList<>(persistentArray), replica);
+
+        assertTrue(persistentArray.diff(base, base).isEmpty());
+        assertEquals(0, persistentArray.diff(base, 0).getSize());
+        assertThrows(IllegalArgumentException.class, () -> new PersistentArray<Integer>().apply(patch));
+    }
+
+    @Test
+    void equalsHashCodeTest() {
+        PersistentArray<Integer> persistentArray = new PersistentArray<>();
+        for (int i = 0; i < 10000; i++) {
+            persistentArray.add(i);
+        }
+        List<Integer> arrayList = new ArrayList<>(persistentArray);
+
+        assertEquals(arrayList.hashCode(), persistentArray.hashCode());
+        assertEquals(arrayList, persistentArray);
+        assertEquals(persistentArray, arrayList);
+
+        PersistentArray<Integer> fork = persistentArray.fork();
+        assertEquals(persistentArray, fork);
+
+        persistentArray.set(5000, -1);
+        arrayList.set(5000, -1);
+        assertEquals(arrayList.hashCode(), persistentArray.hashCode());
+        assertNotEquals(persistentArray, fork);
+        assertNotEquals(persistentArray.hashCode(), fork.hashCode());
+
+        fork.set(5000, -1);
+        assertEquals(persistentArray, fork);
+        assertEquals(persistentArray.hashCode(), fork.hashCode());
+
+        PersistentArray<Integer> built = new PersistentArray<>(4);
+        for (int element : arrayList) {
+            built.add(element);
+        }
+        built.add(0);
+        built.remove(built.size() - 1);
+        assertEquals(persistentArray, built);
+        assertEquals(persistentArray.hashCode(), built.hashCode());
+        assertEquals(new PersistentArray<Integer>(), new PersistentArray<Integer>(100));
+        assertNotEquals(new PersistentArray<Integer>(), List.of(1));
+
+        PersistentArray<PersistentArray<Integer>> outer = new PersistentArray<>();
+        PersistentArray<Integer> inner = new PersistentArray<>();
+        outer.add(inner);
+        int hash = outer.hashCode();
+        inner.add(1);
+        assertNotEquals(hash, outer.hashCode());
+        assertEquals(List.of(List.of(1)).hashCode(), outer.hashCode());
+    }
+
+    @Test
+    void mergeTest() {
+        PersistentArray<Integer> base = new PersistentArray<>();
+        for (int i = 0; i < 1000; i++) {
+            base.add(i);
+        }
+
+        PersistentArray<Integer> ours = base.fork();
+        PersistentArray<Integer> theirs = base.fork();
+        ours.set(1, -1);
+        ours.set(2, -2);
+        ours.set(3, -3);
+        theirs.set(2, -2);
+        theirs.set(3, 33);
+        theirs.set(500, -500);
+        theirs.add(1000);
+        theirs.add(1001);
+
+        SortedMap<Integer, MergeConflict<Integer>> conflicts = ours.merge(base, theirs);
+        assertEquals(Set.of(3), conflicts.keySet());
+        assertEquals(3, conflicts.get(3).getBase());
+        assertEquals(-3, conflicts.get(3).getOurs());
+        assertEquals(33, conflicts.get(3).getTheirs());
+
+        List<Integer> expected = new ArrayList<>(base);
+        expected.set(1, -1);
+        expected.set(2, -2);
+        expected.set(3, -3);
+        expected.set(500, -500);
+        expected.addAll(List.of(1000, 1001));
+        assertEquals(expected, new ArrayList<>(ours));
+
+        PersistentArray<Integer> array = base.fork();
+        array.set(0, 10);
+        int baseVersion = array.getVersionId();
+        array.remove(array.size() - 1);
+        array.remove(array.size() - 1);
+        int theirVersion = array.getVersionId();
+        array.checkout(baseVersion);
+        array.set(5, 50);
+        assertTrue(array.merge(baseVersion, theirVersion).isEmpty());
+        assertEquals(998, array.size());
+        assertEquals(50, array.get(5));
+
+        array.checkout(baseVersion);
+        array.set(999, -999);
+        conflicts = array.merge(baseVersion, theirVersion);
+        assertEquals(Set.of(998, 999), conflicts.keySet());
+        assertEquals(1000, array.size());
+        assertEquals(-999, array.get(999));
+    }
+
+    @Test
+    void sortTest() {
+        PersistentArray<Integer> array = new PersistentArray<>();
+        List<Integer> expected = new ArrayList<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 5000; i++) {
+            int element = random.nextInt(2000);
+            array.add(element);
+            expected.add(element);
+        }
+
+        List<Integer> unsorted = new ArrayList<>(expected);
+        PersistentArray<Integer> sorted = array.sorted(null);
+        Collections.sort(expected);
+        assertEquals(expected, sorted);
+        assertEquals(unsorted, array);
+        assertEquals(1, sorted.getVersionCount());
+
+        for (int key = -1; key <= 2000; key++) {
+            int index = sorted.binarySearch(key);
+            int expectedIndex = Collections.binarySearch(expected, key);
+            if (expectedIndex >= 0) {
+                assertEquals(expected.indexOf(key), index);
+            } else {
+                assertEquals(expectedIndex, index);
+            }
+        }
+
+        int versions = array.getVersionCount();
+        array.sort(Comparator.reverseOrder());
+        assertEquals(versions + 1, array.getVersionCount());
+        Collections.reverse(expected);
+        assertEquals(expected, array);
+        assertEquals(expected.indexOf(1000), array.binarySearch(1000, Comparator.reverseOrder()));
+
+        array.add(-5);
+        assertEquals(-5, array.get(5000));
+        array.undo();
+        array.undo();
+        assertEquals(unsorted, array);
+
+        PersistentArray<String> words = new PersistentArray<>();
+        words.addAll(List.of("pear", "fig", "apple", "kiwi", "plum"));
+        PersistentArray<String> byLength = words.sorted(Comparator.comparing(String::length));
+        assertEquals(List.of("fig", "pear", "kiwi", "plum", "apple"), byLength);
+        assertEquals(-1, byLength.binarySearch("ox", Comparator.comparing(String::length)));
+        assertEquals(1, byLength.binarySearch("lime", Comparator.comparing(String::length)));
+        assertEquals(-6, byLength.binarySearch("banana", Comparator.comparing(String::length)));
+        assertEquals(-1, new PersistentArray<String>().binarySearch("a"));
+    }
+
+    @Test
+    void conjUndoKeepsNestedSourceTest() {
+        PersistentArray<Object> outer = new PersistentArray<>();
+        PersistentArray<Integer> inner = new PersistentArray<>();
+        outer.add(inner);
+        inner.add(1);
+        inner.add(2);
+
+        PersistentArray<Object> copy = outer.conj("x");
+        copy.undo();
+        copy.undo();
+        assertEquals("[[1, 2]]", outer.toString());
+        assertEquals("[1, 2]", inner.toString());
+        assertEquals("[[1]]", copy.at(copy.getVersionId()).toString());
+
+        PersistentArray<Object> replaced = outer.assoc(0, "y");
+        replaced.undo();
+        replaced.undo();
+        replaced.undo();
+        assertEquals("[[1, 2]]", outer.toString());
+        assertEquals("[[]]", replaced.at(replaced.getVersionId()).toString());
+
+        inner.add(3);
+        outer.undo();
+        assertEquals("[1, 2]", inner.toString());
+    }
+}
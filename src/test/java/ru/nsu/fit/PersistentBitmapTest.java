@@ -0,0 +1,141 @@
+package ru.nsu.fit;
+
+import org.junit.jupiter.api.Test;
+import ru.nsu.fit.set.PersistentBitmap;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentBitmapTest {
+
+    @Test
+    void addRemoveContainsTest() {
+        PersistentBitmap bitmap = new PersistentBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(23);
+
+        for (int i = 0; i < 50000; i++) {
+            int value = random.nextInt(3) == 0 ? random.nextInt(1 << 20) : random.nextInt(20000);
+            if (random.nextInt(4) == 0) {
+                assertEquals(expected.remove(value), bitmap.remove(value));
+            } else {
+                assertEquals(expected.add(value), bitmap.add(value));
+            }
+        }
+
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), bitmap.toArray());
+        for (int i = 0; i < 1000; i++) {
+            int value = random.nextInt(1 << 20);
+            assertEquals(expected.contains(value), bitmap.contains(value));
+        }
+
+        PersistentBitmap negative = PersistentBitmap.of(-1, 5, Integer.MIN_VALUE);
+        assertArrayEquals(new int[]{5, Integer.MIN_VALUE, -1}, negative.toArray());
+        assertTrue(negative.contains(-1));
+    }
+
+    @Test
+    void containersTest() {
+        PersistentBitmap bitmap = new PersistentBitmap();
+        for (int i = 0; i < 10000; i++) {
+            bitmap.add(2 * i);
+        }
+        for (int i = 100000; i < 200000; i++) {
+            bitmap.add(i);
+        }
+        long plain = bitmap.sizeInBytes();
+        int[] values = bitmap.toArray();
+
+        assertTrue(bitmap.runOptimize());
+        assertTrue(bitmap.sizeInBytes() < plain);
+        assertArrayEquals(values, bitmap.toArray());
+        assertFalse(bitmap.runOptimize());
+
+        bitmap.remove(150000);
+        bitmap.add(1);
+        assertFalse(bitmap.contains(150000));
+        assertTrue(bitmap.contains(150001));
+        assertEquals(values.length, bitmap.cardinality());
+
+        for (int i = 0; i < 10000; i++) {
+            bitmap.remove(2 * i);
+        }
+        assertEquals(99999 + 1, bitmap.cardinality());
+    }
+
+    @Test
+    void setAlgebraTest() {
+        Random random = new Random(29);
+        PersistentBitmap base = new PersistentBitmap();
+        Set<Integer> baseSet = new HashSet<>();
+        for (int i = 0; i < 100000; i++) {
+            int value = random.nextInt(1 << 22);
+            base.add(value);
+            baseSet.add(value);
+        }
+        base.runOptimize();
+
+        PersistentBitmap left = base.fork();
+        PersistentBitmap right = base.fork();
+        Set<Integer> leftSet = new HashSet<>(baseSet);
+        Set<Integer> rightSet = new HashSet<>(baseSet);
+        for (int i = 0; i < 1000; i++) {
+            int added = random.nextInt(1 << 23);
+            int removed = random.nextInt(1 << 22);
+            left.add(added);
+            leftSet.add(added);
+            right.remove(removed);
+            rightSet.remove(removed);
+        }
+
+        for (PersistentBitmap other : List.of(right, PersistentBitmap.of(1, 2, 3, 1 << 22), new PersistentBitmap())) {
+            Set<Integer> otherSet = new HashSet<>();
+            other.stream().forEach(otherSet::add);
+
+            Set<Integer> and = new TreeSet<>(leftSet);
+            and.retainAll(otherSet);
+            Set<Integer> or = new TreeSet<>(leftSet);
+            or.addAll(otherSet);
+            Set<Integer> andNot = new TreeSet<>(leftSet);
+            andNot.removeAll(otherSet);
+
+            assertArrayEquals(and.stream().mapToInt(Integer::intValue).toArray(), left.and(other).toArray());
+            assertArrayEquals(or.stream().mapToInt(Integer::intValue).toArray(), left.or(other).toArray());
+            assertArrayEquals(andNot.stream().mapToInt(Integer::intValue).toArray(), left.andNot(other).toArray());
+            assertEquals(and.size(), left.and(other).cardinality());
+        }
+
+        assertEquals(left, left.and(left));
+        assertTrue(left.andNot(left).isEmpty());
+        assertEquals(left, left.fork());
+        assertNotEquals(left, right);
+    }
+
+    @Test
+    void undoRedoTest() {
+        PersistentBitmap bitmap = PersistentBitmap.of(1, 2, 3);
+        int first = bitmap.getVersionId();
+        int versions = bitmap.getVersionCount();
+        bitmap.add(2);
+        bitmap.remove(7);
+        assertEquals(versions, bitmap.getVersionCount());
+
+        bitmap.remove(2);
+        bitmap.add(100000);
+        assertArrayEquals(new int[]{1, 3, 100000}, bitmap.toArray());
+
+        bitmap.undo();
+        bitmap.undo();
+        assertArrayEquals(new int[]{1, 2, 3}, bitmap.toArray());
+        bitmap.redo();
+        assertArrayEquals(new int[]{1, 3}, bitmap.toArray());
+        assertEquals(PersistentBitmap.of(1, 2, 3), bitmap.at(first));
+
+        bitmap.clear();
+        assertTrue(bitmap.isEmpty());
+        bitmap.undo();
+        assertEquals(2, bitmap.cardinality());
+    }
+}
@@ -0,0 +1,119 @@
+package ru.nsu.fit;
+
+import org.junit.jupiter.api.Test;
+import ru.nsu.fit.set.PersistentHashSet;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentHashSetTest {
+
+    @Test
+    void addRemoveContainsTest() {
+        PersistentHashSet<String> set = new PersistentHashSet<>();
+
+        assertTrue(set.add("a"));
+        assertTrue(set.add("b"));
+        assertFalse(set.add("a"));
+
+        assertEquals(2, set.size());
+        assertTrue(set.contains("a"));
+        assertFalse(set.contains("c"));
+        assertFalse(set.contains(null));
+
+        assertTrue(set.remove("a"));
+        assertFalse(set.remove("a"));
+        assertEquals(Set.of("b"), set);
+        assertThrows(NullPointerException.class, () -> set.add(null));
+    }
+
+    @Test
+    void undoRedoTest() {
+        PersistentHashSet<Integer> set = new PersistentHashSet<>();
+        set.add(1);
+        set.add(2);
+        int versions = set.getVersionCount();
+        set.add(2);
+        set.remove(3);
+        assertEquals(versions, set.getVersionCount());
+
+        set.remove(1);
+        assertEquals(Set.of(2), set);
+
+        set.undo();
+        assertEquals(Set.of(1, 2), set);
+        set.undo();
+        assertEquals(Set.of(1), set);
+        set.redo();
+        set.redo();
+        assertEquals(Set.of(2), set);
+        assertEquals(Set.of(1, 2), set.at(2));
+    }
+
+    @Test
+    void resizeTest() {
+        PersistentHashSet<Integer> set = new PersistentHashSet<>();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 20000; i++) {
+            int element = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(element), set.remove(element));
+            } else {
+                assertEquals(expected.add(element), set.add(element));
+            }
+        }
+        assertEquals(expected, set);
+        assertEquals(expected, new HashSet<>(set));
+
+        set.removeAll(new HashSet<>(expected));
+        assertTrue(set.isEmpty());
+        set.undo();
+        assertEquals(expected, set);
+    }
+
+    @Test
+    void setAlgebraTest() {
+        Random random = new Random(11);
+        PersistentHashSet<Integer> base = new PersistentHashSet<>();
+        for (int i = 0; i < 3000; i++) {
+            base.add(random.nextInt(10000));
+        }
+
+        PersistentHashSet<Integer> left = base.fork();
+        PersistentHashSet<Integer> right = base.fork();
+        for (int i = 0; i < 200; i++) {
+            left.add(random.nextInt(10000));
+            right.remove(random.nextInt(10000));
+            right.add(random.nextInt(10000));
+        }
+        PersistentHashSet<Integer> unrelated = new PersistentHashSet<>(List.of(1, 2, 3, 10001));
+
+        for (PersistentHashSet<Integer> other : List.of(right, unrelated)) {
+            Set<Integer> union = new HashSet<>(left);
+            union.addAll(other);
+            Set<Integer> intersection = new HashSet<>(left);
+            intersection.retainAll(other);
+            Set<Integer> difference = new HashSet<>(left);
+            difference.removeAll(other);
+
+            assertEquals(union, left.union(other));
+            assertEquals(intersection, left.intersection(other));
+            assertEquals(difference, left.difference(other));
+        }
+
+        PersistentHashSet<Integer> copy = left.fork();
+        int versions = copy.getVersionCount();
+        copy.addAll(right);
+        assertEquals(versions + 1, copy.getVersionCount());
+        copy.retainAll(Set.of(1, 2, 3));
+        copy.undo();
+        copy.undo();
+        assertEquals(left, copy);
+    }
+}
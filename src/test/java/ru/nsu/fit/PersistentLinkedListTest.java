@@ -4,9 +4,19 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import ru.nsu.fit.array.PersistentArray;
 import ru.nsu.fit.list.PersistentLinkedList;
-
+import ru.nsu.fit.util.ElementCodec;
+import ru.nsu.fit.util.ListHead;
+import ru.nsu.fit.util.Pair;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -451,4 +461,515 @@ class PersistentLinkedListTest {
         assertEquals(3, list.size());
         assertEquals(5, list.getVersionCount());
     }
+
+    @Test
+    void concatTest() {
+        PersistentLinkedList<Integer> other = new PersistentLinkedList<>();
+
+        for (int i = 0; i < 20; i++) {
+            persistentLinkedList.add(i);
+        }
+
+        for (int i = 20; i < 1000; i++) {
+            other.add(i);
+        }
+
+        PersistentLinkedList<Integer> result = persistentLinkedList.concat(other);
+
+        assertEquals(1000, result.size());
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, result.get(i));
+        }
+
+        assertEquals(20, persistentLinkedList.size());
+        assertEquals(980, other.size());
+        assertEquals(Integer.valueOf(20), other.get(0));
+
+        result.add(1000);
+        result.add(0, -1);
+        result.remove(20);
+
+        assertEquals(1001, result.size());
+        assertEquals(Integer.valueOf(-1), result.get(0));
+        assertEquals(Integer.valueOf(18), result.get(19));
+        assertEquals(Integer.valueOf(20), result.get(20));
+        assertEquals(Integer.valueOf(1000), result.get(1000));
+        assertEquals(Integer.valueOf(20), other.get(0));
+
+        result.undo();
+        result.undo();
+        result.undo();
+
+        assertEquals(1000, result.size());
+        assertEquals("[0, 1, 2]", new PersistentLinkedList<Integer>().concat(persistentLinkedList.splitAt(3).getFirst()).toString());
+    }
+
+    @Test
+    void splitAtTest() {
+        for (int i = 0; i < 100; i++) {
+            persistentLinkedList.add(i);
+        }
+
+        Pair<PersistentLinkedList<Integer>, PersistentLinkedList<Integer>> split = persistentLinkedList.splitAt(40);
+
+        assertEquals(40, split.getFirst().size());
+        assertEquals(60, split.getSecond().size());
+        assertEquals(Integer.valueOf(39), split.getFirst().get(39));
+        assertEquals(Integer.valueOf(40), split.getSecond().get(0));
+        assertEquals(100, persistentLinkedList.size());
+
+        split.getFirst().add(100);
+        split.getSecond().add(0, -1);
+
+        assertEquals(Integer.valueOf(100), split.getFirst().get(40));
+        assertEquals(Integer.valueOf(-1), split.getSecond().get(0));
+        assertEquals(Integer.valueOf(40), persistentLinkedList.get(40));
+
+        PersistentLinkedList<Integer> joined = split.getFirst().concat(split.getSecond());
+
+        assertEquals(102, joined.size());
+        assertEquals(Integer.valueOf(100), joined.get(40));
+        assertEquals(Integer.valueOf(-1), joined.get(41));
+        assertEquals(Integer.valueOf(99), joined.get(101));
+
+        assertTrue(persistentLinkedList.splitAt(0).getFirst().isEmpty());
+        assertTrue(persistentLinkedList.splitAt(100).getSecond().isEmpty());
+        assertThrows(IndexOutOfBoundsException.class, () -> persistentLinkedList.splitAt(101));
+    }
+
+    @Test
+    void concatSplitTest() {
+        PersistentLinkedList<Integer> left = new PersistentLinkedList<>();
+        PersistentLinkedList<Integer> right = new PersistentLinkedList<>();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            left.add(i);
+            expected.add(i);
+        }
+        for (int i = 0; i < 2000; i++) {
+            right.add(1000 + i);
+        }
+        left.remove(100);
+        left.add(50, -1);
+        right.remove(0);
+        expected.remove(100);
+        expected.add(50, -1);
+        for (int i = 1; i < 2000; i++) {
+            expected.add(1000 + i);
+        }
+
+        PersistentLinkedList<Integer> joined = left.concat(right);
+        assertEquals(expected, new ArrayList<>(joined));
+        for (int position = 0; position <= expected.size(); position += 37) {
+            Pair<PersistentLinkedList<Integer>, PersistentLinkedList<Integer>> split = joined.splitAt(position);
+            assertEquals(expected.subList(0, position), new ArrayList<>(split.getFirst()));
+            assertEquals(expected.subList(position, expected.size()), new ArrayList<>(split.getSecond()));
+
+            PersistentLinkedList<Integer> rejoined = split.getSecond().concat(split.getFirst());
+            int middle = rejoined.size() / 2;
+            List<Integer> rotated = new ArrayList<>(expected.subList(position, expected.size()));
+            rotated.addAll(expected.subList(0, position));
+            assertEquals(rotated.get(middle), rejoined.get(middle));
+            assertEquals(rotated.subList(middle, rotated.size()), new ArrayList<>(rejoined.splitAt(middle).getSecond()));
+        }
+    }
+
+    @Test
+    void searchTest() {
+        persistentLinkedList.add(1);
+        persistentLinkedList.add(2);
+        persistentLinkedList.add(3);
+        persistentLinkedList.add(2);
+        persistentLinkedList.add(0, 5);
+
+        assertTrue(persistentLinkedList.contains(3));
+        assertFalse(persistentLinkedList.contains(4));
+        assertEquals(2, persistentLinkedList.indexOf(2));
+        assertEquals(4, persistentLinkedList.lastIndexOf(2));
+        assertEquals(0, persistentLinkedList.indexOf(5));
+        assertEquals(-1, persistentLinkedList.lastIndexOf(4));
+        assertTrue(persistentLinkedList.containsAll(List.of(5, 3, 2)));
+        assertFalse(persistentLinkedList.containsAll(List.of(1, 4)));
+        assertThrows(NullPointerException.class, () -> persistentLinkedList.indexOf(null));
+    }
+
+    @Test
+    void bulkOperationsTest() {
+        assertTrue(persistentLinkedList.addAll(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17)));
+
+        assertEquals(2, persistentLinkedList.getVersionCount());
+        assertEquals(18, persistentLinkedList.size());
+        assertEquals(Integer.valueOf(17), persistentLinkedList.get(17));
+
+        assertTrue(persistentLinkedList.addAll(2, List.of(-1, -2)));
+        assertEquals("[0, 1, -1, -2, 2, 3]", persistentLinkedList.splitAt(6).getFirst().toString());
+
+        assertTrue(persistentLinkedList.removeAll(List.of(-1, -2, 5, 100)));
+        assertEquals(4, persistentLinkedList.getVersionCount());
+        assertEquals(17, persistentLinkedList.size());
+        assertEquals(-1, persistentLinkedList.indexOf(5));
+        assertFalse(persistentLinkedList.removeAll(List.of(100)));
+
+        assertTrue(persistentLinkedList.retainAll(List.of(3, 16, 17)));
+        assertEquals(5, persistentLinkedList.getVersionCount());
+        assertEquals("[3, 16, 17]", persistentLinkedList.toString());
+
+        assertTrue(persistentLinkedList.remove(Integer.valueOf(16)));
+        assertFalse(persistentLinkedList.remove(Integer.valueOf(16)));
+        assertEquals("[3, 17]", persistentLinkedList.toString());
+
+        persistentLinkedList.undo();
+        persistentLinkedList.undo();
+
+        assertEquals(17, persistentLinkedList.size());
+
+        persistentLinkedList.undo();
+
+        assertEquals(Integer.valueOf(-1), persistentLinkedList.get(2));
+    }
+
+    @Test
+    void streamTest() {
+        for (int i = 0; i < 5000; i++) {
+            persistentLinkedList.add(i);
+        }
+
+        Iterator<Integer> iterator = persistentLinkedList.iterator();
+
+        persistentLinkedList.remove(0);
+        persistentLinkedList.add(0, -1);
+
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(Integer.valueOf(i), iterator.next());
+        }
+        assertFalse(iterator.hasNext());
+
+        assertEquals(5000, persistentLinkedList.stream().count());
+        assertEquals(Integer.valueOf(-1), persistentLinkedList.stream().findFirst().orElseThrow());
+        assertEquals(12497499L, persistentLinkedList.parallelStream().mapToLong(Integer::longValue).sum());
+
+        persistentLinkedList.undo();
+        persistentLinkedList.undo();
+
+        assertEquals(12497500L, persistentLinkedList.parallelStream().mapToLong(Integer::longValue).sum());
+        assertEquals(List.of(0, 1, 2), persistentLinkedList.stream().limit(3).collect(Collectors.toList()));
+    }
+
+    @Test
+    void branchingTest() {
+        PersistentLinkedList<Integer> wide = new PersistentLinkedList<>(5000, 64);
+        PersistentLinkedList<Integer> narrow = new PersistentLinkedList<>(0, 8);
+
+        assertEquals(3, wide.takeLatestVersion().getDepth());
+        assertEquals(64, wide.takeLatestVersion().getWidth());
+
+        for (int i = 0; i < 5000; i++) {
+            wide.add(i);
+            narrow.add(-i);
+        }
+
+        assertEquals(3, wide.takeLatestVersion().getDepth());
+        assertEquals(5, narrow.takeLatestVersion().getDepth());
+
+        wide.add(0, -1);
+        wide.remove(100);
+        wide.clear();
+        wide.undo();
+
+        assertEquals(5000, wide.size());
+        assertEquals(Integer.valueOf(-1), wide.get(0));
+        assertEquals(Integer.valueOf(100), wide.get(100));
+
+        PersistentLinkedList<Integer> result = narrow.concat(wide);
+
+        assertEquals(10000, result.size());
+        assertEquals(Integer.valueOf(-4999), result.get(4999));
+        assertEquals(Integer.valueOf(-1), result.get(5000));
+
+        assertThrows(IllegalArgumentException.class, () -> new PersistentLinkedList<>(10, 12));
+        assertThrows(IllegalArgumentException.class, () -> new PersistentLinkedList<>(-1, 16));
+    }
+
+    @Test
+    void versionTreeTest() {
+        PersistentLinkedList<Integer> list = new PersistentLinkedList<>();
+        list.addAll(List.of(1, 2, 3));
+        int base = list.getVersionId();
+
+        list.remove(1);
+        int removed = list.getVersionId();
+        list.checkout(base);
+        list.add(0, 0);
+        int inserted = list.getVersionId();
+
+        assertEquals("[0, 1, 2, 3]", list.toString());
+        assertEquals(4, list.getVersionCount());
+
+        list.checkout(removed);
+        assertEquals("[1, 3]", list.toString());
+        list.undo();
+        assertEquals(base, list.getVersionId());
+        list.redo();
+        assertEquals(removed, list.getVersionId());
+
+        list.checkout(inserted);
+        list.undo();
+        list.redo();
+        assertEquals("[0, 1, 2, 3]", list.toString());
+
+        assertThrows(IndexOutOfBoundsException.class, () -> list.checkout(-1));
+    }
+
+    @Test
+    void atTest() {
+        PersistentLinkedList<Integer> list = new PersistentLinkedList<>();
+        list.addAll(List.of(1, 2, 3));
+        int base = list.getVersionId();
+        list.remove(0);
+        list.add(1, 5);
+
+        List<Integer> snapshot = list.at(base);
+        list.clear();
+
+        assertEquals(List.of(1, 2, 3), snapshot);
+        assertEquals(List.of(2, 5, 3), list.at(base + 2));
+        assertEquals(List.of(), list.at(0));
+        assertTrue(list.isEmpty());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.set(0, 4));
+    }
+
+    @Test
+    void cascadeTest() {
+        PersistentLinkedList<PersistentLinkedList<Integer>> outer = new PersistentLinkedList<>();
+        PersistentLinkedList<Integer> inner = new PersistentLinkedList<>();
+        outer.add(inner);
+        int attached = outer.getVersionId();
+
+        inner.add(1);
+        inner.add(2);
+        inner.undo();
+        assertEquals("[[1]]", outer.toString());
+
+        outer.undo();
+        assertEquals("[[1, 2]]", outer.toString());
+        outer.checkout(attached);
+        assertEquals("[[]]", outer.toString());
+        assertTrue(inner.isEmpty());
+
+        outer.redo();
+        assertEquals("[[1]]", outer.toString());
+        inner.checkout(0);
+        outer.undo();
+        assertEquals("[[1]]", outer.toString());
+    }
+
+    @Test
+    void serializationTest() throws IOException {
+        PersistentLinkedList<String> list = new PersistentLinkedList<>(0, 4);
+        for (int i = 0; i < 100; i++) {
+            list.add(String.valueOf(i));
+        }
+        list.add(0, "first");
+        list.add(50, "middle");
+        list.remove(3);
+        int edited = list.getVersionId();
+        list.undo();
+        list.set(1, "\u044d\u043b\u0435\u043c\u0435\u043d\u0442");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        list.writeTo(out, ElementCodec.strings());
+        PersistentLinkedList<String> restored = PersistentLinkedList.readFrom(
+                new ByteArrayInputStream(out.toByteArray()), ElementCodec.strings());
+
+        assertEquals(list.getVersionCount(), restored.getVersionCount());
+        assertEquals(list.toString(), restored.toString());
+        assertEquals(new ArrayList<>(list.at(edited)), restored.at(edited));
+        assertEquals(new ArrayList<>(list.at(50)), restored.at(50));
+
+        restored.add("last");
+        assertEquals("last", restored.get(restored.size() - 1));
+        assertEquals(list.size() + 1, restored.size());
+        restored.checkout(edited);
+        assertEquals(new ArrayList<>(list.at(edited)), restored);
+    }
+
+    @Test
+    void conversionTest() {
+        PersistentLinkedList<Integer> list = new PersistentLinkedList<>(0, 4);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            list.add(i);
+            expected.add(i);
+        }
+
+        PersistentArray<Integer> array = list.toPersistentArray();
+        assertEquals(expected, array);
+        assertEquals(1, array.getVersionCount());
+
+        array.set(10, -10);
+        array.add(1000);
+        list.set(20, -20);
+        assertEquals(10, list.get(10));
+        assertEquals(1000, list.size());
+        assertEquals(20, array.get(20));
+
+        list.remove(list.size() - 1);
+        list.remove(list.size() - 1);
+        expected.set(20, -20);
+        expected = expected.subList(0, 998);
+        assertEquals(expected, list.toPersistentArray());
+
+        list.add(0, -1);
+        list.remove(500);
+        List<Integer> shuffled = new ArrayList<>(list);
+        PersistentArray<Integer> rebuilt = list.toPersistentArray();
+        assertEquals(shuffled, rebuilt);
+        rebuilt.add(7);
+        assertEquals(7, rebuilt.get(shuffled.size()));
+
+        PersistentLinkedList<Integer> back = rebuilt.toPersistentList();
+        shuffled.add(7);
+        assertEquals(shuffled, back);
+        assertEquals(shuffled.size() - 1, back.lastIndexOf(7));
+
+        back.add(0, 100);
+        back.add(200);
+        back.remove(300);
+        shuffled.add(0, 100);
+        shuffled.add(200);
+        shuffled.remove(300);
+        assertEquals(shuffled, back);
+        assertEquals(shuffled.size(), rebuilt.size() + 1);
+        assertEquals(-1, rebuilt.get(0));
+
+        PersistentArray<Integer> trimmed = new PersistentArray<>();
+        trimmed.addAll(List.of(1, 2, 3, 4, 5));
+        trimmed.remove(4);
+        PersistentLinkedList<Integer> trimmedList = trimmed.toPersistentList();
+        trimmedList.add(6);
+        assertEquals(List.of(1, 2, 3, 4, 6), trimmedList);
+        trimmedList.remove(4);
+        trimmedList.remove(3);
+        assertEquals(List.of(1, 2, 3), trimmedList);
+        assertEquals(List.of(1, 2, 3, 4), trimmed.toPersistentList());
+
+        assertTrue(new PersistentArray<Integer>().toPersistentList().isEmpty());
+        assertTrue(new PersistentLinkedList<Integer>().toPersistentArray().isEmpty());
+    }
+
+    @Test
+    void derivedDepthTest() throws IOException {
+        PersistentLinkedList<Integer> list = new PersistentLinkedList<>(10000, 4);
+        list.add(1);
+        list.add(2);
+        PersistentLinkedList<Integer> small = new PersistentLinkedList<>();
+        small.add(3);
+        assertEquals(7, writtenDepth(list));
+
+        assertEquals(7, writtenDepth(list.fork()));
+        assertEquals(7, writtenDepth(list.concat(small)));
+        assertEquals(1, writtenDepth(small.concat(list)));
+        assertEquals(7, writtenDepth(list.splitAt(1).getFirst()));
+        assertEquals(7, writtenDepth(list.splitAt(0).getSecond()));
+
+        PersistentLinkedList<Integer> cleared = list.fork();
+        cleared.clear();
+        cleared.add(4);
+        assertEquals(7, writtenDepth(cleared.fork()));
+        assertEquals(List.of(4), new ArrayList<>(cleared));
+    }
+
+    private static int writtenDepth(PersistentLinkedList<Integer> list) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        list.writeTo(stream, ElementCodec.integers());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(stream.toByteArray()));
+        in.readInt();
+        return in.readInt();
+    }
+
+    @Test
+    void linkInvariantsTest() {
+        Random random = new Random(29);
+        List<ListHead<Integer>> heads = new ArrayList<>();
+        List<List<Integer>> expected = new ArrayList<>();
+        ListHead<Integer> head = new ListHead<>(1, 2);
+        List<Integer> reference = new ArrayList<>();
+
+        for (int step = 0; step < 2000; step++) {
+            int operation = random.nextInt(6);
+            int position = random.nextInt(reference.size() + 1);
+
+            if (operation <= 1 || reference.isEmpty()) {
+                head = head.isEmpty() ? head.empty() : new ListHead<>(head);
+                if (position == reference.size()) {
+                    head.addLast(step);
+                } else {
+                    head.addBefore(head.findIndex(position), step);
+                }
+                reference.add(position, step);
+            } else if (operation == 2) {
+                position = Math.min(position, reference.size() - 1);
+                ListHead<Integer> prev = head;
+                head = new ListHead<>(prev);
+                head.unlink(prev.findIndex(position));
+                reference.remove(position);
+            } else if (operation == 3) {
+                ListHead<Integer> other = new ListHead<>(1, 2);
+                List<Integer> otherReference = new ArrayList<>();
+                for (int i = random.nextInt(20); i > 0; i--) {
+                    other = other.isEmpty() ? other.empty() : new ListHead<>(other);
+                    other.addLast(-step);
+                    otherReference.add(-step);
+                }
+                if (random.nextBoolean()) {
+                    head = head.concat(other);
+                    reference.addAll(otherReference);
+                } else {
+                    head = other.concat(head);
+                    reference.addAll(0, otherReference);
+                }
+            } else if (operation == 4) {
+                head = head.take(position);
+                reference = new ArrayList<>(reference.subList(0, position));
+            } else {
+                head = head.drop(position);
+                reference = new ArrayList<>(reference.subList(position, reference.size()));
+            }
+
+            assertLinks(head, reference);
+            heads.add(head);
+            expected.add(new ArrayList<>(reference));
+        }
+
+        for (int i = 0; i < heads.size(); i++) {
+            assertLinks(heads.get(i), expected.get(i));
+        }
+    }
+
+    /**
+     * Проверка ссылок головы: обход от первого элемента дает expected, ссылки назад
+     * симметричны ссылкам вперед, а findIndex() совпадает с обходом.
+     */
+    private static void assertLinks(ListHead<Integer> head, List<Integer> expected) {
+        assertEquals(expected.size(), head.getSize());
+        if (expected.isEmpty()) {
+            return;
+        }
+
+        int index = head.getFirstIndex();
+        int prev = -1;
+        for (int position = 0; position < expected.size(); position++) {
+            assertEquals(prev, head.getPrev(index));
+            assertTrue(head.isLinked(index));
+            assertEquals(expected.get(position), head.getElement(index));
+            assertEquals(index, head.findIndex(position));
+
+            prev = index;
+            index = head.getNext(index);
+        }
+
+        assertEquals(-1, index);
+        assertEquals(prev, head.getLastIndex());
+    }
 }
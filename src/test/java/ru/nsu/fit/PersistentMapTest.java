@@ -1,11 +1,24 @@
 package ru.nsu.fit;
 
 import org.junit.jupiter.api.Test;
+import ru.nsu.fit.array.PersistentArray;
+import ru.nsu.fit.list.PersistentLinkedList;
+import ru.nsu.fit.map.MapPatch;
 import ru.nsu.fit.map.PersistentMap;
-
+import ru.nsu.fit.util.ElementCodec;
+import ru.nsu.fit.util.MergeConflict;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -280,4 +293,517 @@ class PersistentMapTest {
         }
     }
 
-}
\ No newline at end of file
+
+    @Test
+    void testPersistentHashMapAt() {
+        PersistentMap<String, String> persistentMap = new PersistentMap<>();
+
+        persistentMap.put("key1", "1");
+        persistentMap.put("key2", "2");
+        int version = persistentMap.getVersionCount() - 1;
+        persistentMap.put("key1", "3");
+        persistentMap.remove("key2");
+
+        Map<String, String> snapshot = persistentMap.at(version);
+        persistentMap.clear();
+
+        assertEquals(Map.of("key1", "1", "key2", "2"), snapshot);
+        assertEquals(2, snapshot.size());
+        assertEquals("1", snapshot.get("key1"));
+        assertTrue(snapshot.containsKey("key2"));
+        assertEquals(Map.of("key1", "3"), persistentMap.at(version + 2));
+        assertTrue(persistentMap.at(0).isEmpty());
+        assertTrue(persistentMap.isEmpty());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.put("key3", "3"));
+        assertThrows(IndexOutOfBoundsException.class, () -> persistentMap.at(100));
+    }
+
+    @Test
+    void testPersistentHashMapVersions() {
+        PersistentMap<Integer, Integer> persistentMap = new PersistentMap<>();
+        persistentMap.put(-1, -1);
+
+        Map<Integer, Integer> hashMap = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            hashMap.put(i, i);
+        }
+        persistentMap.putAll(hashMap);
+        int filled = persistentMap.getVersionId();
+        assertEquals(1001, persistentMap.size());
+
+        persistentMap.undo();
+        assertEquals(Map.of(-1, -1), persistentMap);
+
+        persistentMap.put(-2, -2);
+        persistentMap.checkout(filled);
+        assertEquals(1001, persistentMap.size());
+        assertEquals(500, persistentMap.get(500));
+
+        persistentMap.clear();
+        persistentMap.undo();
+        assertEquals(1001, persistentMap.size());
+        assertEquals(5, persistentMap.getVersionCount());
+
+        Map.Entry<Integer, Integer> entry = persistentMap.entrySet().iterator().next();
+        assertThrows(UnsupportedOperationException.class, () -> entry.setValue(0));
+    }
+
+    @Test
+    void testPersistentHashMapNestedUndo() {
+        PersistentMap<String, PersistentArray<String>> persistentMap = new PersistentMap<>();
+        PersistentArray<String> array = new PersistentArray<>();
+        persistentMap.put("key", array);
+
+        PersistentMap<String, PersistentMap<String, PersistentArray<String>>> outer = new PersistentMap<>();
+        outer.put("map", persistentMap);
+
+        outer.get("map").get("key").add("1");
+        outer.get("map").get("key").add("2");
+        assertEquals("{map={key=[1, 2]}}", outer.toString());
+
+        outer.undo();
+        assertEquals("[1]", array.toString());
+        outer.undo();
+        assertTrue(array.isEmpty());
+        outer.redo();
+        outer.redo();
+        assertEquals("{map={key=[1, 2]}}", outer.toString());
+    }
+
+    @Test
+    void testPersistentHashMapNestedSnapshots() {
+        PersistentArray<PersistentLinkedList<Integer>> array = new PersistentArray<>();
+        PersistentLinkedList<Integer> list = new PersistentLinkedList<>();
+        array.add(list);
+        int withEmpty = array.getVersionId();
+
+        list.add(1);
+        int withOne = array.getVersionId();
+        list.add(2);
+        assertEquals("[[]]", array.at(withEmpty).toString());
+        assertEquals("[[1]]", array.at(withOne).toString());
+        assertEquals("[[1, 2]]", array.at(array.getVersionId()).toString());
+        assertEquals(List.of(List.of(1)), array.at(withOne));
+
+        assertEquals(List.of(0), Arrays.stream(array.diff(withEmpty, withOne).getIndices()).boxed().toList());
+        assertTrue(array.diff(withOne, withOne).isEmpty());
+
+        PersistentArray<PersistentLinkedList<Integer>> copy = array.forkAt(withOne);
+        copy.get(0).add(10);
+        assertEquals("[[1, 10]]", copy.toString());
+        assertEquals("[[1, 2]]", array.toString());
+
+        PersistentMap<String, PersistentArray<PersistentLinkedList<Integer>>> map = new PersistentMap<>();
+        map.put("array", array);
+        int before = map.getVersionId();
+        list.add(3);
+        assertEquals("{array=[[1, 2]]}", map.at(before).toString());
+        assertEquals("{array=[[1, 2, 3]]}", map.at(map.getVersionId()).toString());
+        assertEquals(Set.of("array"), map.diff(before, map.getVersionId()).getPuts().keySet());
+        assertNotEquals(map.at(before), map.at(map.getVersionId()));
+
+        map.undo();
+        assertEquals("[1, 2]", list.toString());
+
+        PersistentMap<String, PersistentLinkedList<Integer>> first = new PersistentMap<>();
+        PersistentMap<String, PersistentLinkedList<Integer>> second = new PersistentMap<>();
+        PersistentLinkedList<Integer> shared = new PersistentLinkedList<>();
+        first.put("list", shared);
+        first.put("again", shared);
+        assertThrows(IllegalStateException.class, () -> second.put("list", shared));
+        second.put("list", shared.fork());
+        assertEquals(new ArrayList<>(first.get("list")), new ArrayList<>(second.get("list")));
+    }
+
+    @Test
+    void testPersistentHashMapDiff() throws IOException {
+        PersistentMap<String, Integer> persistentMap = new PersistentMap<>();
+        Map<String, Integer> hashMap = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            hashMap.put("key" + i, i);
+        }
+        persistentMap.putAll(hashMap);
+        int base = persistentMap.getVersionId();
+        PersistentMap<String, Integer> replica = persistentMap.fork();
+
+        persistentMap.put("key1", -1);
+        persistentMap.put("key2", 2);
+        persistentMap.put("new", null);
+        persistentMap.remove("key3");
+        persistentMap.remove("key4");
+        persistentMap.remove("key5");
+        persistentMap.put("key5", 5);
+        persistentMap.remove("key6");
+        persistentMap.put("key6", 6);
+        persistentMap.remove("key6");
+
+        MapPatch<String, Integer> patch = persistentMap.diff(base, persistentMap.getVersionId());
+        Map<String, Integer> puts = new HashMap<>();
+        puts.put("key1", -1);
+        puts.put("key5", 5);
+        puts.put("new", null);
+        assertEquals(Set.of("key3", "key4", "key6"), patch.getRemovals());
+        assertEquals(puts, patch.getPuts());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        patch.writeTo(out, ElementCodec.strings(), ElementCodec.integers());
+        replica.apply(MapPatch.readFrom(new ByteArrayInputStream(out.toByteArray()),
+                ElementCodec.strings(), ElementCodec.integers()));
+
+        assertEquals(new HashMap<>(persistentMap), new HashMap<>(replica));
+        assertEquals(2, replica.getVersionCount());
+
+        patch.writeTo(out, ElementCodec.strings(), ElementCodec.integers());
+        ByteArrayInputStream twice = new ByteArrayInputStream(out.toByteArray());
+        MapPatch.readFrom(twice, ElementCodec.strings(), ElementCodec.integers());
+        assertEquals(puts, MapPatch.readFrom(twice, ElementCodec.strings(), ElementCodec.integers()).getPuts());
+        assertEquals(-1, twice.read());
+
+        persistentMap.clear();
+        MapPatch<String, Integer> cleared = persistentMap.diff(base, persistentMap.getVersionId());
+        assertEquals(1000, cleared.getRemovals().size());
+        assertTrue(persistentMap.diff(base, base).isEmpty());
+    }
+
+    @Test
+    void testPersistentHashMapDiffBackwardAndAcrossBranches() {
+        PersistentMap<Integer, Integer> persistentMap = new PersistentMap<>();
+        persistentMap.put(32, 0);
+        persistentMap.remove(0);
+        persistentMap.put(96, 2);
+        int older = persistentMap.getVersionId();
+        persistentMap.put(0, 3);
+        persistentMap.put(96, 4);
+        persistentMap.remove(32);
+
+        MapPatch<Integer, Integer> backward = persistentMap.diff(persistentMap.getVersionId(), older);
+        assertEquals(Map.of(32, 0, 96, 2), backward.getPuts());
+        assertEquals(Set.of(0), backward.getRemovals());
+
+        Random random = new Random(17);
+        List<Integer> versionIds = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            if (random.nextInt(10) == 0) {
+                persistentMap.checkout(versionIds.get(random.nextInt(versionIds.size())));
+            }
+
+            int key = 32 * random.nextInt(8) + (random.nextBoolean() ? 0 : random.nextInt(64));
+            if (random.nextInt(3) == 0) {
+                persistentMap.remove(key);
+            } else {
+                persistentMap.put(key, random.nextInt(4));
+            }
+            versionIds.add(persistentMap.getVersionId());
+        }
+
+        for (int i = 0; i < 2000; i++) {
+            int from = versionIds.get(random.nextInt(versionIds.size()));
+            int to = versionIds.get(random.nextInt(versionIds.size()));
+            MapPatch<Integer, Integer> patch = persistentMap.diff(from, to);
+
+            Map<Integer, Integer> patched = new HashMap<>(persistentMap.at(from));
+            patch.getRemovals().forEach(patched::remove);
+            patched.putAll(patch.getPuts());
+            assertEquals(new HashMap<>(persistentMap.at(to)), patched);
+        }
+    }
+
+    @Test
+    void testPersistentHashMapEqualsHashCode() {
+        PersistentMap<Integer, String> persistentMap = new PersistentMap<>();
+        Map<Integer, String> hashMap = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            persistentMap.put(i, String.valueOf(i));
+            hashMap.put(i, String.valueOf(i));
+        }
+
+        assertEquals(hashMap.hashCode(), persistentMap.hashCode());
+        assertEquals(hashMap, persistentMap);
+        assertEquals(persistentMap, hashMap);
+
+        PersistentMap<Integer, String> fork = persistentMap.fork();
+        persistentMap.put(5, "five");
+        persistentMap.remove(7);
+        persistentMap.put(1000, null);
+        hashMap.put(5, "five");
+        hashMap.remove(7);
+        hashMap.put(1000, null);
+        assertEquals(hashMap.hashCode(), persistentMap.hashCode());
+        assertEquals(hashMap, persistentMap);
+        assertNotEquals(fork, persistentMap);
+
+        PersistentMap<Integer, String> other = new PersistentMap<>();
+        for (int i = 1000; i >= 0; i--) {
+            other.put(i, i == 5 ? "five" : i == 1000 ? null : String.valueOf(i));
+        }
+        other.remove(7);
+        assertEquals(persistentMap, other);
+        assertEquals(persistentMap.hashCode(), other.hashCode());
+        other.put(1000, "1000");
+        assertNotEquals(persistentMap, other);
+
+        PersistentMap<String, PersistentArray<Integer>> outer = new PersistentMap<>();
+        PersistentArray<Integer> inner = new PersistentArray<>();
+        outer.put("inner", inner);
+        outer.put("key", null);
+        int hash = outer.hashCode();
+        inner.add(1);
+        assertNotEquals(hash, outer.hashCode());
+        outer.remove("inner");
+        Map<String, PersistentArray<Integer>> expected = new HashMap<>();
+        expected.put("key", null);
+        assertEquals(expected.hashCode(), outer.hashCode());
+    }
+
+    @Test
+    void testPersistentHashMapMergeRetainWithout() {
+        PersistentMap<Integer, Integer> base = new PersistentMap<>();
+        for (int i = 0; i < 2000; i++) {
+            base.put(i, i);
+        }
+
+        PersistentMap<Integer, Integer> left = base.fork();
+        PersistentMap<Integer, Integer> right = base.fork();
+        for (int i = 0; i < 2000; i += 97) {
+            left.put(i, -i);
+            right.put(i + 1, 2 * i);
+            right.remove(i + 2);
+            right.put(5000 + i, i);
+        }
+
+        Map<Integer, Integer> merged = new HashMap<>(left);
+        right.forEach((key, value) -> merged.merge(key, value, (a, b) -> a.equals(b) ? a : a + b));
+        Map<Integer, Integer> retained = new HashMap<>(left);
+        retained.keySet().retainAll(right.keySet());
+        Map<Integer, Integer> without = new HashMap<>(left);
+        without.keySet().removeAll(right.keySet());
+
+        for (Map<Integer, Integer> other : List.of(right, new HashMap<>(right))) {
+            PersistentMap<Integer, Integer> result = left.fork();
+            result.merge(other, Integer::sum);
+            assertEquals(merged, result);
+            assertEquals(2, result.getVersionCount());
+
+            result = left.fork();
+            result.retainKeys(other);
+            assertEquals(retained, result);
+
+            result = left.fork();
+            result.without(other);
+            assertEquals(without, result);
+            result.undo();
+            assertEquals(left, result);
+        }
+
+        PersistentMap<Integer, Integer> result = left.fork();
+        result.without(Set.of(0, 1, 3000));
+        result.retainKeys(Set.of(1, 2, 3, 97));
+        assertEquals(Map.of(2, 2, 3, 3, 97, -97), result);
+
+        result.merge(Map.of(2, 2, 3, 5), (a, b) -> null);
+        assertEquals(Map.of(2, 2, 97, -97), result);
+        int versions = result.getVersionCount();
+        result.merge(result.fork(), Integer::sum);
+        result.without(Map.of(4000, 0));
+        assertEquals(versions, result.getVersionCount());
+    }
+
+    @Test
+    void testPersistentHashMapMergeWithOlderVersionAndSibling() {
+        PersistentMap<Integer, Integer> persistentMap = new PersistentMap<>();
+        persistentMap.put(32, 0);
+        persistentMap.remove(0);
+        persistentMap.put(96, 2);
+        int older = persistentMap.getVersionId();
+        persistentMap.put(0, 3);
+        persistentMap.put(96, 4);
+        persistentMap.remove(32);
+
+        PersistentMap<Integer, Integer> merged = persistentMap.fork();
+        merged.merge(persistentMap.at(older), (a, b) -> b);
+        assertEquals(Map.of(0, 3, 32, 0, 96, 2), merged);
+
+        Random random = new Random(23);
+        List<Integer> versionIds = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            if (random.nextInt(8) == 0) {
+                persistentMap.checkout(versionIds.get(random.nextInt(versionIds.size())));
+            }
+
+            int key = 32 * random.nextInt(6) + (random.nextBoolean() ? 0 : random.nextInt(64));
+            if (random.nextInt(3) == 0) {
+                persistentMap.remove(key);
+            } else {
+                persistentMap.put(key, random.nextInt(4));
+            }
+            versionIds.add(persistentMap.getVersionId());
+        }
+
+        for (int i = 0; i < 300; i++) {
+            int ours = versionIds.get(random.nextInt(versionIds.size()));
+            int theirs = versionIds.get(random.nextInt(versionIds.size()));
+            persistentMap.checkout(ours);
+            Map<Integer, Integer> current = new HashMap<>(persistentMap);
+            persistentMap.checkout(theirs);
+            PersistentMap<Integer, Integer> other = persistentMap.fork();
+            persistentMap.checkout(ours);
+
+            Map<Integer, Integer> expected = new HashMap<>(current);
+            other.forEach((key, value) -> expected.merge(key, value, (a, b) -> a.equals(b) ? a : a - b));
+            PersistentMap<Integer, Integer> result = persistentMap.fork();
+            result.merge(i % 2 == 0 ? other : persistentMap.at(theirs), (a, b) -> a - b);
+            assertEquals(expected, result);
+
+            expected.clear();
+            expected.putAll(current);
+            expected.keySet().retainAll(other.keySet());
+            result = persistentMap.fork();
+            result.retainKeys(other);
+            assertEquals(expected, result);
+
+            expected.clear();
+            expected.putAll(current);
+            expected.keySet().removeAll(other.keySet());
+            result = persistentMap.fork();
+            result.without(persistentMap.at(theirs));
+            assertEquals(expected, result);
+        }
+    }
+
+    @Test
+    void testPersistentHashMapThreeWayMerge() {
+        PersistentMap<String, Integer> base = new PersistentMap<>();
+        for (int i = 0; i < 500; i++) {
+            base.put("key" + i, i);
+        }
+
+        PersistentMap<String, Integer> ours = base.fork();
+        PersistentMap<String, Integer> theirs = base.fork();
+        ours.put("key1", -1);
+        ours.put("key2", -2);
+        ours.remove("key3");
+        ours.put("ours", 0);
+        theirs.put("key2", 22);
+        theirs.remove("key3");
+        theirs.remove("key4");
+        theirs.put("key5", -5);
+        theirs.put("theirs", 0);
+
+        Map<String, MergeConflict<Integer>> conflicts = ours.merge(base, theirs);
+        assertEquals(Set.of("key2"), conflicts.keySet());
+        assertEquals(2, conflicts.get("key2").getBase());
+        assertEquals(-2, conflicts.get("key2").getOurs());
+        assertEquals(22, conflicts.get("key2").getTheirs());
+
+        Map<String, Integer> expected = new HashMap<>(base);
+        expected.put("key1", -1);
+        expected.put("key2", -2);
+        expected.remove("key3");
+        expected.remove("key4");
+        expected.put("key5", -5);
+        expected.put("ours", 0);
+        expected.put("theirs", 0);
+        assertEquals(expected, ours);
+
+        PersistentMap<String, Integer> map = base.fork();
+        map.put("a", 1);
+        int baseVersion = map.getVersionId();
+        map.remove("key7");
+        int theirVersion = map.getVersionId();
+        map.checkout(baseVersion);
+        map.put("key7", 70);
+        int versions = map.getVersionCount();
+        conflicts = map.merge(baseVersion, theirVersion);
+        assertEquals(null, conflicts.get("key7").getTheirs());
+        assertEquals(70, map.get("key7"));
+        assertEquals(versions, map.getVersionCount());
+    }
+
+    @Test
+    void testPersistentHashMapNestedPath() {
+        PersistentMap<String, Object> root = new PersistentMap<>();
+        PersistentArray<PersistentLinkedList<Integer>> array = new PersistentArray<>();
+        PersistentLinkedList<Integer> list = new PersistentLinkedList<>();
+        list.add(1);
+        list.add(2);
+        array.add(list);
+        root.put("array", array);
+
+        assertEquals(2, (Integer) root.getIn(List.of("array", 0, 1)));
+        assertNull(root.getIn(List.of("array", 5, 1)));
+        assertNull(root.getIn(List.of("missing", 0)));
+        assertThrows(IllegalArgumentException.class, () -> root.getIn(List.of("array", "key")));
+
+        int versions = root.getVersionCount();
+        int before = root.getVersionId();
+        int arrayVersions = array.getVersionCount();
+        root.assocIn(List.of("array", 0, 1), 20);
+        assertEquals(versions + 1, root.getVersionCount());
+        assertEquals(List.of(1, 20), root.getIn(List.of("array", 0)));
+        assertEquals(List.of(1, 2), new ArrayList<>(list));
+        assertEquals(arrayVersions, array.getVersionCount());
+
+        root.updateIn(List.of("array", 0, 0), (Integer value) -> value + 100);
+        root.assocIn(List.of("array", 0, 2), 3);
+        assertEquals(List.of(101, 20, 3), root.getIn(List.of("array", 0)));
+        assertEquals(versions + 3, root.getVersionCount());
+        assertEquals("{array=[[1, 2]]}", root.at(before).toString());
+        assertEquals("{array=[[1, 20]]}", root.at(before + 1).toString());
+
+        root.undo();
+        root.undo();
+        root.undo();
+        assertEquals(before, root.getVersionId());
+        assertEquals(List.of(1, 2), root.getIn(List.of("array", 0)));
+        assertSame(array, root.get("array"));
+
+        PersistentMap<String, Object> nested = new PersistentMap<>();
+        nested.assocIn(List.of("x", "y"), 1);
+        nested.assocIn(List.of("x", "z"), 2);
+        int previous = nested.getVersionId();
+        nested.assocIn(List.of("x", "y"), 3);
+        assertEquals("{x={y=1, z=2}}", nested.at(previous).toString());
+        assertEquals("{x={y=3, z=2}}", nested.toString());
+
+        root.assocIn(List.of("config", "limits", "max"), 10);
+        assertEquals(10, (Integer) root.getIn(List.of("config", "limits", "max")));
+        assertEquals(versions + 4, root.getVersionCount());
+        root.undo();
+        assertNull(root.get("config"));
+
+        root.put("plain", new HashMap<>(Map.of("key", 1)));
+        assertEquals(1, (Integer) root.getIn(List.of("plain", "key")));
+        assertThrows(IllegalArgumentException.class, () -> root.assocIn(List.of("plain", "key"), 2));
+        assertThrows(IllegalArgumentException.class, () -> root.assocIn(List.of(), 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> root.assocIn(List.of("array", 3), list));
+    }
+
+    @Test
+    void testPersistentHashMapNestedPathSharing() {
+        PersistentMap<String, Object> root = new PersistentMap<>();
+        PersistentMap<String, Object> level = new PersistentMap<>();
+        PersistentArray<Integer> sibling = new PersistentArray<>();
+        PersistentLinkedList<Integer> target = new PersistentLinkedList<>();
+        sibling.add(1);
+        target.add(2);
+        level.put("sibling", sibling);
+        level.put("target", target);
+        root.put("level", level);
+
+        int before = root.getVersionId();
+        root.assocIn(List.of("level", "target", 0), 3);
+        PersistentMap<String, Object> copy = root.getIn(List.of("level"));
+        assertNotSame(level, copy);
+        assertSame(sibling, copy.get("sibling"));
+        assertEquals(List.of(3), new ArrayList<>((List<?>) copy.get("target")));
+        assertEquals(List.of(2), new ArrayList<>(target));
+
+        int versions = root.getVersionCount();
+        sibling.add(4);
+        assertEquals(versions + 1, root.getVersionCount());
+        assertEquals("{level={sibling=[1], target=[2]}}", root.at(before).toString());
+        assertEquals("{level={sibling=[1], target=[3]}}", root.at(before + 1).toString());
+        root.undo();
+        assertEquals(List.of(1), sibling);
+    }
+}
@@ -0,0 +1,102 @@
+package ru.nsu.fit;
+
+import org.junit.jupiter.api.Test;
+import ru.nsu.fit.queue.PersistentPriorityQueue;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentPriorityQueueTest {
+
+    @Test
+    void orderTest() {
+        PersistentPriorityQueue<Integer> queue = new PersistentPriorityQueue<>();
+        PriorityQueue<Integer> expected = new PriorityQueue<>();
+        Random random = new Random(13);
+
+        for (int i = 0; i < 20000; i++) {
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.poll(), queue.poll());
+            } else {
+                int element = random.nextInt(1000);
+                expected.offer(element);
+                queue.offer(element);
+            }
+            assertEquals(expected.peek(), queue.peek());
+            assertEquals(expected.size(), queue.size());
+        }
+
+        List<Integer> elements = new ArrayList<>(queue);
+        Collections.sort(elements);
+        List<Integer> sorted = new ArrayList<>(expected);
+        Collections.sort(sorted);
+        assertEquals(sorted, elements);
+
+        while (!expected.isEmpty()) {
+            assertEquals(expected.poll(), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertNull(queue.peek());
+        assertThrows(NoSuchElementException.class, queue::remove);
+        assertThrows(NullPointerException.class, () -> queue.offer(null));
+    }
+
+    @Test
+    void undoRedoTest() {
+        PersistentPriorityQueue<String> queue = new PersistentPriorityQueue<>(Comparator.reverseOrder());
+        queue.offer("b");
+        queue.offer("c");
+        queue.offer("a");
+        int versions = queue.getVersionCount();
+
+        assertEquals("c", queue.poll());
+        assertEquals("b", queue.poll());
+        queue.undo();
+        assertEquals("b", queue.peek());
+        queue.undo();
+        assertEquals("c", queue.peek());
+        assertEquals(3, queue.size());
+        queue.redo();
+        assertEquals("b", queue.peek());
+
+        queue.clear();
+        queue.poll();
+        assertEquals(versions + 3, queue.getVersionCount());
+        queue.undo();
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    void snapshotAndMeldTest() {
+        PersistentPriorityQueue<Integer> queue = new PersistentPriorityQueue<>();
+        for (int i = 0; i < 1000; i++) {
+            queue.offer((i * 7919) % 1000);
+        }
+
+        PersistentPriorityQueue<Integer> snapshot = queue.fork();
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, queue.poll());
+        }
+        assertEquals(0, snapshot.peek());
+        assertEquals(1000, snapshot.size());
+
+        PersistentPriorityQueue<Integer> other = new PersistentPriorityQueue<>();
+        other.addAll(List.of(-1, 2000, 700));
+        int versions = queue.getVersionCount();
+        queue.addAll(other);
+        assertEquals(versions + 1, queue.getVersionCount());
+        assertEquals(503, queue.size());
+        assertEquals(-1, queue.poll());
+        assertEquals(500, queue.poll());
+
+        List<Integer> drained = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            drained.add(queue.poll());
+        }
+        List<Integer> sorted = new ArrayList<>(drained);
+        Collections.sort(sorted);
+        assertEquals(sorted, drained);
+        assertEquals(501, drained.size());
+    }
+}
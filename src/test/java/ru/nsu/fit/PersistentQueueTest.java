@@ -0,0 +1,102 @@
+package ru.nsu.fit;
+
+import org.junit.jupiter.api.Test;
+import ru.nsu.fit.array.PersistentArray;
+import ru.nsu.fit.queue.PersistentQueue;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentQueueTest {
+
+    @Test
+    void fifoTest() {
+        PersistentQueue<Integer> queue = new PersistentQueue<>();
+        Deque<Integer> expected = new ArrayDeque<>();
+        Random random = new Random(17);
+
+        for (int i = 0; i < 20000; i++) {
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.poll(), queue.poll());
+            } else {
+                expected.offer(i);
+                queue.offer(i);
+            }
+            assertEquals(expected.peek(), queue.peek());
+            assertEquals(expected.size(), queue.size());
+        }
+
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(queue));
+        assertEquals(new ArrayList<>(expected), queue.stream().collect(Collectors.toList()));
+        assertThrows(NullPointerException.class, () -> queue.offer(null));
+    }
+
+    @Test
+    void versionsTest() {
+        PersistentQueue<String> queue = new PersistentQueue<>(List.of("a", "b", "c"));
+        assertEquals(2, queue.getVersionCount());
+        int full = queue.getVersionId();
+
+        assertEquals("a", queue.poll());
+        assertEquals("b", queue.poll());
+        queue.offer("d");
+        assertEquals(List.of("c", "d"), new ArrayList<>(queue));
+
+        queue.checkout(full);
+        assertEquals(List.of("a", "b", "c"), new ArrayList<>(queue));
+        queue.offer("e");
+        assertEquals(List.of("a", "b", "c", "e"), new ArrayList<>(queue));
+        queue.undo();
+        queue.undo();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        queue.redo();
+        assertEquals("a", queue.peek());
+    }
+
+    @Test
+    void snapshotTest() {
+        PersistentQueue<Integer> queue = new PersistentQueue<>();
+        List<PersistentQueue<Integer>> snapshots = new ArrayList<>();
+        List<List<Integer>> expected = new ArrayList<>();
+        Deque<Integer> model = new ArrayDeque<>();
+
+        for (int i = 0; i < 300; i++) {
+            if (i % 4 == 3) {
+                queue.poll();
+                model.poll();
+            } else {
+                queue.offer(i);
+                model.offer(i);
+            }
+            snapshots.add(queue.fork());
+            expected.add(new ArrayList<>(model));
+        }
+
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            PersistentQueue<Integer> snapshot = snapshots.get(i);
+            snapshot.offer(-1);
+            List<Integer> drained = new ArrayList<>();
+            while (!snapshot.isEmpty()) {
+                drained.add(snapshot.poll());
+            }
+            List<Integer> queued = new ArrayList<>(expected.get(i));
+            queued.add(-1);
+            assertEquals(queued, drained);
+        }
+    }
+
+    @Test
+    void cascadeTest() {
+        PersistentQueue<PersistentArray<Integer>> queue = new PersistentQueue<>();
+        PersistentArray<Integer> inner = new PersistentArray<>();
+        queue.offer(inner);
+        inner.add(1);
+
+        queue.undo();
+        assertTrue(inner.isEmpty());
+        assertEquals(1, queue.size());
+    }
+}
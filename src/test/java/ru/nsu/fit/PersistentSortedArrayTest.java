@@ -0,0 +1,89 @@
+package ru.nsu.fit;
+
+import org.junit.jupiter.api.Test;
+import ru.nsu.fit.set.PersistentSortedArray;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentSortedArrayTest {
+
+    @Test
+    void orderTest() {
+        PersistentSortedArray<Integer> array = new PersistentSortedArray<>();
+        List<Integer> expected = new ArrayList<>();
+        Random random = new Random(11);
+
+        for (int i = 0; i < 20000; i++) {
+            int element = random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove((Integer) element), array.remove((Integer) element));
+            } else {
+                assertTrue(array.add(element));
+                int index = Collections.binarySearch(expected, element);
+                expected.add(index < 0 ? -index - 1 : index, element);
+            }
+        }
+
+        assertEquals(expected, new ArrayList<>(array));
+        assertEquals(expected.size(), array.size());
+        for (int i = 0; i < expected.size(); i += 97) {
+            assertEquals(expected.get(i), array.get(i));
+        }
+        for (int key = -1; key <= 3000; key += 7) {
+            assertEquals(expected.indexOf(key), array.indexOf(key));
+            assertEquals(expected.lastIndexOf(key), array.lastIndexOf(key));
+            int index = Collections.binarySearch(expected, key);
+            assertEquals(index < 0 ? index : expected.indexOf(key), array.binarySearch(key));
+        }
+    }
+
+    @Test
+    void duplicatesAndComparatorTest() {
+        PersistentSortedArray<String> array = new PersistentSortedArray<>(Comparator.comparing(String::length));
+        array.addAll(List.of("pear", "fig", "kiwi", "apple", "ox"));
+        array.add("plum");
+
+        assertEquals(List.of("ox", "fig", "pear", "kiwi", "plum", "apple"), array);
+        assertEquals(2, array.indexOf("lime"));
+        assertEquals(4, array.lastIndexOf("lime"));
+        assertEquals(-7, array.binarySearch("banana"));
+        assertEquals("kiwi", array.remove(3));
+        assertEquals(List.of("ox", "fig", "pear", "plum", "apple"), array);
+
+        assertThrows(UnsupportedOperationException.class, () -> array.set(0, "a"));
+        assertThrows(UnsupportedOperationException.class, () -> array.add(0, "a"));
+        assertThrows(IndexOutOfBoundsException.class, () -> array.get(5));
+        assertThrows(NullPointerException.class, () -> array.add(null));
+    }
+
+    @Test
+    void undoRedoTest() {
+        PersistentSortedArray<Integer> array = new PersistentSortedArray<>();
+        array.addAll(List.of(3, 1, 2));
+        assertEquals(2, array.getVersionCount());
+        int afterAddAll = array.getVersionId();
+
+        array.add(2);
+        array.remove((Integer) 1);
+        assertFalse(array.remove((Integer) 7));
+        assertEquals(List.of(2, 2, 3), array);
+
+        List<Integer> snapshot = array.at(afterAddAll);
+        assertEquals(List.of(1, 2, 3), snapshot);
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(4));
+
+        PersistentSortedArray<Integer> fork = array.fork();
+        fork.clear();
+        assertTrue(fork.isEmpty());
+        assertEquals(List.of(2, 2, 3), array);
+
+        array.undo();
+        assertEquals(List.of(1, 2, 2, 3), array);
+        array.undo();
+        assertEquals(List.of(1, 2, 3), array);
+        array.redo();
+        assertEquals(List.of(1, 2, 2, 3), array);
+    }
+}
@@ -0,0 +1,123 @@
+package ru.nsu.fit;
+
+import org.junit.jupiter.api.Test;
+import ru.nsu.fit.set.PersistentSortedSet;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentSortedSetTest {
+
+    @Test
+    void orderTest() {
+        PersistentSortedSet<Integer> set = new PersistentSortedSet<>();
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(3);
+
+        for (int i = 0; i < 20000; i++) {
+            int element = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(element), set.remove(element));
+            } else {
+                assertEquals(expected.add(element), set.add(element));
+            }
+        }
+
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(set));
+        assertEquals(expected.first(), set.first());
+        assertEquals(expected.last(), set.last());
+    }
+
+    @Test
+    void comparatorTest() {
+        PersistentSortedSet<String> set = new PersistentSortedSet<>(Comparator.reverseOrder());
+        set.addAll(List.of("b", "a", "c", "a"));
+
+        assertEquals(List.of("c", "b", "a"), new ArrayList<>(set));
+        assertEquals("c", set.first());
+        assertThrows(NoSuchElementException.class, () -> new PersistentSortedSet<String>().last());
+        assertThrows(IllegalArgumentException.class, () -> set.union(new PersistentSortedSet<>()));
+    }
+
+    @Test
+    void undoRedoTest() {
+        PersistentSortedSet<Integer> set = new PersistentSortedSet<>();
+        set.add(2);
+        set.add(1);
+        int versions = set.getVersionCount();
+        set.add(1);
+        set.remove(5);
+        assertEquals(versions, set.getVersionCount());
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        set.undo();
+        assertEquals(List.of(1, 2), new ArrayList<>(set));
+        set.undo();
+        assertEquals(List.of(2), new ArrayList<>(set));
+        set.redo();
+        set.redo();
+        assertTrue(set.isEmpty());
+        assertEquals(Set.of(1, 2), set.at(2));
+    }
+
+    @Test
+    void noOpBulkTest() {
+        PersistentSortedSet<Integer> set = new PersistentSortedSet<>();
+        set.addAll(List.of(1, 2, 3));
+        PersistentSortedSet<Integer> superset = set.fork();
+        superset.addAll(List.of(4, 5));
+        PersistentSortedSet<Integer> disjoint = new PersistentSortedSet<>();
+        disjoint.addAll(List.of(10, 20));
+        PersistentSortedSet<Integer> subset = new PersistentSortedSet<>();
+        subset.add(2);
+
+        int versions = set.getVersionCount();
+        assertFalse(set.retainAll(superset));
+        assertFalse(set.removeAll(disjoint));
+        assertFalse(set.addAll(subset));
+        assertFalse(new PersistentSortedSet<Integer>().retainAll(disjoint));
+        assertEquals(versions, set.getVersionCount());
+
+        assertTrue(set.retainAll(subset));
+        assertEquals(List.of(2), new ArrayList<>(set));
+        assertEquals(versions + 1, set.getVersionCount());
+    }
+
+    @Test
+    void setAlgebraTest() {
+        Random random = new Random(5);
+        PersistentSortedSet<Integer> base = new PersistentSortedSet<>();
+        for (int i = 0; i < 3000; i++) {
+            base.add(random.nextInt(10000));
+        }
+
+        PersistentSortedSet<Integer> left = base.fork();
+        PersistentSortedSet<Integer> right = base.fork();
+        for (int i = 0; i < 200; i++) {
+            left.add(random.nextInt(10000));
+            right.remove(random.nextInt(10000));
+            right.add(random.nextInt(10000));
+        }
+
+        TreeSet<Integer> union = new TreeSet<>(left);
+        union.addAll(right);
+        TreeSet<Integer> intersection = new TreeSet<>(left);
+        intersection.retainAll(right);
+        TreeSet<Integer> difference = new TreeSet<>(left);
+        difference.removeAll(right);
+
+        assertEquals(new ArrayList<>(union), new ArrayList<>(left.union(right)));
+        assertEquals(new ArrayList<>(intersection), new ArrayList<>(left.intersection(right)));
+        assertEquals(new ArrayList<>(difference), new ArrayList<>(left.difference(right)));
+
+        PersistentSortedSet<Integer> copy = left.fork();
+        copy.removeAll(right);
+        assertEquals(difference, copy);
+        copy.retainAll(Set.of(1, 2, 3));
+        copy.undo();
+        copy.undo();
+        assertEquals(left, copy);
+    }
+}
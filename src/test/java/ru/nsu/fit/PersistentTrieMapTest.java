@@ -0,0 +1,88 @@
+package ru.nsu.fit;
+
+import org.junit.jupiter.api.Test;
+import ru.nsu.fit.map.PersistentTrieMap;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentTrieMapTest {
+
+    @Test
+    void putGetRemoveTest() {
+        PersistentTrieMap<Integer> trie = new PersistentTrieMap<>();
+        TreeMap<String, Integer> expected = new TreeMap<>();
+        Random random = new Random(19);
+        String[] segments = {"a", "ab", "b", "/", "usr", "user", "", "x/y"};
+
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder key = new StringBuilder();
+            for (int j = random.nextInt(4); j >= 0; j--) {
+                key.append(segments[random.nextInt(segments.length)]);
+            }
+
+            String string = key.toString();
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(string), trie.remove(string));
+            } else {
+                assertEquals(expected.put(string, i), trie.put(string, i));
+            }
+            assertEquals(expected.size(), trie.size());
+        }
+
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(trie.entrySet()));
+        assertEquals(expected, trie);
+        assertFalse(trie.containsKey(1));
+        assertThrows(NullPointerException.class, () -> trie.put(null, 1));
+    }
+
+    @Test
+    void prefixMapTest() {
+        PersistentTrieMap<String> trie = new PersistentTrieMap<>();
+        for (String key : List.of("/usr/bin", "/usr/lib", "/usr/lib64", "/usr", "/var/log", "/u", "usr")) {
+            trie.put(key, key.toUpperCase());
+        }
+
+        assertEquals(List.of("/usr", "/usr/bin", "/usr/lib", "/usr/lib64"),
+                new ArrayList<>(trie.prefixMap("/usr").keySet()));
+        assertEquals(List.of("/usr/lib", "/usr/lib64"), new ArrayList<>(trie.prefixMap("/usr/l").keySet()));
+        assertEquals(Map.of("/var/log", "/VAR/LOG"), trie.prefixMap("/va"));
+        assertEquals(6, trie.prefixMap("/").size());
+        assertEquals(trie, trie.prefixMap(""));
+        assertTrue(trie.prefixMap("/usr/lib6464").isEmpty());
+        assertTrue(trie.prefixMap("/x").isEmpty());
+
+        PersistentTrieMap<String> usr = trie.prefixMap("/usr/");
+        usr.put("/usr/share", "share");
+        assertFalse(trie.containsKey("/usr/share"));
+        assertEquals("share", usr.get("/usr/share"));
+    }
+
+    @Test
+    void undoRedoTest() {
+        PersistentTrieMap<Integer> trie = new PersistentTrieMap<>();
+        trie.put("topic/a", 1);
+        trie.put("topic/b", 2);
+        int versions = trie.getVersionCount();
+        trie.put("topic/a", trie.get("topic/a"));
+        trie.remove("topic/c");
+        assertEquals(versions, trie.getVersionCount());
+
+        trie.remove("topic/a");
+        trie.put("", 0);
+        assertEquals(Map.of("topic/b", 2, "", 0), trie);
+
+        trie.undo();
+        trie.undo();
+        assertEquals(Map.of("topic/a", 1, "topic/b", 2), trie);
+        trie.redo();
+        assertEquals(Map.of("topic/b", 2), trie);
+        assertEquals(Map.of("topic/a", 1), trie.at(1));
+
+        trie.clear();
+        assertTrue(trie.isEmpty());
+        trie.undo();
+        assertEquals(1, trie.size());
+    }
+}
@@ -0,0 +1,184 @@
+package ru.nsu.fit;
+
+import org.junit.jupiter.api.Test;
+import ru.nsu.fit.array.PersistentArray;
+import ru.nsu.fit.map.PersistentMap;
+import ru.nsu.fit.stm.Ref;
+import ru.nsu.fit.stm.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionTest {
+
+    @Test
+    void readWriteTest() {
+        Ref<Integer> a = new Ref<>(1);
+        Ref<String> b = new Ref<>("x");
+
+        int result = Transaction.atomic(tx -> {
+            tx.set(a, tx.get(a) + 1);
+            tx.alter(b, s -> s + tx.get(a));
+            return tx.get(a);
+        });
+
+        assertEquals(2, result);
+        assertEquals(2, a.get());
+        assertEquals("x2", b.get());
+
+        assertThrows(IllegalStateException.class, () -> Transaction.run(tx -> {
+            tx.set(a, 100);
+            throw new IllegalStateException();
+        }));
+        assertEquals(2, a.get());
+    }
+
+    @Test
+    void refCreatedInTransactionTest() {
+        Ref<Integer> existing = new Ref<>(10);
+        AtomicInteger attempts = new AtomicInteger();
+
+        Ref<Integer> created = Transaction.atomic(tx -> {
+            attempts.incrementAndGet();
+            Ref<Integer> ref = new Ref<>(tx.get(existing));
+            tx.alter(ref, value -> value + 1);
+            assertEquals(11, tx.get(ref));
+            return ref;
+        });
+
+        assertEquals(1, attempts.get());
+        assertEquals(11, created.get());
+
+        Ref<String> unwritten = Transaction.atomic(tx -> {
+            Ref<String> ref = new Ref<>("initial");
+            assertEquals("initial", tx.get(ref));
+            return ref;
+        });
+        assertEquals("initial", unwritten.get());
+        assertEquals("initial", Transaction.atomic(tx -> tx.get(unwritten)));
+
+        Transaction.run(tx -> tx.set(unwritten, null));
+        assertNull(unwritten.get());
+        assertNull(Transaction.atomic(tx -> tx.get(unwritten)));
+    }
+
+    @Test
+    void releasedRefsTest() throws InterruptedException {
+        Ref<Integer> kept = new Ref<>(0);
+        for (int round = 0; round < 20; round++) {
+            List<Ref<Integer>> refs = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                refs.add(new Ref<>(0));
+            }
+            Transaction.run(tx -> {
+                refs.forEach(ref -> tx.set(ref, 1));
+                tx.alter(kept, value -> value + 1);
+            });
+            refs.clear();
+            System.gc();
+            Thread.sleep(1);
+
+            Ref<Integer> fresh = new Ref<>(-1);
+            assertEquals(-1, fresh.get());
+            assertEquals(-1, (int) Transaction.atomic(tx -> tx.get(fresh)));
+            int written = round;
+            Transaction.run(tx -> tx.set(fresh, written));
+            assertEquals(written, fresh.get());
+        }
+        assertEquals(20, kept.get());
+    }
+
+    @Test
+    void persistentStructuresTest() {
+        PersistentArray<Integer> array = new PersistentArray<>();
+        array.add(1);
+        Ref<PersistentArray<Integer>> arrayRef = new Ref<>(array);
+        Ref<PersistentMap<String, Integer>> mapRef = new Ref<>(new PersistentMap<>());
+
+        Transaction.run(tx -> {
+            PersistentArray<Integer> newArray = tx.get(arrayRef).fork();
+            newArray.set(0, 5);
+            tx.set(arrayRef, newArray);
+
+            PersistentMap<String, Integer> newMap = tx.get(mapRef).fork();
+            newMap.put("key", newArray.get(0));
+            tx.set(mapRef, newMap);
+        });
+
+        assertEquals("[1]", array.toString());
+        assertEquals("[5]", arrayRef.get().toString());
+        assertEquals(5, mapRef.get().get("key"));
+        assertEquals(2, arrayRef.get().getVersionCount());
+    }
+
+    @Test
+    void concurrentTransferTest() throws InterruptedException {
+        int accounts = 8;
+        int threads = 8;
+        int transfers = 2000;
+
+        PersistentArray<Integer> initial = new PersistentArray<>();
+        for (int i = 0; i < accounts; i++) {
+            initial.add(100);
+        }
+        Ref<PersistentArray<Integer>> left = new Ref<>(initial);
+        Ref<PersistentMap<Integer, Integer>> right = new Ref<>(new PersistentMap<>());
+        Ref<Integer> count = new Ref<>(0);
+
+        AtomicBoolean consistent = new AtomicBoolean(true);
+        Thread reader = new Thread(() -> {
+            for (int i = 0; i < transfers; i++) {
+                int total = Transaction.atomic(tx -> total(tx.get(left)) + total(tx.get(right).values()));
+                if (total != 100 * accounts) {
+                    consistent.set(false);
+                }
+            }
+        });
+
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < transfers; i++) {
+                    int account = ThreadLocalRandom.current().nextInt(accounts);
+                    Transaction.run(tx -> {
+                        PersistentArray<Integer> from = tx.get(left).fork();
+                        PersistentMap<Integer, Integer> to = tx.get(right).fork();
+                        from.set(account, from.get(account) - 1);
+                        to.put(account, to.getOrDefault(account, 0) + 1);
+                        tx.set(left, from);
+                        tx.set(right, to);
+                        tx.alter(count, c -> c + 1);
+                    });
+                }
+            }));
+        }
+
+        reader.start();
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        reader.join();
+
+        assertEquals(threads * transfers, count.get());
+        assertEquals(100 * accounts - threads * transfers, total(left.get()));
+        assertEquals(threads * transfers, total(right.get().values()));
+        assertTrue(consistent.get());
+    }
+
+    private static int total(Iterable<Integer> values) {
+        int total = 0;
+        for (Integer value : values) {
+            total += value;
+        }
+        return total;
+    }
+}